@@ -30,6 +30,50 @@ CTS_XML_GENERATOR := $(HOST_OUT_EXECUTABLES)/cts-xml-generator
 # File indicating which tests should be blacklisted due to problems.
 CTS_EXPECTATIONS := cts/tests/expectations/knownfailures.txt
 
+# Test lists and XML generator arguments of each package, written by the
+# package rules in cts/build.
+CTS_XML_INTERMEDIATES := $(HOST_OUT_INTERMEDIATES)/CTS_XML
+
+# The XML generator keeps the parsed expectations in this directory, so that
+# they are only parsed again when they change.
+CTS_EXPECTATIONS_CACHE := $(CTS_XML_INTERMEDIATES)/expectations
+
+# Command line of the XML generator, including its cache.
+CTS_XML_GENERATOR_COMMAND := $(CTS_XML_GENERATOR) \
+		-JDvogar.expectations.cacheDir=$(CTS_EXPECTATIONS_CACHE)
+
+# The java scanner keeps the declarations parsed from each source file in
+# this directory, by the SHA-1 of the file content, so that only the changed
+# files of a package are parsed again.
+CTS_JAVA_TEST_SCANNER_CACHE := $(CTS_XML_INTERMEDIATES)/java-scanner
+
+# Command line of the java scanner, including its cache.
+CTS_JAVA_TEST_SCANNER_COMMAND := $(CTS_JAVA_TEST_SCANNER) \
+		-JDcts.javascanner.cacheDir=$(CTS_JAVA_TEST_SCANNER_CACHE)
+
+# The native scanner keeps the tests found in the files of each source
+# directory in this directory, by the SHA-1 of the file content.
+CTS_NATIVE_TEST_SCANNER_CACHE := $(CTS_XML_INTERMEDIATES)/native-scanner
+
+# Command line of the native scanner, including its cache.
+CTS_NATIVE_TEST_SCANNER_COMMAND := $(CTS_NATIVE_TEST_SCANNER) \
+		-JDcts.nativescanner.cacheDir=$(CTS_NATIVE_TEST_SCANNER_CACHE)
+
+# The test XMLs of all packages are written by one run of the XML generator,
+# which parses the expectations once for all of them. Each package adds the
+# file with its generator arguments as a prerequisite of this stamp, and makes
+# its test XML depend on it. The stamp is touched before the run, so that the
+# XMLs written by it are not older than the stamp.
+CTS_XML_BATCH_STAMP := $(CTS_XML_INTERMEDIATES)/batch.stamp
+
+$(CTS_XML_BATCH_STAMP): $(CTS_EXPECTATIONS) $(CTS_XML_GENERATOR)
+	$(hide) echo Generating test descriptions
+	$(hide) mkdir -p $(CTS_TESTCASES_OUT) $(dir $@)
+	$(hide) cat /dev/null $(filter %.args,$^) > $(basename $@).batch
+	$(hide) touch $@
+	$(hide) $(CTS_XML_GENERATOR_COMMAND) -b $(basename $@).batch -e $(CTS_EXPECTATIONS) \
+			|| (rm -f $@; exit 1)
+
 # Functions to get the paths of the build outputs.
 
 define cts-get-lib-paths
@@ -51,3 +95,7 @@ endef
 define cts-get-test-xmls
 	$(foreach name,$(1),$(CTS_TESTCASES_OUT)/$(name).xml)
 endef
+
+define cts-get-test-indexes
+	$(foreach name,$(1),$(CTS_TESTCASES_OUT)/$(name).idx)
+endef
@@ -26,17 +26,28 @@
 include $(BUILD_EXECUTABLE)
 
 cts_executable_xml := $(CTS_TESTCASES_OUT)/$(LOCAL_MODULE).xml
+cts_executable_test_list := $(CTS_XML_INTERMEDIATES)/$(LOCAL_MODULE).list
+cts_executable_xml_args := $(CTS_XML_INTERMEDIATES)/$(LOCAL_MODULE).args
 
-$(cts_executable_xml): PRIVATE_PATH := $(cts_src_test_path)
-$(cts_executable_xml): PRIVATE_TEST_PACKAGE := $(LOCAL_CTS_TEST_PACKAGE)
-$(cts_executable_xml): PRIVATE_EXECUTABLE := $(LOCAL_MODULE)
-$(cts_executable_xml): $(addprefix $(LOCAL_PATH)/,$(LOCAL_SRC_FILES)) $(CTS_EXPECTATIONS) $(CTS_NATIVE_TEST_SCANNER) $(CTS_XML_GENERATOR)
-	$(hide) echo Generating test description for native package $(PRIVATE_TEST_PACKAGE)
-	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
-	$(hide) $(CTS_NATIVE_TEST_SCANNER) -s $(PRIVATE_PATH) \
-						-t $(PRIVATE_TEST_PACKAGE) | \
-			$(CTS_XML_GENERATOR) -t native \
-						-n $(PRIVATE_EXECUTABLE) \
-						-p $(PRIVATE_TEST_PACKAGE) \
-						-e $(CTS_EXPECTATIONS) \
-						-o $@
+# Lists the tests of the executable, and writes the arguments of the XML
+# generator for it. The XML itself is written by the batch run of
+# $(CTS_XML_BATCH_STAMP).
+$(cts_executable_xml_args): PRIVATE_PATH := $(cts_src_test_path)
+$(cts_executable_xml_args): PRIVATE_TEST_PACKAGE := $(LOCAL_CTS_TEST_PACKAGE)
+$(cts_executable_xml_args): PRIVATE_EXECUTABLE := $(LOCAL_MODULE)
+$(cts_executable_xml_args): PRIVATE_TEST_LIST := $(cts_executable_test_list)
+$(cts_executable_xml_args): PRIVATE_XML := $(cts_executable_xml)
+$(cts_executable_xml_args): $(addprefix $(LOCAL_PATH)/,$(LOCAL_SRC_FILES)) $(CTS_NATIVE_TEST_SCANNER)
+	$(hide) echo Listing tests of native package $(PRIVATE_TEST_PACKAGE)
+	$(hide) mkdir -p $(dir $@)
+	$(hide) $(CTS_NATIVE_TEST_SCANNER_COMMAND) -s $(PRIVATE_PATH) \
+						-t $(PRIVATE_TEST_PACKAGE) > $(PRIVATE_TEST_LIST)
+	$(hide) echo '-t native -n $(PRIVATE_EXECUTABLE) -p $(PRIVATE_TEST_PACKAGE)' \
+			'-l $(PRIVATE_TEST_LIST) -o $(PRIVATE_XML)' > $@
+
+$(CTS_XML_BATCH_STAMP): $(cts_executable_xml_args)
+
+# Written by the batch run, or on its own if it was deleted since
+$(cts_executable_xml): PRIVATE_XML_ARGS := $(cts_executable_xml_args)
+$(cts_executable_xml): $(CTS_XML_BATCH_STAMP)
+	$(hide) test -f $@ || $(CTS_XML_GENERATOR_COMMAND) -b $(PRIVATE_XML_ARGS) -e $(CTS_EXPECTATIONS)
@@ -27,24 +27,33 @@ include $(BUILD_PACKAGE)
 
 cts_package_apk := $(CTS_TESTCASES_OUT)/$(LOCAL_PACKAGE_NAME).apk
 cts_package_xml := $(CTS_TESTCASES_OUT)/$(LOCAL_PACKAGE_NAME).xml
+cts_package_test_list := $(CTS_XML_INTERMEDIATES)/$(LOCAL_PACKAGE_NAME).list
+cts_package_xml_args := $(CTS_XML_INTERMEDIATES)/$(LOCAL_PACKAGE_NAME).args
 
 $(cts_package_apk): PRIVATE_PACKAGE := $(LOCAL_PACKAGE_NAME)
 $(cts_package_apk): $(call intermediates-dir-for,APPS,$(LOCAL_PACKAGE_NAME))/package.apk | $(ACP)
 	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
 	$(hide) $(ACP) -fp $(call intermediates-dir-for,APPS,$(PRIVATE_PACKAGE))/package.apk $@
 
-$(cts_package_xml): PRIVATE_PATH := $(LOCAL_PATH)
-$(cts_package_xml): PRIVATE_TEST_PACKAGE := android.$(notdir $(LOCAL_PATH))
-$(cts_package_xml): PRIVATE_EXECUTABLE := $(LOCAL_MODULE)
-$(cts_package_xml): PRIVATE_MANIFEST := $(LOCAL_PATH)/AndroidManifest.xml
-$(cts_package_xml): $(addprefix $(LOCAL_PATH)/,$(LOCAL_SRC_FILES))  $(CTS_NATIVE_TEST_SCANNER) $(CTS_XML_GENERATOR)
-	$(hide) echo Generating test description for wrapped native package $(PRIVATE_EXECUTABLE)
-	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
-	$(hide) $(CTS_NATIVE_TEST_SCANNER) -s $(PRIVATE_PATH) \
-						-t $(PRIVATE_TEST_PACKAGE) | \
-			$(CTS_XML_GENERATOR) -t wrappednative \
-                                                -m $(PRIVATE_MANIFEST) \
-						-n $(PRIVATE_EXECUTABLE) \
-						-p $(PRIVATE_TEST_PACKAGE) \
-						-e $(CTS_EXPECTATIONS) \
-						-o $@
+# Lists the tests of the package, and writes the arguments of the XML generator
+# for it. The XML itself is written by the batch run of $(CTS_XML_BATCH_STAMP).
+$(cts_package_xml_args): PRIVATE_PATH := $(LOCAL_PATH)
+$(cts_package_xml_args): PRIVATE_TEST_PACKAGE := android.$(notdir $(LOCAL_PATH))
+$(cts_package_xml_args): PRIVATE_EXECUTABLE := $(LOCAL_MODULE)
+$(cts_package_xml_args): PRIVATE_MANIFEST := $(LOCAL_PATH)/AndroidManifest.xml
+$(cts_package_xml_args): PRIVATE_TEST_LIST := $(cts_package_test_list)
+$(cts_package_xml_args): PRIVATE_XML := $(cts_package_xml)
+$(cts_package_xml_args): $(addprefix $(LOCAL_PATH)/,$(LOCAL_SRC_FILES)) $(CTS_NATIVE_TEST_SCANNER)
+	$(hide) echo Listing tests of wrapped native package $(PRIVATE_EXECUTABLE)
+	$(hide) mkdir -p $(dir $@)
+	$(hide) $(CTS_NATIVE_TEST_SCANNER_COMMAND) -s $(PRIVATE_PATH) \
+						-t $(PRIVATE_TEST_PACKAGE) > $(PRIVATE_TEST_LIST)
+	$(hide) echo '-t wrappednative -m $(PRIVATE_MANIFEST) -n $(PRIVATE_EXECUTABLE)' \
+			'-p $(PRIVATE_TEST_PACKAGE) -l $(PRIVATE_TEST_LIST) -o $(PRIVATE_XML)' > $@
+
+$(CTS_XML_BATCH_STAMP): $(cts_package_xml_args)
+
+# Written by the batch run, or on its own if it was deleted since
+$(cts_package_xml): PRIVATE_XML_ARGS := $(cts_package_xml_args)
+$(cts_package_xml): $(CTS_XML_BATCH_STAMP)
+	$(hide) test -f $@ || $(CTS_XML_GENERATOR_COMMAND) -b $(PRIVATE_XML_ARGS) -e $(CTS_EXPECTATIONS)
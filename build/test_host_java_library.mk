@@ -14,25 +14,43 @@
 
 #
 # Builds a host library and defines a rule to generate the associated test
-# package XML needed by CTS.
+# package XML and test index needed by CTS.
 #
 
 include $(BUILD_HOST_JAVA_LIBRARY)
 
 cts_library_xml := $(CTS_TESTCASES_OUT)/$(LOCAL_MODULE).xml
+cts_library_index := $(CTS_TESTCASES_OUT)/$(LOCAL_MODULE).idx
+cts_library_test_list := $(CTS_XML_INTERMEDIATES)/$(LOCAL_MODULE).list
+cts_library_xml_args := $(CTS_XML_INTERMEDIATES)/$(LOCAL_MODULE).args
 
-$(cts_library_xml): PRIVATE_PATH := $(LOCAL_PATH)/src
-$(cts_library_xml): PRIVATE_TEST_PACKAGE := $(LOCAL_CTS_TEST_PACKAGE)
-$(cts_library_xml): PRIVATE_LIBRARY := $(LOCAL_MODULE)
-$(cts_library_xml): PRIVATE_JAR_PATH := $(LOCAL_MODULE).jar
-$(cts_library_xml): $(HOST_OUT_JAVA_LIBRARIES)/$(LOCAL_MODULE).jar $(CTS_EXPECTATIONS) $(CTS_JAVA_TEST_SCANNER_DOCLET) $(CTS_JAVA_TEST_SCANNER) $(CTS_XML_GENERATOR)
-	$(hide) echo Generating test description for host library $(PRIVATE_LIBRARY)
-	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
-	$(hide) $(CTS_JAVA_TEST_SCANNER) -s $(PRIVATE_PATH) \
-						-d $(CTS_JAVA_TEST_SCANNER_DOCLET) | \
-			$(CTS_XML_GENERATOR) -t hostSideOnly \
-						-j $(PRIVATE_JAR_PATH) \
-						-n $(PRIVATE_LIBRARY) \
-						-p $(PRIVATE_TEST_PACKAGE) \
-						-e $(CTS_EXPECTATIONS) \
-						-o $@
+# Lists the tests of the library, and writes the arguments of the XML generator
+# for it. The XML and the test index are written by the batch run of
+# $(CTS_XML_BATCH_STAMP).
+$(cts_library_xml_args): PRIVATE_PATH := $(LOCAL_PATH)/src
+$(cts_library_xml_args): PRIVATE_TEST_PACKAGE := $(LOCAL_CTS_TEST_PACKAGE)
+$(cts_library_xml_args): PRIVATE_LIBRARY := $(LOCAL_MODULE)
+$(cts_library_xml_args): PRIVATE_JAR_PATH := $(LOCAL_MODULE).jar
+$(cts_library_xml_args): PRIVATE_JAR := $(HOST_OUT_JAVA_LIBRARIES)/$(LOCAL_MODULE).jar
+$(cts_library_xml_args): PRIVATE_CLASS_PATH := $(call normalize-path-list, \
+		$(addprefix $(HOST_OUT_JAVA_LIBRARIES)/,$(addsuffix .jar,$(LOCAL_JAVA_LIBRARIES))))
+$(cts_library_xml_args): PRIVATE_TEST_LIST := $(cts_library_test_list)
+$(cts_library_xml_args): PRIVATE_XML := $(cts_library_xml)
+$(cts_library_xml_args): $(HOST_OUT_JAVA_LIBRARIES)/$(LOCAL_MODULE).jar $(CTS_JAVA_TEST_SCANNER_DOCLET) $(CTS_JAVA_TEST_SCANNER)
+	$(hide) echo Listing tests of host library $(PRIVATE_LIBRARY)
+	$(hide) mkdir -p $(dir $@)
+	$(hide) $(CTS_JAVA_TEST_SCANNER_COMMAND) -s $(PRIVATE_PATH) \
+						-d $(CTS_JAVA_TEST_SCANNER_DOCLET) > $(PRIVATE_TEST_LIST)
+	$(hide) echo '-t hostSideOnly -j $(PRIVATE_JAR_PATH) -n $(PRIVATE_LIBRARY)' \
+			'-p $(PRIVATE_TEST_PACKAGE) -x $(PRIVATE_JAR) -c "$(PRIVATE_CLASS_PATH)"' \
+			'-l $(PRIVATE_TEST_LIST) -o $(PRIVATE_XML)' > $@
+
+$(CTS_XML_BATCH_STAMP): $(cts_library_xml_args)
+
+# Written by the batch run, or on its own if it was deleted since
+$(cts_library_xml): PRIVATE_XML_ARGS := $(cts_library_xml_args)
+$(cts_library_xml): $(CTS_XML_BATCH_STAMP)
+	$(hide) test -f $@ || $(CTS_XML_GENERATOR_COMMAND) -b $(PRIVATE_XML_ARGS) -e $(CTS_EXPECTATIONS)
+
+# the index is written together with the XML
+$(cts_library_index): $(cts_library_xml)
@@ -27,34 +27,42 @@ include $(BUILD_PACKAGE)
 
 cts_package_apk := $(CTS_TESTCASES_OUT)/$(LOCAL_PACKAGE_NAME).apk
 cts_package_xml := $(CTS_TESTCASES_OUT)/$(LOCAL_PACKAGE_NAME).xml
+cts_package_test_list := $(CTS_XML_INTERMEDIATES)/$(LOCAL_PACKAGE_NAME).list
+cts_package_xml_args := $(CTS_XML_INTERMEDIATES)/$(LOCAL_PACKAGE_NAME).args
 
 $(cts_package_apk): PRIVATE_PACKAGE := $(LOCAL_PACKAGE_NAME)
 $(cts_package_apk): $(call intermediates-dir-for,APPS,$(LOCAL_PACKAGE_NAME))/package.apk | $(ACP)
 	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
 	$(hide) $(ACP) -fp $(call intermediates-dir-for,APPS,$(PRIVATE_PACKAGE))/package.apk $@
 
-$(cts_package_xml): PRIVATE_PATH := $(LOCAL_PATH)
-$(cts_package_xml): PRIVATE_INSTRUMENTATION := $(LOCAL_INSTRUMENTATION_FOR)
-$(cts_package_xml): PRIVATE_PACKAGE := $(LOCAL_PACKAGE_NAME)
+# Lists the tests of the package, and writes the arguments of the XML generator
+# for it. The XML itself is written by the batch run of $(CTS_XML_BATCH_STAMP).
+$(cts_package_xml_args): PRIVATE_PATH := $(LOCAL_PATH)
+$(cts_package_xml_args): PRIVATE_INSTRUMENTATION := $(LOCAL_INSTRUMENTATION_FOR)
+$(cts_package_xml_args): PRIVATE_PACKAGE := $(LOCAL_PACKAGE_NAME)
 ifneq ($(filter cts/suite/cts/%, $(LOCAL_PATH)),) # CTS
 PRIVATE_CTS_TEST_PACKAGE_NANE_ := com.android.cts.$(notdir $(LOCAL_PATH))
 else # CTS
 PRIVATE_CTS_TEST_PACKAGE_NANE_ := android.$(notdir $(LOCAL_PATH))
 endif # CTS
-$(cts_package_xml): PRIVATE_TEST_PACKAGE := $(PRIVATE_CTS_TEST_PACKAGE_NANE_)
-$(cts_package_xml): PRIVATE_MANIFEST := $(LOCAL_PATH)/AndroidManifest.xml
-$(cts_package_xml): PRIVATE_TEST_TYPE := $(if $(LOCAL_CTS_TEST_RUNNER),$(LOCAL_CTS_TEST_RUNNER),'')
-$(cts_package_xml): $(call intermediates-dir-for,APPS,$(LOCAL_PACKAGE_NAME))/package.apk $(CTS_EXPECTATIONS) $(CTS_JAVA_TEST_SCANNER_DOCLET) $(CTS_JAVA_TEST_SCANNER) $(CTS_XML_GENERATOR)
-	$(hide) echo Generating test description for java package $(PRIVATE_PACKAGE)
-	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
-	$(hide) $(CTS_JAVA_TEST_SCANNER) \
+$(cts_package_xml_args): PRIVATE_TEST_PACKAGE := $(PRIVATE_CTS_TEST_PACKAGE_NANE_)
+$(cts_package_xml_args): PRIVATE_MANIFEST := $(LOCAL_PATH)/AndroidManifest.xml
+$(cts_package_xml_args): PRIVATE_TEST_TYPE := $(LOCAL_CTS_TEST_RUNNER)
+$(cts_package_xml_args): PRIVATE_TEST_LIST := $(cts_package_test_list)
+$(cts_package_xml_args): PRIVATE_XML := $(cts_package_xml)
+$(cts_package_xml_args): $(call intermediates-dir-for,APPS,$(LOCAL_PACKAGE_NAME))/package.apk $(CTS_JAVA_TEST_SCANNER_DOCLET) $(CTS_JAVA_TEST_SCANNER)
+	$(hide) echo Listing tests of java package $(PRIVATE_PACKAGE)
+	$(hide) mkdir -p $(dir $@)
+	$(hide) $(CTS_JAVA_TEST_SCANNER_COMMAND) \
 						-s $(PRIVATE_PATH) \
-						-d $(CTS_JAVA_TEST_SCANNER_DOCLET) | \
-			$(CTS_XML_GENERATOR) \
-						-t $(PRIVATE_TEST_TYPE) \
-						-m $(PRIVATE_MANIFEST) \
-						-i "$(PRIVATE_INSTRUMENTATION)" \
-						-n $(PRIVATE_PACKAGE) \
-						-p $(PRIVATE_TEST_PACKAGE) \
-						-e $(CTS_EXPECTATIONS) \
-						-o $@
+						-d $(CTS_JAVA_TEST_SCANNER_DOCLET) > $(PRIVATE_TEST_LIST)
+	$(hide) echo '-t "$(PRIVATE_TEST_TYPE)" -m $(PRIVATE_MANIFEST)' \
+			'-i "$(PRIVATE_INSTRUMENTATION)" -n $(PRIVATE_PACKAGE)' \
+			'-p $(PRIVATE_TEST_PACKAGE) -l $(PRIVATE_TEST_LIST) -o $(PRIVATE_XML)' > $@
+
+$(CTS_XML_BATCH_STAMP): $(cts_package_xml_args)
+
+# Written by the batch run, or on its own if it was deleted since
+$(cts_package_xml): PRIVATE_XML_ARGS := $(cts_package_xml_args)
+$(cts_package_xml): $(CTS_XML_BATCH_STAMP)
+	$(hide) test -f $@ || $(CTS_XML_GENERATOR_COMMAND) -b $(PRIVATE_XML_ARGS) -e $(CTS_EXPECTATIONS)
@@ -23,29 +23,36 @@ include $(BUILD_JAVA_LIBRARY)
 
 cts_library_xml := $(CTS_TESTCASES_OUT)/$(LOCAL_MODULE).xml 
 cts_library_jar := $(CTS_TESTCASES_OUT)/$(LOCAL_MODULE).jar
+cts_library_test_list := $(CTS_XML_INTERMEDIATES)/$(LOCAL_MODULE).list
+cts_library_xml_args := $(CTS_XML_INTERMEDIATES)/$(LOCAL_MODULE).args
 
 $(cts_library_jar): PRIVATE_MODULE := $(LOCAL_MODULE)
 $(cts_library_jar): $(call intermediates-dir-for,JAVA_LIBRARIES,$(LOCAL_MODULE))/javalib.jar | $(ACP)
 	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
 	$(hide) $(ACP) -fp $(call intermediates-dir-for,JAVA_LIBRARIES,$(PRIVATE_MODULE))/javalib.jar $@
 
-$(cts_library_xml): PRIVATE_PATH := $(LOCAL_PATH)/src
-$(cts_library_xml): PRIVATE_TEST_APP_PACKAGE := $(LOCAL_CTS_TEST_APP_PACKAGE)
-$(cts_library_xml): PRIVATE_TEST_PACKAGE := $(LOCAL_CTS_TEST_PACKAGE)
-$(cts_library_xml): PRIVATE_TEST_APK := $(LOCAL_CTS_TEST_APK)
-$(cts_library_xml): PRIVATE_LIBRARY := $(LOCAL_MODULE)
-$(cts_library_xml): PRIVATE_JAR_PATH := $(LOCAL_MODULE).jar
-$(cts_library_xml): $(call intermediates-dir-for,JAVA_LIBRARIES,$(LOCAL_MODULE))/javalib.jar $(CTS_EXPECTATIONS) $(CTS_JAVA_TEST_SCANNER_DOCLET) $(CTS_JAVA_TEST_SCANNER) $(CTS_XML_GENERATOR)
-	$(hide) echo Generating test description for uiautomator library $(PRIVATE_LIBRARY)
-	$(hide) mkdir -p $(CTS_TESTCASES_OUT)
-	$(hide) $(CTS_JAVA_TEST_SCANNER) -s $(PRIVATE_PATH) \
-						-d $(CTS_JAVA_TEST_SCANNER_DOCLET) | \
-			$(CTS_XML_GENERATOR) -t uiAutomator \
-						-i $(PRIVATE_TEST_APK) \
-						-j $(PRIVATE_JAR_PATH) \
-						-a $(PRIVATE_TEST_PACKAGE) \
-						-n $(PRIVATE_LIBRARY) \
-						-p $(PRIVATE_TEST_PACKAGE) \
-						-r $(PRIVATE_TEST_APP_PACKAGE) \
-						-e $(CTS_EXPECTATIONS) \
-						-o $@
+# Lists the tests of the library, and writes the arguments of the XML generator
+# for it. The XML itself is written by the batch run of $(CTS_XML_BATCH_STAMP).
+$(cts_library_xml_args): PRIVATE_PATH := $(LOCAL_PATH)/src
+$(cts_library_xml_args): PRIVATE_TEST_APP_PACKAGE := $(LOCAL_CTS_TEST_APP_PACKAGE)
+$(cts_library_xml_args): PRIVATE_TEST_PACKAGE := $(LOCAL_CTS_TEST_PACKAGE)
+$(cts_library_xml_args): PRIVATE_TEST_APK := $(LOCAL_CTS_TEST_APK)
+$(cts_library_xml_args): PRIVATE_LIBRARY := $(LOCAL_MODULE)
+$(cts_library_xml_args): PRIVATE_JAR_PATH := $(LOCAL_MODULE).jar
+$(cts_library_xml_args): PRIVATE_TEST_LIST := $(cts_library_test_list)
+$(cts_library_xml_args): PRIVATE_XML := $(cts_library_xml)
+$(cts_library_xml_args): $(call intermediates-dir-for,JAVA_LIBRARIES,$(LOCAL_MODULE))/javalib.jar $(CTS_JAVA_TEST_SCANNER_DOCLET) $(CTS_JAVA_TEST_SCANNER)
+	$(hide) echo Listing tests of uiautomator library $(PRIVATE_LIBRARY)
+	$(hide) mkdir -p $(dir $@)
+	$(hide) $(CTS_JAVA_TEST_SCANNER_COMMAND) -s $(PRIVATE_PATH) \
+						-d $(CTS_JAVA_TEST_SCANNER_DOCLET) > $(PRIVATE_TEST_LIST)
+	$(hide) echo '-t uiAutomator -i $(PRIVATE_TEST_APK) -j $(PRIVATE_JAR_PATH)' \
+			'-a $(PRIVATE_TEST_PACKAGE) -n $(PRIVATE_LIBRARY) -p $(PRIVATE_TEST_PACKAGE)' \
+			'-r $(PRIVATE_TEST_APP_PACKAGE) -l $(PRIVATE_TEST_LIST) -o $(PRIVATE_XML)' > $@
+
+$(CTS_XML_BATCH_STAMP): $(cts_library_xml_args)
+
+# Written by the batch run, or on its own if it was deleted since
+$(cts_library_xml): PRIVATE_XML_ARGS := $(cts_library_xml_args)
+$(cts_library_xml): $(CTS_XML_BATCH_STAMP)
+	$(hide) test -f $@ || $(CTS_XML_GENERATOR_COMMAND) -b $(PRIVATE_XML_ARGS) -e $(CTS_EXPECTATIONS)
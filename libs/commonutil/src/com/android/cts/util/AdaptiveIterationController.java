@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.util.Arrays;
+
+/**
+ * Decides how long a frame based benchmark should run.
+ * <p/>
+ * Frames are rendered in batches. The benchmark asks for the number of frames of the next batch
+ * with {@link #getFramesForNextBatch()}, renders them, and passes the time taken to
+ * {@link #addBatch(int, double)}. The mean frame time of each batch is a sample. Batches are run
+ * until {@link #isDone()}: either the 95% confidence interval of the mean frame time is narrower
+ * than the target, the maximum number of batches was run, or the time budget is spent.
+ * <p/>
+ * A batch which took less than the minimum batch duration is too short to be timed precisely:
+ * it is not counted as a sample, and the next batch has twice as many frames, up to the maximum
+ * set with {@link #setBatchGrowth(int, double)}. Without it, every batch has the initial number
+ * of frames and is counted.
+ * <p/>
+ * The controller does no timing itself, so it can be driven by synthetic timings.
+ */
+public class AdaptiveIterationController {
+
+    /**
+     * Why the benchmark should stop.
+     */
+    public enum StopReason {
+        /** the confidence interval is narrower than the target */
+        CONVERGED,
+        /** the maximum number of batches was run */
+        MAX_BATCHES,
+        /** the time budget is spent */
+        TIME_BUDGET
+    }
+
+    // two-sided 95% quantiles of the Student t distribution for 1 to 30 degrees of freedom
+    private static final double[] T_95 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+    // quantile of the normal distribution, used beyond the table
+    private static final double Z_95 = 1.960;
+
+    private final int mMinBatches;
+    private final int mMaxBatches;
+    private final double mTargetRelativeError;
+    private final double mTimeBudgetMs;
+    private int mFramesPerBatch;
+    private int mMaxFramesPerBatch;
+    private double mMinBatchDurationMs = 0.0;
+
+    private double[] mSamples;
+    private int mSampleCount = 0;
+    private int mCalibrationBatches = 0;
+    private double mMean = 0.0;
+    private double mM2 = 0.0; // sum of squared differences from the mean
+    private double mElapsedMs = 0.0;
+
+    /**
+     * @param initialFrames number of frames of the first batch, 1 or more
+     * @param minBatches number of samples needed before the benchmark can converge. It cannot
+     *        converge with less than 2.
+     * @param maxBatches number of samples after which the benchmark stops
+     * @param targetRelativeError half width of the confidence interval relative to the mean
+     *        frame time at which the benchmark converged, like 0.01 for +/- 1%
+     * @param timeBudgetMs time after which the benchmark stops, whether it converged or not
+     */
+    public AdaptiveIterationController(int initialFrames, int minBatches, int maxBatches,
+            double targetRelativeError, double timeBudgetMs) {
+        if (initialFrames < 1 || minBatches < 1 || maxBatches < minBatches) {
+            throw new IllegalArgumentException("invalid frames " + initialFrames + " or batches "
+                    + minBatches + " - " + maxBatches);
+        }
+        mFramesPerBatch = initialFrames;
+        mMaxFramesPerBatch = initialFrames;
+        mMinBatches = minBatches;
+        mMaxBatches = maxBatches;
+        mTargetRelativeError = targetRelativeError;
+        mTimeBudgetMs = timeBudgetMs;
+        mSamples = new double[maxBatches];
+    }
+
+    /**
+     * Let batches grow until they take at least minBatchDurationMs.
+     *
+     * @param maxFrames biggest number of frames per batch, batches of this size are always
+     *        counted
+     */
+    public void setBatchGrowth(int maxFrames, double minBatchDurationMs) {
+        mMaxFramesPerBatch = Math.max(maxFrames, mFramesPerBatch);
+        mMinBatchDurationMs = minBatchDurationMs;
+    }
+
+    public int getFramesForNextBatch() {
+        return mFramesPerBatch;
+    }
+
+    /**
+     * Record a batch.
+     *
+     * @param frames number of frames rendered
+     * @param durationMs time taken to render them
+     * @param overheadMs time spent outside of rendering, like setting up, only counted against
+     *        the time budget
+     */
+    public void addBatch(int frames, double durationMs, double overheadMs) {
+        mElapsedMs += durationMs + overheadMs;
+        if (durationMs < mMinBatchDurationMs && frames < mMaxFramesPerBatch) {
+            mCalibrationBatches++;
+            mFramesPerBatch = (int) Math.min((long) frames * 2, mMaxFramesPerBatch);
+            return;
+        }
+        if (mSampleCount == mSamples.length) {
+            return;
+        }
+        double frameTime = durationMs / frames;
+        mSamples[mSampleCount++] = frameTime;
+        double delta = frameTime - mMean;
+        mMean += delta / mSampleCount;
+        mM2 += delta * (frameTime - mMean);
+    }
+
+    /**
+     * Record a batch without overhead.
+     */
+    public void addBatch(int frames, double durationMs) {
+        addBatch(frames, durationMs, 0.0);
+    }
+
+    public boolean isDone() {
+        return getStopReason() != null;
+    }
+
+    /**
+     * @return why the benchmark should stop, or null if it should go on. Convergence is checked
+     *         first.
+     */
+    public StopReason getStopReason() {
+        if (mSampleCount >= mMinBatches && getRelativeError() <= mTargetRelativeError) {
+            return StopReason.CONVERGED;
+        }
+        if (mSampleCount >= mMaxBatches) {
+            return StopReason.MAX_BATCHES;
+        }
+        if (mElapsedMs >= mTimeBudgetMs) {
+            return StopReason.TIME_BUDGET;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of batches counted as samples
+     */
+    public int getBatchCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return number of batches too short to be counted
+     */
+    public int getCalibrationBatchCount() {
+        return mCalibrationBatches;
+    }
+
+    /**
+     * @return time spent so far, including the batches not counted
+     */
+    public double getElapsedMs() {
+        return mElapsedMs;
+    }
+
+    /**
+     * @return mean frame time of each counted batch in ms
+     */
+    public double[] getBatchFrameTimes() {
+        return Arrays.copyOf(mSamples, mSampleCount);
+    }
+
+    /**
+     * @return mean frame time over the counted batches in ms, NaN if there is none
+     */
+    public double getMeanFrameTime() {
+        return mSampleCount == 0 ? Double.NaN : mMean;
+    }
+
+    /**
+     * @return half width of the 95% confidence interval of the mean frame time in ms,
+     *         infinite with less than 2 batches
+     */
+    public double getConfidenceHalfWidth() {
+        if (mSampleCount < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int degrees = mSampleCount - 1;
+        double t = (degrees <= T_95.length) ? T_95[degrees - 1] : Z_95;
+        return t * Math.sqrt(mM2 / degrees / mSampleCount);
+    }
+
+    /**
+     * @return {@link #getConfidenceHalfWidth()} relative to the mean frame time
+     */
+    public double getRelativeError() {
+        if (mSampleCount < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return getConfidenceHalfWidth() / mMean;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a class file needed to find tests, read from its bytes without
+ * loading the class: the class and super class names, access flags, and the
+ * methods with their runtime visible annotations and the int values of those.
+ */
+public class ClassFileInfo {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String INNER_CLASSES = "InnerClasses";
+
+    public static class MethodInfo {
+        public final int mAccess;
+        public final String mName;
+        public final String mDescriptor;
+        /** binary names of the annotation types, like dalvik.annotation.KnownFailure */
+        public final List<String> mAnnotations;
+        /** int elements of the annotations, keyed by "type#element" */
+        private final Map<String, Integer> mIntValues;
+
+        MethodInfo(int access, String name, String descriptor, List<String> annotations,
+                Map<String, Integer> intValues) {
+            mAccess = access;
+            mName = name;
+            mDescriptor = descriptor;
+            mAnnotations = annotations;
+            mIntValues = intValues;
+        }
+
+        public boolean isPublic() {
+            return (mAccess & ACC_PUBLIC) != 0;
+        }
+
+        /**
+         * Returns the value of an int element given explicitly in an annotation of
+         * this method, like {@code minutes} of {@link TimeoutReq}, or null if the
+         * method has no such annotation or the element has its default value.
+         */
+        public Integer getIntValue(String annotation, String element) {
+            return mIntValues.get(annotation + "#" + element);
+        }
+    }
+
+    public final int mAccess;
+    /** binary name like android.app.cts.FooTest */
+    public final String mName;
+    /** binary name of the super class, or null for java.lang.Object */
+    public final String mSuperName;
+    public final List<MethodInfo> mMethods;
+
+    private ClassFileInfo(int access, String name, String superName, List<MethodInfo> methods) {
+        mAccess = access;
+        mName = name;
+        mSuperName = superName;
+        mMethods = Collections.unmodifiableList(methods);
+    }
+
+    public boolean isPublic() {
+        return (mAccess & ACC_PUBLIC) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (mAccess & (ACC_ABSTRACT | ACC_INTERFACE)) != 0;
+    }
+
+    /**
+     * Returns the first method with the given name and descriptor, or null.
+     */
+    public MethodInfo getMethod(String name, String descriptor) {
+        for (MethodInfo method : mMethods) {
+            if (method.mName.equals(name) && method.mDescriptor.equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a class file.
+     *
+     * @throws IOException if the bytes are not a valid class file
+     */
+    public static ClassFileInfo parse(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantCount = in.readUnsignedShort();
+        String[] utf8 = new String[constantCount];
+        int[] classNameIndex = new int[constantCount];
+        int[] ints = new int[constantCount];
+        for (int i = 1; i < constantCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndex[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                    ints[i] = in.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    i++; // takes two entries
+                    break;
+                default:
+                    throw new IOException("unknown constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String name = className(utf8, classNameIndex, in.readUnsignedShort());
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : className(utf8, classNameIndex, superIndex);
+        in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+
+        int methodCount = in.readUnsignedShort();
+        List<MethodInfo> methods = new ArrayList<MethodInfo>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            List<String> annotations = Collections.emptyList();
+            Map<String, Integer> intValues = Collections.emptyMap();
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                String attributeName = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName)) {
+                    annotations = new ArrayList<String>();
+                    intValues = new HashMap<String, Integer>();
+                    readAnnotations(in, utf8, ints, annotations, intValues);
+                } else {
+                    in.skipBytes(length);
+                }
+            }
+            methods.add(new MethodInfo(methodAccess, methodName, descriptor, annotations,
+                    intValues));
+        }
+
+        // a nested class has its declared access, which reflection reports, in InnerClasses
+        int classAttributeCount = in.readUnsignedShort();
+        for (int i = 0; i < classAttributeCount; i++) {
+            String attributeName = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if (!INNER_CLASSES.equals(attributeName)) {
+                in.skipBytes(length);
+                continue;
+            }
+            int classes = in.readUnsignedShort();
+            for (int j = 0; j < classes; j++) {
+                int innerIndex = in.readUnsignedShort();
+                in.skipBytes(4); // outer class and simple name
+                int innerAccess = in.readUnsignedShort();
+                if (innerIndex != 0 && name.equals(className(utf8, classNameIndex, innerIndex))) {
+                    access = innerAccess;
+                }
+            }
+        }
+        return new ClassFileInfo(access, name, superName, methods);
+    }
+
+    private static String className(String[] utf8, int[] classNameIndex, int index) {
+        return utf8[classNameIndex[index]].replace('/', '.');
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    /**
+     * Reads the annotation types into {@code types} and their top level int
+     * elements into {@code intValues}.
+     */
+    private static void readAnnotations(DataInputStream in, String[] utf8, int[] ints,
+            List<String> types, Map<String, Integer> intValues) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String descriptor = utf8[in.readUnsignedShort()];
+            // Lfoo/Bar; -> foo.Bar
+            String type = descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+            types.add(type);
+            int pairs = in.readUnsignedShort();
+            for (int j = 0; j < pairs; j++) {
+                String element = utf8[in.readUnsignedShort()];
+                int tag = in.readUnsignedByte();
+                if (tag == 'I') {
+                    intValues.put(type + "#" + element, ints[in.readUnsignedShort()]);
+                } else {
+                    skipElementValue(in, tag);
+                }
+            }
+        }
+    }
+
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        skipElementValue(in, in.readUnsignedByte());
+    }
+
+    private static void skipElementValue(DataInputStream in, int tag) throws IOException {
+        switch (tag) {
+            case 'e':
+                in.skipBytes(4);
+                break;
+            case '@':
+                in.skipBytes(2);
+                int pairs = in.readUnsignedShort();
+                for (int i = 0; i < pairs; i++) {
+                    in.skipBytes(2);
+                    skipElementValue(in);
+                }
+                break;
+            case '[':
+                int values = in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(in);
+                }
+                break;
+            default:
+                // constants and classes: B C D F I J S Z s c
+                in.skipBytes(2);
+                break;
+        }
+    }
+}
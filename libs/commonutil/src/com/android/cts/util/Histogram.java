@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.util.Arrays;
+
+/**
+ * Streaming statistics with a log-bucketed histogram for percentiles.
+ * <p/>
+ * Values are counted into buckets whose width grows with the magnitude of the value, so that
+ * every bucket has roughly the same relative error (the HDR histogram layout). Mean and variance
+ * are tracked with Welford's algorithm, min and max are tracked exactly.
+ * <p/>
+ * {@link #record(double)} does not allocate. An instance is not thread safe: use one histogram
+ * per thread and combine them with {@link #merge(Histogram)}.
+ */
+public class Histogram {
+    /** default number of significant decimal digits kept for each value */
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+
+    private final double mLowestValue;
+    private final double mHighestValue;
+    private final int mSignificantDigits;
+    private final int mSubBucketBits;
+    private final int mSubBucketCount;
+    private final int mSubBucketHalfCount;
+    private final long[] mCounts;
+
+    private long mCount;
+    private double mMean;
+    private double mM2; // sum of squared differences from the mean
+    private double mMin;
+    private double mMax;
+
+    /**
+     * Create a histogram keeping {@link #DEFAULT_SIGNIFICANT_DIGITS} digits of precision.
+     *
+     * @param lowestValue smallest value which can be told apart from 0, should be bigger than 0
+     * @param highestValue biggest value with bucket precision. Bigger values are still recorded,
+     *        but are counted into the last bucket.
+     */
+    public Histogram(double lowestValue, double highestValue) {
+        this(lowestValue, highestValue, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * @param lowestValue smallest value which can be told apart from 0, should be bigger than 0
+     * @param highestValue biggest value with bucket precision
+     * @param significantDigits number of decimal digits kept for each value, from 1 to 4
+     */
+    public Histogram(double lowestValue, double highestValue, int significantDigits) {
+        if (lowestValue <= 0.0 || highestValue <= lowestValue) {
+            throw new IllegalArgumentException("invalid range " + lowestValue + " - "
+                    + highestValue);
+        }
+        if (significantDigits < 1 || significantDigits > 4) {
+            throw new IllegalArgumentException("significantDigits should be 1 to 4, not "
+                    + significantDigits);
+        }
+        mLowestValue = lowestValue;
+        mHighestValue = highestValue;
+        mSignificantDigits = significantDigits;
+        long largestSingleUnit = 2 * (long) Math.pow(10, significantDigits);
+        mSubBucketBits = 64 - Long.numberOfLeadingZeros(largestSingleUnit - 1);
+        mSubBucketCount = 1 << mSubBucketBits;
+        mSubBucketHalfCount = mSubBucketCount / 2;
+        long highestUnits = (long) Math.ceil(highestValue / lowestValue);
+        mCounts = new long[indexOf(highestUnits) + 1];
+        reset();
+    }
+
+    /**
+     * Create an empty histogram with the same layout as this one.
+     */
+    public Histogram copyEmpty() {
+        return new Histogram(mLowestValue, mHighestValue, mSignificantDigits);
+    }
+
+    /**
+     * Forget all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mMean = 0.0;
+        mM2 = 0.0;
+        mMin = Double.NaN;
+        mMax = Double.NaN;
+    }
+
+    /**
+     * Record a single value. Negative values are counted into the first bucket.
+     */
+    public void record(double value) {
+        mCounts[bucketOf(value)]++;
+        if (mCount == 0) {
+            mMin = value;
+            mMax = value;
+        } else if (value < mMin) {
+            mMin = value;
+        } else if (value > mMax) {
+            mMax = value;
+        }
+        mCount++;
+        double delta = value - mMean;
+        mMean += delta / mCount;
+        mM2 += delta * (value - mMean);
+    }
+
+    /**
+     * Record all values of the given array
+     */
+    public void recordAll(double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            record(values[i]);
+        }
+    }
+
+    /**
+     * Add all values recorded in other to this histogram.
+     * Both histograms should have been created with the same range and precision.
+     */
+    public void merge(Histogram other) {
+        if (other.mLowestValue != mLowestValue || other.mHighestValue != mHighestValue
+                || other.mSignificantDigits != mSignificantDigits) {
+            throw new IllegalArgumentException("cannot merge histograms with different layout");
+        }
+        if (other.mCount == 0) {
+            return;
+        }
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        if (mCount == 0) {
+            mMin = other.mMin;
+            mMax = other.mMax;
+        } else {
+            mMin = Math.min(mMin, other.mMin);
+            mMax = Math.max(mMax, other.mMax);
+        }
+        // parallel form of Welford's algorithm (Chan et al.)
+        long total = mCount + other.mCount;
+        double delta = other.mMean - mMean;
+        mMean += delta * other.mCount / total;
+        mM2 += other.mM2 + delta * delta * ((double) mCount * other.mCount / total);
+        mCount = total;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return average of the recorded values, or NaN if nothing was recorded
+     */
+    public double getMean() {
+        return mCount == 0 ? Double.NaN : mMean;
+    }
+
+    /**
+     * @return population variance of the recorded values, same as used by {@link Stat}
+     */
+    public double getVariance() {
+        return mCount == 0 ? Double.NaN : mM2 / mCount;
+    }
+
+    public double getStddev() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return mMin;
+    }
+
+    public double getMax() {
+        return mMax;
+    }
+
+    /**
+     * Return the value below which the given percentage of recorded values falls.
+     * The result is accurate within the precision of the bucket it falls into, and is always
+     * within [min, max]. The 0th and 100th percentiles are the exact min and max.
+     *
+     * @param percentile from 0.0 to 100.0
+     * @return the percentile value, or NaN if nothing was recorded
+     */
+    public double getPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("percentile should be 0 to 100, not " + percentile);
+        }
+        if (mCount == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * mCount);
+        if (rank <= 1) {
+            return mMin;
+        }
+        if (rank >= mCount) {
+            return mMax;
+        }
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                double mid = (lowerUnitsOf(i) + upperUnitsOf(i)) * 0.5 * mLowestValue;
+                return Math.max(mMin, Math.min(mMax, mid));
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * Array version of {@link #getPercentile(double)}
+     */
+    public double[] getPercentiles(double[] percentiles) {
+        double[] result = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            result[i] = getPercentile(percentiles[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of recorded values smaller than or equal to the given value, with bucket
+     *         precision
+     */
+    public long getCountAtOrBelow(double value) {
+        int last = bucketOf(value);
+        long count = 0;
+        for (int i = 0; i <= last; i++) {
+            count += mCounts[i];
+        }
+        return count;
+    }
+
+    /**
+     * Summarize the recorded values in the same form as {@link Stat#getStat(double[])}
+     */
+    public Stat.StatResult getStatResult() {
+        return new Stat.StatResult(getMean(), mMin, mMax, getStddev(), (int) mCount);
+    }
+
+    private int bucketOf(double value) {
+        if (!(value > 0.0)) {
+            return 0;
+        }
+        double units = value / mLowestValue;
+        int index = (units >= Long.MAX_VALUE) ? mCounts.length - 1 : indexOf((long) units);
+        return index < mCounts.length ? index : mCounts.length - 1;
+    }
+
+    private int indexOf(long units) {
+        if (units < mSubBucketCount) {
+            return (int) units;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(units)) - (mSubBucketBits - 1);
+        int subBucket = (int) (units >>> shift);
+        return mSubBucketCount + (shift - 1) * mSubBucketHalfCount
+                + (subBucket - mSubBucketHalfCount);
+    }
+
+    private long lowerUnitsOf(int index) {
+        if (index < mSubBucketCount) {
+            return index;
+        }
+        int shift = (index - mSubBucketCount) / mSubBucketHalfCount + 1;
+        long subBucket = (index - mSubBucketCount) % mSubBucketHalfCount + mSubBucketHalfCount;
+        return subBucket << shift;
+    }
+
+    private long upperUnitsOf(int index) {
+        if (index < mSubBucketCount) {
+            return index + 1;
+        }
+        int shift = (index - mSubBucketCount) / mSubBucketHalfCount + 1;
+        return lowerUnitsOf(index) + (1L << shift);
+    }
+}
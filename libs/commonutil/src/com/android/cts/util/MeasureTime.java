@@ -22,7 +22,7 @@ public class MeasureTime {
      * measure time taken for each run for given count
      * @param count
      * @param run
-     * @return array of time taken in each run in msec.
+     * @return array of time taken in each run in msec, measured with System.nanoTime().
      * @throws IOException
      */
     public static double[] measure(int count, MeasureRun run)  throws Exception {
@@ -30,10 +30,10 @@ public class MeasureTime {
 
         for (int i = 0; i < count; i++) {
             run.prepare(i);
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
             run.run(i);
-            long end =  System.currentTimeMillis();
-            result[i] = end - start;
+            long end = System.nanoTime();
+            result[i] = (end - start) / 1000000.0;
         }
         return result;
     }
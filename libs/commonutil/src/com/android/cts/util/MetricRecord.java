@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+/**
+ * A single performance metric reported through {@link ReportLog}.
+ * <p/>
+ * Used both for the summary of a test, which has one value and optionally a target, and for
+ * the detailed value arrays.
+ */
+public class MetricRecord {
+    private final String mSource;
+    private final String mMessage;
+    private final ResultType mType;
+    private final ResultUnit mUnit;
+    private final double mTarget;
+    private final double[] mValues;
+
+    /**
+     * @param source class#method:line which produced the metric, can be null for summary
+     * @param message description of the metric
+     * @param type
+     * @param unit
+     * @param target performance target, or NaN if there is no target
+     * @param values measured values. The array is not copied.
+     */
+    public MetricRecord(String source, String message, ResultType type, ResultUnit unit,
+            double target, double[] values) {
+        mSource = source;
+        mMessage = message;
+        mType = type;
+        mUnit = unit;
+        mTarget = target;
+        mValues = values;
+    }
+
+    public String getSource() {
+        return mSource;
+    }
+
+    public String getMessage() {
+        return mMessage;
+    }
+
+    public ResultType getType() {
+        return mType;
+    }
+
+    public ResultUnit getUnit() {
+        return mUnit;
+    }
+
+    public boolean hasTarget() {
+        return !Double.isNaN(mTarget);
+    }
+
+    public double getTarget() {
+        return mTarget;
+    }
+
+    public double[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * Return the first value, which is the measured value for a summary.
+     */
+    public double getValue() {
+        return mValues[0];
+    }
+}
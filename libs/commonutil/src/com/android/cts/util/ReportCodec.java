@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wire encoding of {@link ReportLog} results, shared by device, host tests and the host side
+ * result reporter.
+ * <p/>
+ * A report is encoded as compact JSON:
+ * <pre>
+ * {"s":{"m":"message","t":"higher_better","u":"ms","g":10.0,"v":[12.5]},
+ *  "d":[{"src":"class#method:line","m":"message","t":"neutral","u":"ms","v":[1.0,2.0]}]}
+ * </pre>
+ * where s is the summary, d the detailed value arrays and g the optional target.
+ * Non-finite values are written as NaN, Infinity and -Infinity.
+ */
+public class ReportCodec {
+
+    /**
+     * Decoded form of a report.
+     */
+    public static class Report {
+        /** summary of the test, can be null */
+        public MetricRecord mSummary;
+        public List<MetricRecord> mDetails = new ArrayList<MetricRecord>();
+    }
+
+    /**
+     * Encode the given summary and details.
+     *
+     * @param summary can be null
+     * @param details can be empty
+     */
+    public static String encode(MetricRecord summary, List<MetricRecord> details) {
+        int valueCount = 0;
+        for (MetricRecord record : details) {
+            valueCount += record.getValues().length;
+        }
+        // most values are printed in less than 20 chars
+        StringBuilder builder = new StringBuilder(128 + 20 * valueCount + 100 * details.size());
+        builder.append('{');
+        if (summary != null) {
+            builder.append("\"s\":");
+            appendRecord(builder, summary);
+            builder.append(',');
+        }
+        builder.append("\"d\":[");
+        boolean first = true;
+        for (MetricRecord record : details) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            appendRecord(builder, record);
+        }
+        builder.append("]}");
+        return builder.toString();
+    }
+
+    private static void appendRecord(StringBuilder builder, MetricRecord record) {
+        builder.append('{');
+        if (record.getSource() != null) {
+            builder.append("\"src\":");
+            appendString(builder, record.getSource());
+            builder.append(',');
+        }
+        builder.append("\"m\":");
+        appendString(builder, record.getMessage());
+        builder.append(",\"t\":\"").append(record.getType().getXmlString());
+        builder.append("\",\"u\":\"").append(record.getUnit().getXmlString()).append('"');
+        if (record.hasTarget()) {
+            builder.append(",\"g\":").append(record.getTarget());
+        }
+        builder.append(",\"v\":[");
+        double[] values = record.getValues();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values[i]);
+        }
+        builder.append("]}");
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * Decode a report produced by {@link #encode(MetricRecord, List)}.
+     *
+     * @throws IllegalArgumentException if the report is malformed
+     */
+    public static Report decode(String encoded) {
+        return new Decoder(encoded).readReport();
+    }
+
+    /**
+     * Single pass decoder for the fixed report layout.
+     */
+    private static class Decoder {
+        private final String mIn;
+        private int mPos = 0;
+
+        Decoder(String in) {
+            mIn = in;
+        }
+
+        Report readReport() {
+            Report report = new Report();
+            expect('{');
+            if (peek() != '}') {
+                do {
+                    String key = readString();
+                    expect(':');
+                    if (key.equals("s")) {
+                        report.mSummary = readRecord();
+                    } else if (key.equals("d")) {
+                        expect('[');
+                        if (peek() != ']') {
+                            do {
+                                report.mDetails.add(readRecord());
+                            } while (consumeIf(','));
+                        }
+                        expect(']');
+                    } else {
+                        throw error("unknown key " + key);
+                    }
+                } while (consumeIf(','));
+            }
+            expect('}');
+            return report;
+        }
+
+        private MetricRecord readRecord() {
+            String source = null;
+            String message = null;
+            ResultType type = ResultType.NEUTRAL;
+            ResultUnit unit = ResultUnit.NONE;
+            double target = Double.NaN;
+            double[] values = new double[0];
+            expect('{');
+            do {
+                String key = readString();
+                expect(':');
+                if (key.equals("src")) {
+                    source = readString();
+                } else if (key.equals("m")) {
+                    message = readString();
+                } else if (key.equals("t")) {
+                    type = ResultType.valueOf(readString().toUpperCase(Locale.US));
+                } else if (key.equals("u")) {
+                    unit = ResultUnit.valueOf(readString().toUpperCase(Locale.US));
+                } else if (key.equals("g")) {
+                    target = readNumber();
+                } else if (key.equals("v")) {
+                    values = readNumbers();
+                } else {
+                    throw error("unknown key " + key);
+                }
+            } while (consumeIf(','));
+            expect('}');
+            return new MetricRecord(source, message, type, unit, target, values);
+        }
+
+        private double[] readNumbers() {
+            expect('[');
+            double[] values = new double[16];
+            int count = 0;
+            if (peek() != ']') {
+                do {
+                    if (count == values.length) {
+                        double[] grown = new double[count * 2];
+                        System.arraycopy(values, 0, grown, 0, count);
+                        values = grown;
+                    }
+                    values[count++] = readNumber();
+                } while (consumeIf(','));
+            }
+            expect(']');
+            double[] result = new double[count];
+            System.arraycopy(values, 0, result, 0, count);
+            return result;
+        }
+
+        private double readNumber() {
+            int start = mPos;
+            while (mPos < mIn.length()) {
+                char c = mIn.charAt(mPos);
+                if (c == ',' || c == ']' || c == '}') {
+                    break;
+                }
+                mPos++;
+            }
+            try {
+                return Double.parseDouble(mIn.substring(start, mPos));
+            } catch (NumberFormatException e) {
+                throw error("invalid number");
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder builder = null;
+            int start = mPos;
+            while (mPos < mIn.length()) {
+                char c = mIn.charAt(mPos);
+                if (c == '"') {
+                    String result;
+                    if (builder == null) {
+                        result = mIn.substring(start, mPos);
+                    } else {
+                        result = builder.append(mIn, start, mPos).toString();
+                    }
+                    mPos++;
+                    return result;
+                } else if (c == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder();
+                    }
+                    builder.append(mIn, start, mPos);
+                    if (mPos + 1 >= mIn.length()) {
+                        break;
+                    }
+                    char escaped = mIn.charAt(mPos + 1);
+                    if (escaped == 'u') {
+                        if (mPos + 6 > mIn.length()) {
+                            break;
+                        }
+                        builder.append((char) Integer.parseInt(mIn.substring(mPos + 2, mPos + 6),
+                                16));
+                        mPos += 6;
+                    } else {
+                        builder.append(escaped);
+                        mPos += 2;
+                    }
+                    start = mPos;
+                } else {
+                    mPos++;
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private char peek() {
+            if (mPos >= mIn.length()) {
+                throw error("unexpected end");
+            }
+            return mIn.charAt(mPos);
+        }
+
+        private boolean consumeIf(char c) {
+            if (mPos < mIn.length() && mIn.charAt(mPos) == c) {
+                mPos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consumeIf(c)) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + mPos + " in report");
+        }
+    }
+}
@@ -16,7 +16,7 @@
 
 package com.android.cts.util;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.Assert;
@@ -26,18 +26,19 @@ import junit.framework.Assert;
  * Utility class to print performance measurement result back to host.
  * For now, throws know exception with message.
  *
- * Format:
- * Message = summary log SUMMARY_SEPARATOR [LOG_SEPARATOR log]*
- * summary = message|target|unit|type|value, target can be " " if there is no target set.
- * log for array = classMethodName:line_number|message|unit|type|space seSummaryparated values
+ * Results are kept as typed {@link MetricRecord}s and are passed to host in the format
+ * defined by {@link ReportCodec}.
  */
 public class ReportLog {
-    private static final String LOG_SEPARATOR = "+++";
-    private static final String SUMMARY_SEPARATOR = "++++";
     private static final String LOG_ELEM_SEPARATOR = "|";
+    /**
+     * arrays longer than this are logged as count, min, average and max only.
+     * The report passed to host still has every value.
+     */
+    private static final int MAX_LOGGED_VALUES = 32;
 
-    private List<String> mMessages = new LinkedList<String> ();
-    private String mSummary = null;
+    private List<MetricRecord> mMessages = new ArrayList<MetricRecord>();
+    private MetricRecord mSummary = null;
     protected static int mDepth = 3;
 
     /**
@@ -59,18 +60,12 @@ public class ReportLog {
 
     private void doPrintArray(String message, double[] values, ResultType type,
     ResultUnit unit) {
-        StringBuilder builder = new StringBuilder();
         // note mDepth + 1 as this function will be called by printVaue or printArray
         // and we need caller of printValue / printArray
-        builder.append(getClassMethodNames(mDepth + 1, true) + LOG_ELEM_SEPARATOR + message +
-                LOG_ELEM_SEPARATOR + type.getXmlString() + LOG_ELEM_SEPARATOR +
-                unit.getXmlString() + LOG_ELEM_SEPARATOR);
-        for (double v : values) {
-            builder.append(v);
-            builder.append(" ");
-        }
-        mMessages.add(builder.toString());
-        printLog(builder.toString());
+        MetricRecord record = new MetricRecord(getClassMethodNames(mDepth + 1, true), message,
+                type, unit, Double.NaN, values.clone());
+        mMessages.add(record);
+        printLog(formatForLog(record));
     }
 
     /**
@@ -87,8 +82,8 @@ public class ReportLog {
      */
     public void printSummaryWithTarget(String message, double target, double value,
             ResultType type, ResultUnit unit) {
-        mSummary = message + LOG_ELEM_SEPARATOR + target + LOG_ELEM_SEPARATOR + type.getXmlString()
-                + LOG_ELEM_SEPARATOR + unit.getXmlString() + LOG_ELEM_SEPARATOR + value;
+        double[] vals = { value };
+        mSummary = new MetricRecord(null, message, type, unit, target, vals);
         boolean resultOk = true;
         if (type == ResultType.HIGHER_BETTER) {
             resultOk = value >= target;
@@ -111,8 +106,8 @@ public class ReportLog {
      */
     public void printSummary(String message, double value, ResultType type,
             ResultUnit unit) {
-        mSummary = message + LOG_ELEM_SEPARATOR + " " + LOG_ELEM_SEPARATOR + type.getXmlString() +
-                LOG_ELEM_SEPARATOR + unit.getXmlString() + LOG_ELEM_SEPARATOR + value;
+        double[] vals = { value };
+        mSummary = new MetricRecord(null, message, type, unit, Double.NaN, vals);
     }
 
     protected String generateReport() {
@@ -120,19 +115,46 @@ public class ReportLog {
             // just return empty string
             return "";
         }
-        StringBuilder builder = new StringBuilder();
-        builder.append(mSummary);
-        builder.append(SUMMARY_SEPARATOR);
-        for (String entry : mMessages) {
-            builder.append(entry);
-            builder.append(LOG_SEPARATOR);
-        }
-        // delete the last separator
-        if (builder.length() >= LOG_SEPARATOR.length()) {
-            builder.delete(builder.length() - LOG_SEPARATOR.length(), builder.length());
+        String report = ReportCodec.encode(mSummary, mMessages);
+        mSummary = null;
+        mMessages.clear();
+        return report;
+    }
+
+    /**
+     * Return the results recorded so far without encoding them, and clear them.
+     * @return recorded results or null if nothing was recorded
+     */
+    protected ReportCodec.Report takeReport() {
+        if ((mSummary == null) && mMessages.isEmpty()) {
+            return null;
         }
+        ReportCodec.Report report = new ReportCodec.Report();
+        report.mSummary = mSummary;
+        report.mDetails.addAll(mMessages);
         mSummary = null;
         mMessages.clear();
+        return report;
+    }
+
+    private static String formatForLog(MetricRecord record) {
+        double[] values = record.getValues();
+        StringBuilder builder = new StringBuilder();
+        builder.append(record.getSource()).append(LOG_ELEM_SEPARATOR)
+                .append(record.getMessage()).append(LOG_ELEM_SEPARATOR)
+                .append(record.getType().getXmlString()).append(LOG_ELEM_SEPARATOR)
+                .append(record.getUnit().getXmlString()).append(LOG_ELEM_SEPARATOR);
+        if (values.length <= MAX_LOGGED_VALUES) {
+            for (double v : values) {
+                builder.append(v);
+                builder.append(" ");
+            }
+        } else {
+            builder.append("count ").append(values.length)
+                    .append(" min ").append(Stat.getMin(values))
+                    .append(" avg ").append(Stat.getAverage(values))
+                    .append(" max ").append(Stat.getMax(values));
+        }
         return builder.toString();
     }
 
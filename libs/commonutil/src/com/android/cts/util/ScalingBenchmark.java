@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the same workload on 1..N threads at once to measure multi-core scaling.
+ * <p/>
+ * All threads of a step start together. The aggregate throughput of a step is the total work
+ * done divided by the time until the last thread finished. Scaling efficiency is the aggregate
+ * throughput divided by (number of threads x single thread throughput), 1.0 being perfect.
+ */
+public class ScalingBenchmark {
+
+    /**
+     * Work run by each thread.
+     */
+    public interface Workload {
+        /**
+         * Called on the worker thread before the timed run. Not included in the measurement.
+         * Can be used to pin the thread to a CPU.
+         */
+        void prepare(int threadIndex, int numberThreads) throws Exception;
+
+        /**
+         * Do the work. Should be long enough to dominate thread start-up, like 100ms or more.
+         * @return amount of work done, like bytes copied
+         */
+        double run(int threadIndex) throws Exception;
+    }
+
+    /**
+     * Result for one thread count
+     */
+    public static class StepResult {
+        public int mNumberThreads;
+        /** time until the last thread finished in ms */
+        public double mWallTimeMs;
+        /** total work per second over all threads */
+        public double mThroughput;
+        /** time taken by each thread in ms */
+        public double[] mThreadTimesMs;
+        public double mEfficiency;
+    }
+
+    /**
+     * Run the workload with 1, 2, .. maxThreads threads.
+     * @param maxThreads typically Runtime.getRuntime().availableProcessors()
+     * @return result for each thread count, index 0 is for a single thread
+     */
+    public static StepResult[] sweep(Workload workload, int maxThreads) throws Exception {
+        StepResult[] results = new StepResult[maxThreads];
+        for (int n = 1; n <= maxThreads; n++) {
+            results[n - 1] = runStep(workload, n);
+            results[n - 1].mEfficiency =
+                    results[n - 1].mThroughput / (n * results[0].mThroughput);
+        }
+        return results;
+    }
+
+    /**
+     * Run the workload on the given number of threads at once.
+     * <p/>
+     * If prepare() or run() fails on any thread, including with an {@link Error} like
+     * {@link OutOfMemoryError}, the other threads still finish the step, and the first failure
+     * by thread index is thrown once all of them are done.
+     */
+    public static StepResult runStep(final Workload workload, final int numberThreads)
+            throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(numberThreads);
+        final double[] work = new double[numberThreads];
+        final long[] startNs = new long[numberThreads];
+        final long[] endNs = new long[numberThreads];
+        final Throwable[] errors = new Throwable[numberThreads];
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        Thread[] threads = new Thread[numberThreads];
+        for (int i = 0; i < numberThreads; i++) {
+            final int index = i;
+            threads[i] = new Thread("ScalingBenchmark-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        workload.prepare(index, numberThreads);
+                    } catch (Throwable t) {
+                        errors[index] = t;
+                        failed.set(true);
+                    }
+                    try {
+                        // wait even after a failure, so that the other threads are released
+                        barrier.await();
+                        if (failed.get()) {
+                            return;
+                        }
+                        startNs[index] = System.nanoTime();
+                        work[index] = workload.run(index);
+                        endNs[index] = System.nanoTime();
+                    } catch (Throwable t) {
+                        errors[index] = t;
+                        failed.set(true);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable t : errors) {
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new RuntimeException(t);
+            }
+        }
+        StepResult result = new StepResult();
+        result.mNumberThreads = numberThreads;
+        result.mThreadTimesMs = new double[numberThreads];
+        long firstStart = Long.MAX_VALUE;
+        long lastEnd = Long.MIN_VALUE;
+        double totalWork = 0;
+        for (int i = 0; i < numberThreads; i++) {
+            result.mThreadTimesMs[i] = (endNs[i] - startNs[i]) / 1000000.0;
+            firstStart = Math.min(firstStart, startNs[i]);
+            lastEnd = Math.max(lastEnd, endNs[i]);
+            totalWork += work[i];
+        }
+        result.mWallTimeMs = (lastEnd - firstStart) / 1000000.0;
+        result.mThroughput = ReportLog.calcRatePerSec(totalWork, result.mWallTimeMs);
+        return result;
+    }
+
+    /**
+     * @return aggregate throughput of each step
+     */
+    public static double[] getThroughputs(StepResult[] results) {
+        double[] values = new double[results.length];
+        for (int i = 0; i < results.length; i++) {
+            values[i] = results[i].mThroughput;
+        }
+        return values;
+    }
+
+    /**
+     * @return scaling efficiency of each step
+     */
+    public static double[] getEfficiencies(StepResult[] results) {
+        double[] values = new double[results.length];
+        for (int i = 0; i < results.length; i++) {
+            values[i] = results[i].mEfficiency;
+        }
+        return values;
+    }
+
+    /**
+     * Report throughput and efficiency of each step, and the best throughput as summary.
+     * @param name name of the workload, like "memcpy"
+     * @param unit unit of the throughput
+     */
+    public static void report(ReportLog report, String name, StepResult[] results,
+            ResultUnit unit) {
+        double[] threads = new double[results.length];
+        for (int i = 0; i < results.length; i++) {
+            threads[i] = results[i].mNumberThreads;
+        }
+        report.printArray(name + " threads", threads, ResultType.NEUTRAL, ResultUnit.COUNT);
+        double[] throughputs = getThroughputs(results);
+        report.printArray(name + " aggregate throughput", throughputs, ResultType.HIGHER_BETTER,
+                unit);
+        report.printArray(name + " scaling efficiency", getEfficiencies(results),
+                ResultType.HIGHER_BETTER, ResultUnit.NONE);
+        report.printValue(name + " scaling efficiency at max threads",
+                results[results.length - 1].mEfficiency, ResultType.HIGHER_BETTER,
+                ResultUnit.NONE);
+        report.printSummary(name + " max aggregate throughput", Stat.getMax(throughputs),
+                ResultType.HIGHER_BETTER, unit);
+    }
+}
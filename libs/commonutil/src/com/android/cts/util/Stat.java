@@ -49,10 +49,11 @@ public class Stat {
         double average = data[0];
         double min = data[0];
         double max = data[0];
-        double eX2 = data[0] * data[0]; // will become E[X^2]
+        double m2 = 0.0; // sum of squared differences from the current average (Welford)
         for (int i = 1; i < data.length; i++) {
-            average += data[i];
-            eX2 += data[i] * data[i];
+            double delta = data[i] - average;
+            average += delta / (i + 1);
+            m2 += delta * (data[i] - average);
             if (data[i] > max) {
                 max = data[i];
             }
@@ -60,10 +61,7 @@ public class Stat {
                 min = data[i];
             }
         }
-        average /= data.length;
-        eX2 /= data.length;
-        // stddev = sqrt(E[X^2] - (E[X])^2)
-        double stddev = Math.sqrt(eX2 - average * average);
+        double stddev = Math.sqrt(m2 / data.length);
         return new StatResult(average, min, max, stddev, data.length);
     }
 
@@ -73,28 +71,21 @@ public class Stat {
      * rejectionThreshold should be bigger than 0.0 and be lowerthan 1.0
      */
     public static StatResult getStatWithOutlierRejection(double[] data, double rejectionThreshold) {
-        double[] dataCopied = Arrays.copyOf(data, data.length);
-        Arrays.sort(dataCopied);
-        int medianIndex = dataCopied.length / 2;
-        double median;
-        if (dataCopied.length % 2 == 1) {
-            median = dataCopied[medianIndex];
-        } else {
-            median = (dataCopied[medianIndex - 1] + dataCopied[medianIndex]) / 2.0;
-        }
+        double median = getMedian(data);
         double thresholdMin = median * (1.0 - rejectionThreshold);
         double thresholdMax = median * (1.0 + rejectionThreshold);
 
         double average = 0.0;
         double min = median;
         double max = median;
-        double eX2 = 0.0; // will become E[X^2]
+        double m2 = 0.0; // sum of squared differences from the current average (Welford)
         int validDataCounter = 0;
         for (int i = 0; i < data.length; i++) {
             if ((data[i] > thresholdMin) && (data[i] < thresholdMax)) {
                 validDataCounter++;
-                average += data[i];
-                eX2 += data[i] * data[i];
+                double delta = data[i] - average;
+                average += delta / validDataCounter;
+                m2 += delta * (data[i] - average);
                 if (data[i] > max) {
                     max = data[i];
                 }
@@ -106,10 +97,7 @@ public class Stat {
         }
         double stddev;
         if (validDataCounter > 0) {
-            average /= validDataCounter;
-            eX2 /= validDataCounter;
-            // stddev = sqrt(E[X^2] - (E[X])^2)
-            stddev = Math.sqrt(eX2 - average * average);
+            stddev = Math.sqrt(m2 / validDataCounter);
         } else { // both median is showing too much diff
             average = median;
             stddev = 0; // don't care
@@ -118,6 +106,82 @@ public class Stat {
         return new StatResult(average, min, max, stddev, validDataCounter);
     }
 
+    /**
+     * return the median value of the passed array. The array is not modified.
+     */
+    public static double getMedian(double[] data) {
+        double[] dataCopied = Arrays.copyOf(data, data.length);
+        int medianIndex = dataCopied.length / 2;
+        double median = select(dataCopied, medianIndex);
+        if (dataCopied.length % 2 == 0) {
+            // select() leaves everything below medianIndex in the lower part
+            median = (getMax(dataCopied, 0, medianIndex) + median) / 2.0;
+        }
+        return median;
+    }
+
+    /**
+     * return the value below which the given percentage of values in the passed array falls,
+     * using the nearest-rank method. The array is not modified.
+     * For repeated or streaming use, record the values in a {@link Histogram} instead.
+     * @param percentile from 0.0 to 100.0
+     */
+    public static double getPercentile(double[] data, double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("percentile should be 0 to 100, not " + percentile);
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * data.length);
+        int index = Math.max(rank, 1) - 1;
+        return select(Arrays.copyOf(data, data.length), index);
+    }
+
+    /**
+     * Partially sort data so that data[k] holds the k-th smallest value, all values before k
+     * are not bigger, and all values after k are not smaller. Expected O(n).
+     */
+    private static double select(double[] data, int k) {
+        int left = 0;
+        int right = data.length - 1;
+        while (left < right) {
+            double pivot = data[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (data[i] < pivot) {
+                    i++;
+                }
+                while (data[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = data[i];
+                    data[i] = data[j];
+                    data[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return data[k];
+    }
+
+    private static double getMax(double[] data, int start, int end) {
+        double max = data[start];
+        for (int i = start + 1; i < end; i++) {
+            if (data[i] > max) {
+                max = data[i];
+            }
+        }
+        return max;
+    }
+
     /**
      * return the average value of the passed array
      */
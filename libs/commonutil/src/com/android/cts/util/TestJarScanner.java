@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the JUnit 3 tests in JAR files by reading their class files, without
+ * loading or initializing any class, and returns them as a
+ * {@link TestMetadataIndex}. JARs are scanned in parallel.
+ *
+ * <p>A test class is a public, non-abstract subclass of
+ * junit.framework.TestCase with a public constructor taking a String or no
+ * arguments. Its tests are the public methods named test* without parameters
+ * returning void, declared by it or by its super classes. Super classes not in
+ * the scanned JARs are read from the class path. Super classes which cannot be
+ * found are reported by {@link #getMissingClasses()}.
+ */
+public class TestJarScanner {
+    private static final String TEST_CASE = "junit.framework.TestCase";
+
+    private final ClassLoader mClassPath;
+    /** classes read from the class path, shared by all JARs */
+    private final Map<String, ClassFileInfo> mClassPathInfos =
+            new ConcurrentHashMap<String, ClassFileInfo>();
+    private final Set<String> mMissingClasses =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param classPath used to find super classes which are not in the JAR
+     */
+    public TestJarScanner(ClassLoader classPath) {
+        mClassPath = classPath;
+    }
+
+    /**
+     * Scans all {@code jars} in parallel.
+     *
+     * @return the index of each JAR, in the order of {@code jars}
+     */
+    public List<TestMetadataIndex> scan(List<File> jars) throws IOException {
+        int threads = Math.max(1, Math.min(jars.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<TestMetadataIndex>> futures = new ArrayList<Future<TestMetadataIndex>>();
+            for (final File jar : jars) {
+                futures.add(executor.submit(new Callable<TestMetadataIndex>() {
+                    @Override
+                    public TestMetadataIndex call() throws IOException {
+                        return scan(jar);
+                    }
+                }));
+            }
+            List<TestMetadataIndex> results = new ArrayList<TestMetadataIndex>();
+            for (Future<TestMetadataIndex> future : futures) {
+                results.add(getResult(future));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TestMetadataIndex getResult(Future<TestMetadataIndex> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("scanning failed", e.getCause());
+        }
+    }
+
+    /**
+     * Scans one JAR.
+     */
+    public TestMetadataIndex scan(File jar) throws IOException {
+        return new TestMetadataIndex(sha1(jar), scanClasses(jar));
+    }
+
+    /**
+     * Returns the names of the super classes which were found neither in the
+     * scanned JARs nor on the class path. Their subclasses are not reported as
+     * tests.
+     */
+    public Set<String> getMissingClasses() {
+        return new TreeSet<String>(mMissingClasses);
+    }
+
+    private List<TestMetadataIndex.TestClass> scanClasses(File jar) throws IOException {
+        Map<String, ClassFileInfo> infos = new LinkedHashMap<String, ClassFileInfo>();
+        JarFile jarFile = new JarFile(jar);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                InputStream in = jarFile.getInputStream(entry);
+                try {
+                    ClassFileInfo info = ClassFileInfo.parse(readFully(in));
+                    infos.put(info.mName, info);
+                } catch (IOException e) {
+                    throw new IOException("cannot read " + entry.getName() + " in " + jar, e);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+
+        List<TestMetadataIndex.TestClass> result = new ArrayList<TestMetadataIndex.TestClass>();
+        for (ClassFileInfo info : infos.values()) {
+            if (!info.isPublic() || info.isAbstract() || !isTestCase(info, infos)) {
+                continue;
+            }
+            if (!hasPublicConstructor(info, "(Ljava/lang/String;)V")
+                    && !hasPublicConstructor(info, "()V")) {
+                continue;
+            }
+            TestMetadataIndex.TestClass scanned = new TestMetadataIndex.TestClass(info.mName);
+            Set<String> testNames = new HashSet<String>();
+            for (ClassFileInfo c = info; c != null; c = getSuperClass(c, infos)) {
+                for (ClassFileInfo.MethodInfo method : c.mMethods) {
+                    if (testNames.contains(method.mName)
+                            || !method.mName.startsWith("test")
+                            || !method.mDescriptor.equals("()V")
+                            || !method.isPublic()) {
+                        continue;
+                    }
+                    testNames.add(method.mName);
+                    scanned.mMethods.add(new TestMetadataIndex.TestMethod(method.mName,
+                            method.mAnnotations, TestMetadataIndex.getTimeoutMinutes(method)));
+                }
+                if (c.mName.equals(TEST_CASE)) {
+                    break;
+                }
+            }
+            result.add(scanned);
+        }
+        return result;
+    }
+
+    private static boolean hasPublicConstructor(ClassFileInfo info, String descriptor) {
+        ClassFileInfo.MethodInfo constructor = info.getMethod("<init>", descriptor);
+        return constructor != null && constructor.isPublic();
+    }
+
+    private boolean isTestCase(ClassFileInfo info, Map<String, ClassFileInfo> infos) {
+        for (ClassFileInfo c = info; c != null; c = getSuperClass(c, infos)) {
+            if (c.mName.equals(TEST_CASE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the super class from the JAR or the class path, or null if it is
+     * java.lang.Object or cannot be found.
+     */
+    private ClassFileInfo getSuperClass(ClassFileInfo info, Map<String, ClassFileInfo> infos) {
+        String name = info.mSuperName;
+        if (name == null || name.equals("java.lang.Object")) {
+            return null;
+        }
+        ClassFileInfo superInfo = infos.get(name);
+        if (superInfo != null) {
+            return superInfo;
+        }
+        superInfo = mClassPathInfos.get(name);
+        if (superInfo != null || mMissingClasses.contains(name)) {
+            return superInfo;
+        }
+        InputStream in = mClassPath.getResourceAsStream(name.replace('.', '/') + ".class");
+        try {
+            if (in != null) {
+                superInfo = ClassFileInfo.parse(readFully(in));
+                mClassPathInfos.put(name, superInfo);
+                return superInfo;
+            }
+        } catch (IOException e) {
+            System.err.println("cannot read class " + name + ": " + e);
+        } finally {
+            closeQuietly(in);
+        }
+        System.err.println("class not found " + name + ", super class of " + info.mName);
+        mMissingClasses.add(name);
+        return null;
+    }
+
+    /**
+     * Returns the lower case hex SHA-1 of the content of {@code file}.
+     */
+    public static String sha1(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The test classes of a JAR with their test methods, the runtime visible
+ * annotations and the {@link TimeoutReq} of each method. It is built from the
+ * class files by {@link TestJarScanner}, so no class is loaded, and stored in a
+ * compact binary file next to the JAR, see {@link #getIndexFileName(String)}.
+ * <p/>
+ * The file starts with a magic number and a version, followed by the SHA-1 of
+ * the JAR, a table of the annotation names, and the classes and methods which
+ * refer to annotations by their table index.
+ */
+public class TestMetadataIndex {
+    public static final String INDEX_SUFFIX = ".idx";
+
+    /** value of {@link TestMethod#mTimeoutMinutes} for methods without {@link TimeoutReq} */
+    public static final int NO_TIMEOUT = -1;
+
+    private static final int MAGIC = 0x43545349; // "CTSI"
+    private static final int VERSION = 1;
+    private static final String TIMEOUT_ANNOTATION = TimeoutReq.class.getName();
+
+    public static class TestMethod {
+        public final String mName;
+        /** binary names of the annotation types, like dalvik.annotation.KnownFailure */
+        public final List<String> mAnnotations;
+        /** minutes of the {@link TimeoutReq} of the method, or {@link #NO_TIMEOUT} */
+        public final int mTimeoutMinutes;
+
+        public TestMethod(String name, List<String> annotations, int timeoutMinutes) {
+            mName = name;
+            mAnnotations = annotations;
+            mTimeoutMinutes = timeoutMinutes;
+        }
+
+        public boolean hasAnnotation(String annotation) {
+            return mAnnotations.contains(annotation);
+        }
+    }
+
+    /** A test class with its test methods, most derived class first. */
+    public static class TestClass {
+        public final String mName;
+        public final List<TestMethod> mMethods = new ArrayList<TestMethod>();
+
+        public TestClass(String name) {
+            mName = name;
+        }
+
+        /**
+         * Returns the test method with the given name, or null.
+         */
+        public TestMethod getMethod(String name) {
+            for (TestMethod method : mMethods) {
+                if (method.mName.equals(name)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String mDigest;
+    private final List<TestClass> mClasses;
+    private final Map<String, TestClass> mClassesByName = new HashMap<String, TestClass>();
+
+    /**
+     * @param digest lower case hex SHA-1 of the JAR the classes were read from
+     * @param classes the test classes in JAR entry order
+     */
+    public TestMetadataIndex(String digest, List<TestClass> classes) {
+        mDigest = digest;
+        mClasses = Collections.unmodifiableList(classes);
+        for (TestClass testClass : classes) {
+            mClassesByName.put(testClass.mName, testClass);
+        }
+    }
+
+    /**
+     * Returns the lower case hex SHA-1 of the indexed JAR.
+     */
+    public String getDigest() {
+        return mDigest;
+    }
+
+    public List<TestClass> getTestClasses() {
+        return mClasses;
+    }
+
+    /**
+     * Returns the test class with the given binary name, or null.
+     */
+    public TestClass getTestClass(String className) {
+        return mClassesByName.get(className);
+    }
+
+    /**
+     * Returns the minutes of the {@link TimeoutReq} of a test method, or
+     * {@link #NO_TIMEOUT} if it has none or is not in the index.
+     */
+    public int getTimeoutMinutes(String className, String methodName) {
+        TestClass testClass = mClassesByName.get(className);
+        TestMethod method = testClass == null ? null : testClass.getMethod(methodName);
+        return method == null ? NO_TIMEOUT : method.mTimeoutMinutes;
+    }
+
+    /**
+     * Returns the minutes of {@link TimeoutReq} of a method read from its class file.
+     */
+    static int getTimeoutMinutes(ClassFileInfo.MethodInfo method) {
+        if (!method.mAnnotations.contains(TIMEOUT_ANNOTATION)) {
+            return NO_TIMEOUT;
+        }
+        Integer minutes = method.getIntValue(TIMEOUT_ANNOTATION, "minutes");
+        // minutes() defaults to -1
+        return minutes == null ? NO_TIMEOUT : minutes;
+    }
+
+    /**
+     * Returns the name of the index file of a JAR: foo.jar has foo.idx.
+     */
+    public static String getIndexFileName(String jarFileName) {
+        if (jarFileName.endsWith(".jar")) {
+            jarFileName = jarFileName.substring(0, jarFileName.length() - ".jar".length());
+        }
+        return jarFileName + INDEX_SUFFIX;
+    }
+
+    public void write(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(mDigest);
+
+        Map<String, Integer> annotationIndexes = new LinkedHashMap<String, Integer>();
+        for (TestClass testClass : mClasses) {
+            for (TestMethod method : testClass.mMethods) {
+                for (String annotation : method.mAnnotations) {
+                    if (!annotationIndexes.containsKey(annotation)) {
+                        annotationIndexes.put(annotation, annotationIndexes.size());
+                    }
+                }
+            }
+        }
+        out.writeShort(annotationIndexes.size());
+        for (String annotation : annotationIndexes.keySet()) {
+            out.writeUTF(annotation);
+        }
+
+        out.writeInt(mClasses.size());
+        for (TestClass testClass : mClasses) {
+            out.writeUTF(testClass.mName);
+            out.writeShort(testClass.mMethods.size());
+            for (TestMethod method : testClass.mMethods) {
+                out.writeUTF(method.mName);
+                out.writeInt(method.mTimeoutMinutes);
+                out.writeShort(method.mAnnotations.size());
+                for (String annotation : method.mAnnotations) {
+                    out.writeShort(annotationIndexes.get(annotation));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads an index written by {@link #write(OutputStream)}.
+     *
+     * @throws IOException if the stream is not a complete index of this version
+     */
+    public static TestMetadataIndex read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            throw new IOException("not a test index of version " + VERSION);
+        }
+        String digest = in.readUTF();
+
+        String[] annotations = new String[in.readUnsignedShort()];
+        for (int i = 0; i < annotations.length; i++) {
+            annotations[i] = in.readUTF();
+        }
+
+        int classCount = in.readInt();
+        List<TestClass> classes = new ArrayList<TestClass>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            TestClass testClass = new TestClass(in.readUTF());
+            int methodCount = in.readUnsignedShort();
+            for (int j = 0; j < methodCount; j++) {
+                String name = in.readUTF();
+                int timeout = in.readInt();
+                int annotationCount = in.readUnsignedShort();
+                List<String> methodAnnotations = new ArrayList<String>(annotationCount);
+                for (int k = 0; k < annotationCount; k++) {
+                    int index = in.readUnsignedShort();
+                    if (index >= annotations.length) {
+                        throw new IOException("bad annotation index " + index);
+                    }
+                    methodAnnotations.add(annotations[index]);
+                }
+                testClass.mMethods.add(new TestMethod(name, methodAnnotations, timeout));
+            }
+            classes.add(testClass);
+        }
+        return new TestMetadataIndex(digest, classes);
+    }
+
+    /**
+     * Reads the index stored in {@code file} if it was built from a JAR with the
+     * given digest.
+     *
+     * @return the index, or null if the file does not exist, cannot be read or
+     *     is for other content
+     */
+    public static TestMetadataIndex read(File file, String digest) {
+        if (!file.isFile()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            TestMetadataIndex index = read(in);
+            return index.getDigest().equals(digest) ? index : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Compares decoded YUV 420 frames against a reference image without slowing down the decoder.
+ * <p/>
+ * The reference is a planar or semi-planar image bigger than the video, and each frame shows
+ * the part of it starting at a given origin. For every frame, {@link #submit} copies a few
+ * randomly selected rows of the decoded buffer into a preallocated slot with bulk copies, so
+ * that the codec buffer can be released right away. A worker thread compares the rows with the
+ * reference. When all slots are busy, the frame is not checked rather than blocking the caller.
+ * <p/>
+ * The comparison kernels work on byte arrays in simple loops, and are public so that they can
+ * be benchmarked on their own. Nothing is allocated per frame.
+ */
+public class YuvFrameVerifier {
+
+    /** Rows copied out of one decoded frame. */
+    private static class Slot {
+        final int[] mRows;
+        final byte[] mY;
+        // one chroma row per sampled row: interleaved U and V, or U followed by V
+        final byte[] mChroma;
+        int mOriginX;
+        int mOriginY;
+        boolean mSemiPlanar;
+
+        Slot(int rows, int width) {
+            mRows = new int[rows];
+            mY = new byte[rows * width];
+            mChroma = new byte[rows * width];
+        }
+    }
+
+    // tells the worker to stop
+    private static final Slot END = new Slot(0, 0);
+
+    private final byte[] mRefY;
+    private final byte[] mRefUV;
+    private final int mRefWidth;
+    private final int mRefHeight;
+    private final boolean mRefSemiPlanar;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRowsPerFrame;
+    private final Random mRandom;
+    private final BlockingQueue<Slot> mFreeSlots;
+    private final BlockingQueue<Slot> mPendingSlots;
+    private final Thread mWorker;
+    private boolean mDstSemiPlanar;
+
+    // only accessed by the worker until it is joined
+    private long mErrorSquared = 0;
+    private long mSampleCount = 0;
+    private int mVerifiedFrames = 0;
+
+    private int mSkippedFrames = 0;
+    /** exception which stopped the worker, thrown again by {@link #finish()} */
+    private volatile Throwable mFailure;
+
+    /**
+     * @param refY luma plane of the reference image, refWidth x refHeight
+     * @param refUV chroma planes of the reference image, interleaved if refSemiPlanar, U
+     *        followed by V otherwise
+     * @param width width of the decoded frames, which have no padding between rows
+     * @param height height of the decoded frames
+     * @param rowsPerFrame number of rows checked per frame
+     * @param slots number of frames which can wait to be checked
+     * @param seed seed for selecting the rows
+     */
+    public YuvFrameVerifier(byte[] refY, byte[] refUV, int refWidth, int refHeight,
+            boolean refSemiPlanar, int width, int height, int rowsPerFrame, int slots,
+            long seed) {
+        if (width > refWidth || height > refHeight || rowsPerFrame < 1 || slots < 1) {
+            throw new IllegalArgumentException("invalid size " + width + "x" + height + " in "
+                    + refWidth + "x" + refHeight + " or " + rowsPerFrame + " rows in " + slots
+                    + " slots");
+        }
+        mRefY = refY;
+        mRefUV = refUV;
+        mRefWidth = refWidth;
+        mRefHeight = refHeight;
+        mRefSemiPlanar = refSemiPlanar;
+        mWidth = width;
+        mHeight = height;
+        mRowsPerFrame = rowsPerFrame;
+        mRandom = new Random(seed);
+        mFreeSlots = new ArrayBlockingQueue<Slot>(slots);
+        mPendingSlots = new ArrayBlockingQueue<Slot>(slots + 1);
+        for (int i = 0; i < slots; i++) {
+            mFreeSlots.add(new Slot(rowsPerFrame, width));
+        }
+        mDstSemiPlanar = refSemiPlanar;
+        mWorker = new Thread("YuvFrameVerifier") {
+            @Override
+            public void run() {
+                verifyPendingFrames();
+            }
+        };
+    }
+
+    /**
+     * Set the layout of the frames submitted next, which can change when the decoder changes
+     * its output format.
+     */
+    public void setDecodedSemiPlanar(boolean semiPlanar) {
+        mDstSemiPlanar = semiPlanar;
+    }
+
+    public void start() {
+        mWorker.start();
+    }
+
+    /**
+     * Copy sampled rows of a decoded frame to be checked by the worker. The buffer position and
+     * limit are changed, and the buffer can be reused as soon as this returns.
+     *
+     * @param decoded decoded frame starting at index 0
+     * @param originX position of the frame in the reference image, an even number
+     * @param originY position of the frame in the reference image, an even number
+     * @return false if the frame was not checked because all slots were busy
+     */
+    public boolean submit(ByteBuffer decoded, int originX, int originY) {
+        Slot slot = mFreeSlots.poll();
+        if (slot == null) {
+            mSkippedFrames++;
+            return false;
+        }
+        slot.mOriginX = originX;
+        slot.mOriginY = originY;
+        slot.mSemiPlanar = mDstSemiPlanar;
+        int lumaSize = mWidth * mHeight;
+        int halfWidth = mWidth / 2;
+        decoded.clear();
+        for (int i = 0; i < mRowsPerFrame; i++) {
+            int y = mRandom.nextInt(mHeight);
+            slot.mRows[i] = y;
+            int dst = i * mWidth;
+            decoded.position(y * mWidth);
+            decoded.get(slot.mY, dst, mWidth);
+            if (slot.mSemiPlanar) {
+                decoded.position(lumaSize + y / 2 * mWidth);
+                decoded.get(slot.mChroma, dst, mWidth);
+            } else {
+                decoded.position(lumaSize + y / 2 * halfWidth);
+                decoded.get(slot.mChroma, dst, halfWidth);
+                decoded.position(lumaSize + lumaSize / 4 + y / 2 * halfWidth);
+                decoded.get(slot.mChroma, dst + halfWidth, halfWidth);
+            }
+        }
+        mPendingSlots.add(slot);
+        return true;
+    }
+
+    /**
+     * Wait for the submitted frames to be checked and stop the worker.
+     *
+     * @throws RuntimeException or {@link Error} thrown while checking a frame
+     */
+    public void finish() throws InterruptedException {
+        mPendingSlots.put(END);
+        mWorker.join();
+        if (mFailure instanceof RuntimeException) {
+            throw (RuntimeException) mFailure;
+        } else if (mFailure instanceof Error) {
+            throw (Error) mFailure;
+        }
+    }
+
+    /**
+     * @return root mean square error of the checked pixels over Y, U and V, NaN if none was
+     *         checked. Valid after {@link #finish()}.
+     */
+    public double getRmsError() {
+        return Math.sqrt((double) mErrorSquared / mSampleCount);
+    }
+
+    /**
+     * @return number of frames checked. Valid after {@link #finish()}.
+     */
+    public int getVerifiedFrames() {
+        return mVerifiedFrames;
+    }
+
+    /**
+     * @return number of frames not checked because all slots were busy
+     */
+    public int getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    private void verifyPendingFrames() {
+        try {
+            while (true) {
+                Slot slot = mPendingSlots.take();
+                if (slot == END) {
+                    return;
+                }
+                verify(slot);
+                mVerifiedFrames++;
+                mFreeSlots.add(slot);
+            }
+        } catch (InterruptedException e) {
+            // stop checking, the result only covers the frames checked so far
+        } catch (RuntimeException e) {
+            mFailure = e;
+        } catch (Error e) {
+            mFailure = e;
+        }
+    }
+
+    private void verify(Slot slot) {
+        int halfWidth = mWidth / 2;
+        int refVOffset = mRefWidth * mRefHeight / 4;
+        for (int i = 0; i < mRowsPerFrame; i++) {
+            int refRow = slot.mOriginY + slot.mRows[i];
+            int src = i * mWidth;
+            mErrorSquared += sumSquaredError(mRefY, refRow * mRefWidth + slot.mOriginX,
+                    slot.mY, src, mWidth);
+
+            int refU;
+            int refV;
+            int refStep;
+            if (mRefSemiPlanar) {
+                refU = refRow / 2 * mRefWidth + slot.mOriginX / 2 * 2;
+                refV = refU + 1;
+                refStep = 2;
+            } else {
+                refU = refRow / 2 * mRefWidth / 2 + slot.mOriginX / 2;
+                refV = refU + refVOffset;
+                refStep = 1;
+            }
+            int dstU;
+            int dstV;
+            int dstStep;
+            if (slot.mSemiPlanar) {
+                dstU = src;
+                dstV = src + 1;
+                dstStep = 2;
+            } else {
+                dstU = src;
+                dstV = src + halfWidth;
+                dstStep = 1;
+            }
+            long chromaError;
+            if (refStep == 1 && dstStep == 1) {
+                chromaError = sumSquaredError(mRefUV, refU, slot.mChroma, dstU, halfWidth)
+                        + sumSquaredError(mRefUV, refV, slot.mChroma, dstV, halfWidth);
+            } else {
+                chromaError = sumSquaredError(mRefUV, refU, refStep, slot.mChroma, dstU, dstStep,
+                        halfWidth)
+                        + sumSquaredError(mRefUV, refV, refStep, slot.mChroma, dstV, dstStep,
+                        halfWidth);
+            }
+            // each chroma sample covers two pixels of the row
+            mErrorSquared += chromaError * 2;
+            mSampleCount += 3 * mWidth;
+        }
+    }
+
+    /**
+     * @return sum of the squared differences between length unsigned bytes of a and b
+     */
+    public static long sumSquaredError(byte[] a, int aOffset, byte[] b, int bOffset,
+            int length) {
+        long sum = 0;
+        int delta = aOffset - bOffset;
+        for (int i = bOffset; i < bOffset + length; i++) {
+            int d = (a[i + delta] & 0xff) - (b[i] & 0xff);
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * @return sum of the squared differences between count unsigned bytes of a and b, taken
+     *         every aStep and bStep bytes
+     */
+    public static long sumSquaredError(byte[] a, int aOffset, int aStep, byte[] b, int bOffset,
+            int bStep, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            int d = (a[aOffset + i * aStep] & 0xff) - (b[bOffset + i * bStep] & 0xff);
+            sum += d * d;
+        }
+        return sum;
+    }
+}
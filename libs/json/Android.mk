@@ -23,3 +23,19 @@ LOCAL_MODULE_TAGS := optional
 
 include $(BUILD_HOST_JAVA_LIBRARY)
 
+
+# Reading and writing throughput benchmarks, run with
+# java -cp jsonlib.jar:jsonlib-benchmark.jar com.android.json.benchmark.JsonReaderBenchmark
+# java -cp jsonlib.jar:jsonlib-benchmark.jar com.android.json.benchmark.JsonWriterBenchmark
+include $(CLEAR_VARS)
+LOCAL_SRC_FILES := $(call all-java-files-under, benchmark/src)
+
+LOCAL_MODULE := jsonlib-benchmark
+LOCAL_MODULE_TAGS := optional
+
+LOCAL_JAVA_LIBRARIES := jsonlib
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
+# Build all sub-directories
+include $(call all-makefiles-under,$(LOCAL_PATH))
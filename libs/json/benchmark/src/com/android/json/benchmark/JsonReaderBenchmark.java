@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.benchmark;
+
+import com.android.json.stream.JsonReader;
+import com.android.json.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures {@link JsonReader} throughput on expectation and metrics shaped
+ * documents. Each input is read fully into memory first so only parsing is
+ * measured.
+ * <p/>
+ * Usage: JsonReaderBenchmark [file ...]. Without arguments a synthetic
+ * expectation file and a synthetic metrics file of several MB are generated.
+ */
+public class JsonReaderBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    /** keeps parsed numbers alive so that they are not optimized away */
+    private static volatile double sSink;
+
+    /** ways of creating the reader which are compared */
+    private enum Mode {
+        READER, UTF8_STREAM, UTF8_STREAM_INTERNED
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            run("synthetic expectations", generateExpectations(20000));
+            run("synthetic metrics", generateMetrics(200, 2000));
+        } else {
+            for (String arg : args) {
+                run(arg, readFile(new File(arg)));
+            }
+        }
+    }
+
+    private static void run(String name, byte[] data) throws IOException {
+        System.out.println(String.format("%s: %.2f MB", name, data.length / 1024.0 / 1024.0));
+        for (Mode mode : Mode.values()) {
+            long tokens = 0;
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                tokens = parse(data, mode);
+            }
+            double[] mbps = new double[MEASURED_RUNS];
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                long start = System.nanoTime();
+                parse(data, mode);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                mbps[i] = data.length / 1024.0 / 1024.0 / seconds;
+            }
+            Arrays.sort(mbps);
+            System.out.println(String.format("  %-20s median %8.2f MB/s, best %8.2f MB/s, %d tokens",
+                    mode, mbps[MEASURED_RUNS / 2], mbps[MEASURED_RUNS - 1], tokens));
+        }
+    }
+
+    /**
+     * Reads every token the way a typical consumer would.
+     * @return number of tokens
+     */
+    private static long parse(byte[] data, Mode mode) throws IOException {
+        InputStream in = new ByteArrayInputStream(data);
+        JsonReader reader;
+        if (mode == Mode.READER) {
+            reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        } else {
+            reader = new JsonReader(in);
+            reader.setInternNames(mode == Mode.UTF8_STREAM_INTERNED);
+        }
+        reader.setLenient(true);
+        long tokens = 0;
+        double sum = 0;
+        int depth = 0;
+        do {
+            JsonToken token = reader.peek();
+            switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    reader.nextName();
+                    break;
+                case STRING:
+                    reader.nextString();
+                    break;
+                case NUMBER:
+                    sum += reader.nextDouble();
+                    break;
+                case BOOLEAN:
+                    reader.nextBoolean();
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected " + token);
+            }
+            tokens++;
+        } while (depth > 0);
+        reader.close();
+        sSink = sum;
+        return tokens;
+    }
+
+    /**
+     * Generates a document like the expectation files read by vogar, with
+     * unquoted names as they are written by hand.
+     */
+    private static byte[] generateExpectations(int count) {
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder("[\n");
+        for (int i = 0; i < count; i++) {
+            builder.append("{\n  description: \"Fails on some devices because of issue ")
+                    .append(random.nextInt(100000)).append("\",\n");
+            int names = 1 + random.nextInt(4);
+            for (int j = 0; j < names; j++) {
+                builder.append("  name: \"android.cts.module").append(random.nextInt(100))
+                        .append(".SomeTest#testCase").append(random.nextInt(1000)).append("\",\n");
+            }
+            builder.append("  bug: ").append(1000000 + random.nextInt(9000000)).append("\n},\n");
+        }
+        builder.append("]\n");
+        return toUtf8(builder);
+    }
+
+    /**
+     * Generates a document with the structure of the performance reports sent
+     * from the device to the host, each detail holding an array of values.
+     */
+    private static byte[] generateMetrics(int details, int valuesPerDetail) {
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"s\":{\"src\":\"Test.java:1\",\"m\":\"summary\",\"t\":\"HIGHER_BETTER\","
+                + "\"u\":\"MBPS\",\"v\":[12.5]},\"d\":[");
+        for (int i = 0; i < details; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"src\":\"Test.java:").append(i).append("\",\"m\":\"detail ")
+                    .append(i).append("\",\"t\":\"LOWER_BETTER\",\"u\":\"MS\",\"v\":[");
+            for (int j = 0; j < valuesPerDetail; j++) {
+                if (j > 0) {
+                    builder.append(',');
+                }
+                builder.append(random.nextDouble() * 1000.0);
+            }
+            builder.append("]}");
+        }
+        builder.append("]}");
+        return toUtf8(builder);
+    }
+
+    private static byte[] toUtf8(CharSequence text) {
+        try {
+            return text.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int r = in.read(data, read, data.length - read);
+                if (r < 0) {
+                    break;
+                }
+                read += r;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.benchmark;
+
+import com.android.json.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures {@link JsonWriter} throughput when writing metrics shaped
+ * documents with large arrays of measured values. Output is discarded so only
+ * encoding is measured.
+ */
+public class JsonWriterBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+    private static final int DETAILS = 200;
+    private static final int VALUES_PER_DETAIL = 5000;
+
+    /** ways of writing the arrays which are compared */
+    private enum Mode {
+        PER_VALUE_WRITER, BULK_WRITER, BULK_UTF8_STREAM
+    }
+
+    /** counts and drops the output */
+    private static class CountingOutputStream extends OutputStream {
+        long mCount = 0;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(0);
+        double[][] measurements = new double[DETAILS][VALUES_PER_DETAIL];
+        for (double[] values : measurements) {
+            for (int i = 0; i < values.length; i++) {
+                // times in ms with microsecond resolution, as typically reported
+                values[i] = Math.round(random.nextDouble() * 1e6) / 1000.0;
+            }
+        }
+        for (Mode mode : Mode.values()) {
+            long bytes = 0;
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                bytes = write(measurements, mode);
+            }
+            double[] mbps = new double[MEASURED_RUNS];
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                long start = System.nanoTime();
+                write(measurements, mode);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                mbps[i] = bytes / 1024.0 / 1024.0 / seconds;
+            }
+            Arrays.sort(mbps);
+            System.out.println(String.format("%-20s median %8.2f MB/s, best %8.2f MB/s, %d bytes",
+                    mode, mbps[MEASURED_RUNS / 2], mbps[MEASURED_RUNS - 1], bytes));
+        }
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    private static long write(double[][] measurements, Mode mode) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        JsonWriter writer;
+        if (mode == Mode.BULK_UTF8_STREAM) {
+            writer = new JsonWriter(out);
+        } else {
+            writer = new JsonWriter(new OutputStreamWriter(out, "UTF-8"));
+        }
+        writer.beginObject();
+        writer.name("d").beginArray();
+        for (int i = 0; i < measurements.length; i++) {
+            writer.beginObject();
+            writer.name("m").value("detail " + i);
+            writer.name("u").value("MS");
+            writer.name("v");
+            if (mode == Mode.PER_VALUE_WRITER) {
+                writer.beginArray();
+                for (double value : measurements[i]) {
+                    writer.value(value);
+                }
+                writer.endArray();
+            } else {
+                writer.value(measurements[i]);
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.close();
+        return out.mCount;
+    }
+}
@@ -17,10 +17,9 @@
 package com.android.json.stream;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Reads a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
@@ -164,6 +163,14 @@ import java.util.List;
  * precision loss, extremely large values should be written and read as strings
  * in JSON.
  *
+ * <h3>Performance</h3>
+ * Numbers are parsed directly from the reader's character buffer; a {@code
+ * String} is only created for a number that is read with {@link #nextString}
+ * or that is too precise for the fast path. Use {@link #JsonReader(InputStream)}
+ * to decode UTF-8 input without an {@code InputStreamReader}, and {@link
+ * #setInternNames} when the same names repeat many times, as in arrays of
+ * objects.
+ *
  * <p>Each {@code JsonReader} may be used to read a single JSON stream. Instances
  * of this class are not thread safe.
  */
@@ -172,6 +179,21 @@ public final class JsonReader implements Closeable {
     private static final String TRUE = "true";
     private static final String FALSE = "false";
 
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    /**
+     * Numbers with at most this many significant digits have an exact long
+     * mantissa that is also exactly representable as a double.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** Powers of ten that are exactly representable as a double. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     /** The input JSON. */
     private final Reader in;
 
@@ -184,11 +206,12 @@ public final class JsonReader implements Closeable {
      * We decode literals directly out of this buffer, so it must be at least as
      * long as the longest token that can be reported as a number.
      */
-    private final char[] buffer = new char[1024];
+    private final char[] buffer;
     private int pos = 0;
     private int limit = 0;
 
-    private final List<JsonScope> stack = new ArrayList<JsonScope>();
+    private int[] stack = new int[32];
+    private int stackSize = 0;
     {
         push(JsonScope.EMPTY_DOCUMENT);
     }
@@ -210,17 +233,55 @@ public final class JsonReader implements Closeable {
     private int valuePos;
     private int valueLength;
 
+    /**
+     * True if the next value is a number that is still in the buffer at
+     * valuePos. Its string form is only created if it is asked for.
+     */
+    private boolean valueInBuffer = false;
+
+    /** Set by decodeLongInBuffer(). */
+    private long bufferedLong;
+
+    /** Set by decodeDoubleInBuffer(). */
+    private double bufferedDouble;
+
     /** True if we're currently handling a skipValue() call. */
     private boolean skipping = false;
 
+    /** Names seen so far, or null if names are not interned. */
+    private NamePool namePool;
+
     /**
      * Creates a new instance that reads a JSON-encoded stream from {@code in}.
      */
     public JsonReader(Reader in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance that reads a JSON-encoded stream from {@code in}
+     * with a buffer of {@code bufferSize} characters. Number literals longer
+     * than the buffer are reported as strings.
+     */
+    public JsonReader(Reader in, int bufferSize) {
         if (in == null) {
             throw new NullPointerException("in == null");
         }
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize < " + MIN_BUFFER_SIZE);
+        }
         this.in = in;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Creates a new instance that reads a UTF-8 encoded JSON stream from
+     * {@code in}. The bytes are decoded straight into this reader's buffer,
+     * which is cheaper than wrapping the stream in an {@code InputStreamReader}.
+     * Malformed input is replaced with U+FFFD.
+     */
+    public JsonReader(InputStream in) {
+        this(new Utf8Reader(in, DEFAULT_BUFFER_SIZE), DEFAULT_BUFFER_SIZE);
     }
 
     /**
@@ -248,6 +309,20 @@ public final class JsonReader implements Closeable {
         this.lenient = lenient;
     }
 
+    /**
+     * Configure this reader to return the same {@code String} instance each
+     * time a name repeats. This avoids creating a string for every name when
+     * reading arrays of similar objects, such as expectations or metrics.
+     * Names containing escape sequences are not interned.
+     */
+    public void setInternNames(boolean internNames) {
+        if (!internNames) {
+            namePool = null;
+        } else if (namePool == null) {
+            namePool = new NamePool();
+        }
+    }
+
     /**
      * Consumes the next token from the JSON stream and asserts that it is the
      * beginning of a new array.
@@ -308,7 +383,7 @@ public final class JsonReader implements Closeable {
         }
 
         switch (peekStack()) {
-            case EMPTY_DOCUMENT:
+            case JsonScope.EMPTY_DOCUMENT:
                 replaceTop(JsonScope.NONEMPTY_DOCUMENT);
                 JsonToken firstToken = nextValue();
                 if (token != JsonToken.BEGIN_ARRAY && token != JsonToken.BEGIN_OBJECT) {
@@ -316,19 +391,19 @@ public final class JsonReader implements Closeable {
                             "Expected JSON document to start with '[' or '{' but was " + token);
                 }
                 return firstToken;
-            case EMPTY_ARRAY:
+            case JsonScope.EMPTY_ARRAY:
                 return nextInArray(true);
-            case NONEMPTY_ARRAY:
+            case JsonScope.NONEMPTY_ARRAY:
                 return nextInArray(false);
-            case EMPTY_OBJECT:
+            case JsonScope.EMPTY_OBJECT:
                 return nextInObject(true);
-            case DANGLING_NAME:
+            case JsonScope.DANGLING_NAME:
                 return objectValue();
-            case NONEMPTY_OBJECT:
+            case JsonScope.NONEMPTY_OBJECT:
                 return nextInObject(false);
-            case NONEMPTY_DOCUMENT:
+            case JsonScope.NONEMPTY_DOCUMENT:
                 return token = JsonToken.END_DOCUMENT;
-            case CLOSED:
+            case JsonScope.CLOSED:
                 throw new IllegalStateException("JsonReader is closed");
             default:
                 throw new AssertionError();
@@ -344,6 +419,7 @@ public final class JsonReader implements Closeable {
         JsonToken result = token;
         token = null;
         value = null;
+        valueInBuffer = false;
         name = null;
         return result;
     }
@@ -379,7 +455,7 @@ public final class JsonReader implements Closeable {
             throw new IllegalStateException("Expected a string but was " + peek());
         }
 
-        String result = value;
+        String result = valueString();
         advance();
         return result;
     }
@@ -431,7 +507,12 @@ public final class JsonReader implements Closeable {
             throw new IllegalStateException("Expected a double but was " + token);
         }
 
-        double result = Double.parseDouble(value);
+        double result;
+        if (valueInBuffer && decodeDoubleInBuffer()) {
+            result = bufferedDouble;
+        } else {
+            result = Double.parseDouble(valueString());
+        }
         advance();
         return result;
     }
@@ -453,13 +534,18 @@ public final class JsonReader implements Closeable {
         }
 
         long result;
-        try {
-            result = Long.parseLong(value);
-        } catch (NumberFormatException ignored) {
-            double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
-            result = (long) asDouble;
-            if ((double) result != asDouble) {
-                throw new NumberFormatException(value);
+        if (valueInBuffer && decodeLongInBuffer()) {
+            result = bufferedLong;
+        } else {
+            String text = valueString();
+            try {
+                result = Long.parseLong(text);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(text); // don't catch this NumberFormatException
+                result = (long) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(text);
+                }
             }
         }
 
@@ -484,13 +570,19 @@ public final class JsonReader implements Closeable {
         }
 
         int result;
-        try {
-            result = Integer.parseInt(value);
-        } catch (NumberFormatException ignored) {
-            double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
-            result = (int) asDouble;
-            if ((double) result != asDouble) {
-                throw new NumberFormatException(value);
+        if (valueInBuffer && decodeLongInBuffer()
+                && bufferedLong >= Integer.MIN_VALUE && bufferedLong <= Integer.MAX_VALUE) {
+            result = (int) bufferedLong;
+        } else {
+            String text = valueString();
+            try {
+                result = Integer.parseInt(text);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(text); // don't catch this NumberFormatException
+                result = (int) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(text);
+                }
             }
         }
 
@@ -503,9 +595,10 @@ public final class JsonReader implements Closeable {
      */
     public void close() throws IOException {
         value = null;
+        valueInBuffer = false;
         token = null;
-        stack.clear();
-        stack.add(JsonScope.CLOSED);
+        stackSize = 0;
+        push(JsonScope.CLOSED);
         in.close();
     }
 
@@ -531,23 +624,24 @@ public final class JsonReader implements Closeable {
         }
     }
 
-    private JsonScope peekStack() {
-        return stack.get(stack.size() - 1);
+    private int peekStack() {
+        return stack[stackSize - 1];
     }
 
-    private JsonScope pop() {
-        return stack.remove(stack.size() - 1);
+    private int pop() {
+        return stack[--stackSize];
     }
 
-    private void push(JsonScope newTop) {
-        stack.add(newTop);
+    private void push(int newTop) {
+        stack = JsonScope.grow(stack, stackSize);
+        stack[stackSize++] = newTop;
     }
 
     /**
      * Replace the value on the top of the stack with the given value.
      */
-    private void replaceTop(JsonScope newTop) {
-        stack.set(stack.size() - 1, newTop);
+    private void replaceTop(int newTop) {
+        stack[stackSize - 1] = newTop;
     }
 
     private JsonToken nextInArray(boolean firstElement) throws IOException {
@@ -622,12 +716,23 @@ public final class JsonReader implements Closeable {
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                name = nextString((char) quote);
+                if (namePool != null && !skipping) {
+                    name = nextPooledName((char) quote);
+                } else {
+                    name = nextString((char) quote);
+                }
                 break;
             default:
                 checkLenient();
                 pos--;
-                name = nextLiteral(false);
+                if (namePool != null && !skipping) {
+                    name = nextLiteral(true);
+                    if (name == null) {
+                        name = namePool.get(buffer, valuePos, valueLength);
+                    }
+                } else {
+                    name = nextLiteral(false);
+                }
                 if (name.isEmpty()) {
                     throw syntaxError("Expected name");
                 }
@@ -841,6 +946,31 @@ public final class JsonReader implements Closeable {
         throw syntaxError("Unterminated string");
     }
 
+    /**
+     * Returns the name whose opening quote has already been read, using the
+     * name pool if the whole name fits in the buffer and has no escape
+     * sequences. This consumes the closing quote.
+     */
+    private String nextPooledName(char quote) throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = pos + scanned; i < limit; i++) {
+                char c = buffer[i];
+                if (c == quote) {
+                    String result = namePool.get(buffer, pos, i - pos);
+                    pos = i + 1;
+                    return result;
+                } else if (c == '\\') {
+                    return nextString(quote);
+                }
+            }
+            scanned = limit - pos;
+            if (scanned >= buffer.length || !fillBuffer(scanned + 1)) {
+                return nextString(quote);
+            }
+        }
+    }
+
     /**
      * Reads the value up to but not including any delimiter characters. This
      * does not consume the delimiter character.
@@ -1020,9 +1150,118 @@ public final class JsonReader implements Closeable {
             value = FALSE;
             return JsonToken.BOOLEAN;
         } else {
+            JsonToken result = decodeNumber(buffer, valuePos, valueLength);
+            if (result == JsonToken.NUMBER) {
+                valueInBuffer = true;
+            } else {
+                value = skipping ? "skipped!" : new String(buffer, valuePos, valueLength);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the string form of the next value, creating it from the buffer
+     * if it is a number that has not been converted yet.
+     */
+    private String valueString() {
+        if (valueInBuffer && value == null) {
             value = new String(buffer, valuePos, valueLength);
-            return decodeNumber(buffer, valuePos, valueLength);
         }
+        return value;
+    }
+
+    /**
+     * Parses the number in the buffer as a long into {@code bufferedLong}.
+     * Returns false if it has a fraction or an exponent or too many digits,
+     * leaving it to the string based parsing.
+     */
+    private boolean decodeLongInBuffer() {
+        int i = valuePos;
+        int end = valuePos + valueLength;
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (end - i > 18) {
+            return false; // may overflow
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            result = result * 10 + (c - '0');
+        }
+        bufferedLong = negative ? -result : result;
+        return true;
+    }
+
+    /**
+     * Parses the number in the buffer as a double into {@code bufferedDouble}.
+     * This only handles numbers whose significant digits and power of ten are
+     * both exact doubles, so the single multiplication or division gives the
+     * same correctly rounded result as {@link Double#parseDouble}. Returns
+     * false for other numbers.
+     */
+    private boolean decodeDoubleInBuffer() {
+        int i = valuePos;
+        int end = valuePos + valueLength;
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c == '.') {
+                fraction = true;
+                continue;
+            } else if (c < '0' || c > '9') {
+                break;
+            }
+            if (mantissa != 0 || c != '0') {
+                if (++digits > MAX_EXACT_DIGITS) {
+                    return false;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            if (fraction) {
+                exponent--;
+            }
+        }
+        if (i < end) {
+            // the validated number can only continue with an exponent
+            i++;
+            boolean negativeExponent = buffer[i] == '-';
+            if (negativeExponent || buffer[i] == '+') {
+                i++;
+            }
+            if (end - i > 3) {
+                return false;
+            }
+            int explicit = 0;
+            for (; i < end; i++) {
+                explicit = explicit * 10 + (buffer[i] - '0');
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        double result;
+        if (mantissa == 0) {
+            result = 0.0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            result = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return false;
+        }
+        bufferedDouble = negative ? -result : result;
+        return true;
     }
 
     /**
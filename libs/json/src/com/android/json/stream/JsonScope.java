@@ -17,52 +17,88 @@
 package com.android.json.stream;
 
 /**
- * Lexical scoping elements within a JSON reader or writer.
+ * Lexical scoping elements within a JSON reader or writer. These are int
+ * constants rather than an enum so that readers and writers can keep their
+ * scope stacks in plain {@code int} arrays.
  */
-enum JsonScope {
+final class JsonScope {
 
     /**
      * An array with no elements requires no separators or newlines before
      * it is closed.
      */
-    EMPTY_ARRAY,
+    static final int EMPTY_ARRAY = 1;
 
     /**
      * A array with at least one value requires a comma and newline before
      * the next element.
      */
-    NONEMPTY_ARRAY,
+    static final int NONEMPTY_ARRAY = 2;
 
     /**
      * An object with no name/value pairs requires no separators or newlines
      * before it is closed.
      */
-    EMPTY_OBJECT,
+    static final int EMPTY_OBJECT = 3;
 
     /**
      * An object whose most recent element is a key. The next element must
      * be a value.
      */
-    DANGLING_NAME,
+    static final int DANGLING_NAME = 4;
 
     /**
      * An object with at least one name/value pair requires a comma and
      * newline before the next element.
      */
-    NONEMPTY_OBJECT,
+    static final int NONEMPTY_OBJECT = 5;
 
     /**
      * No object or array has been started.
      */
-    EMPTY_DOCUMENT,
+    static final int EMPTY_DOCUMENT = 6;
 
     /**
      * A document with at an array or object.
      */
-    NONEMPTY_DOCUMENT,
+    static final int NONEMPTY_DOCUMENT = 7;
 
     /**
      * A document that's been closed and cannot be accessed.
      */
-    CLOSED,
+    static final int CLOSED = 8;
+
+    private static final String[] NAMES = {
+        null, "EMPTY_ARRAY", "NONEMPTY_ARRAY", "EMPTY_OBJECT", "DANGLING_NAME",
+        "NONEMPTY_OBJECT", "EMPTY_DOCUMENT", "NONEMPTY_DOCUMENT", "CLOSED"
+    };
+
+    private JsonScope() {}
+
+    /**
+     * Returns the first {@code size} scopes of {@code stack} in the same form
+     * as {@code List.toString()}, for error messages.
+     */
+    static String toString(int[] stack, int size) {
+        StringBuilder result = new StringBuilder().append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(NAMES[stack[i]]);
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * Returns {@code stack} with room for at least one more scope.
+     */
+    static int[] grow(int[] stack, int size) {
+        if (size < stack.length) {
+            return stack;
+        }
+        int[] newStack = new int[stack.length * 2];
+        System.arraycopy(stack, 0, newStack, 0, size);
+        return newStack;
+    }
 }
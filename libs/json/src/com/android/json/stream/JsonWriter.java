@@ -18,9 +18,8 @@ package com.android.json.stream;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Writes a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
@@ -113,18 +112,51 @@ import java.util.List;
  *     writer.endArray();
  *   }}</pre>
  *
+ * <h3>Performance</h3>
+ * Output is collected in an internal buffer and written to the underlying
+ * stream in large chunks, so nothing reaches it before {@link #flush} or
+ * {@link #close}. Numbers are formatted straight into that buffer. Use {@link
+ * #value(double[])} and {@link #value(long[])} to write large numeric arrays,
+ * and {@link #JsonWriter(OutputStream)} to encode UTF-8 without an {@code
+ * OutputStreamWriter}.
+ *
  * <p>Each {@code JsonWriter} may be used to write a single JSON stream.
  * Instances of this class are not thread safe. Calls that would result in a
  * malformed JSON string will fail with an {@link IllegalStateException}.
  */
 public final class JsonWriter implements Closeable {
 
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Room needed in the buffer to format any long. */
+    private static final int MAX_LONG_LENGTH = 20;
+
+    /**
+     * Doubles in this range are written without an exponent by
+     * {@link Double#toString}, and so by {@link #writeDouble} too.
+     */
+    private static final double MIN_PLAIN_DOUBLE = 1e-3;
+    private static final double MAX_PLAIN_DOUBLE = 1e7;
+
+    /** Most fraction digits tried by the fast double formatting. */
+    private static final int MAX_FAST_FRACTION_DIGITS = 8;
+
+    /** Powers of ten that are exactly representable as a double. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8
+    };
+
     /** The output data, containing at most one top-level array or object. */
     private final Writer out;
 
-    private final List<JsonScope> stack = new ArrayList<JsonScope>();
+    /** Output not yet written to {@code out}. */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferLength = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
     {
-        stack.add(JsonScope.EMPTY_DOCUMENT);
+        push(JsonScope.EMPTY_DOCUMENT);
     }
 
     /**
@@ -140,8 +172,7 @@ public final class JsonWriter implements Closeable {
 
     /**
      * Creates a new instance that writes a JSON-encoded stream to {@code out}.
-     * For best performance, ensure {@link Writer} is buffered; wrapping in
-     * {@link java.io.BufferedWriter BufferedWriter} if necessary.
+     * Output is buffered by this writer, so {@code out} need not be.
      */
     public JsonWriter(Writer out) {
         if (out == null) {
@@ -150,6 +181,16 @@ public final class JsonWriter implements Closeable {
         this.out = out;
     }
 
+    /**
+     * Creates a new instance that writes a UTF-8 encoded JSON stream to
+     * {@code out}. Characters are encoded straight from this writer's buffer,
+     * which is cheaper than wrapping the stream in an {@code
+     * OutputStreamWriter}.
+     */
+    public JsonWriter(OutputStream out) {
+        this(new Utf8Writer(out, BUFFER_SIZE));
+    }
+
     /**
      * Sets the indentation string to be repeated for each level of indentation
      * in the encoded document. If {@code indent.isEmpty()} the encoded document
@@ -210,10 +251,10 @@ public final class JsonWriter implements Closeable {
      * Enters a new scope by appending any necessary whitespace and the given
      * bracket.
      */
-    private JsonWriter open(JsonScope empty, String openBracket) throws IOException {
+    private JsonWriter open(int empty, String openBracket) throws IOException {
         beforeValue(true);
-        stack.add(empty);
-        out.write(openBracket);
+        push(empty);
+        write(openBracket);
         return this;
     }
 
@@ -221,33 +262,43 @@ public final class JsonWriter implements Closeable {
      * Closes the current scope by appending any necessary whitespace and the
      * given bracket.
      */
-    private JsonWriter close(JsonScope empty, JsonScope nonempty, String closeBracket)
+    private JsonWriter close(int empty, int nonempty, String closeBracket)
             throws IOException {
-        JsonScope context = peek();
+        int context = peek();
         if (context != nonempty && context != empty) {
-            throw new IllegalStateException("Nesting problem: " + stack);
+            throw nestingProblem();
         }
 
-        stack.remove(stack.size() - 1);
+        stackSize--;
         if (context == nonempty) {
             newline();
         }
-        out.write(closeBracket);
+        write(closeBracket);
         return this;
     }
 
     /**
      * Returns the value on the top of the stack.
      */
-    private JsonScope peek() {
-        return stack.get(stack.size() - 1);
+    private int peek() {
+        return stack[stackSize - 1];
+    }
+
+    private void push(int newTop) {
+        stack = JsonScope.grow(stack, stackSize);
+        stack[stackSize++] = newTop;
     }
 
     /**
      * Replace the value on the top of the stack with the given value.
      */
-    private void replaceTop(JsonScope topOfStack) {
-        stack.set(stack.size() - 1, topOfStack);
+    private void replaceTop(int topOfStack) {
+        stack[stackSize - 1] = topOfStack;
+    }
+
+    private IllegalStateException nestingProblem() {
+        return new IllegalStateException(
+                "Nesting problem: " + JsonScope.toString(stack, stackSize));
     }
 
     /**
@@ -287,7 +338,7 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter nullValue() throws IOException {
         beforeValue(false);
-        out.write("null");
+        write("null");
         return this;
     }
 
@@ -298,7 +349,7 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value(boolean value) throws IOException {
         beforeValue(false);
-        out.write(value ? "true" : "false");
+        write(value ? "true" : "false");
         return this;
     }
 
@@ -310,11 +361,9 @@ public final class JsonWriter implements Closeable {
      * @return this writer.
      */
     public JsonWriter value(double value) throws IOException {
-        if (Double.isNaN(value) || Double.isInfinite(value)) {
-            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
-        }
+        checkFinite(value);
         beforeValue(false);
-        out.append(Double.toString(value));
+        writeDouble(value);
         return this;
     }
 
@@ -325,15 +374,60 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value(long value) throws IOException {
         beforeValue(false);
-        out.write(Long.toString(value));
+        writeLong(value);
         return this;
     }
 
+    /**
+     * Encodes {@code values} as an array. This is equivalent to calling
+     * {@link #value(double)} for each element between {@link #beginArray} and
+     * {@link #endArray}, but much cheaper for large arrays.
+     *
+     * @param values finite values. May not contain {@link Double#isNaN() NaNs}
+     *     or {@link Double#isInfinite() infinities}.
+     * @return this writer.
+     */
+    public JsonWriter value(double[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        // check first so that an invalid value does not leave half an array
+        for (double value : values) {
+            checkFinite(value);
+        }
+        beginArray();
+        for (double value : values) {
+            beforeValue(false);
+            writeDouble(value);
+        }
+        return endArray();
+    }
+
+    /**
+     * Encodes {@code values} as an array. This is equivalent to calling
+     * {@link #value(long)} for each element between {@link #beginArray} and
+     * {@link #endArray}, but much cheaper for large arrays.
+     *
+     * @return this writer.
+     */
+    public JsonWriter value(long[] values) throws IOException {
+        if (values == null) {
+            return nullValue();
+        }
+        beginArray();
+        for (long value : values) {
+            beforeValue(false);
+            writeLong(value);
+        }
+        return endArray();
+    }
+
     /**
      * Ensures all buffered data is written to the underlying {@link Writer}
      * and flushes that writer.
      */
     public void flush() throws IOException {
+        flushBuffer();
         out.flush();
     }
 
@@ -343,6 +437,7 @@ public final class JsonWriter implements Closeable {
      * @throws IOException if the JSON document is incomplete.
      */
     public void close() throws IOException {
+        flushBuffer();
         out.close();
 
         if (peek() != JsonScope.NONEMPTY_DOCUMENT) {
@@ -351,7 +446,7 @@ public final class JsonWriter implements Closeable {
     }
 
     private void string(String value) throws IOException {
-        out.write("\"");
+        write("\"");
         for (int i = 0, length = value.length(); i < length; i++) {
             char c = value.charAt(i);
 
@@ -365,41 +460,165 @@ public final class JsonWriter implements Closeable {
                 case '"':
                 case '\\':
                 case '/':
-                    out.write('\\');
-                    out.write(c);
+                    write('\\');
+                    write(c);
                     break;
 
                 case '\t':
-                    out.write("\\t");
+                    write("\\t");
                     break;
 
                 case '\b':
-                    out.write("\\b");
+                    write("\\b");
                     break;
 
                 case '\n':
-                    out.write("\\n");
+                    write("\\n");
                     break;
 
                 case '\r':
-                    out.write("\\r");
+                    write("\\r");
                     break;
 
                 case '\f':
-                    out.write("\\f");
+                    write("\\f");
                     break;
 
                 default:
                     if (c <= 0x1F) {
-                        out.write(String.format("\\u%04x", (int) c));
+                        write(String.format("\\u%04x", (int) c));
                     } else {
-                        out.write(c);
+                        if (bufferLength == buffer.length) {
+                            flushBuffer();
+                        }
+                        buffer[bufferLength++] = c;
                     }
                     break;
             }
 
         }
-        out.write("\"");
+        write("\"");
+    }
+
+    private void write(char c) throws IOException {
+        if (bufferLength == buffer.length) {
+            flushBuffer();
+        }
+        buffer[bufferLength++] = c;
+    }
+
+    private void write(String s) throws IOException {
+        int length = s.length();
+        if (bufferLength + length > buffer.length) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, length, buffer, bufferLength);
+        bufferLength += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (bufferLength > 0) {
+            out.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+    }
+
+    private static void checkFinite(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+    }
+
+    /**
+     * Formats {@code value} straight into the buffer.
+     */
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            // cannot be negated
+            write(Long.toString(value));
+            return;
+        }
+        if (bufferLength + MAX_LONG_LENGTH > buffer.length) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            buffer[bufferLength++] = '-';
+            value = -value;
+        }
+        int end = bufferLength + digitCount(value);
+        int i = end;
+        do {
+            buffer[--i] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        bufferLength = end;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Formats {@code value} like {@link Double#toString}. Values that are
+     * written without an exponent and have at most {@link
+     * #MAX_FAST_FRACTION_DIGITS} fraction digits, which covers most
+     * measurements, are formatted straight into the buffer. This uses the
+     * fewest fraction digits that read back as exactly {@code value}; as both
+     * the digits and the power of ten are exact doubles, the division below is
+     * what a correctly rounded parser computes.
+     */
+    private void writeDouble(double value) throws IOException {
+        double magnitude = Math.abs(value);
+        if (magnitude >= MIN_PLAIN_DOUBLE && magnitude < MAX_PLAIN_DOUBLE) {
+            for (int digits = 0; digits <= MAX_FAST_FRACTION_DIGITS; digits++) {
+                double scale = POWERS_OF_TEN[digits];
+                long scaled = Math.round(magnitude * scale);
+                if (scaled / scale == magnitude) {
+                    writePlainDouble(value < 0, scaled, digits);
+                    return;
+                }
+            }
+        }
+        write(Double.toString(value));
+    }
+
+    /**
+     * Writes {@code scaled} / 10^{@code fractionDigits} with at least one
+     * fraction digit.
+     */
+    private void writePlainDouble(boolean negative, long scaled, int fractionDigits)
+            throws IOException {
+        if (bufferLength + MAX_LONG_LENGTH + 3 > buffer.length) {
+            flushBuffer();
+        }
+        if (negative) {
+            buffer[bufferLength++] = '-';
+        }
+        if (fractionDigits == 0) {
+            writeLong(scaled);
+            buffer[bufferLength++] = '.';
+            buffer[bufferLength++] = '0';
+            return;
+        }
+        long power = (long) POWERS_OF_TEN[fractionDigits];
+        writeLong(scaled / power);
+        buffer[bufferLength++] = '.';
+        long fraction = scaled % power;
+        int end = bufferLength + fractionDigits;
+        for (int i = end - 1; i >= bufferLength; i--) {
+            buffer[i] = (char) ('0' + (fraction % 10));
+            fraction /= 10;
+        }
+        bufferLength = end;
     }
 
     private void newline() throws IOException {
@@ -407,9 +626,9 @@ public final class JsonWriter implements Closeable {
             return;
         }
 
-        out.write("\n");
-        for (int i = 1; i < stack.size(); i++) {
-            out.write(indent);
+        write('\n');
+        for (int i = 1; i < stackSize; i++) {
+            write(indent);
         }
     }
 
@@ -418,11 +637,11 @@ public final class JsonWriter implements Closeable {
      * adjusts the stack to expect the name's value.
      */
     private void beforeName() throws IOException {
-        JsonScope context = peek();
+        int context = peek();
         if (context == JsonScope.NONEMPTY_OBJECT) { // first in object
-            out.write(',');
+            write(',');
         } else if (context != JsonScope.EMPTY_OBJECT) { // not in an object!
-            throw new IllegalStateException("Nesting problem: " + stack);
+            throw nestingProblem();
         }
         newline();
         replaceTop(JsonScope.DANGLING_NAME);
@@ -438,7 +657,7 @@ public final class JsonWriter implements Closeable {
      */
     private void beforeValue(boolean root) throws IOException {
         switch (peek()) {
-            case EMPTY_DOCUMENT: // first in document
+            case JsonScope.EMPTY_DOCUMENT: // first in document
                 if (!root) {
                     throw new IllegalStateException(
                             "JSON must start with an array or an object.");
@@ -446,27 +665,27 @@ public final class JsonWriter implements Closeable {
                 replaceTop(JsonScope.NONEMPTY_DOCUMENT);
                 break;
 
-            case EMPTY_ARRAY: // first in array
+            case JsonScope.EMPTY_ARRAY: // first in array
                 replaceTop(JsonScope.NONEMPTY_ARRAY);
                 newline();
                 break;
 
-            case NONEMPTY_ARRAY: // another in array
-                out.append(',');
+            case JsonScope.NONEMPTY_ARRAY: // another in array
+                write(',');
                 newline();
                 break;
 
-            case DANGLING_NAME: // value for name
-                out.append(separator);
+            case JsonScope.DANGLING_NAME: // value for name
+                write(separator);
                 replaceTop(JsonScope.NONEMPTY_OBJECT);
                 break;
 
-            case NONEMPTY_DOCUMENT:
+            case JsonScope.NONEMPTY_DOCUMENT:
                 throw new IllegalStateException(
                         "JSON must have only one top-level value.");
 
             default:
-                throw new IllegalStateException("Nesting problem: " + stack);
+                throw nestingProblem();
         }
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+/**
+ * Returns the same {@code String} instance for repeated character sequences,
+ * without creating a string to look them up. This is an open addressing hash
+ * table which stops adding entries when it is three quarters full, so streams
+ * with many unique names use bounded memory.
+ */
+final class NamePool {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final String[] table;
+    private final int maxSize;
+    private int size = 0;
+
+    NamePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of slots, must be a power of two.
+     */
+    NamePool(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        table = new String[capacity];
+        maxSize = capacity / 4 * 3;
+    }
+
+    /**
+     * Returns a string equal to {@code length} characters of {@code chars}
+     * starting at {@code offset}.
+     */
+    String get(char[] chars, int offset, int length) {
+        // same hash as String.hashCode() so candidates can be rejected cheaply
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int mask = table.length - 1;
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            String candidate = table[index];
+            if (candidate == null) {
+                String result = new String(chars, offset, length);
+                if (size < maxSize) {
+                    table[index] = result;
+                    size++;
+                }
+                return result;
+            }
+            if (candidate.hashCode() == hash && matches(candidate, chars, offset, length)) {
+                return candidate;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static boolean matches(String candidate, char[] chars, int offset, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes UTF-8 bytes straight into the caller's char array. Unlike an
+ * {@code InputStreamReader} there is no charset decoder or intermediate char
+ * buffer, and runs of ASCII, which make up nearly all JSON, take a single
+ * comparison per byte. Malformed input is replaced with U+FFFD.
+ */
+final class Utf8Reader extends Reader {
+    private static final char REPLACEMENT = '\ufffd';
+
+    private final InputStream in;
+    private final byte[] bytes;
+    private int pos = 0;
+    private int limit = 0;
+
+    /**
+     * The low surrogate of a supplementary character whose high surrogate
+     * was the last char returned, or 0.
+     */
+    private char pendingLowSurrogate = 0;
+
+    Utf8Reader(InputStream in, int bufferSize) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.in = in;
+        this.bytes = new byte[Math.max(bufferSize, 4)];
+    }
+
+    @Override public int read(char[] chars, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        int out = offset;
+        int end = offset + count;
+        if (pendingLowSurrogate != 0) {
+            chars[out++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+        while (out < end) {
+            if (pos == limit) {
+                // return what we have rather than block for more input
+                if (out > offset || !fill(1)) {
+                    break;
+                }
+            }
+
+            int b = bytes[pos];
+            if (b >= 0) {
+                int asciiEnd = Math.min(limit, pos + end - out);
+                while (pos < asciiEnd && (b = bytes[pos]) >= 0) {
+                    chars[out++] = (char) b;
+                    pos++;
+                }
+                continue;
+            }
+
+            int length;
+            int codePoint;
+            if ((b & 0xe0) == 0xc0) {
+                length = 2;
+                codePoint = b & 0x1f;
+            } else if ((b & 0xf0) == 0xe0) {
+                length = 3;
+                codePoint = b & 0x0f;
+            } else if ((b & 0xf8) == 0xf0) {
+                length = 4;
+                codePoint = b & 0x07;
+            } else {
+                chars[out++] = REPLACEMENT;
+                pos++;
+                continue;
+            }
+
+            if (limit - pos < length) {
+                if (out > offset) {
+                    break;
+                }
+                if (!fill(length)) {
+                    // truncated at the end of the input
+                    chars[out++] = REPLACEMENT;
+                    pos = limit;
+                    continue;
+                }
+            }
+
+            int i = 1;
+            for (; i < length; i++) {
+                int continuation = bytes[pos + i];
+                if ((continuation & 0xc0) != 0x80) {
+                    break;
+                }
+                codePoint = (codePoint << 6) | (continuation & 0x3f);
+            }
+            if (i < length) {
+                // resynchronize at the byte that broke the sequence
+                chars[out++] = REPLACEMENT;
+                pos += i;
+                continue;
+            }
+            pos += length;
+
+            if ((length == 2 && codePoint < 0x80)
+                    || (length == 3 && (codePoint < 0x800
+                            || (codePoint >= 0xd800 && codePoint <= 0xdfff)))
+                    || (length == 4 && (codePoint < 0x10000 || codePoint > 0x10ffff))) {
+                chars[out++] = REPLACEMENT;
+            } else if (length < 4) {
+                chars[out++] = (char) codePoint;
+            } else {
+                codePoint -= 0x10000;
+                chars[out++] = (char) (0xd800 | (codePoint >>> 10));
+                char low = (char) (0xdc00 | (codePoint & 0x3ff));
+                if (out < end) {
+                    chars[out++] = low;
+                } else {
+                    pendingLowSurrogate = low;
+                }
+            }
+        }
+        return out > offset ? out - offset : -1;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and reads until at
+     * least {@code minimum} bytes are available. Returns false at the end of
+     * the input.
+     */
+    private boolean fill(int minimum) throws IOException {
+        if (pos != limit) {
+            System.arraycopy(bytes, pos, bytes, 0, limit - pos);
+        }
+        limit -= pos;
+        pos = 0;
+        int read;
+        while (limit < minimum && (read = in.read(bytes, limit, bytes.length - limit)) != -1) {
+            limit += read;
+        }
+        return limit >= minimum;
+    }
+
+    @Override public void close() throws IOException {
+        in.close();
+    }
+}
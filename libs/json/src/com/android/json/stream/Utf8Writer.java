@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Encodes chars as UTF-8 into a byte buffer which is written to the stream in
+ * large chunks. Unlike an {@code OutputStreamWriter} there is no charset
+ * encoder, and ASCII, which makes up nearly all JSON, takes a single
+ * comparison per char. Unpaired surrogates are written as '?', like {@link
+ * String#getBytes(String)} does.
+ */
+final class Utf8Writer extends Writer {
+    private final OutputStream out;
+    private final byte[] bytes;
+    private int length = 0;
+
+    /** A high surrogate written last whose low surrogate has not come yet, or 0. */
+    private char pendingHighSurrogate = 0;
+
+    Utf8Writer(OutputStream out, int bufferSize) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        this.out = out;
+        this.bytes = new byte[Math.max(bufferSize, 4)];
+    }
+
+    @Override public void write(char[] chars, int offset, int count) throws IOException {
+        int i = offset;
+        int end = offset + count;
+        while (i < end) {
+            if (length + 4 > bytes.length) {
+                flushBuffer();
+            }
+            if (pendingHighSurrogate == 0) {
+                int asciiEnd = Math.min(end, i + bytes.length - length);
+                char c;
+                while (i < asciiEnd && (c = chars[i]) < 0x80) {
+                    bytes[length++] = (byte) c;
+                    i++;
+                }
+                if (i == end || length + 4 > bytes.length) {
+                    continue;
+                }
+            }
+
+            char c = chars[i++];
+            if (pendingHighSurrogate != 0) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (c >= '\udc00' && c <= '\udfff') {
+                    int codePoint = 0x10000 + ((high - 0xd800) << 10) + (c - 0xdc00);
+                    bytes[length++] = (byte) (0xf0 | (codePoint >>> 18));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (codePoint & 0x3f));
+                    continue;
+                }
+                bytes[length++] = '?';
+                i--; // encode c on its own
+                continue;
+            }
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xc0 | (c >>> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c >= '\ud800' && c <= '\udbff') {
+                pendingHighSurrogate = c;
+            } else if (c >= '\udc00' && c <= '\udfff') {
+                bytes[length++] = '?';
+            } else {
+                bytes[length++] = (byte) (0xe0 | (c >>> 12));
+                bytes[length++] = (byte) (0x80 | ((c >>> 6) & 0x3f));
+                bytes[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (length > 0) {
+            out.write(bytes, 0, length);
+            length = 0;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes and flushes the stream. A trailing high
+     * surrogate is kept, as its low surrogate may still come.
+     */
+    @Override public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override public void close() throws IOException {
+        if (pendingHighSurrogate != 0) {
+            if (length == bytes.length) {
+                flushBuffer();
+            }
+            bytes[length++] = '?';
+            pendingHighSurrogate = 0;
+        }
+        flushBuffer();
+        out.close();
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the number, name and UTF-8 fast paths of {@link JsonReader}.
+ */
+public class JsonReaderTest extends TestCase {
+
+    private static final String[] NUMBERS = {
+        "0", "-0", "-0.0", "0.0e5", "1", "-1", "0.1", "0.000001234", "2.5e-3", "1E+2",
+        "123456789012345", "1234567890123456", "9007199254740993", "1.000000000000000000",
+        "1e22", "1e23", "1e-22", "1e-23", "123456789e15", "1.7976931348623157e308",
+        "4.9e-324", "1e400", "1e-400", "1e0003", "100000000000000000000000",
+    };
+
+    /**
+     * Test that numbers read from the buffer are the same doubles as parsed by
+     * {@link Double#parseDouble}, including the ones which need the slow path.
+     */
+    public void testNextDouble() throws IOException {
+        List<String> numbers = new ArrayList<String>();
+        for (String number : NUMBERS) {
+            numbers.add(number);
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            numbers.add(createNumber(random));
+        }
+        for (int bufferSize : new int[] {64, 8192}) {
+            JsonReader reader = new JsonReader(new StringReader(toArray(numbers)), bufferSize);
+            reader.beginArray();
+            for (String number : numbers) {
+                assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+                        Double.doubleToLongBits(reader.nextDouble()));
+            }
+            reader.endArray();
+        }
+    }
+
+    public void testNextLong() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[0, -123, 999999999999999999,"
+                + " 9223372036854775807, -9223372036854775808, 1.0, 1e3, \"42\", 1.5]"));
+        reader.beginArray();
+        assertEquals(0, reader.nextLong());
+        assertEquals(-123, reader.nextLong());
+        assertEquals(999999999999999999L, reader.nextLong());
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertEquals(Long.MIN_VALUE, reader.nextLong());
+        assertEquals(1, reader.nextLong());
+        assertEquals(1000, reader.nextLong());
+        assertEquals(42, reader.nextLong());
+        try {
+            reader.nextLong();
+            fail("NumberFormatException not thrown");
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    public void testNextInt() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(
+                "[2147483647, -2147483648, 2147483648]"));
+        reader.beginArray();
+        assertEquals(Integer.MAX_VALUE, reader.nextInt());
+        assertEquals(Integer.MIN_VALUE, reader.nextInt());
+        try {
+            reader.nextInt();
+            fail("NumberFormatException not thrown");
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    /**
+     * Test that a number read as a string keeps its literal text.
+     */
+    public void testNextString_number() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[1.50e+2, -0]"));
+        reader.beginArray();
+        assertEquals(JsonToken.NUMBER, reader.peek());
+        assertEquals("1.50e+2", reader.nextString());
+        assertEquals("-0", reader.nextString());
+        reader.endArray();
+    }
+
+    /**
+     * Test that a number longer than the buffer is reported as a string, which still parses.
+     */
+    public void testLongLiteral() throws IOException {
+        StringBuilder number = new StringBuilder("1");
+        for (int i = 0; i < 100; i++) {
+            number.append('0');
+        }
+        JsonReader reader = new JsonReader(new StringReader("[" + number + "]"), 64);
+        reader.setLenient(true);
+        reader.beginArray();
+        assertEquals(JsonToken.STRING, reader.peek());
+        assertEquals(1e100, reader.nextDouble());
+        reader.endArray();
+    }
+
+    public void testBufferSize_tooSmall() {
+        try {
+            new JsonReader(new StringReader("[]"), 63);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Test that repeated names are returned as the same instance only if interning is on, and
+     * that names with escapes and names split by a buffer refill are still read correctly.
+     */
+    public void testInternNames() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 20; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"name\":1,\"n\\u0061me2\":2}");
+        }
+        json.append("]");
+        List<String> interned = readNames(json.toString(), true);
+        List<String> notInterned = readNames(json.toString(), false);
+        assertEquals(40, interned.size());
+        assertEquals(interned, notInterned);
+        for (int i = 0; i < interned.size(); i += 2) {
+            assertEquals("name", interned.get(i));
+            assertEquals("name2", interned.get(i + 1));
+            assertSame(interned.get(0), interned.get(i));
+        }
+        assertNotSame(notInterned.get(0), notInterned.get(2));
+    }
+
+    /**
+     * Test that multi-byte and supplementary characters are decoded from a stream which
+     * returns one byte at a time, so that every sequence is split across reads.
+     */
+    public void testUtf8Stream() throws IOException {
+        String text = new String(new int[] {'a', 0xe9, 0x4e2d, 0x1f600, 'z'}, 0, 5);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 3000; i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(text).append('"');
+        }
+        json.append("]");
+        JsonReader reader = new JsonReader(new OneByteInputStream(
+                json.toString().getBytes("UTF-8")));
+        reader.beginArray();
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(text, reader.nextString());
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Test that malformed UTF-8 is replaced with U+FFFD.
+     */
+    public void testUtf8Stream_malformed() throws IOException {
+        byte[] json = {'[', '"', (byte) 0xff, 'a', (byte) 0xc3, '"', ',', '"', (byte) 0xc0,
+                (byte) 0x80, '"', ']'};
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(json));
+        reader.beginArray();
+        char replacement = 0xfffd;
+        assertEquals(replacement + "a" + replacement, reader.nextString());
+        assertEquals(String.valueOf(replacement), reader.nextString());
+        reader.endArray();
+    }
+
+    /**
+     * Returns a random number literal with up to 20 significant digits, an optional fraction
+     * and an optional exponent.
+     */
+    private static String createNumber(Random random) {
+        StringBuilder number = new StringBuilder();
+        if (random.nextBoolean()) {
+            number.append('-');
+        }
+        int digits = 1 + random.nextInt(20);
+        int point = random.nextInt(digits + 1);
+        for (int i = 0; i < digits; i++) {
+            if (i == point && i > 0) {
+                number.append('.');
+            }
+            number.append((char) ('0' + (i == 0 && digits > 1 && point != 1
+                    ? 1 + random.nextInt(9) : random.nextInt(10))));
+        }
+        if (random.nextInt(3) == 0) {
+            number.append(random.nextBoolean() ? 'e' : 'E');
+            int sign = random.nextInt(3);
+            if (sign > 0) {
+                number.append(sign == 1 ? '-' : '+');
+            }
+            number.append(random.nextInt(40));
+        }
+        return number.toString();
+    }
+
+    private static String toArray(List<String> numbers) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < numbers.size(); i++) {
+            json.append(i == 0 ? "" : ",\n").append(numbers.get(i));
+        }
+        return json.append("]").toString();
+    }
+
+    private static List<String> readNames(String json, boolean intern) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json), 64);
+        reader.setInternNames(intern);
+        List<String> names = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                names.add(reader.nextName());
+                reader.skipValue();
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return names;
+    }
+
+    /**
+     * Returns at most one byte per read.
+     */
+    private static class OneByteInputStream extends InputStream {
+        private final byte[] data;
+        private int pos = 0;
+
+        OneByteInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) {
+            if (count == 0) {
+                return 0;
+            }
+            int b = read();
+            if (b < 0) {
+                return -1;
+            }
+            buffer[offset] = (byte) b;
+            return 1;
+        }
+    }
+}
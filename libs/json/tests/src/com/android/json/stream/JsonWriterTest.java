@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the buffering, number formatting and bulk array writers of
+ * {@link JsonWriter}.
+ */
+public class JsonWriterTest extends TestCase {
+
+    /**
+     * Test that doubles are written as {@link Double#toString} writes them,
+     * both on the fast path and outside of it.
+     */
+    public void testValue_double() throws IOException {
+        double[] values = {0.0, -0.0, 1.0, -1.0, 0.1, 0.5, 12.25, 16.666666666666668,
+                123456.789, 9999999.99, 1e7, 1e-3, 9.99e-4, 1e100, Double.MAX_VALUE,
+                Double.MIN_VALUE, 0.30000000000000004, 1234567.12345678, -0.001234};
+        for (double value : values) {
+            StringWriter string = new StringWriter();
+            JsonWriter writer = new JsonWriter(string);
+            writer.beginArray();
+            writer.value(value);
+            writer.endArray();
+            writer.close();
+            assertEquals("[" + Double.toString(value) + "]", string.toString());
+        }
+    }
+
+    /**
+     * Test that random doubles in the fast path range read back as the same
+     * values.
+     */
+    public void testValue_doubleRoundTrip() throws IOException {
+        Random random = new Random(0);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            double magnitude = Math.pow(10, random.nextInt(11) - 3);
+            values[i] = random.nextInt(3) == 0
+                    ? Math.round(random.nextDouble() * 100000) / 100.0 * magnitude
+                    : random.nextDouble() * magnitude;
+            if (random.nextBoolean()) {
+                values[i] = -values[i];
+            }
+        }
+        StringWriter string = new StringWriter();
+        JsonWriter writer = new JsonWriter(string);
+        writer.value(values);
+        writer.close();
+
+        JsonReader reader = new JsonReader(new StringReader(string.toString()));
+        reader.beginArray();
+        for (double value : values) {
+            assertEquals(Double.doubleToLongBits(value),
+                    Double.doubleToLongBits(reader.nextDouble()));
+        }
+        reader.endArray();
+    }
+
+    public void testValue_long() throws IOException {
+        long[] values = {0, 1, -1, 9, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        StringWriter string = new StringWriter();
+        JsonWriter writer = new JsonWriter(string);
+        writer.beginArray();
+        for (long value : values) {
+            writer.value(value);
+        }
+        writer.endArray();
+        writer.close();
+        assertEquals("[0,1,-1,9,10,-10,1234567890123,9223372036854775807,"
+                + "-9223372036854775808]", string.toString());
+    }
+
+    /**
+     * Test that the bulk array writers write the same as one value per
+     * element, also with indentation and inside an object.
+     */
+    public void testValue_arrays() throws IOException {
+        double[] doubles = {1.5, -2.0, 0.001, 1e20, 3.0};
+        long[] longs = {Long.MIN_VALUE, -1, 0, 42};
+
+        StringWriter bulk = new StringWriter();
+        JsonWriter writer = new JsonWriter(bulk);
+        writer.setIndent("  ");
+        writer.beginObject();
+        writer.name("d").value(doubles);
+        writer.name("l").value(longs);
+        writer.name("e").value(new double[0]);
+        writer.name("n").value((long[]) null);
+        writer.endObject();
+        writer.close();
+
+        StringWriter single = new StringWriter();
+        writer = new JsonWriter(single);
+        writer.setIndent("  ");
+        writer.beginObject();
+        writer.name("d").beginArray();
+        for (double value : doubles) {
+            writer.value(value);
+        }
+        writer.endArray();
+        writer.name("l").beginArray();
+        for (long value : longs) {
+            writer.value(value);
+        }
+        writer.endArray();
+        writer.name("e").beginArray().endArray();
+        writer.name("n").nullValue();
+        writer.endObject();
+        writer.close();
+
+        assertEquals(single.toString(), bulk.toString());
+    }
+
+    /**
+     * Test that an array with a value which is not finite is rejected before
+     * anything of it is written.
+     */
+    public void testValue_doubleArrayNotFinite() throws IOException {
+        StringWriter string = new StringWriter();
+        JsonWriter writer = new JsonWriter(string);
+        writer.beginArray();
+        try {
+            writer.value(new double[] {1.0, Double.NaN});
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            writer.value(new double[] {Double.NEGATIVE_INFINITY});
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException expected) {
+        }
+        writer.value(new double[] {2.0});
+        writer.endArray();
+        writer.close();
+        assertEquals("[[2.0]]", string.toString());
+    }
+
+    /**
+     * Test that output only reaches the underlying writer on flush, and that
+     * output larger than the buffer, including strings longer than it, is
+     * written in order.
+     */
+    public void testBuffering() throws IOException {
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            longString.append((char) ('a' + i % 26));
+        }
+        StringWriter string = new StringWriter();
+        JsonWriter writer = new JsonWriter(string);
+        writer.beginArray();
+        writer.value("x");
+        assertEquals("", string.toString());
+        writer.flush();
+        assertEquals("[\"x\"", string.toString());
+
+        StringBuilder expected = new StringBuilder("[\"x\"");
+        for (int i = 0; i < 3000; i++) {
+            writer.value(i);
+            expected.append(',').append(i);
+        }
+        writer.value(longString.toString());
+        expected.append(",\"").append(longString).append('"');
+        writer.endArray();
+        writer.close();
+        assertEquals(expected.append(']').toString(), string.toString());
+    }
+
+    /**
+     * Test that UTF-8 output is what {@link String#getBytes} encodes, for
+     * text longer than the buffer and with supplementary and unpaired
+     * surrogate characters.
+     */
+    public void testUtf8Stream() throws IOException {
+        String text = new String(new int[] {'a', 0xe9, 0x4e2d, 0x1f600, 'z'}, 0, 5)
+                + (char) 0xd800 + "b" + (char) 0xdc00;
+        StringBuilder expected = new StringBuilder("[");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(bytes);
+        writer.beginArray();
+        for (int i = 0; i < 3000; i++) {
+            writer.value(text);
+            expected.append(i == 0 ? "\"" : ",\"").append(text).append('"');
+        }
+        writer.endArray();
+        writer.close();
+        expected.append(']');
+        assertEquals(new String(expected.toString().getBytes("UTF-8"), "ISO-8859-1"),
+                new String(bytes.toByteArray(), "ISO-8859-1"));
+    }
+}
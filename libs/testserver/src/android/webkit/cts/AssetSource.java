@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Source of the files served under {@link CtsTestServer#ASSET_PREFIX}. On a device these are the
+ * assets of the test package, on a host they can be the files of a directory.
+ */
+public interface AssetSource {
+    /**
+     * Open the asset at the given path, which is relative to the asset root.
+     * @throws IOException if there is no such asset
+     */
+    InputStream open(String path) throws IOException;
+}
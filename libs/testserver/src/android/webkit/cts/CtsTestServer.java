@@ -28,12 +28,16 @@ import org.apache.http.NameValuePair;
 import org.apache.http.RequestLine;
 import org.apache.http.StatusLine;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.DefaultHttpServerConnection;
 import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreProtocolPNames;
@@ -50,14 +54,20 @@ import android.webkit.MimeTypeMap;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.KeyManagementException;
@@ -65,6 +75,7 @@ import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.HashMap;
@@ -107,12 +118,16 @@ public class CtsTestServer {
     public static final String APPCACHE_MANIFEST_PATH = "/appcache.manifest";
     public static final String REDIRECT_PREFIX = "/redirect";
     public static final String DELAY_PREFIX = "/delayed";
+    public static final String CHUNKED_PREFIX = "/chunked";
+    public static final String THROTTLE_PREFIX = "/throttled";
     public static final String BINARY_PREFIX = "/binary";
     public static final String COOKIE_PREFIX = "/cookie";
     public static final String AUTH_PREFIX = "/auth";
     public static final String SHUTDOWN_PREFIX = "/shutdown";
     public static final String NOLENGTH_POSTFIX = "nolength";
     public static final int DELAY_MILLIS = 2000;
+    // interval in which a throttled response sends its share of bytes per second
+    private static final int THROTTLE_INTERVAL_MILLIS = 100;
 
     public static final String AUTH_REALM = "Android CTS";
     public static final String AUTH_USER = "cts";
@@ -124,11 +139,14 @@ public class CtsTestServer {
     public static final String MESSAGE_403 = "403 forbidden";
     public static final String MESSAGE_404 = "404 not found";
 
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     private static Hashtable<Integer, String> sReasons;
 
     private ServerThread mServerThread;
+    private HttpServerEngine mEngine;
     private String mServerUri;
-    private AssetManager mAssets;
+    private AssetSource mAssetSource;
     private Context mContext;
     private Resources mResources;
     private boolean mSsl;
@@ -155,6 +173,8 @@ public class CtsTestServer {
             sReasons.put(HttpStatus.SC_NOT_FOUND, "Not Found");
             sReasons.put(HttpStatus.SC_FORBIDDEN, "Forbidden");
             sReasons.put(HttpStatus.SC_MOVED_TEMPORARILY, "Moved Temporarily");
+            sReasons.put(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+                    "Requested Range Not Satisfiable");
         }
         return sReasons.get(status);
     }
@@ -166,13 +186,42 @@ public class CtsTestServer {
      * @throws Exception
      */
     public CtsTestServer(Context context, boolean ssl) throws Exception {
+        this(context, ssl, null);
+    }
+
+    /**
+     * Create and start a local HTTP server instance.
+     * @param context The application context to use for fetching resources.
+     * @param ssl True if the server should be using secure sockets.
+     * @param assetSource Source of the files served under {@link #ASSET_PREFIX}, or null to
+     *        serve the assets of the context.
+     * @throws Exception
+     */
+    public CtsTestServer(Context context, boolean ssl, AssetSource assetSource)
+            throws Exception {
         mContext = context;
-        mAssets = mContext.getAssets();
+        if (assetSource == null) {
+            final AssetManager assets = mContext.getAssets();
+            assetSource = new AssetSource() {
+                @Override
+                public InputStream open(String path) throws IOException {
+                    return assets.open(path);
+                }
+            };
+        }
+        mAssetSource = assetSource;
         mResources = mContext.getResources();
         mSsl = ssl;
         mRequestEntities = new ArrayList<HttpEntity>();
         mMap = MimeTypeMap.getSingleton();
         mQueries = new Vector<String>();
+        if (!mSsl && !overridesHttpServerConnection()) {
+            // Plain HTTP is served by the selector based engine which keeps connections alive.
+            mEngine = new HttpServerEngine(new EngineHandler(), 0, 20);
+            mServerUri = "http://localhost:" + mEngine.getPort();
+            mEngine.start();
+            return;
+        }
         mServerThread = new ServerThread(this, mSsl);
         if (mSsl) {
             mServerUri = "https://localhost:" + mServerThread.mSocket.getLocalPort();
@@ -182,10 +231,33 @@ public class CtsTestServer {
         mServerThread.start();
     }
 
+    /**
+     * Subclasses providing their own connection need the blocking {@link ServerThread}.
+     */
+    private boolean overridesHttpServerConnection() {
+        for (Class<?> c = getClass(); c != CtsTestServer.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("createHttpServerConnection");
+                return true;
+            } catch (NoSuchMethodException e) {
+                // check the super class
+            }
+        }
+        return false;
+    }
+
     /**
      * Terminate the http server.
      */
     public void shutdown() {
+        if (mEngine != null) {
+            try {
+                mEngine.shutdown();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
         try {
             // Avoid a deadlock between two threads where one is trying to call
             // close() and the other one is calling accept() by sending a GET
@@ -298,6 +370,41 @@ public class CtsTestServer {
         return sb.toString();
     }
 
+    /**
+     * Return an absolute URL that refers to the given asset, which is sent with chunked transfer
+     * encoding at a fixed pace. This can be used to emulate a streaming server.
+     * @param path The path of the asset. See {@link AssetManager#open(String)}
+     * @param chunkSize The maximum number of bytes per chunk.
+     * @param intervalMillis The time between the starts of two chunks.
+     */
+    public String getChunkedAssetUrl(String path, int chunkSize, long intervalMillis) {
+        StringBuilder sb = new StringBuilder(getBaseUri());
+        sb.append(CHUNKED_PREFIX);
+        sb.append("/");
+        sb.append(chunkSize);
+        sb.append("/");
+        sb.append(intervalMillis);
+        sb.append(ASSET_PREFIX);
+        sb.append(path);
+        return sb.toString();
+    }
+
+    /**
+     * Return an absolute URL that refers to the given asset, which is sent with limited
+     * bandwidth. This can be used to emulate a slow network.
+     * @param path The path of the asset. See {@link AssetManager#open(String)}
+     * @param bytesPerSecond The bandwidth of the response.
+     */
+    public String getThrottledAssetUrl(String path, int bytesPerSecond) {
+        StringBuilder sb = new StringBuilder(getBaseUri());
+        sb.append(THROTTLE_PREFIX);
+        sb.append("/");
+        sb.append(bytesPerSecond);
+        sb.append(ASSET_PREFIX);
+        sb.append(path);
+        return sb.toString();
+    }
+
     /**
      * Return an absolute URL that refers to the given asset and is protected by
      * HTTP authentication.
@@ -469,10 +576,13 @@ public class CtsTestServer {
 
     /**
      * Generate a response to the given request.
+     * @param sleepForDelay True to sleep for {@link #DELAY_MILLIS} on delayed paths. Otherwise
+     *        the caller is responsible for delaying the response.
      * @throws InterruptedException
      * @throws IOException
      */
-    private HttpResponse getResponse(HttpRequest request) throws Exception {
+    private HttpResponse getResponse(HttpRequest request, boolean sleepForDelay)
+            throws Exception {
         RequestLine requestLine = request.getRequestLine();
         HttpResponse response = null;
         String uriString = requestLine.getUri();
@@ -493,20 +603,60 @@ public class CtsTestServer {
             }
         }
 
-        URI uri = URI.create(uriString);
+        URI uri = null;
+        try {
+            uri = new URI(uriString);
+        } catch (URISyntaxException e) {
+            Log.w(TAG, e);
+        }
+        if (uri == null || uri.getPath() == null) {
+            response = createResponse(HttpStatus.SC_BAD_REQUEST);
+            setDateHeaders(response);
+            return response;
+        }
         String path = uri.getPath();
         String query = uri.getQuery();
         if (path.equals(FAVICON_PATH)) {
             path = FAVICON_ASSET_PATH;
         }
         if (path.startsWith(DELAY_PREFIX)) {
-            try {
-                Thread.sleep(DELAY_MILLIS);
-            } catch (InterruptedException ignored) {
-                // ignore
+            if (sleepForDelay) {
+                try {
+                    Thread.sleep(DELAY_MILLIS);
+                } catch (InterruptedException ignored) {
+                    // ignore
+                }
             }
             path = path.substring(DELAY_PREFIX.length());
         }
+        // pacing of the response body, /chunked/<chunk size>/<interval>/... or
+        // /throttled/<bytes per second>/...
+        int paceBytes = 0;
+        long paceMillis = 0;
+        boolean chunked = false;
+        try {
+            if (path.startsWith(CHUNKED_PREFIX + "/")) {
+                String[] parts = path.split("/", 5);
+                paceBytes = Integer.parseInt(parts[2]);
+                paceMillis = Long.parseLong(parts[3]);
+                chunked = true;
+                path = "/" + parts[4];
+            } else if (path.startsWith(THROTTLE_PREFIX + "/")) {
+                String[] parts = path.split("/", 4);
+                long bytesPerSecond = Long.parseLong(parts[2]);
+                paceBytes = HttpServerEngine.getPaceBytes(bytesPerSecond,
+                        THROTTLE_INTERVAL_MILLIS);
+                paceMillis = THROTTLE_INTERVAL_MILLIS;
+                path = "/" + parts[3];
+            }
+        } catch (RuntimeException e) {
+            // malformed, return 404 at the end
+            Log.w(TAG, e);
+            path = "";
+        }
+        if (paceBytes <= 0 || paceMillis < 0) {
+            paceBytes = 0;
+        }
         if (path.startsWith(AUTH_PREFIX)) {
             // authentication required
             Header[] auth = request.getHeaders("Authorization");
@@ -536,11 +686,21 @@ public class CtsTestServer {
                     }
                 }
                 if (length > 0 && mimeType != null) {
-                    ByteArrayEntity entity = new ByteArrayEntity(new byte[length]);
-                    entity.setContentType(mimeType);
-                    response = createResponse(HttpStatus.SC_OK);
-                    response.setEntity(entity);
-                    response.addHeader("Content-Disposition", "attachment; filename=test.bin");
+                    long[] range = getRange(request, length);
+                    if (range != null && range.length == 0) {
+                        response = createRangeNotSatisfiableResponse(length);
+                    } else {
+                        response = createRangeResponse(range, length);
+                        long count = range == null ? length : range[1] - range[0] + 1;
+                        // zeros are generated while sending, large payloads are not buffered
+                        InputStreamEntity entity =
+                                new InputStreamEntity(new ZeroInputStream(count), count);
+                        entity.setContentType(mimeType);
+                        response.setEntity(entity);
+                        response.setHeader("Content-Length", Long.toString(count));
+                        response.addHeader("Content-Disposition",
+                                "attachment; filename=test.bin");
+                    }
                 } else {
                     // fall through, return 404 at the end
                 }
@@ -552,7 +712,9 @@ public class CtsTestServer {
             path = path.substring(ASSET_PREFIX.length());
             // request for an asset file
             try {
-                InputStream in;
+                InputStream in = null;
+                File file = null;
+                long length;
                 if (path.startsWith(RAW_PREFIX)) {
                   String resourceName = path.substring(RAW_PREFIX.length());
                   int id = mResources.getIdentifier(resourceName, "raw", mContext.getPackageName());
@@ -561,20 +723,45 @@ public class CtsTestServer {
                     throw new IOException();
                   }
                   in = mResources.openRawResource(id);
+                  length = in.available();
+                } else if (mAssetSource instanceof FileAssetSource) {
+                  // served straight from the file, without copying it through the heap
+                  file = ((FileAssetSource) mAssetSource).getFile(path);
+                  if (file == null) {
+                    throw new IOException();
+                  }
+                  length = file.length();
                 } else {
-                  in = mAssets.open(path);
+                  in = mAssetSource.open(path);
+                  length = in.available();
                 }
-                response = createResponse(HttpStatus.SC_OK);
-                InputStreamEntity entity = new InputStreamEntity(in, in.available());
-                String mimeType =
-                    mMap.getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(path));
-                if (mimeType == null) {
-                    mimeType = "text/html";
-                }
-                entity.setContentType(mimeType);
-                response.setEntity(entity);
-                if (query == null || !query.contains(NOLENGTH_POSTFIX)) {
-                    response.setHeader("Content-Length", "" + entity.getContentLength());
+                long[] range = getRange(request, length);
+                if (range != null && range.length == 0) {
+                    if (in != null) {
+                        in.close();
+                    }
+                    response = createRangeNotSatisfiableResponse(length);
+                } else {
+                    response = createRangeResponse(range, length);
+                    long start = range == null ? 0 : range[0];
+                    long count = range == null ? length : range[1] - range[0] + 1;
+                    AbstractHttpEntity entity;
+                    if (file != null) {
+                        entity = new FileRegionEntity(file, start, count);
+                    } else {
+                        skipFully(in, start);
+                        entity = new InputStreamEntity(in, count);
+                    }
+                    String mimeType =
+                        mMap.getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(path));
+                    if (mimeType == null) {
+                        mimeType = "text/html";
+                    }
+                    entity.setContentType(mimeType);
+                    response.setEntity(entity);
+                    if (query == null || !query.contains(NOLENGTH_POSTFIX)) {
+                        response.setHeader("Content-Length", "" + entity.getContentLength());
+                    }
                 }
             } catch (IOException e) {
                 response = null;
@@ -668,12 +855,97 @@ public class CtsTestServer {
         if (response == null) {
             response = createResponse(HttpStatus.SC_NOT_FOUND);
         }
+        if (paceBytes > 0 && response.getEntity() != null) {
+            response.setEntity(new PacedEntity(response.getEntity(), paceBytes, paceMillis,
+                    chunked));
+            if (chunked) {
+                response.removeHeaders("Content-Length");
+            }
+        }
         StatusLine sl = response.getStatusLine();
         Log.i(TAG, sl.getStatusCode() + "(" + sl.getReasonPhrase() + ")");
         setDateHeaders(response);
         return response;
     }
 
+    /**
+     * Parse a single byte range of the Range header. Multiple ranges are not supported and,
+     * as allowed by RFC 2616, answered with the whole entity.
+     * @return first and last byte of the range, null to send the whole entity, or an empty
+     *         array if the range cannot be satisfied
+     */
+    private static long[] getRange(HttpRequest request, long length) {
+        Header header = request.getFirstHeader("Range");
+        if (header == null) {
+            return null;
+        }
+        Matcher m = RANGE_PATTERN.matcher(header.getValue().trim());
+        if (!m.matches() || (m.group(1).length() == 0 && m.group(2).length() == 0)) {
+            return null;
+        }
+        try {
+            long first;
+            long last;
+            if (m.group(1).length() == 0) {
+                // suffix range, the last n bytes
+                long suffix = Long.parseLong(m.group(2));
+                if (suffix == 0) {
+                    return new long[0];
+                }
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(m.group(1));
+                last = m.group(2).length() == 0
+                        ? length - 1 : Math.min(Long.parseLong(m.group(2)), length - 1);
+                if (last < first && first < length) {
+                    return null;
+                }
+            }
+            if (first >= length) {
+                return new long[0];
+            }
+            return new long[] { first, last };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a 200 response, or a 206 response for the given range.
+     */
+    private static HttpResponse createRangeResponse(long[] range, long length) {
+        HttpResponse response;
+        if (range == null) {
+            response = createResponse(HttpStatus.SC_OK);
+        } else {
+            response = createResponse(HttpStatus.SC_PARTIAL_CONTENT);
+            response.addHeader("Content-Range",
+                    "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+        response.addHeader("Accept-Ranges", "bytes");
+        return response;
+    }
+
+    private static HttpResponse createRangeNotSatisfiableResponse(long length) {
+        HttpResponse response = createResponse(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        response.addHeader("Content-Range", "bytes */" + length);
+        return response;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Unexpected end of stream");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
     private void setDateHeaders(HttpResponse response) {
         long time = System.currentTimeMillis();
         synchronized (this) {
@@ -764,6 +1036,234 @@ public class CtsTestServer {
         return new DefaultHttpServerConnection();
     }
 
+    /**
+     * Entity for a region of a file. {@link HttpServerEngine} sends it without copying.
+     */
+    private static class FileRegionEntity extends AbstractHttpEntity {
+        private final File mFile;
+        private final long mOffset;
+        private final long mLength;
+
+        public FileRegionEntity(File file, long offset, long length) {
+            mFile = file;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mLength;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            FileInputStream in = new FileInputStream(mFile);
+            skipFully(in, mOffset);
+            return in;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream in = getContent();
+            try {
+                byte[] buffer = new byte[8192];
+                long remaining = mLength;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                out.flush();
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Sends the wrapped entity at a fixed pace. {@link HttpServerEngine} paces without blocking,
+     * {@link ServerThread} sleeps between the chunks and cannot use chunked encoding with its
+     * HTTP/1.0 responses.
+     */
+    private static class PacedEntity extends HttpEntityWrapper {
+        private final int mChunkSize;
+        private final long mIntervalMillis;
+        private final boolean mChunked;
+
+        public PacedEntity(HttpEntity entity, int chunkSize, long intervalMillis,
+                boolean chunked) {
+            super(entity);
+            mChunkSize = chunkSize;
+            mIntervalMillis = intervalMillis;
+            mChunked = chunked;
+        }
+
+        public HttpEntity getWrappedEntity() {
+            return wrappedEntity;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return mChunked;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mChunked ? -1 : super.getContentLength();
+        }
+
+        @Override
+        public void writeTo(final OutputStream out) throws IOException {
+            wrappedEntity.writeTo(new FilterOutputStream(out) {
+                private long mChunkLeft = mChunkSize;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        if (mChunkLeft == 0) {
+                            out.flush();
+                            try {
+                                Thread.sleep(mIntervalMillis);
+                            } catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                            mChunkLeft = mChunkSize;
+                        }
+                        int count = (int) Math.min(len, mChunkLeft);
+                        out.write(b, off, count);
+                        off += count;
+                        len -= count;
+                        mChunkLeft -= count;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stream of the given number of zero bytes.
+     */
+    private static class ZeroInputStream extends InputStream {
+        private long mRemaining;
+
+        public ZeroInputStream(long length) {
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            mRemaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, mRemaining);
+            Arrays.fill(b, off, off + count, (byte) 0);
+            mRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mRemaining);
+        }
+    }
+
+    /**
+     * Translates between {@link HttpServerEngine} messages and the HttpCore messages used by
+     * {@link #getResponse} and {@link #onPost}.
+     */
+    private class EngineHandler implements HttpServerEngine.Handler {
+        @Override
+        public HttpServerEngine.Response handle(HttpServerEngine.Request engineRequest)
+                throws Exception {
+            HttpVersion version = engineRequest.getVersion().equals("HTTP/1.1")
+                    ? HttpVersion.HTTP_1_1 : HttpVersion.HTTP_1_0;
+            HttpRequest request;
+            if (engineRequest.getBody() != null) {
+                BasicHttpEntityEnclosingRequest entityRequest =
+                        new BasicHttpEntityEnclosingRequest(engineRequest.getMethod(),
+                                engineRequest.getUri(), version);
+                entityRequest.setEntity(new ByteArrayEntity(engineRequest.getBody()));
+                request = entityRequest;
+            } else {
+                request = new BasicHttpRequest(engineRequest.getMethod(), engineRequest.getUri(),
+                        version);
+            }
+            for (String[] header : engineRequest.getHeaders()) {
+                request.addHeader(header[0], header[1]);
+            }
+
+            HttpResponse response = getResponse(request, false);
+
+            StatusLine statusLine = response.getStatusLine();
+            HttpServerEngine.Response engineResponse = new HttpServerEngine.Response(
+                    statusLine.getStatusCode(), statusLine.getReasonPhrase());
+            for (Header header : response.getAllHeaders()) {
+                engineResponse.addHeader(header.getName(), header.getValue());
+            }
+            // Like DefaultHttpServerConnection, only send the headers set on the response and
+            // not the entity's content type.
+            HttpEntity entity = response.getEntity();
+            if (entity instanceof PacedEntity) {
+                PacedEntity paced = (PacedEntity) entity;
+                engineResponse.setPacing(paced.mChunkSize, paced.mIntervalMillis);
+                engineResponse.setChunked(paced.isChunked());
+                entity = paced.getWrappedEntity();
+            }
+            if (entity == null) {
+                engineResponse.setBody(new byte[0]);
+            } else {
+                long length = entity.getContentLength();
+                Header contentLength = response.getFirstHeader("Content-Length");
+                if (contentLength != null) {
+                    length = Long.parseLong(contentLength.getValue());
+                } else if (!entity.isRepeatable() || entity instanceof FileRegionEntity) {
+                    // streamed entities without a Content-Length header stay unframed, in
+                    // memory ones get a length
+                    engineResponse.setChunked(true);
+                }
+                if (entity instanceof FileRegionEntity) {
+                    FileRegionEntity region = (FileRegionEntity) entity;
+                    engineResponse.setBody(region.mFile, region.mOffset, length);
+                } else {
+                    engineResponse.setBody(entity.getContent(), length);
+                }
+            }
+            // the engine only passes on valid request URIs
+            String path = URI.create(engineRequest.getUri()).getPath();
+            if (path != null && path.startsWith(DELAY_PREFIX)) {
+                engineResponse.setDelay(DELAY_MILLIS);
+            }
+            return engineResponse;
+        }
+    }
+
     private static class ServerThread extends Thread {
         private CtsTestServer mServer;
         private ServerSocket mSocket;
@@ -897,9 +1397,12 @@ public class CtsTestServer {
         private static boolean isShutdownRequest(HttpRequest request) {
             RequestLine requestLine = request.getRequestLine();
             String uriString = requestLine.getUri();
-            URI uri = URI.create(uriString);
-            String path = uri.getPath();
-            return path.equals(SHUTDOWN_PREFIX);
+            try {
+                return SHUTDOWN_PREFIX.equals(new URI(uriString).getPath());
+            } catch (URISyntaxException e) {
+                // answered with 400 by getResponse
+                return false;
+            }
         }
 
         private class HandleResponseTask implements Callable<Void> {
@@ -916,7 +1419,7 @@ public class CtsTestServer {
 
             @Override
             public Void call() throws Exception {
-                HttpResponse response = mServer.getResponse(mRequest);
+                HttpResponse response = mServer.getResponse(mRequest, true);
                 mConnection.sendResponseHeader(response);
                 mConnection.sendResponseEntity(response);
                 mConnection.close();
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link AssetSource} serving the files of a directory.
+ */
+public class FileAssetSource implements AssetSource {
+    private final File mRoot;
+
+    public FileAssetSource(File root) {
+        mRoot = root;
+    }
+
+    /**
+     * @return the file for the given asset path, or null if it is outside of the root directory
+     *         or not a regular file
+     */
+    public File getFile(String path) throws IOException {
+        File file = new File(mRoot, path);
+        String rootPath = mRoot.getCanonicalPath() + File.separator;
+        if (!file.getCanonicalPath().startsWith(rootPath) || !file.isFile()) {
+            return null;
+        }
+        return file;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        File file = getFile(path);
+        if (file == null) {
+            throw new FileNotFoundException(path);
+        }
+        return new FileInputStream(file);
+    }
+}
@@ -0,0 +1,1014 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.webkit.cts;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/1.1 server running all network I/O on one selector thread. Connections are kept alive
+ * and pipelined requests are answered in order. Requests are handled on a thread pool, so a
+ * handler may block, and responses can be delayed without holding a thread. Stream bodies are
+ * read on the pool as well, so a slow stream only holds up its own connection.
+ * <p/>
+ * It depends on nothing but the JDK, so it also runs on a host:
+ * HttpServerEngine &lt;directory&gt; [port] serves the files of a directory.
+ */
+public class HttpServerEngine {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_REQUEST_SIZE = 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+    /** pause before accepting again after accept failed, like when out of file descriptors */
+    private static final long ACCEPT_RETRY_MS = 100;
+
+    /**
+     * Creates the response for a request. Called on a pool thread.
+     */
+    public interface Handler {
+        Response handle(Request request) throws Exception;
+    }
+
+    public static class Request {
+        private final String mMethod;
+        private final String mUri;
+        private final String mVersion;
+        private final List<String[]> mHeaders;
+        private final byte[] mBody;
+
+        Request(String method, String uri, String version, List<String[]> headers,
+                byte[] body) {
+            mMethod = method;
+            mUri = uri;
+            mVersion = version;
+            mHeaders = headers;
+            mBody = body;
+        }
+
+        public String getMethod() {
+            return mMethod;
+        }
+
+        public String getUri() {
+            return mUri;
+        }
+
+        /**
+         * @return protocol version like "HTTP/1.1"
+         */
+        public String getVersion() {
+            return mVersion;
+        }
+
+        /**
+         * @return name and value of each header in request order
+         */
+        public List<String[]> getHeaders() {
+            return mHeaders;
+        }
+
+        /**
+         * @return value of the first header with the given name, or null
+         */
+        public String getHeader(String name) {
+            for (String[] header : mHeaders) {
+                if (header[0].equalsIgnoreCase(name)) {
+                    return header[1];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return request body, or null if there is none
+         */
+        public byte[] getBody() {
+            return mBody;
+        }
+
+        boolean isHttp11() {
+            return mVersion.equals("HTTP/1.1");
+        }
+    }
+
+    public static class Response {
+        private final int mStatus;
+        private final String mReason;
+        private final List<String[]> mHeaders = new ArrayList<String[]>();
+        private byte[] mBody;
+        private InputStream mStream;
+        private File mFile;
+        private long mFileOffset;
+        private long mLength = -1;
+        private long mDelayMs;
+        private boolean mChunked;
+        private int mPaceBytes;
+        private long mPaceIntervalMs;
+
+        /**
+         * @param reason reason phrase of the status line, may be null
+         */
+        public Response(int status, String reason) {
+            mStatus = status;
+            mReason = reason;
+        }
+
+        public void addHeader(String name, String value) {
+            mHeaders.add(new String[] { name, value });
+        }
+
+        public boolean hasHeader(String name) {
+            for (String[] header : mHeaders) {
+                if (header[0].equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void setBody(byte[] body) {
+            mBody = body;
+            mLength = body.length;
+        }
+
+        /**
+         * Set a body which is read from the stream while it is sent. The stream is closed
+         * afterwards.
+         * @param length number of bytes to send, or -1 to send the stream up to its end
+         */
+        public void setBody(InputStream stream, long length) {
+            mStream = stream;
+            mLength = length;
+        }
+
+        /**
+         * Set a body which is a region of a file. Unless it is chunked, the region is transferred
+         * to the socket without copying it through the heap.
+         */
+        public void setBody(File file, long offset, long length) {
+            mFile = file;
+            mFileOffset = offset;
+            mLength = length;
+        }
+
+        /**
+         * Send the response only after the given time. The delay does not block any thread.
+         */
+        public void setDelay(long delayMs) {
+            mDelayMs = delayMs;
+        }
+
+        /**
+         * Use chunked transfer encoding even if the length of the body is known. HTTP/1.0
+         * clients get a body terminated by closing the connection instead.
+         */
+        public void setChunked(boolean chunked) {
+            mChunked = chunked;
+        }
+
+        /**
+         * Send at most the given number of body bytes per interval. A chunked body is sent in
+         * chunks of at most that size. Waiting for the next interval does not block any thread.
+         */
+        public void setPacing(int bytes, long intervalMs) {
+            if (bytes <= 0 || intervalMs < 0) {
+                throw new IllegalArgumentException(bytes + " bytes per " + intervalMs + " ms");
+            }
+            mPaceBytes = bytes;
+            mPaceIntervalMs = intervalMs;
+        }
+    }
+
+    /**
+     * @return bytes to send per interval of the given length for a rate in bytes per second,
+     *         at least 1 and at most Integer.MAX_VALUE
+     */
+    public static int getPaceBytes(long bytesPerSecond, long intervalMs) {
+        if (intervalMs > 0 && bytesPerSecond > Long.MAX_VALUE / intervalMs) {
+            return Integer.MAX_VALUE;
+        }
+        long bytes = bytesPerSecond * intervalMs / 1000;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes));
+    }
+
+    private final Handler mHandler;
+    private final ServerSocketChannel mServerChannel;
+    private final Selector mSelector;
+    private final SelectionKey mServerKey;
+    private final ExecutorService mExecutor;
+    private final Thread mThread;
+    private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<Runnable>();
+    /** delayed responses and paced writes, only used on the selector thread */
+    private final PriorityQueue<ScheduledTask> mScheduled = new PriorityQueue<ScheduledTask>();
+    private final List<Connection> mConnections = new LinkedList<Connection>();
+    private volatile boolean mRunning = true;
+
+    /**
+     * Bind to the given port of all interfaces.
+     * @param port port to listen on, 0 to pick a free one
+     * @param handlerThreads number of threads running handlers
+     */
+    public HttpServerEngine(Handler handler, int port, int handlerThreads) throws IOException {
+        mHandler = handler;
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.socket().setReuseAddress(true);
+        mServerChannel.socket().bind(new InetSocketAddress(port));
+        mServerChannel.configureBlocking(false);
+        mSelector = Selector.open();
+        mServerKey = mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+        mExecutor = Executors.newFixedThreadPool(handlerThreads);
+        mThread = new Thread("HttpServerEngine") {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        };
+    }
+
+    public int getPort() {
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    public void start() {
+        mThread.start();
+    }
+
+    /**
+     * Stop accepting connections, close all connections and wait for running handlers.
+     */
+    public void shutdown() throws InterruptedException {
+        mRunning = false;
+        mSelector.wakeup();
+        mThread.join();
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(1L, TimeUnit.MINUTES);
+    }
+
+    private void runLoop() {
+        try {
+            while (mRunning) {
+                long timeout = 0;
+                ScheduledTask next = mScheduled.peek();
+                if (next != null) {
+                    timeout = Math.max(1, next.mTimeMs - System.currentTimeMillis());
+                }
+                mSelector.select(timeout);
+                Runnable task;
+                while ((task = mTasks.poll()) != null) {
+                    runTask(task);
+                }
+                long now = System.currentTimeMillis();
+                while (!mScheduled.isEmpty() && mScheduled.peek().mTimeMs <= now) {
+                    runTask(mScheduled.poll().mTask);
+                }
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (Throwable t) {
+                        connection.fail(t);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            System.err.println("HttpServerEngine failed: " + t);
+        } finally {
+            for (Connection connection : new ArrayList<Connection>(mConnections)) {
+                connection.close();
+            }
+            closeQuietly(mServerChannel);
+            closeQuietly(mSelector);
+        }
+    }
+
+    /**
+     * Run a task on the selector thread. A failing task only loses its own work, tasks which
+     * belong to a connection close it themselves.
+     */
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            System.err.println("HttpServerEngine task failed: " + t);
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = mServerChannel.accept();
+        } catch (Throwable t) {
+            // the connection stays pending, so retrying at once would spin
+            System.err.println("HttpServerEngine accept failed: " + t);
+            mServerKey.interestOps(0);
+            mScheduled.add(new ScheduledTask(System.currentTimeMillis() + ACCEPT_RETRY_MS,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mServerKey.isValid()) {
+                                mServerKey.interestOps(SelectionKey.OP_ACCEPT);
+                            }
+                        }
+                    }));
+            return;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.mKey = channel.register(mSelector, SelectionKey.OP_READ, connection);
+            mConnections.add(connection);
+        } catch (Throwable t) {
+            System.err.println("HttpServerEngine accept failed: " + t);
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * @return empty response with status 500, sent when a request could not be handled
+     */
+    private static Response createErrorResponse() {
+        Response response = new Response(500, "Internal Server Error");
+        response.setBody(new byte[0]);
+        return response;
+    }
+
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        final long mTimeMs;
+        final Runnable mTask;
+
+        ScheduledTask(long timeMs, Runnable task) {
+            mTimeMs = timeMs;
+            mTask = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask another) {
+            return mTimeMs < another.mTimeMs ? -1 : (mTimeMs == another.mTimeMs ? 0 : 1);
+        }
+    }
+
+    /**
+     * State of one connection. Only used on the selector thread.
+     */
+    private class Connection {
+        private final SocketChannel mChannel;
+        private SelectionKey mKey;
+        private ByteBuffer mIn = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final LinkedList<Request> mPending = new LinkedList<Request>();
+        /** a request is being handled or its response is being written */
+        private boolean mBusy;
+        private boolean mInputClosed;
+        private boolean mClosed;
+        /** the body stream is being read on the pool, which closes it if the connection is */
+        private boolean mReading;
+        /** response sent for the last pending request instead of calling the handler */
+        private Response mRejection;
+        /** the status line of the current response was queued for sending */
+        private boolean mResponding;
+
+        // response being written
+        private ByteBuffer mOut;
+        private InputStream mBodyStream;
+        private FileChannel mBodyFile;
+        private long mFilePosition;
+        /** body bytes still to send, -1 if the body is sent up to the end of the stream */
+        private long mBodyRemaining;
+        private boolean mChunked;
+        private boolean mKeepAlive;
+        private byte[] mStreamBuffer;
+        private int mPaceBytes;
+        private long mPaceIntervalMs;
+        /** bytes which may still be sent in the current interval */
+        private long mSegmentLeft;
+        private long mNextSegmentMs;
+
+        Connection(SocketChannel channel) {
+            mChannel = channel;
+        }
+
+        void onReadable() {
+            int read;
+            try {
+                if (!mIn.hasRemaining()) {
+                    if (mIn.capacity() >= MAX_REQUEST_SIZE) {
+                        close();
+                        return;
+                    }
+                    ByteBuffer bigger = ByteBuffer.allocate(mIn.capacity() * 2);
+                    mIn.flip();
+                    bigger.put(mIn);
+                    mIn = bigger;
+                }
+                read = mChannel.read(mIn);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                mInputClosed = true;
+                mKey.interestOps(mKey.interestOps() & ~SelectionKey.OP_READ);
+                if (!mBusy) {
+                    close();
+                }
+                return;
+            }
+            parseRequests();
+            dispatchNext();
+        }
+
+        /**
+         * Move the complete requests in the input buffer to the pending requests.
+         */
+        private void parseRequests() {
+            while (true) {
+                byte[] data = mIn.array();
+                int length = mIn.position();
+                int headerEnd = indexOf(data, length, HEADER_END);
+                if (headerEnd < 0) {
+                    return;
+                }
+                String head;
+                try {
+                    head = new String(data, 0, headerEnd, "ISO-8859-1");
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+                String[] lines = head.split("\r\n");
+                String[] requestLine = lines[0].split(" ");
+                if (requestLine.length != 3 || !isValidUri(requestLine[1])) {
+                    rejectAndClose(400, "Bad Request");
+                    return;
+                }
+                List<String[]> headers = new ArrayList<String[]>();
+                for (int i = 1; i < lines.length; i++) {
+                    int colon = lines[i].indexOf(':');
+                    if (colon > 0) {
+                        headers.add(new String[] {
+                                lines[i].substring(0, colon).trim(),
+                                lines[i].substring(colon + 1).trim() });
+                    }
+                }
+                Request request = new Request(requestLine[0], requestLine[1], requestLine[2],
+                        headers, null);
+                if (request.getHeader("Transfer-Encoding") != null) {
+                    // chunked request bodies are not needed by any test
+                    rejectAndClose(501, "Not Implemented");
+                    return;
+                }
+                int bodyStart = headerEnd + HEADER_END.length;
+                int bodyLength = 0;
+                String contentLength = request.getHeader("Content-Length");
+                if (contentLength != null) {
+                    try {
+                        bodyLength = Integer.parseInt(contentLength);
+                    } catch (NumberFormatException e) {
+                        bodyLength = -1;
+                    }
+                    if (bodyLength < 0 || bodyStart + bodyLength > MAX_REQUEST_SIZE) {
+                        rejectAndClose(400, "Bad Request");
+                        return;
+                    }
+                }
+                if (length < bodyStart + bodyLength) {
+                    return;
+                }
+                byte[] body = null;
+                if (contentLength != null) {
+                    body = new byte[bodyLength];
+                    System.arraycopy(data, bodyStart, body, 0, bodyLength);
+                }
+                mPending.add(new Request(requestLine[0], requestLine[1], requestLine[2],
+                        headers, body));
+                int consumed = bodyStart + bodyLength;
+                System.arraycopy(data, consumed, data, 0, length - consumed);
+                mIn.position(length - consumed);
+            }
+        }
+
+        private void rejectAndClose(int status, String reason) {
+            mInputClosed = true;
+            mKey.interestOps(mKey.interestOps() & ~SelectionKey.OP_READ);
+            Response response = new Response(status, reason);
+            response.setBody(new byte[0]);
+            mPending.add(new Request("GET", "/", "HTTP/1.0", new ArrayList<String[]>(), null));
+            // answered without running the handler once the earlier requests are done
+            mRejection = response;
+        }
+
+        /**
+         * Hand the next pending request to the handler if no request is in progress.
+         */
+        private void dispatchNext() {
+            if (mBusy || mClosed || mPending.isEmpty()) {
+                return;
+            }
+            mBusy = true;
+            final Request request = mPending.removeFirst();
+            if (mPending.isEmpty() && mRejection != null) {
+                respond(request, mRejection);
+                return;
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Response response;
+                    try {
+                        response = mHandler.handle(request);
+                    } catch (Throwable t) {
+                        System.err.println("HttpServerEngine handler failed: " + t);
+                        response = createErrorResponse();
+                    }
+                    if (response == null) {
+                        System.err.println("HttpServerEngine handler returned no response for "
+                                + request.getUri());
+                        response = createErrorResponse();
+                    }
+                    final Response result = response;
+                    mTasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (result.mDelayMs > 0) {
+                                mScheduled.add(new ScheduledTask(
+                                        System.currentTimeMillis() + result.mDelayMs,
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                respond(request, result);
+                                            }
+                                        }));
+                            } else {
+                                respond(request, result);
+                            }
+                        }
+                    });
+                    mSelector.wakeup();
+                }
+            });
+        }
+
+        /**
+         * Start the response, or answer 500 instead if that fails before anything was sent.
+         */
+        void respond(Request request, Response response) {
+            try {
+                startResponse(request, response);
+            } catch (Throwable t) {
+                if (mResponding || mClosed) {
+                    fail(t);
+                    return;
+                }
+                System.err.println("HttpServerEngine response failed: " + t);
+                closeQuietly(response.mStream);
+                startResponse(request, createErrorResponse());
+            }
+        }
+
+        void startResponse(Request request, Response response) {
+            if (mClosed) {
+                closeQuietly(response.mStream);
+                return;
+            }
+            String connectionHeader = request.getHeader("Connection");
+            if (request.isHttp11()) {
+                mKeepAlive = !"close".equalsIgnoreCase(connectionHeader);
+            } else {
+                mKeepAlive = "keep-alive".equalsIgnoreCase(connectionHeader);
+            }
+            if (mRejection != null && mPending.isEmpty()) {
+                mKeepAlive = false;
+            }
+            boolean head = request.getMethod().equals("HEAD");
+            boolean unframed = !head && (response.mLength < 0 || response.mChunked);
+            mChunked = false;
+            if (unframed) {
+                // the end of the body can only be told by chunks or by closing
+                if (request.isHttp11()) {
+                    mChunked = true;
+                } else {
+                    mKeepAlive = false;
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(request.isHttp11() ? "HTTP/1.1 " : "HTTP/1.0 ").append(response.mStatus)
+                    .append(' ');
+            if (response.mReason != null) {
+                sb.append(response.mReason);
+            }
+            sb.append("\r\n");
+            for (String[] header : response.mHeaders) {
+                sb.append(header[0]).append(": ").append(header[1]).append("\r\n");
+            }
+            if (response.mLength >= 0 && !unframed && !response.hasHeader("Content-Length")) {
+                sb.append("Content-Length: ").append(response.mLength).append("\r\n");
+            }
+            if (mChunked) {
+                sb.append("Transfer-Encoding: chunked\r\n");
+            }
+            if (!response.hasHeader("Connection")) {
+                sb.append("Connection: ").append(mKeepAlive ? "keep-alive" : "close")
+                        .append("\r\n");
+            }
+            sb.append("\r\n");
+            byte[] headerBytes;
+            try {
+                headerBytes = sb.toString().getBytes("ISO-8859-1");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+
+            mBodyStream = null;
+            mBodyFile = null;
+            mPaceBytes = response.mPaceBytes;
+            mPaceIntervalMs = response.mPaceIntervalMs;
+            mSegmentLeft = 0;
+            mNextSegmentMs = 0;
+            if (head) {
+                closeQuietly(response.mStream);
+                mOut = ByteBuffer.wrap(headerBytes);
+            } else if (response.mBody != null && !mChunked && mPaceBytes == 0) {
+                mOut = ByteBuffer.allocate(headerBytes.length + response.mBody.length);
+                mOut.put(headerBytes).put(response.mBody).flip();
+            } else {
+                mOut = ByteBuffer.wrap(headerBytes);
+                mBodyRemaining = response.mLength;
+                if (response.mFile != null) {
+                    try {
+                        mBodyFile = new FileInputStream(response.mFile).getChannel();
+                    } catch (IOException e) {
+                        System.err.println("HttpServerEngine cannot open " + response.mFile);
+                        close();
+                        return;
+                    }
+                    mFilePosition = response.mFileOffset;
+                } else if (response.mBody != null) {
+                    mBodyStream = new ByteArrayInputStream(response.mBody);
+                } else {
+                    mBodyStream = response.mStream;
+                }
+                int bufferSize = Math.max(STREAM_BUFFER_SIZE,
+                        Math.min(mPaceBytes, MAX_REQUEST_SIZE));
+                if (mStreamBuffer == null || mStreamBuffer.length < bufferSize) {
+                    mStreamBuffer = new byte[bufferSize];
+                }
+            }
+            mResponding = true;
+            onWritable();
+        }
+
+        void onWritable() {
+            try {
+                while (true) {
+                    if (mOut != null && mOut.hasRemaining()) {
+                        mChannel.write(mOut);
+                        if (mOut.hasRemaining()) {
+                            setWriteInterest(true);
+                            return;
+                        }
+                    }
+                    if (mBodyStream == null && mBodyFile == null) {
+                        break;
+                    }
+                    if (mBodyRemaining == 0) {
+                        finishBody();
+                        continue;
+                    }
+                    if (mSegmentLeft == 0) {
+                        long now = System.currentTimeMillis();
+                        if (now < mNextSegmentMs) {
+                            setWriteInterest(false);
+                            mScheduled.add(new ScheduledTask(mNextSegmentMs, mResume));
+                            return;
+                        }
+                        mSegmentLeft = mPaceBytes > 0 ? mPaceBytes : Long.MAX_VALUE;
+                        mNextSegmentMs = now + mPaceIntervalMs;
+                    }
+                    if (mBodyFile != null && !mChunked) {
+                        if (!transferFile()) {
+                            setWriteInterest(true);
+                            return;
+                        }
+                    } else if (!fillBuffer()) {
+                        setWriteInterest(false);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            setWriteInterest(false);
+            finishResponse();
+        }
+
+        /**
+         * Continue a paced body once its next interval has started.
+         */
+        private final Runnable mResume = new Runnable() {
+            @Override
+            public void run() {
+                if (!mClosed) {
+                    try {
+                        onWritable();
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }
+            }
+        };
+
+        /**
+         * Transfer the next part of the file region to the socket without copying.
+         * @return false if the socket cannot take more data now
+         */
+        private boolean transferFile() throws IOException {
+            long count = Math.min(mSegmentLeft, mBodyRemaining);
+            long sent = mBodyFile.transferTo(mFilePosition, count, mChannel);
+            if (sent == 0 && mFilePosition >= mBodyFile.size()) {
+                // the file is shorter than announced, the client has to notice
+                mKeepAlive = false;
+                finishBody();
+                return true;
+            }
+            mFilePosition += sent;
+            mBodyRemaining -= sent;
+            mSegmentLeft -= sent;
+            return sent > 0;
+        }
+
+        /**
+         * Read the next part of the body into mOut, framed as a chunk if needed.
+         * @return false if the body stream is read on the pool, which continues the response
+         */
+        private boolean fillBuffer() throws IOException {
+            int toRead = (int) Math.min(mStreamBuffer.length, mSegmentLeft);
+            if (mBodyRemaining >= 0) {
+                toRead = (int) Math.min(toRead, mBodyRemaining);
+            }
+            int read;
+            if (mBodyFile != null) {
+                read = mBodyFile.read(ByteBuffer.wrap(mStreamBuffer, 0, toRead), mFilePosition);
+                if (read > 0) {
+                    mFilePosition += read;
+                }
+            } else if (mBodyStream instanceof ByteArrayInputStream) {
+                read = mBodyStream.read(mStreamBuffer, 0, toRead);
+            } else {
+                readStream(toRead);
+                return false;
+            }
+            onBodyRead(read);
+            return true;
+        }
+
+        /**
+         * Read from the body stream on the pool, it may block.
+         */
+        private void readStream(final int toRead) {
+            mReading = true;
+            final InputStream stream = mBodyStream;
+            final byte[] buffer = mStreamBuffer;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int read;
+                    try {
+                        read = stream.read(buffer, 0, toRead);
+                    } catch (Throwable t) {
+                        read = -2;
+                    }
+                    final int result = read;
+                    mTasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            mReading = false;
+                            if (mClosed) {
+                                closeQuietly(stream);
+                                return;
+                            }
+                            if (result == -2) {
+                                close();
+                                return;
+                            }
+                            try {
+                                onBodyRead(result);
+                                onWritable();
+                            } catch (IOException e) {
+                                close();
+                            } catch (Throwable t) {
+                                fail(t);
+                            }
+                        }
+                    });
+                    mSelector.wakeup();
+                    if (!mRunning) {
+                        // the selector thread may be gone and not run the task
+                        closeQuietly(stream);
+                    }
+                }
+            });
+        }
+
+        private void onBodyRead(int read) throws IOException {
+            if (read < 0) {
+                if (mBodyRemaining > 0) {
+                    // the body was shorter than announced, the client has to notice
+                    mKeepAlive = false;
+                }
+                finishBody();
+                return;
+            }
+            if (mBodyRemaining > 0) {
+                mBodyRemaining -= read;
+            }
+            mSegmentLeft -= read;
+            if (mChunked) {
+                if (read == 0) {
+                    // an empty chunk would end the body
+                    mOut = null;
+                    return;
+                }
+                byte[] chunkHeader = (Integer.toHexString(read) + "\r\n").getBytes("ISO-8859-1");
+                mOut = ByteBuffer.allocate(chunkHeader.length + read + 2);
+                mOut.put(chunkHeader).put(mStreamBuffer, 0, read).put((byte) '\r')
+                        .put((byte) '\n').flip();
+            } else {
+                mOut = ByteBuffer.wrap(mStreamBuffer, 0, read);
+            }
+        }
+
+        private void finishBody() throws IOException {
+            closeQuietly(mBodyStream);
+            closeQuietly(mBodyFile);
+            mBodyStream = null;
+            mBodyFile = null;
+            mOut = mChunked ? ByteBuffer.wrap("0\r\n\r\n".getBytes("ISO-8859-1")) : null;
+        }
+
+        private void setWriteInterest(boolean write) {
+            int ops = mKey.interestOps();
+            mKey.interestOps(write ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+        }
+
+        private void finishResponse() {
+            mOut = null;
+            mResponding = false;
+            mBusy = false;
+            if (!mKeepAlive || (mInputClosed && mPending.isEmpty())) {
+                close();
+                return;
+            }
+            dispatchNext();
+        }
+
+        /**
+         * Close the connection after an unexpected failure, which leaves the others running.
+         */
+        void fail(Throwable t) {
+            System.err.println("HttpServerEngine connection failed: " + t);
+            close();
+        }
+
+        void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (!mReading) {
+                closeQuietly(mBodyStream);
+            }
+            closeQuietly(mBodyFile);
+            mBodyStream = null;
+            mBodyFile = null;
+            if (mKey != null) {
+                mKey.cancel();
+            }
+            closeQuietly(mChannel);
+            mConnections.remove(this);
+        }
+    }
+
+    /**
+     * @return true if the request target is a URI with a path, or "*"
+     */
+    private static boolean isValidUri(String target) {
+        if (target.equals("*")) {
+            return true;
+        }
+        try {
+            return new URI(target).getPath() != null;
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Serve the files of a directory until the process is killed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: HttpServerEngine <directory> [port]");
+            System.exit(1);
+        }
+        final FileAssetSource assets = new FileAssetSource(new File(args[0]));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        HttpServerEngine engine = new HttpServerEngine(new Handler() {
+            @Override
+            public Response handle(Request request) throws Exception {
+                String path = request.getUri();
+                int query = path.indexOf('?');
+                if (query >= 0) {
+                    path = path.substring(0, query);
+                }
+                File file = assets.getFile(path.substring(1));
+                if (file == null) {
+                    Response response = new Response(404, "Not Found");
+                    response.setBody(new byte[0]);
+                    return response;
+                }
+                Response response = new Response(200, "OK");
+                response.setBody(file, 0, file.length());
+                return response;
+            }
+        }, port, 4);
+        engine.start();
+        System.out.println("serving " + args[0] + " at http://localhost:" + engine.getPort() + "/");
+    }
+}
@@ -0,0 +1,30 @@
+# Copyright (C) 2013 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+LOCAL_PATH := $(call my-dir)
+
+include $(CLEAR_VARS)
+
+# the engine depends on nothing but the JDK and is tested on the host
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src) \
+    ../src/android/webkit/cts/AssetSource.java \
+    ../src/android/webkit/cts/FileAssetSource.java \
+    ../src/android/webkit/cts/HttpServerEngine.java
+
+LOCAL_MODULE := ctstestserver-hosttests
+LOCAL_MODULE_TAGS := optional
+LOCAL_JAVA_LIBRARIES := junit
+
+include $(BUILD_HOST_JAVA_LIBRARY)
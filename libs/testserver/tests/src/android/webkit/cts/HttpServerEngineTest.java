@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.webkit.cts;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit tests for {@link HttpServerEngine}, running on a host.
+ */
+public class HttpServerEngineTest extends TestCase {
+    private static final int BODY_SIZE = 1024 * 1024;
+
+    private HttpServerEngine mEngine;
+    private volatile int mPaceBytes;
+    private volatile long mPaceIntervalMs;
+    /** released to end the body of /blocking */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mEngine = new HttpServerEngine(new HttpServerEngine.Handler() {
+            @Override
+            public HttpServerEngine.Response handle(HttpServerEngine.Request request)
+                    throws IOException {
+                HttpServerEngine.Response response = new HttpServerEngine.Response(200, "OK");
+                String uri = request.getUri();
+                if (uri.equals("/blocking")) {
+                    response.setBody(new InputStream() {
+                        @Override
+                        public int read() throws IOException {
+                            try {
+                                mRelease.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e.toString());
+                            }
+                            return -1;
+                        }
+                    }, -1);
+                    return response;
+                }
+                if (uri.equals("/error")) {
+                    throw new OutOfMemoryError("test");
+                }
+                if (uri.equals("/null")) {
+                    return null;
+                }
+                if (uri.startsWith("/echo/")) {
+                    response.setBody(uri.getBytes("ISO-8859-1"));
+                    return response;
+                }
+                byte[] body = new byte[BODY_SIZE];
+                Arrays.fill(body, (byte) 'x');
+                response.setBody(body);
+                if (mPaceBytes > 0) {
+                    response.setPacing(mPaceBytes, mPaceIntervalMs);
+                }
+                return response;
+            }
+        }, 0, 4);
+        mEngine.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRelease.countDown();
+        mEngine.shutdown();
+        super.tearDown();
+    }
+
+    public void testGetPaceBytes() {
+        assertEquals(1000, HttpServerEngine.getPaceBytes(10000, 100));
+        assertEquals(1, HttpServerEngine.getPaceBytes(5, 100));
+        assertEquals(1, HttpServerEngine.getPaceBytes(-5, 100));
+        // more than 21 MB/s overflowed the int product
+        assertEquals(3000000, HttpServerEngine.getPaceBytes(30000000, 100));
+        assertEquals(300000000, HttpServerEngine.getPaceBytes(3000000000L, 100));
+        assertEquals(Integer.MAX_VALUE, HttpServerEngine.getPaceBytes(100000000000L, 100));
+        assertEquals(Integer.MAX_VALUE, HttpServerEngine.getPaceBytes(Long.MAX_VALUE, 100));
+    }
+
+    /**
+     * Test that a body throttled to a high rate, as by /throttled/30000000/..., is sent in one
+     * interval and not one byte per interval.
+     */
+    public void testPacing_highRate() throws Exception {
+        mPaceBytes = HttpServerEngine.getPaceBytes(30000000, 100);
+        mPaceIntervalMs = 100;
+        long start = System.currentTimeMillis();
+        String response = get("/");
+        assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertEquals(BODY_SIZE, getBody(response).length());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    /**
+     * Test that a slow rate spreads the body over the intervals.
+     */
+    public void testPacing_lowRate() throws Exception {
+        mPaceBytes = BODY_SIZE / 3;
+        mPaceIntervalMs = 100;
+        long start = System.currentTimeMillis();
+        String response = get("/");
+        assertEquals(BODY_SIZE, getBody(response).length());
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    /**
+     * Test that pipelined requests on a kept alive connection are answered in order.
+     */
+    public void testPipelining() throws Exception {
+        String response = send("GET /echo/a HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                + "GET /echo/b HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        int first = response.indexOf("/echo/a");
+        int second = response.indexOf("HTTP/1.1 200 OK", first);
+        assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(response, first > 0 && second > first);
+        assertTrue(response, response.indexOf("/echo/b") > second);
+        assertTrue(response, response.contains("Connection: keep-alive\r\n"));
+    }
+
+    /**
+     * Test that a body stream which blocks does not hold up other connections.
+     */
+    public void testBlockingStream() throws Exception {
+        Socket socket = new Socket("localhost", mEngine.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(
+                    "GET /blocking HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes("ISO-8859-1"));
+            InputStream in = socket.getInputStream();
+            // the headers are sent before the body is read
+            assertEquals('H', in.read());
+
+            long start = System.currentTimeMillis();
+            assertTrue(get("/echo/other").endsWith("/echo/other"));
+            assertTrue(System.currentTimeMillis() - start < 5000);
+
+            mRelease.countDown();
+            assertTrue(readAll(in).endsWith("\r\n0\r\n\r\n"));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Test that a handler which throws an Error or returns no response is answered with 500,
+     * and that the server keeps running.
+     */
+    public void testHandlerFailure() throws Exception {
+        for (String uri : new String[] { "/error", "/null" }) {
+            String response = get(uri);
+            assertTrue(uri + ": " + response,
+                    response.startsWith("HTTP/1.1 500 Internal Server Error\r\n"));
+        }
+        assertTrue(get("/echo/after").endsWith("/echo/after"));
+    }
+
+    /**
+     * Test that a request with an illegal URI is answered with 400 and not passed to the
+     * handler.
+     */
+    public void testBadUri() throws Exception {
+        for (String uri : new String[] { "/%zz", "/a|b", "mailto:a@b" }) {
+            String response = get(uri);
+            assertTrue(uri + ": " + response,
+                    response.startsWith("HTTP/1.0 400 Bad Request\r\n"));
+        }
+    }
+
+    /**
+     * Send a request which closes the connection and read the whole response.
+     */
+    private String get(String uri) throws IOException {
+        return send("GET " + uri + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+    }
+
+    private String send(String request) throws IOException {
+        Socket socket = new Socket("localhost", mEngine.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(request.getBytes("ISO-8859-1"));
+            out.flush();
+            return readAll(socket.getInputStream());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            response.write(buffer, 0, read);
+        }
+        return response.toString("ISO-8859-1");
+    }
+
+    private static String getBody(String response) {
+        return response.substring(response.indexOf("\r\n\r\n") + 4);
+    }
+}
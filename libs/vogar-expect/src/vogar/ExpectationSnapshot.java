@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import com.android.json.stream.JsonReader;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import vogar.util.IoUtils;
+import vogar.util.Log;
+
+/**
+ * The entries of one expectations file as read from its JSON, before they are
+ * filtered by mode and added to an {@link ExpectationStore}.
+ *
+ * <p>Snapshots are cached in memory by the SHA-1 of the file content. They are
+ * also stored in the directory named by the {@code vogar.expectations.cacheDir}
+ * system property if it is set, so that an unchanged file is parsed once
+ * rather than by every tool invocation. A stored snapshot is only used if it
+ * records the SHA-1 of the content it was parsed from.
+ */
+final class ExpectationSnapshot {
+    static final String CACHE_DIR_PROPERTY = "vogar.expectations.cacheDir";
+    static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
+
+    private static final int CACHE_MAGIC = 0x76657870; // "vexp"
+    private static final int CACHE_VERSION = 2;
+    private static final int MAX_MEMORY_CACHE_SIZE = 32;
+
+    private static final Map<String, ExpectationSnapshot> sMemoryCache =
+            new LinkedHashMap<String, ExpectationSnapshot>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ExpectationSnapshot> eldest) {
+                    return size() > MAX_MEMORY_CACHE_SIZE;
+                }
+            };
+
+    /**
+     * One expectation of the file. Immutable, so it is shared by all stores
+     * loading the same file; each store creates its own {@link Expectation}.
+     */
+    static final class Entry {
+        final boolean failure;
+        final Set<String> names;
+        final Result result;
+        /** the regular expression for the output, or null to match any output */
+        final String regex;
+        final Set<String> tags;
+        final String description;
+        final long bug;
+        /** the modes this applies to, or null for all modes */
+        final Set<ModeId> modes;
+
+        private Pattern pattern;
+        private String literal;
+        private boolean literalFound = false;
+
+        Entry(boolean failure, Set<String> names, Result result, String regex, Set<String> tags,
+                String description, long bug, Set<ModeId> modes) {
+            this.failure = failure;
+            this.names = Collections.unmodifiableSet(names);
+            this.result = result;
+            this.regex = regex;
+            this.tags = Collections.unmodifiableSet(tags);
+            this.description = description;
+            this.bug = bug;
+            this.modes = modes == null ? null : Collections.unmodifiableSet(modes);
+        }
+
+        boolean appliesTo(ModeId mode) {
+            return modes == null || modes.contains(mode);
+        }
+
+        /**
+         * Returns the compiled pattern, which is compiled once per process.
+         */
+        synchronized Pattern getPattern() {
+            if (pattern == null) {
+                pattern = regex == null
+                        ? Expectation.MATCH_ALL_PATTERN
+                        : Pattern.compile(regex, PATTERN_FLAGS);
+            }
+            return pattern;
+        }
+
+        /**
+         * Returns a literal that all output matching the pattern contains, or
+         * null if there is none.
+         */
+        synchronized String getRequiredLiteral() {
+            if (!literalFound) {
+                literal = regex == null ? null : OutputPrefilter.requiredLiteral(regex);
+                literalFound = true;
+            }
+            return literal;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private ExpectationSnapshot(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the entries of {@code file}, from a cache if the content did not
+     * change since it was last parsed.
+     */
+    static ExpectationSnapshot load(File file) throws IOException {
+        byte[] content = readFully(file);
+        String digest = sha1(content);
+        synchronized (sMemoryCache) {
+            ExpectationSnapshot cached = sMemoryCache.get(digest);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        File cacheFile = getCacheFile(digest);
+        ExpectationSnapshot snapshot = cacheFile != null ? readCache(cacheFile, digest) : null;
+        if (snapshot == null) {
+            snapshot = parse(content);
+            if (cacheFile != null) {
+                writeCache(cacheFile, digest, snapshot);
+            }
+        } else {
+            Log.verbose("using cached expectations for " + file);
+        }
+        synchronized (sMemoryCache) {
+            sMemoryCache.put(digest, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets the snapshots cached in memory. Exposed for unit testing.
+     */
+    static void clearMemoryCache() {
+        synchronized (sMemoryCache) {
+            sMemoryCache.clear();
+        }
+    }
+
+    static ExpectationSnapshot parse(byte[] content) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(content));
+        try {
+            reader.setLenient(true);
+            reader.setInternNames(true);
+            reader.beginArray();
+            while (reader.hasNext()) {
+                entries.add(readEntry(reader));
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+        return new ExpectationSnapshot(entries);
+    }
+
+    private static Entry readEntry(JsonReader reader) throws IOException {
+        boolean isFailure = false;
+        Result result = Result.SUCCESS;
+        String regex = null;
+        Set<String> names = new LinkedHashSet<String>();
+        Set<String> tags = new LinkedHashSet<String>();
+        Set<ModeId> modes = null;
+        String description = "";
+        long buganizerBug = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("result")) {
+                result = Result.valueOf(reader.nextString());
+            } else if (name.equals("name")) {
+                names.add(reader.nextString());
+            } else if (name.equals("names")) {
+                readStrings(reader, names);
+            } else if (name.equals("failure")) {
+                isFailure = true;
+                names.add(reader.nextString());
+            } else if (name.equals("pattern")) {
+                regex = reader.nextString();
+            } else if (name.equals("substring")) {
+                regex = ".*" + Pattern.quote(reader.nextString()) + ".*";
+            } else if (name.equals("tags")) {
+                readStrings(reader, tags);
+            } else if (name.equals("description")) {
+                Iterable<String> split = Splitter.on("\n").omitEmptyStrings().trimResults().split(reader.nextString());
+                description = Joiner.on("\n").join(split);
+            } else if (name.equals("bug")) {
+                buganizerBug = reader.nextLong();
+            } else if (name.equals("modes")) {
+                modes = readModes(reader);
+            } else {
+                Log.warn("Unhandled name in expectations file: " + name);
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("Missing 'name' or 'failure' key in " + reader);
+        }
+        Entry entry = new Entry(isFailure, names, result, regex, tags, description, buganizerBug,
+                modes);
+        // compile now to report bad patterns while parsing
+        entry.getPattern();
+        return entry;
+    }
+
+    private static void readStrings(JsonReader reader, Set<String> output) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            output.add(reader.nextString());
+        }
+        reader.endArray();
+    }
+
+    private static Set<ModeId> readModes(JsonReader reader) throws IOException {
+        Set<ModeId> result = new LinkedHashSet<ModeId>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            result.add(ModeId.valueOf(reader.nextString().toUpperCase()));
+        }
+        reader.endArray();
+        return result;
+    }
+
+    private static File getCacheFile(String digest) {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.length() == 0) {
+            return null;
+        }
+        return new File(dir, digest + ".bin");
+    }
+
+    /**
+     * Returns the snapshot stored in {@code cacheFile}, or null if there is
+     * none, it cannot be read or it was not parsed from content with the SHA-1
+     * {@code digest}.
+     */
+    private static ExpectationSnapshot readCache(File cacheFile, String digest) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION
+                    || !readString(in).equals(digest)) {
+                return null;
+            }
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<Entry>(count);
+            for (int i = 0; i < count; i++) {
+                boolean failure = in.readBoolean();
+                Set<String> names = readStringSet(in);
+                Result result = Result.valueOf(readString(in));
+                String regex = in.readBoolean() ? readString(in) : null;
+                Set<String> tags = readStringSet(in);
+                String description = readString(in);
+                long bug = in.readLong();
+                Set<ModeId> modes = null;
+                if (in.readBoolean()) {
+                    modes = new LinkedHashSet<ModeId>();
+                    for (String mode : readStringSet(in)) {
+                        modes.add(ModeId.valueOf(mode));
+                    }
+                }
+                entries.add(new Entry(failure, names, result, regex, tags, description, bug,
+                        modes));
+            }
+            return new ExpectationSnapshot(entries);
+        } catch (IOException e) {
+            Log.verbose("ignoring unreadable expectations cache " + cacheFile + ": " + e);
+            return null;
+        } catch (IllegalArgumentException e) {
+            Log.verbose("ignoring unreadable expectations cache " + cacheFile + ": " + e);
+            return null;
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores {@code snapshot} in {@code cacheFile}. Failing to do so only
+     * costs parsing again next time, so errors are logged and ignored.
+     */
+    private static void writeCache(File cacheFile, String digest,
+            ExpectationSnapshot snapshot) {
+        File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.verbose("cannot create expectations cache directory " + dir);
+            return;
+        }
+        // write to a temporary file first so that readers never see a partial file
+        File tmpFile = new File(dir, cacheFile.getName() + "." + System.nanoTime() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            writeString(out, digest);
+            out.writeInt(snapshot.entries.size());
+            for (Entry entry : snapshot.entries) {
+                out.writeBoolean(entry.failure);
+                writeStrings(out, entry.names);
+                writeString(out, entry.result.name());
+                out.writeBoolean(entry.regex != null);
+                if (entry.regex != null) {
+                    writeString(out, entry.regex);
+                }
+                writeStrings(out, entry.tags);
+                writeString(out, entry.description);
+                out.writeLong(entry.bug);
+                out.writeBoolean(entry.modes != null);
+                if (entry.modes != null) {
+                    List<String> modes = new ArrayList<String>();
+                    for (ModeId mode : entry.modes) {
+                        modes.add(mode.name());
+                    }
+                    writeStrings(out, modes);
+                }
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(cacheFile)) {
+                Log.verbose("cannot rename expectations cache " + tmpFile + " to " + cacheFile);
+            }
+        } catch (IOException e) {
+            Log.verbose("cannot write expectations cache " + cacheFile + ": " + e);
+        } finally {
+            IoUtils.closeQuietly(out);
+            tmpFile.delete();
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Iterable<String> strings)
+            throws IOException {
+        List<String> list = new ArrayList<String>();
+        for (String string : strings) {
+            list.add(string);
+        }
+        out.writeInt(list.size());
+        for (String string : list) {
+            writeString(out, string);
+        }
+    }
+
+    private static Set<String> readStringSet(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> result = new LinkedHashSet<String>();
+        for (int i = 0; i < count; i++) {
+            result.add(readString(in));
+        }
+        return result;
+    }
+
+    /**
+     * Writes {@code string} as UTF-8 with an int length, since {@link
+     * DataOutputStream#writeUTF} is limited to 64KB.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] content = new byte[(int) file.length()];
+            int read = 0;
+            while (read < content.length) {
+                int r = in.read(content, read, content.length - read);
+                if (r < 0) {
+                    throw new IOException("unexpected end of " + file);
+                }
+                read += r;
+            }
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String sha1(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest(content)) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+}
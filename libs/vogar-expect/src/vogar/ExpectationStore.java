@@ -16,22 +16,16 @@
 
 package vogar;
 
-//import com.google.caliper.internal.gson.stream.JsonReader;
-
-import com.android.json.stream.JsonReader;
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 import vogar.commands.Command;
 import vogar.util.Log;
 
@@ -50,10 +44,29 @@ import vogar.util.Log;
  * expectation, the outcome expectation will be returned.
  */
 public final class ExpectationStore {
-    private static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
     private final Map<String, Expectation> outcomes = new LinkedHashMap<String, Expectation>();
     private final Map<String, Expectation> failures = new LinkedHashMap<String, Expectation>();
 
+    /** the outcome expectations, for looking up names with their packages */
+    private final NameTrie outcomeTrie = new NameTrie();
+
+    /** the failure expectations in the order they were added */
+    private final List<FailureMatcher> failureMatchers = new ArrayList<FailureMatcher>();
+
+    /**
+     * A failure expectation with a literal that matching output must contain.
+     */
+    private static final class FailureMatcher {
+        final Expectation expectation;
+        /** null if any output may match */
+        final String requiredLiteral;
+
+        FailureMatcher(Expectation expectation, String requiredLiteral) {
+            this.expectation = expectation;
+            this.requiredLiteral = requiredLiteral;
+        }
+    }
+
     private ExpectationStore() {}
 
     /**
@@ -61,7 +74,7 @@ public final class ExpectationStore {
      * returns a value for all names, even if no explicit expectation was set.
      */
     public Expectation get(String name) {
-        Expectation byName = getByNameOrPackage(name);
+        Expectation byName = outcomeTrie.getByNameOrPackage(name);
         return byName != null ? byName : Expectation.SUCCESS;
     }
 
@@ -80,32 +93,20 @@ public final class ExpectationStore {
             return exactNameMatch;
         }
 
-        for (Map.Entry<String, Expectation> entry : failures.entrySet()) {
-            if (entry.getValue().matches(outcome)) {
-                return entry.getValue();
+        String output = outcome.getOutput();
+        for (FailureMatcher matcher : failureMatchers) {
+            if (matcher.requiredLiteral != null && !output.contains(matcher.requiredLiteral)) {
+                continue;
+            }
+            if (matcher.expectation.matches(outcome)) {
+                return matcher.expectation;
             }
         }
 
-        Expectation byName = getByNameOrPackage(outcome.getName());
+        Expectation byName = outcomeTrie.getByNameOrPackage(outcome.getName());
         return byName != null ? byName : Expectation.SUCCESS;
     }
 
-    private Expectation getByNameOrPackage(String name) {
-        while (true) {
-            Expectation expectation = outcomes.get(name);
-            if (expectation != null) {
-                return expectation;
-            }
-
-            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
-            if (dotOrHash == -1) {
-                return null;
-            }
-
-            name = name.substring(0, dotOrHash);
-        }
-    }
-
     public static ExpectationStore parse(Set<File> expectationFiles, ModeId mode) throws IOException {
         ExpectationStore result = new ExpectationStore();
         for (File f : expectationFiles) {
@@ -116,105 +117,41 @@ public final class ExpectationStore {
         return result;
     }
 
+    /**
+     * Adds the expectations of {@code expectationsFile} that apply to {@code
+     * mode}. The file is only parsed if it changed since it was last parsed;
+     * see {@link ExpectationSnapshot}.
+     */
     public void parse(File expectationsFile, ModeId mode) throws IOException {
         Log.verbose("loading expectations file " + expectationsFile);
 
-        int count = 0;
-        JsonReader reader = null;
-        try {
-            reader = new JsonReader(new FileReader(expectationsFile));
-            reader.setLenient(true);
-            reader.beginArray();
-            while (reader.hasNext()) {
-                readExpectation(reader, mode);
-                count++;
-            }
-            reader.endArray();
-
-            Log.verbose("loaded " + count + " expectations from " + expectationsFile);
-        } finally {
-            if (reader != null) {
-                reader.close();
-            }
-        }
-    }
-
-    private void readExpectation(JsonReader reader, ModeId mode) throws IOException {
-        boolean isFailure = false;
-        Result result = Result.SUCCESS;
-        Pattern pattern = Expectation.MATCH_ALL_PATTERN;
-        Set<String> names = new LinkedHashSet<String>();
-        Set<String> tags = new LinkedHashSet<String>();
-        Set<ModeId> modes = null;
-        String description = "";
-        long buganizerBug = -1;
-
-        reader.beginObject();
-        while (reader.hasNext()) {
-            String name = reader.nextName();
-            if (name.equals("result")) {
-                result = Result.valueOf(reader.nextString());
-            } else if (name.equals("name")) {
-                names.add(reader.nextString());
-            } else if (name.equals("names")) {
-                readStrings(reader, names);
-            } else if (name.equals("failure")) {
-                isFailure = true;
-                names.add(reader.nextString());
-            } else if (name.equals("pattern")) {
-                pattern = Pattern.compile(reader.nextString(), PATTERN_FLAGS);
-            } else if (name.equals("substring")) {
-                pattern = Pattern.compile(".*" + Pattern.quote(reader.nextString()) + ".*", PATTERN_FLAGS);
-            } else if (name.equals("tags")) {
-                readStrings(reader, tags);
-            } else if (name.equals("description")) {
-                Iterable<String> split = Splitter.on("\n").omitEmptyStrings().trimResults().split(reader.nextString());
-                description = Joiner.on("\n").join(split);
-            } else if (name.equals("bug")) {
-                buganizerBug = reader.nextLong();
-            } else if (name.equals("modes")) {
-                modes = readModes(reader);
-            } else {
-                Log.warn("Unhandled name in expectations file: " + name);
-                reader.skipValue();
+        List<ExpectationSnapshot.Entry> entries =
+                ExpectationSnapshot.load(expectationsFile).getEntries();
+        for (ExpectationSnapshot.Entry entry : entries) {
+            if (entry.appliesTo(mode)) {
+                add(entry);
             }
         }
-        reader.endObject();
 
-        if (names.isEmpty()) {
-            throw new IllegalArgumentException("Missing 'name' or 'failure' key in " + reader);
-        }
-        if (modes != null && !modes.contains(mode)) {
-            return;
-        }
+        Log.verbose("loaded " + entries.size() + " expectations from " + expectationsFile);
+    }
 
-        Expectation expectation = new Expectation(result, pattern, tags, description, buganizerBug);
-        Map<String, Expectation> map = isFailure ? failures : outcomes;
-        for (String name : names) {
+    private void add(ExpectationSnapshot.Entry entry) {
+        Expectation expectation = new Expectation(entry.result, entry.getPattern(), entry.tags,
+                entry.description, entry.bug);
+        Map<String, Expectation> map = entry.failure ? failures : outcomes;
+        for (String name : entry.names) {
             if (map.put(name, expectation) != null) {
                 throw new IllegalArgumentException("Duplicate expectations for " + name);
             }
+            if (entry.failure) {
+                failureMatchers.add(new FailureMatcher(expectation, entry.getRequiredLiteral()));
+            } else {
+                outcomeTrie.put(name, expectation);
+            }
         }
     }
 
-    private void readStrings(JsonReader reader, Set<String> output) throws IOException {
-        reader.beginArray();
-        while (reader.hasNext()) {
-            output.add(reader.nextString());
-        }
-        reader.endArray();
-    }
-
-    private Set<ModeId> readModes(JsonReader reader) throws IOException {
-        Set<ModeId> result = new LinkedHashSet<ModeId>();
-        reader.beginArray();
-        while (reader.hasNext()) {
-            result.add(ModeId.valueOf(reader.nextString().toUpperCase()));
-        }
-        reader.endArray();
-        return result;
-    }
-
     /**
      * Sets the bugIsOpen status on all expectations by querying an external bug
      * tracker.
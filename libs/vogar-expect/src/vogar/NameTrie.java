@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+/**
+ * Maps outcome names and their packages or classes to expectations. Finding
+ * the expectation for the longest matching prefix of a name walks the name
+ * once and does not create substrings.
+ */
+final class NameTrie {
+
+    private static final class Node {
+        /** child keys, sorted; parallel to children */
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        Expectation expectation;
+
+        Node child(char c) {
+            int index = indexOf(c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrAddChild(char c) {
+            int index = indexOf(c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1,
+                    children.length - insert);
+            Node node = new Node();
+            newKeys[insert] = c;
+            newChildren[insert] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+
+        /**
+         * Binary search like {@link java.util.Arrays#binarySearch(char[], char)}.
+         */
+        private int indexOf(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < c) {
+                    low = mid + 1;
+                } else if (keys[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Sets the expectation for {@code name}, replacing any previous one.
+     */
+    void put(String name, Expectation expectation) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.getOrAddChild(name.charAt(i));
+        }
+        node.expectation = expectation;
+    }
+
+    /**
+     * Returns the expectation for {@code name}, or else for the longest prefix
+     * of it that ends before a '.' or '#', or null if there is none. For
+     * example "java.util.List#add" matches "java.util.List#add",
+     * "java.util.List", "java.util" and "java", in that order of preference.
+     */
+    Expectation getByNameOrPackage(String name) {
+        Expectation result = null;
+        Node node = root;
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if ((c == '.' || c == '#') && node.expectation != null) {
+                result = node.expectation;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return result;
+            }
+        }
+        return node.expectation != null ? node.expectation : result;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+/**
+ * Finds a literal string that any output matched by a failure pattern must
+ * contain. Checking for that literal with {@link String#contains} rules out
+ * most outcomes without running the regular expression.
+ */
+final class OutputPrefilter {
+
+    private OutputPrefilter() {}
+
+    /**
+     * Returns the longest literal that every match of {@code regex} contains,
+     * or null if none could be found. This only understands plain characters,
+     * escaped characters and {@code \Q...\E} quotes outside of groups, which
+     * covers the patterns in expectation files, and gives up on alternations,
+     * embedded flags and escapes which take an argument, such as {@code \x41},
+     * {@code \0101} or {@code \p{Lu}}, since their argument is not literal
+     * text.
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("(?")) {
+            return null; // embedded flags such as (?i) change how literals match
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        int length = regex.length();
+        while (i < length) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    String quoted = end == -1 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                    i = end == -1 ? length : end + 2;
+                    if (depth == 0) {
+                        run.append(quoted);
+                        if (isQuantifier(regex, i)) {
+                            removeLast(run);
+                            longest = longer(longest, run);
+                            run.setLength(0);
+                        }
+                    }
+                    continue;
+                }
+                if (hasArgument(escaped)) {
+                    return null;
+                }
+                i += 2;
+                if (depth == 0 && !Character.isLetterOrDigit(escaped)) {
+                    run.append(escaped);
+                    if (isQuantifier(regex, i)) {
+                        removeLast(run);
+                        longest = longer(longest, run);
+                        run.setLength(0);
+                    }
+                } else {
+                    // a character class like \d or a back reference
+                    longest = longer(longest, run);
+                    run.setLength(0);
+                }
+                continue;
+            }
+            switch (c) {
+                case '|':
+                    return null;
+                case '(':
+                    depth++;
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                case '[':
+                    i = skipCharacterClass(regex, i);
+                    break;
+                case '{':
+                    int end = regex.indexOf('}', i);
+                    i = end == -1 ? length : end;
+                    break;
+                case '.':
+                case '*':
+                case '+':
+                case '?':
+                case '}':
+                case '^':
+                case '$':
+                    break;
+                default:
+                    if (depth == 0) {
+                        run.append(c);
+                        if (isQuantifier(regex, i + 1)) {
+                            removeLast(run);
+                        } else {
+                            i++;
+                            continue;
+                        }
+                    }
+            }
+            longest = longer(longest, run);
+            run.setLength(0);
+            i++;
+        }
+        longest = longer(longest, run);
+        return longest.length() > 0 ? longest : null;
+    }
+
+    /**
+     * Returns true if {@code \escaped} is followed by characters which belong
+     * to the escape: hexadecimal, octal, control, named and Unicode property
+     * escapes, and back references.
+     */
+    private static boolean hasArgument(char escaped) {
+        return escaped == 'x' || escaped == 'u' || escaped == 'c' || escaped == 'N'
+                || escaped == 'k' || escaped == 'p' || escaped == 'P'
+                || (escaped >= '0' && escaped <= '9');
+    }
+
+    /**
+     * Returns true if the character at {@code index} makes the preceding
+     * character optional or repeated.
+     */
+    private static boolean isQuantifier(String regex, int index) {
+        if (index >= regex.length()) {
+            return false;
+        }
+        char c = regex.charAt(index);
+        return c == '*' || c == '?' || c == '{' || c == '+';
+    }
+
+    /**
+     * Returns the index of the ']' closing the class starting at {@code start}.
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++; // a leading ']' is a literal
+        }
+        int nesting = 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                nesting++;
+            } else if (c == ']') {
+                if (nesting == 0) {
+                    return i;
+                }
+                nesting--;
+            }
+        }
+        return regex.length();
+    }
+
+    private static void removeLast(StringBuilder run) {
+        if (run.length() > 0) {
+            run.setLength(run.length() - 1);
+        }
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        return run.length() > longest.length() ? run.toString() : longest;
+    }
+}
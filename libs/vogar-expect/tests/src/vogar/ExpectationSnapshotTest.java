@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ExpectationSnapshot}.
+ */
+public class ExpectationSnapshotTest extends TestCase {
+
+    private File mDir;
+    private File mCacheDir;
+    private String mCacheDirProperty;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("expectations", "");
+        mDir.delete();
+        mDir.mkdirs();
+        mCacheDir = new File(mDir, "cache");
+        mCacheDirProperty = System.getProperty(ExpectationSnapshot.CACHE_DIR_PROPERTY);
+        ExpectationSnapshot.clearMemoryCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mCacheDirProperty == null) {
+            System.clearProperty(ExpectationSnapshot.CACHE_DIR_PROPERTY);
+        } else {
+            System.setProperty(ExpectationSnapshot.CACHE_DIR_PROPERTY, mCacheDirProperty);
+        }
+        ExpectationSnapshot.clearMemoryCache();
+        for (File dir : new File[] { mCacheDir, mDir }) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testLoad_noCacheDir() throws Exception {
+        System.clearProperty(ExpectationSnapshot.CACHE_DIR_PROPERTY);
+        ExpectationSnapshot snapshot = ExpectationSnapshot.load(
+                write("a.txt", "[{ name: \"a.A#test\", result: EXEC_FAILED }]"));
+        assertEquals(1, snapshot.getEntries().size());
+        assertEquals(Result.EXEC_FAILED, snapshot.getEntries().get(0).result);
+        assertFalse(mCacheDir.exists());
+    }
+
+    public void testLoad_cached() throws Exception {
+        System.setProperty(ExpectationSnapshot.CACHE_DIR_PROPERTY, mCacheDir.getPath());
+        File file = write("a.txt", "[{ failure: \"a.A#test\", pattern: \".*timeout.*\" }]");
+        ExpectationSnapshot.load(file);
+        assertEquals(1, mCacheDir.listFiles().length);
+
+        ExpectationSnapshot.clearMemoryCache();
+        ExpectationSnapshot.Entry entry = ExpectationSnapshot.load(file).getEntries().get(0);
+        assertTrue(entry.failure);
+        assertEquals(".*timeout.*", entry.regex);
+        assertEquals(new HashSet<String>(Arrays.asList("a.A#test")), entry.names);
+    }
+
+    /**
+     * Test that a stored snapshot of other content is not used, even under the name of this one.
+     */
+    public void testLoad_cacheOfOtherContent() throws Exception {
+        System.setProperty(ExpectationSnapshot.CACHE_DIR_PROPERTY, mCacheDir.getPath());
+        ExpectationSnapshot.load(write("a.txt", "[{ name: \"a.A#test\" }]"));
+        File cacheA = mCacheDir.listFiles()[0];
+        ExpectationSnapshot.load(write("b.txt", "[{ name: \"b.B#test\" }]"));
+        File cacheB = null;
+        for (File file : mCacheDir.listFiles()) {
+            if (!file.equals(cacheA)) {
+                cacheB = file;
+            }
+        }
+        assertNotNull(cacheB);
+        assertTrue(cacheB.delete());
+        assertTrue(cacheA.renameTo(cacheB));
+
+        ExpectationSnapshot.clearMemoryCache();
+        Set<String> names = ExpectationSnapshot.load(new File(mDir, "b.txt"))
+                .getEntries().get(0).names;
+        assertEquals(new HashSet<String>(Arrays.asList("b.B#test")), names);
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(mDir, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link OutputPrefilter}.
+ */
+public class OutputPrefilterTest extends TestCase {
+
+    public void testPlainText() {
+        assertEquals("expected 3 but was 4",
+                OutputPrefilter.requiredLiteral(".*expected 3 but was 4.*"));
+    }
+
+    public void testEscapedCharacters() {
+        assertEquals("java.lang.NullPointerException",
+                OutputPrefilter.requiredLiteral(".*java\\.lang\\.NullPointerException.*"));
+        assertEquals("a.b*c", OutputPrefilter.requiredLiteral("x*\\Qa.b*c\\E.*"));
+    }
+
+    public void testLongestRun() {
+        assertEquals(" failures in ",
+                OutputPrefilter.requiredLiteral(".*\\d+ failures in \\d+.*"));
+        assertEquals("Error", OutputPrefilter.requiredLiteral("[abc]+Error(foo)?x?"));
+        // the optional character is not part of the literal
+        assertEquals("colo", OutputPrefilter.requiredLiteral(".*colou?r.*"));
+    }
+
+    public void testNoLiteral() {
+        assertNull(OutputPrefilter.requiredLiteral(".*"));
+        assertNull(OutputPrefilter.requiredLiteral(".*(foo|bar).*"));
+        assertNull(OutputPrefilter.requiredLiteral("(?i).*timeout.*"));
+    }
+
+    /**
+     * Test that escapes with arguments are not taken as literal text.
+     */
+    public void testEscapesWithArguments() {
+        assertNull(OutputPrefilter.requiredLiteral(".*\\x41BC.*"));
+        assertNull(OutputPrefilter.requiredLiteral(".*caf\\u00e9s.*"));
+        assertNull(OutputPrefilter.requiredLiteral(".*\\0101.*"));
+        assertNull(OutputPrefilter.requiredLiteral(".*\\cJfoo.*"));
+        assertNull(OutputPrefilter.requiredLiteral(".*\\N{LATIN SMALL LETTER E}x.*"));
+        assertNull(OutputPrefilter.requiredLiteral(".*\\pLfoo.*"));
+        assertNull(OutputPrefilter.requiredLiteral("(a)\\1bc.*"));
+    }
+
+    /**
+     * Test that output matching each pattern contains its literal, so the
+     * prefilter never skips a match.
+     */
+    public void testMatchesContainLiteral() {
+        String[][] cases = {
+            { ".*\\x41BC.*", "xABCx" },
+            { ".*caf\\u00e9s.*", "des caf\u00e9s" },
+            { ".*\\0101.*", "A" },
+            { ".*colou?r.*", "color" },
+            { ".*\\d+ failures in \\d+.*", "3 failures in 5 tests" },
+            { "x*\\Qa.b*c\\E.*", "a.b*c" },
+            { ".*java\\.lang\\.NullPointerException.*", "java.lang.NullPointerException" },
+        };
+        for (String[] testCase : cases) {
+            String regex = testCase[0];
+            String output = testCase[1];
+            assertTrue(regex, Pattern.compile(regex, ExpectationSnapshot.PATTERN_FLAGS)
+                    .matcher(output).matches());
+            String literal = OutputPrefilter.requiredLiteral(regex);
+            assertTrue(regex + " requires " + literal,
+                    literal == null || output.contains(literal));
+        }
+    }
+}
@@ -22,7 +22,9 @@ LOCAL_JAVA_LIBRARIES := android.test.runner
 
 LOCAL_STATIC_JAVA_LIBRARIES := ctsdeviceutil ctstestrunner ctstestserver
 
-LOCAL_SRC_FILES := $(call all-java-files-under, src)
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src) \
+    $(call all-java-files-under, ../../../../libs/json/src)
 
 LOCAL_PACKAGE_NAME := CtsDeviceBrowserBench
 
@@ -30,4 +32,29 @@ LOCAL_SDK_VERSION := 16
 
 include $(BUILD_CTS_PACKAGE)
 
+# the benchmark server, which also runs on a host
+include $(CLEAR_VARS)
+
+LOCAL_MODULE_TAGS := optional
+
+LOCAL_SRC_FILES := \
+    src/com/android/cts/browser/BenchmarkServer.java \
+    src/com/android/cts/browser/ScoreAggregator.java \
+    ../../../../libs/testserver/src/android/webkit/cts/AssetSource.java \
+    ../../../../libs/testserver/src/android/webkit/cts/FileAssetSource.java \
+    ../../../../libs/testserver/src/android/webkit/cts/HttpServerEngine.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ReportLog.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ReportCodec.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/MetricRecord.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ResultType.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ResultUnit.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/Stat.java \
+    $(call all-java-files-under, ../../../../libs/json/src)
+
+LOCAL_JAVA_LIBRARIES := junit
+
+LOCAL_MODULE := cts-browserbench-host
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
 include $(call all-makefiles-under,$(LOCAL_PATH))
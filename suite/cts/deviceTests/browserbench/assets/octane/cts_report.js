@@ -16,16 +16,23 @@
 
 /**
  *  Utility to report benchmarking result via HTTP POST
- *  to CTS.
+ *  to CTS. The result is posted as JSON, with the index of the run
+ *  taken from the "run" parameter of the page URL.
  * @param msg message to add to the report
  * @param score resulting score
  * @param isFinal true if this is the last / final score
  */
 function CtsReport(msg, score, isFinal)
 {
-    req = new XMLHttpRequest();
-    req.open("POST", "cts_report.html?final=" + (isFinal ? "1" : "0") +
-             "&score=" + score + "&message=" + msg, false);
-    req.send(null)
+    var run = /[?&]run=(\d+)/.exec(window.location.search);
+    var result = {
+        run: run ? parseInt(run[1], 10) : 0,
+        name: String(msg),
+        score: Number(score),
+        "final": isFinal ? true : false
+    };
+    var req = new XMLHttpRequest();
+    req.open("POST", "/results", false);
+    req.setRequestHeader("Content-Type", "application/json");
+    req.send(JSON.stringify(result));
 }
-
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.browser;
+
+import android.webkit.cts.AssetSource;
+import android.webkit.cts.FileAssetSource;
+import android.webkit.cts.HttpServerEngine;
+import android.webkit.cts.HttpServerEngine.Request;
+import android.webkit.cts.HttpServerEngine.Response;
+
+import com.android.cts.util.Stat;
+import com.android.json.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the pages of a browser benchmark suite like Octane, and collects the scores posted by
+ * the pages.
+ * <p/>
+ * Assets are read once and kept in memory with an ETag, so that repeated runs are answered from
+ * memory or from the browser cache. Text assets are compressed once, or taken from a .gz file
+ * next to them, and sent compressed to clients accepting gzip.
+ * <p/>
+ * Scores are posted to {@link #RESULTS_PATH} as a JSON object like
+ * {"run": 0, "name": "Richards", "score": 1234.5, "final": false}, where run is the value of
+ * the {@link #RUN_PARAMETER} parameter of the page URL.
+ * <p/>
+ * It depends on nothing but the JDK, so it also runs on a host:
+ * BenchmarkServer &lt;directory&gt; &lt;start page&gt; [runs] [port] serves a suite and prints
+ * the aggregated scores once all runs posted their final score.
+ */
+public class BenchmarkServer implements HttpServerEngine.Handler {
+    public static final String RESULTS_PATH = "/results";
+    public static final String RUN_PARAMETER = "run";
+    private static final int HANDLER_THREADS = 4;
+    private static final int CACHE_MAX_AGE_S = 60 * 60;
+    private static final String GZIP_SUFFIX = ".gz";
+    /** extension, content type, and whether it is worth compressing */
+    private static final String[][] CONTENT_TYPES = {
+        { ".html", "text/html", "true" },
+        { ".js", "application/javascript", "true" },
+        { ".css", "text/css", "true" },
+        { ".json", "application/json", "true" },
+        { ".txt", "text/plain", "true" },
+        { ".png", "image/png", "false" },
+        { ".ico", "image/x-icon", "false" },
+    };
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * Receives the scores posted by the pages.
+     */
+    public interface Listener {
+        /**
+         * Called on a server thread for each score posted.
+         * @param userAgent user agent of the browser which posted the score, may be null
+         */
+        void onScore(int run, String name, double score, boolean isFinal, String userAgent);
+    }
+
+    /** An asset as it is sent. */
+    private static class Asset {
+        final String mType;
+        final byte[] mContent;
+        /** compressed content, or null if it is not worth compressing */
+        final byte[] mGzipped;
+        final String mETag;
+
+        Asset(String type, byte[] content, byte[] gzipped) {
+            mType = type;
+            mContent = content;
+            mGzipped = gzipped;
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            mETag = "\"" + Long.toHexString(crc.getValue()) + "-"
+                    + Integer.toHexString(content.length) + "\"";
+        }
+    }
+
+    private final AssetSource mAssets;
+    private final Listener mListener;
+    private final ConcurrentHashMap<String, Asset> mAssetCache =
+            new ConcurrentHashMap<String, Asset>();
+    private HttpServerEngine mEngine;
+
+    public BenchmarkServer(AssetSource assets, Listener listener) {
+        mAssets = assets;
+        mListener = listener;
+    }
+
+    /**
+     * @param port port to listen on, 0 to pick a free one
+     */
+    public void start(int port) throws IOException {
+        mEngine = new HttpServerEngine(this, port, HANDLER_THREADS);
+        mEngine.start();
+    }
+
+    public void shutdown() throws InterruptedException {
+        if (mEngine != null) {
+            mEngine.shutdown();
+            mEngine = null;
+        }
+    }
+
+    public int getPort() {
+        return mEngine.getPort();
+    }
+
+    /**
+     * @param path path of the start page relative to the asset root
+     * @return URL of the start page for the given run, which starts the benchmark automatically
+     */
+    public String getRunUrl(String path, int run) {
+        return "http://localhost:" + getPort() + "/" + path + "?auto=1&" + RUN_PARAMETER + "="
+                + run;
+    }
+
+    @Override
+    public Response handle(Request request) throws Exception {
+        String path = request.getUri();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String method = request.getMethod();
+        if (method.equals("POST") && path.equals(RESULTS_PATH)) {
+            return handleResult(request);
+        }
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return createResponse(405, "Method Not Allowed");
+        }
+        Asset asset = getAsset(path.startsWith("/") ? path.substring(1) : path);
+        if (asset == null) {
+            return createResponse(404, "Not Found");
+        }
+        Response response;
+        if (asset.mETag.equals(request.getHeader("If-None-Match"))) {
+            response = createResponse(304, "Not Modified");
+        } else {
+            response = new Response(200, "OK");
+            response.addHeader("Content-Type", asset.mType);
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (asset.mGzipped != null && acceptEncoding != null
+                    && acceptEncoding.contains("gzip")) {
+                response.addHeader("Content-Encoding", "gzip");
+                response.setBody(asset.mGzipped);
+            } else {
+                response.setBody(asset.mContent);
+            }
+        }
+        response.addHeader("ETag", asset.mETag);
+        response.addHeader("Cache-Control", "max-age=" + CACHE_MAX_AGE_S);
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    private Response handleResult(Request request) throws IOException {
+        byte[] body = request.getBody();
+        if (body == null) {
+            return createResponse(400, "Bad Request");
+        }
+        int run = -1;
+        String name = null;
+        double score = Double.NaN;
+        boolean isFinal = false;
+        JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(body), "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (key.equals("run")) {
+                    run = reader.nextInt();
+                } else if (key.equals("name")) {
+                    name = reader.nextString();
+                } else if (key.equals("score")) {
+                    score = reader.nextDouble();
+                } else if (key.equals("final")) {
+                    isFinal = reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException e) {
+            // malformed JSON, or a value of the wrong type
+            return createResponse(400, "Bad Request");
+        } catch (NumberFormatException e) {
+            return createResponse(400, "Bad Request");
+        } catch (IllegalStateException e) {
+            return createResponse(400, "Bad Request");
+        } finally {
+            reader.close();
+        }
+        if (run < 0 || name == null || Double.isNaN(score)) {
+            return createResponse(400, "Bad Request");
+        }
+        mListener.onScore(run, name, score, isFinal, request.getHeader("User-Agent"));
+        return createResponse(204, "No Content");
+    }
+
+    /**
+     * @return the asset at the given path, read and compressed on the first request, or null if
+     *         there is none
+     */
+    private Asset getAsset(String path) throws IOException {
+        Asset asset = mAssetCache.get(path);
+        if (asset != null) {
+            return asset;
+        }
+        byte[] content = read(path);
+        if (content == null) {
+            return null;
+        }
+        String type = DEFAULT_CONTENT_TYPE;
+        boolean compressible = false;
+        for (String[] contentType : CONTENT_TYPES) {
+            if (path.endsWith(contentType[0])) {
+                type = contentType[1];
+                compressible = Boolean.parseBoolean(contentType[2]);
+                break;
+            }
+        }
+        byte[] gzipped = null;
+        if (compressible) {
+            gzipped = read(path + GZIP_SUFFIX);
+            if (gzipped == null) {
+                gzipped = gzip(content);
+            }
+            if (gzipped.length >= content.length) {
+                gzipped = null;
+            }
+        }
+        asset = new Asset(type, content, gzipped);
+        // another thread may have loaded it meanwhile, both are the same
+        mAssetCache.put(path, asset);
+        return asset;
+    }
+
+    /**
+     * @return content of the asset, or null if there is none
+     */
+    private byte[] read(String path) throws IOException {
+        InputStream in;
+        try {
+            in = mAssets.open(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(content);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static Response createResponse(int status, String reason) {
+        Response response = new Response(status, reason);
+        response.setBody(new byte[0]);
+        return response;
+    }
+
+    /**
+     * Serve a suite until all runs posted their final score, then print the scores.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkServer <directory> <start page> [runs] [port]");
+            System.exit(1);
+        }
+        final int runs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        final ScoreAggregator aggregator = new ScoreAggregator(runs);
+        final CountDownLatch finished = new CountDownLatch(runs);
+        BenchmarkServer server = new BenchmarkServer(new FileAssetSource(new File(args[0])),
+                new Listener() {
+                    @Override
+                    public void onScore(int run, String name, double score, boolean isFinal,
+                            String userAgent) {
+                        System.out.println("run " + run + " " + name + ": " + score);
+                        aggregator.add(run, name, score, isFinal);
+                        if (isFinal) {
+                            finished.countDown();
+                        }
+                    }
+                });
+        server.start(port);
+        for (int i = 0; i < runs; i++) {
+            System.out.println(server.getRunUrl(args[1], i));
+        }
+        finished.await();
+        for (String name : aggregator.getNames()) {
+            Stat.StatResult stat = aggregator.getStat(name);
+            System.out.println(name + ": average " + stat.mAverage + " stddev " + stat.mStddev
+                    + " (" + aggregator.getRelativeStddev(name) + "%) over " + stat.mDataCount
+                    + " runs");
+        }
+        server.shutdown();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.browser;
+
+import com.android.cts.util.ReportLog;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+import com.android.cts.util.Stat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the scores of repeated benchmark runs. Each score is identified by its name and the
+ * index of the run which posted it. Thread safe.
+ */
+public class ScoreAggregator {
+    private final int mNumberRuns;
+    /** scores of each name in the order the names were first posted, NaN if not posted */
+    private final Map<String, double[]> mScores = new LinkedHashMap<String, double[]>();
+    private String mFinalName;
+
+    /**
+     * @param numberRuns number of runs, results of other runs are rejected
+     */
+    public ScoreAggregator(int numberRuns) {
+        mNumberRuns = numberRuns;
+    }
+
+    /**
+     * @param isFinal true for the final score of the benchmark. There is one final score, the
+     *        name of the first one posted is kept.
+     * @throws IllegalArgumentException if the run index is out of range
+     */
+    public synchronized void add(int run, String name, double score, boolean isFinal) {
+        if (run < 0 || run >= mNumberRuns) {
+            throw new IllegalArgumentException("run " + run + " out of " + mNumberRuns);
+        }
+        double[] scores = mScores.get(name);
+        if (scores == null) {
+            scores = new double[mNumberRuns];
+            Arrays.fill(scores, Double.NaN);
+            mScores.put(name, scores);
+        }
+        scores[run] = score;
+        if (isFinal && mFinalName == null) {
+            mFinalName = name;
+        }
+    }
+
+    /**
+     * @return names of the interim scores in the order they were first posted, then the name of
+     *         the final score if it was posted
+     */
+    public synchronized List<String> getNames() {
+        List<String> names = new ArrayList<String>(mScores.keySet());
+        if (mFinalName != null) {
+            names.remove(mFinalName);
+            names.add(mFinalName);
+        }
+        return names;
+    }
+
+    /**
+     * @return name of the final score, or null if it was not posted yet
+     */
+    public synchronized String getFinalName() {
+        return mFinalName;
+    }
+
+    /**
+     * @return score of each run, NaN for the runs which did not post it
+     */
+    public synchronized double[] getScores(String name) {
+        double[] scores = mScores.get(name);
+        return scores == null ? null : scores.clone();
+    }
+
+    /**
+     * @return statistics over the runs which posted the score, or null if none did
+     */
+    public synchronized Stat.StatResult getStat(String name) {
+        double[] scores = mScores.get(name);
+        if (scores == null) {
+            return null;
+        }
+        double[] posted = new double[scores.length];
+        int count = 0;
+        for (double score : scores) {
+            if (!Double.isNaN(score)) {
+                posted[count++] = score;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return Stat.getStat(Arrays.copyOf(posted, count));
+    }
+
+    /**
+     * @return standard deviation relative to the average in %, 0 for a single run
+     */
+    public synchronized double getRelativeStddev(String name) {
+        Stat.StatResult stat = getStat(name);
+        if (stat == null) {
+            return Double.NaN;
+        }
+        return stat.mAverage == 0.0 ? 0.0 : stat.mStddev / stat.mAverage * 100.0;
+    }
+
+    /**
+     * Report the scores of each run, and their variation. The average of the final score is the
+     * summary.
+     */
+    public synchronized void report(ReportLog log, ResultType typeNonFinal,
+            ResultUnit unitNonFinal, ResultType typeFinal, ResultUnit unitFinal) {
+        for (String name : getNames()) {
+            boolean isFinal = name.equals(mFinalName);
+            log.printArray(name, mScores.get(name), isFinal ? typeFinal : typeNonFinal,
+                    isFinal ? unitFinal : unitNonFinal);
+            log.printValue(name + " relative stddev %", getRelativeStddev(name),
+                    ResultType.LOWER_BETTER, ResultUnit.NONE);
+        }
+        if (mFinalName != null) {
+            Stat.StatResult stat = getStat(mFinalName);
+            log.printSummary(mFinalName, stat.mAverage, typeFinal, unitFinal);
+        }
+    }
+}
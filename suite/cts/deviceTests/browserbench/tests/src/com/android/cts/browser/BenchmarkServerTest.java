@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.browser;
+
+import android.webkit.cts.FileAssetSource;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Unit tests for {@link BenchmarkServer}, serving a temporary directory on a host.
+ */
+public class BenchmarkServerTest extends TestCase {
+    private static final String SCRIPT_PATH = "suite/run.js";
+    private static final String ICON_PATH = "suite/icon.png";
+
+    private File mRoot;
+    private String mScript;
+    private BenchmarkServer mServer;
+    private final List<String> mScores = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRoot = File.createTempFile("benchmark", "");
+        mRoot.delete();
+        new File(mRoot, "suite").mkdirs();
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            script.append("function f").append(i).append("() { return ").append(i).append("; }\n");
+        }
+        mScript = script.toString();
+        write(SCRIPT_PATH, mScript.getBytes("UTF-8"));
+        write(ICON_PATH, new byte[] { 1, 2, 3, 4 });
+        mServer = new BenchmarkServer(new FileAssetSource(mRoot),
+                new BenchmarkServer.Listener() {
+                    @Override
+                    public void onScore(int run, String name, double score, boolean isFinal,
+                            String userAgent) {
+                        synchronized (mScores) {
+                            mScores.add(run + " " + name + " " + score + " " + isFinal + " "
+                                    + userAgent);
+                        }
+                    }
+                });
+        mServer.start(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        for (File dir : new File[] { new File(mRoot, "suite"), mRoot }) {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testGetRunUrl() {
+        assertEquals("http://localhost:" + mServer.getPort() + "/suite/index.html?auto=1&run=3",
+                mServer.getRunUrl("suite/index.html", 3));
+    }
+
+    /**
+     * Test that text is sent compressed with caching headers, and revalidated with its ETag.
+     */
+    public void testGet_gzip() throws Exception {
+        HttpURLConnection connection = open("/" + SCRIPT_PATH + "?v=1");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        assertEquals("application/javascript", connection.getHeaderField("Content-Type"));
+        assertEquals("max-age=3600", connection.getHeaderField("Cache-Control"));
+        assertTrue(connection.getContentLength() < mScript.length());
+        assertEquals(mScript, new String(readAll(new GZIPInputStream(
+                connection.getInputStream())), "UTF-8"));
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+
+        connection = open("/" + SCRIPT_PATH);
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, connection.getResponseCode());
+        assertEquals(etag, connection.getHeaderField("ETag"));
+    }
+
+    /**
+     * Test that clients not accepting gzip and binary assets get the content as it is.
+     */
+    public void testGet_identity() throws Exception {
+        HttpURLConnection connection = open("/" + SCRIPT_PATH);
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        assertEquals(200, connection.getResponseCode());
+        assertNull(connection.getHeaderField("Content-Encoding"));
+        assertEquals(mScript, new String(readAll(connection.getInputStream()), "UTF-8"));
+
+        connection = open("/" + ICON_PATH);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals(200, connection.getResponseCode());
+        assertNull(connection.getHeaderField("Content-Encoding"));
+        assertEquals("image/png", connection.getHeaderField("Content-Type"));
+        assertEquals(4, readAll(connection.getInputStream()).length);
+    }
+
+    /**
+     * Test that a .gz file next to an asset is sent instead of compressing it.
+     */
+    public void testGet_precompressed() throws Exception {
+        String path = "suite/data.json";
+        byte[] content = new byte[1000];
+        write(path, content);
+        // not what gzip would give, so that it can be told apart
+        byte[] gzipped = new byte[] { 0x1f, (byte) 0x8b, 1, 2, 3 };
+        write(path + ".gz", gzipped);
+        HttpURLConnection connection = open("/" + path);
+        connection.setRequestProperty("Accept-Encoding", "deflate, gzip");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        assertEquals(gzipped.length, connection.getContentLength());
+    }
+
+    public void testGet_notFound() throws Exception {
+        assertEquals(404, open("/suite/missing.js").getResponseCode());
+    }
+
+    public void testPostResult() throws Exception {
+        assertEquals(204, post("{\"run\": 2, \"name\": \"Richards\", \"score\": 1234.5, "
+                + "\"final\": false, \"extra\": [1, 2]}"));
+        assertEquals(204, post("{\"name\": \"Octane Score\", \"run\": 0, \"score\": 10, "
+                + "\"final\": true}"));
+        assertEquals(2, mScores.size());
+        assertEquals("2 Richards 1234.5 false agent", mScores.get(0));
+        assertEquals("0 Octane Score 10.0 true agent", mScores.get(1));
+    }
+
+    public void testPostResult_invalid() throws Exception {
+        assertEquals(400, post("{\"run\": 0, \"score\": 1}"));
+        assertEquals(400, post("{\"run\": 0, \"name\": \"a\", \"score\": \"high\"}"));
+        assertEquals(400, post("run=0&name=a&score=1"));
+        assertEquals(0, mScores.size());
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        URL url = new URL("http://localhost:" + mServer.getPort() + path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private int post(String json) throws IOException {
+        HttpURLConnection connection = open(BenchmarkServer.RESULTS_PATH);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("User-Agent", "agent");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(json.getBytes("UTF-8"));
+        out.close();
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private void write(String path, byte[] content) throws IOException {
+        OutputStream out = new FileOutputStream(new File(mRoot, path));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.browser;
+
+import com.android.cts.util.Stat;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link ScoreAggregator}.
+ */
+public class ScoreAggregatorTest extends TestCase {
+
+    public void testAdd() {
+        ScoreAggregator aggregator = new ScoreAggregator(3);
+        aggregator.add(1, "Score", 30, true);
+        aggregator.add(0, "Richards", 10, false);
+        aggregator.add(0, "Score", 20, true);
+        aggregator.add(1, "Richards", 14, false);
+        aggregator.add(2, "DeltaBlue", 5, false);
+
+        assertEquals(Arrays.asList("Richards", "DeltaBlue", "Score"), aggregator.getNames());
+        assertEquals("Score", aggregator.getFinalName());
+        assertTrue(Arrays.equals(new double[] { 20, 30, Double.NaN },
+                aggregator.getScores("Score")));
+
+        Stat.StatResult stat = aggregator.getStat("Richards");
+        assertEquals(2, stat.mDataCount);
+        assertEquals(12.0, stat.mAverage);
+        assertEquals(2.0, stat.mStddev, 1e-9);
+        assertEquals(2.0 / 12.0 * 100.0, aggregator.getRelativeStddev("Richards"), 1e-9);
+        assertEquals(0.0, aggregator.getRelativeStddev("DeltaBlue"));
+        assertNull(aggregator.getStat("Missing"));
+    }
+
+    public void testAdd_invalidRun() {
+        ScoreAggregator aggregator = new ScoreAggregator(2);
+        try {
+            aggregator.add(2, "Score", 1, true);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertNull(aggregator.getFinalName());
+    }
+}
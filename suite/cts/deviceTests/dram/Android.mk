@@ -32,4 +32,26 @@ LOCAL_SDK_VERSION := 16
 
 include $(BUILD_CTS_PACKAGE)
 
+# pure Java kernels and the scaling harness, to run the benchmark on a host:
+# java -cp cts-dram-host.jar com.android.cts.dram.MemoryJava
+include $(CLEAR_VARS)
+
+LOCAL_MODULE_TAGS := optional
+
+LOCAL_SRC_FILES := \
+    src/com/android/cts/dram/MemoryJava.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ReportLog.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ReportCodec.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/MetricRecord.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ResultType.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ResultUnit.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/ScalingBenchmark.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/Stat.java
+
+LOCAL_JAVA_LIBRARIES := junit
+
+LOCAL_MODULE := cts-dram-host
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
 include $(call all-makefiles-under,$(LOCAL_PATH))
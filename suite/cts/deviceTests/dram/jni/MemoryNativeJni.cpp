@@ -17,7 +17,9 @@
 #include <jni.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/syscall.h>
 #include <sys/time.h>
+#include <unistd.h>
 
 double currentTimeMillis()
 {
@@ -69,3 +71,16 @@ extern "C" JNIEXPORT jdouble JNICALL Java_com_android_cts_dram_MemoryNative_runM
     return end - start;
 }
 
+extern "C" JNIEXPORT jboolean JNICALL Java_com_android_cts_dram_MemoryNative_pinToCpu(JNIEnv* env,
+        jclass clazz, jint cpu)
+{
+    if ((cpu < 0) || (cpu >= (int)(sizeof(unsigned long) * 8))) {
+        return JNI_FALSE;
+    }
+    // use the raw syscall as cpu_set_t helpers are not available in all NDK versions
+    unsigned long mask = 1UL << cpu;
+    if (syscall(__NR_sched_setaffinity, 0, sizeof(mask), &mask) != 0) {
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
@@ -25,6 +25,7 @@ import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 import android.cts.util.CtsAndroidTestCase;
 import com.android.cts.util.ReportLog;
+import com.android.cts.util.ScalingBenchmark;
 import com.android.cts.util.Stat;
 
 /**
@@ -155,6 +156,52 @@ public class BandwidthTest extends CtsAndroidTestCase {
         doRunMemset(16 * MB);
     }
 
+    public void testMemcpyScalingM004() throws Exception {
+        doRunMemcpyScaling(4 * MB);
+    }
+
+    public void testMemsetScalingM004() throws Exception {
+        doRunMemsetScaling(4 * MB);
+    }
+
+    private void doRunMemcpyScaling(final int bufferSize) throws Exception {
+        final int repeatInEachCall = REPEAT_IN_EACH_CALL;
+        ScalingBenchmark.StepResult[] results = ScalingBenchmark.sweep(
+                new PinnedWorkload() {
+                    @Override
+                    public double run(int threadIndex) {
+                        MemoryNative.runMemcpy(bufferSize, repeatInEachCall);
+                        return (double)bufferSize * repeatInEachCall / 1024.0 / 1024.0;
+                    }
+                }, Runtime.getRuntime().availableProcessors());
+        ScalingBenchmark.report(getReportLog(), "memcpy", results, ResultUnit.MBPS);
+    }
+
+    private void doRunMemsetScaling(final int bufferSize) throws Exception {
+        final int repeatInEachCall = REPEAT_IN_EACH_CALL;
+        ScalingBenchmark.StepResult[] results = ScalingBenchmark.sweep(
+                new PinnedWorkload() {
+                    @Override
+                    public double run(int threadIndex) {
+                        MemoryNative.runMemset(bufferSize, repeatInEachCall, MEMSET_CHAR);
+                        return (double)bufferSize * repeatInEachCall / 1024.0 / 1024.0;
+                    }
+                }, Runtime.getRuntime().availableProcessors());
+        ScalingBenchmark.report(getReportLog(), "memset", results, ResultUnit.MBPS);
+    }
+
+    /**
+     * pins each worker thread to its own cpu when possible.
+     */
+    private static abstract class PinnedWorkload implements ScalingBenchmark.Workload {
+        @Override
+        public void prepare(int threadIndex, int numberThreads) {
+            if (!MemoryNative.pinToCpu(threadIndex)) {
+                Log.w(TAG, "cannot pin thread " + threadIndex);
+            }
+        }
+    }
+
     private void doRunMemcpy(int bufferSize) {
         double[] result = new double[MEMCPY_REPETITION];
         int repeatInEachCall = REPEAT_IN_EACH_CALL;
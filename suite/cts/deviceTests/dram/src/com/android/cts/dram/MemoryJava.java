@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.dram;
+
+import com.android.cts.util.ScalingBenchmark;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java version of {@link MemoryNative}, for running the bandwidth scaling benchmark
+ * without the JNI library, for example on a host.
+ * <p/>
+ * Host usage: MemoryJava [buffer size in KB]
+ */
+public class MemoryJava {
+    private static final int MB = 1024 * 1024;
+
+    /**
+     * same as {@link MemoryNative#runMemcpy(int, int)} using System.arraycopy
+     */
+    public static double runMemcpy(int bufferSize, int repetition) {
+        byte[] src = new byte[bufferSize];
+        byte[] dst = new byte[bufferSize];
+        long start = System.nanoTime();
+        for (int i = 0; i < repetition; i++) {
+            System.arraycopy(src, 0, dst, 0, bufferSize);
+            src[bufferSize - 1] = (byte) i;
+        }
+        long end = System.nanoTime();
+        return (end - start) / 1000000.0;
+    }
+
+    /**
+     * same as {@link MemoryNative#runMemset(int, int, int)} using Arrays.fill
+     */
+    public static double runMemset(int bufferSize, int repetition, int c) {
+        byte[] dst = new byte[bufferSize];
+        long start = System.nanoTime();
+        for (int i = 0; i < repetition; i++) {
+            Arrays.fill(dst, (byte) (c + i));
+        }
+        long end = System.nanoTime();
+        return (end - start) / 1000000.0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int bufferSize = args.length > 0 ? Integer.parseInt(args[0]) * 1024 : 4 * MB;
+        final int repetition = Math.max(1, 256 * MB / bufferSize);
+        int cores = Runtime.getRuntime().availableProcessors();
+        ScalingBenchmark.StepResult[] results = ScalingBenchmark.sweep(
+                new ScalingBenchmark.Workload() {
+                    @Override
+                    public void prepare(int threadIndex, int numberThreads) {
+                        // warm-up, also allocates on this thread
+                        runMemcpy(bufferSize, 1);
+                    }
+
+                    @Override
+                    public double run(int threadIndex) {
+                        runMemcpy(bufferSize, repetition);
+                        return (double) bufferSize * repetition / MB;
+                    }
+                }, cores);
+        for (ScalingBenchmark.StepResult result : results) {
+            System.out.println(String.format("memcpy %d threads: %.1f MB/s, efficiency %.2f",
+                    result.mNumberThreads, result.mThroughput, result.mEfficiency));
+        }
+    }
+}
@@ -38,4 +38,11 @@ public class MemoryNative {
      * @return time spent in memset in ms.
      */
     public static native double runMemset(int bufferSize, int repetition, int c);
+
+    /**
+     * pin the calling thread to the given cpu.
+     * @param cpu
+     * @return false if pinning is not supported or the cpu is offline
+     */
+    public static native boolean pinToCpu(int cpu);
 }
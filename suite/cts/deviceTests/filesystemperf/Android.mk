@@ -30,3 +30,24 @@ LOCAL_SDK_VERSION := 16
 
 include $(BUILD_CTS_PACKAGE)
 
+
+# I/O engine only, to compare storage backends on a host:
+# java -cp cts-filesystemperf-host.jar com.android.cts.filesystemperf.IoBenchmark
+include $(CLEAR_VARS)
+
+LOCAL_MODULE_TAGS := optional
+
+LOCAL_SRC_FILES := \
+    src/com/android/cts/filesystemperf/IoBenchmark.java \
+    src/com/android/cts/filesystemperf/IoEngine.java \
+    src/com/android/cts/filesystemperf/ProcIoSampler.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/MeasureRun.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/MeasureTime.java \
+    ../../../../libs/commonutil/src/com/android/cts/util/Stat.java
+
+LOCAL_MODULE := cts-filesystemperf-host
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
+# Build all sub-directories
+include $(call all-makefiles-under,$(LOCAL_PATH))
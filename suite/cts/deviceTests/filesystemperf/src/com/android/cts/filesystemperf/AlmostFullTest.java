@@ -107,7 +107,7 @@ public class AlmostFullTest extends CtsAndroidTestCase {
         final int BUFFER_SIZE = 10 * 1024 * 1024;
         final int NUMBER_REPETITION = 10;
         FileUtil.doSequentialUpdateTest(getContext(), DIR_SEQ_UPDATE, getReportLog(), FILE_SIZE,
-                BUFFER_SIZE, NUMBER_REPETITION);
+                BUFFER_SIZE, NUMBER_REPETITION, FileUtil.getIoMode(getInstrumentation()));
     }
 
     // TODO: file size too small and caching will give wrong better result.
@@ -122,7 +122,7 @@ public class AlmostFullTest extends CtsAndroidTestCase {
             return;
         }
         FileUtil.doRandomReadTest(getContext(), DIR_RANDOM_RD, getReportLog(), fileSize,
-                BUFFER_SIZE);
+                BUFFER_SIZE, FileUtil.getIoMode(getInstrumentation()));
     }
 
     @TimeoutReq(minutes = 60)
@@ -135,6 +135,6 @@ public class AlmostFullTest extends CtsAndroidTestCase {
             return;
         }
         FileUtil.doRandomWriteTest(getContext(), DIR_RANDOM_WR, getReportLog(), fileSize,
-                BUFFER_SIZE);
+                BUFFER_SIZE, FileUtil.getIoMode(getInstrumentation()));
     }
 }
@@ -16,28 +16,30 @@
 
 package com.android.cts.filesystemperf;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
+import java.util.Locale;
 import java.util.Random;
 
 import com.android.cts.util.MeasureRun;
-import com.android.cts.util.MeasureTime;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 import com.android.cts.util.ReportLog;
 import com.android.cts.util.Stat;
 import android.cts.util.SystemUtil;
 
+import android.app.Instrumentation;
 import android.content.Context;
+import android.os.Bundle;
+import android.test.InstrumentationCtsTestRunner;
 import android.util.Log;
 
 public class FileUtil {
     private static final String TAG = "FileUtil";
+    /** instrumentation argument selecting the {@link IoEngine.Mode} used by the tests */
+    public static final String IO_MODE_ARGUMENT = "iomode";
     private static final Random mRandom = new Random(0);
     private static long mFileId = 0;
     /**
@@ -129,6 +131,50 @@ public class FileUtil {
         randomFile.close();
     }
 
+    /**
+     * write a new file with given byte array using the given I/O mode, with O_SYNC semantics.
+     * @param mode
+     * @param file
+     * @param data
+     * @throws IOException
+     */
+    public static void writeFile(IoEngine.Mode mode, File file, byte[] data) throws IOException {
+        IoEngine engine = IoEngine.open(mode, file, data.length, true);
+        try {
+            engine.setData(data);
+            engine.write(0L);
+        } finally {
+            engine.close();
+        }
+    }
+
+    /**
+     * get I/O mode for this run from the instrumentation argument {@link #IO_MODE_ARGUMENT},
+     * as given with am instrument -e iomode mmap.
+     * {@link IoEngine.Mode#STREAM} is used if it is not set.
+     * @param instrumentation
+     */
+    public static IoEngine.Mode getIoMode(Instrumentation instrumentation) {
+        String name = null;
+        if (instrumentation instanceof InstrumentationCtsTestRunner) {
+            Bundle arguments = ((InstrumentationCtsTestRunner) instrumentation).getArguments();
+            if (arguments != null) {
+                name = arguments.getString(IO_MODE_ARGUMENT);
+            }
+        }
+        return IoEngine.Mode.parse(name, IoEngine.Mode.STREAM);
+    }
+
+    /**
+     * add I/O mode to the message if it is not the default one.
+     */
+    public static String withIoMode(String message, IoEngine.Mode mode) {
+        if (mode == IoEngine.Mode.STREAM) {
+            return message;
+        }
+        return message + " (" + mode.name().toLowerCase(Locale.US) + ")";
+    }
+
     /**
      * create a new file with given length.
      * @param context
@@ -188,48 +234,7 @@ public class FileUtil {
      */
     public static double[] measureIO(int count, double[] readAmount, double[] writeAmount,
             MeasureRun run)  throws Exception {
-        double[] result = new double[count];
-        File procIo = new File("/proc/self/io");
-        boolean measureIo = procIo.exists() && procIo.canRead();
-        long prev = System.currentTimeMillis();
-        RWAmount prevAmount = new RWAmount();
-        if (measureIo) {
-            prevAmount = getRWAmount(procIo);
-        }
-        for (int i = 0; i < count; i++) {
-            run.run(i);
-            long current =  System.currentTimeMillis();
-            result[i] = current - prev;
-            prev = current;
-            if (measureIo) {
-                RWAmount currentAmount = getRWAmount(procIo);
-                readAmount[i] = currentAmount.mRd - prevAmount.mRd;
-                writeAmount[i] = currentAmount.mWr - prevAmount.mWr;
-                prevAmount = currentAmount;
-            }
-        }
-        return result;
-    }
-
-    private static class RWAmount {
-        public double mRd = 0.0;
-        public double mWr = 0.0;
-    };
-
-    private static RWAmount getRWAmount(File file) throws IOException {
-        RWAmount amount = new RWAmount();
-
-        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-        String line;
-        while((line = br.readLine())!= null) {
-            if (line.startsWith("read_bytes")) {
-                amount.mRd = Double.parseDouble(line.split(" ")[1]);
-            } else if (line.startsWith("write_bytes")) {
-                amount.mWr = Double.parseDouble(line.split(" ")[1]);
-            }
-        }
-        br.close();
-        return amount;
+        return IoBenchmark.measureIO(count, readAmount, writeAmount, run);
     }
 
     /**
@@ -261,52 +266,34 @@ public class FileUtil {
      * @param report
      * @param fileSize
      * @param bufferSize should be power of two
+     * @param mode I/O mode to use
      * @throws IOException
      */
     public static void doRandomReadTest(Context context, String dirName, ReportLog report,
-            long fileSize, int bufferSize) throws Exception {
+            long fileSize, int bufferSize, IoEngine.Mode mode) throws Exception {
         File file = FileUtil.createNewFilledFile(context,
                 dirName, fileSize);
 
-        final byte[] data = FileUtil.generateRandomData(bufferSize);
-        Random random = new Random(0);
-        final int totalReadCount = (int)(fileSize / bufferSize);
-        final int[] readOffsets = new int[totalReadCount];
-        for (int i = 0; i < totalReadCount; i++) {
-            // align in buffer size
-            readOffsets[i] = (int)(random.nextFloat() * (fileSize - bufferSize)) &
-                    ~(bufferSize - 1);
-        }
-        final int runsInOneGo = 16;
-        final int readsInOneMeasure = totalReadCount / runsInOneGo;
-
-        final RandomAccessFile randomFile = new RandomAccessFile(file, "rw"); // do not need O_SYNC
+        final int runsInOneGo = IoBenchmark.RANDOM_RUNS;
+        IoEngine engine = IoEngine.open(mode, file, bufferSize, false); // do not need O_SYNC
         double[] rdAmount = new double[runsInOneGo];
         double[] wrAmount = new double[runsInOneGo];
-        double[] times = FileUtil.measureIO(runsInOneGo, rdAmount, wrAmount, new MeasureRun() {
-
-            @Override
-            public void run(int i) throws IOException {
-                Log.i(TAG, "starting " + i + " -th round");
-                int start = i * readsInOneMeasure;
-                int end = (i + 1) * readsInOneMeasure;
-                for (int j = start; j < end; j++) {
-                    randomFile.seek(readOffsets[j]);
-                    randomFile.read(data);
-                }
-            }
-        });
-        randomFile.close();
+        double[] times;
+        try {
+            times = IoBenchmark.randomRead(engine, fileSize, rdAmount, wrAmount);
+        } finally {
+            engine.close();
+        }
         double[] mbps = ReportLog.calcRatePerSecArray((double)fileSize / runsInOneGo / 1024 / 1024,
                 times);
-        report.printArray("read throughput",
+        report.printArray(withIoMode("read throughput", mode),
                 mbps, ResultType.HIGHER_BETTER, ResultUnit.MBPS);
         // This is just the amount of IO returned from kernel. So this is performance neutral.
         report.printArray("read amount", rdAmount, ResultType.NEUTRAL, ResultUnit.BYTE);
         Stat.StatResult stat = Stat.getStat(mbps);
 
-        report.printSummary("read throughput", stat.mAverage, ResultType.HIGHER_BETTER,
-                ResultUnit.MBPS);
+        report.printSummary(withIoMode("read throughput", mode), stat.mAverage,
+                ResultType.HIGHER_BETTER, ResultUnit.MBPS);
     }
 
     /**
@@ -316,50 +303,35 @@ public class FileUtil {
      * @param report
      * @param fileSize
      * @param bufferSize should be power of two
+     * @param mode I/O mode to use
      * @throws IOException
      */
     public static void doRandomWriteTest(Context context, String dirName, ReportLog report,
-            long fileSize, int bufferSize) throws Exception {
+            long fileSize, int bufferSize, IoEngine.Mode mode) throws Exception {
         File file = FileUtil.createNewFilledFile(context,
                 dirName, fileSize);
         final byte[] data = FileUtil.generateRandomData(bufferSize);
-        Random random = new Random(0);
-        final int totalWriteCount = (int)(fileSize / bufferSize);
-        final int[] writeOffsets = new int[totalWriteCount];
-        for (int i = 0; i < totalWriteCount; i++) {
-            writeOffsets[i] = (int)(random.nextFloat() * (fileSize - bufferSize)) &
-                    ~(bufferSize - 1);
-        }
-        final int runsInOneGo = 16;
-        final int writesInOneMeasure = totalWriteCount / runsInOneGo;
-
-        final RandomAccessFile randomFile = new RandomAccessFile(file, "rwd"); // force O_SYNC
+        final int runsInOneGo = IoBenchmark.RANDOM_RUNS;
+        IoEngine engine = IoEngine.open(mode, file, bufferSize, true); // force O_SYNC
+        engine.setData(data);
         double[] rdAmount = new double[runsInOneGo];
         double[] wrAmount = new double[runsInOneGo];
-        double[] times = FileUtil.measureIO(runsInOneGo, rdAmount, wrAmount, new MeasureRun() {
-
-            @Override
-            public void run(int i) throws IOException {
-                Log.i(TAG, "starting " + i + " -th round");
-                int start = i * writesInOneMeasure;
-                int end = (i + 1) * writesInOneMeasure;
-                for (int j = start; j < end; j++) {
-                    randomFile.seek(writeOffsets[j]);
-                    randomFile.write(data);
-                }
-            }
-        });
-        randomFile.close();
+        double[] times;
+        try {
+            times = IoBenchmark.randomWrite(engine, fileSize, rdAmount, wrAmount);
+        } finally {
+            engine.close();
+        }
         double[] mbps = ReportLog.calcRatePerSecArray((double)fileSize / runsInOneGo / 1024 / 1024,
                 times);
-        report.printArray("write throughput",
+        report.printArray(withIoMode("write throughput", mode),
                 mbps, ResultType.HIGHER_BETTER, ResultUnit.MBPS);
         report.printArray("write amount", wrAmount, ResultType.NEUTRAL,
                 ResultUnit.BYTE);
         Stat.StatResult stat = Stat.getStat(mbps);
 
-        report.printSummary("write throughput", stat.mAverage, ResultType.HIGHER_BETTER,
-                ResultUnit.MBPS);
+        report.printSummary(withIoMode("write throughput", mode), stat.mAverage,
+                ResultType.HIGHER_BETTER, ResultUnit.MBPS);
     }
 
     /**
@@ -370,10 +342,12 @@ public class FileUtil {
      * @param fileSize fileSize should be multiple of bufferSize.
      * @param bufferSize
      * @param numberRepetition
+     * @param mode I/O mode to use
      * @throws IOException
      */
     public static void doSequentialUpdateTest(Context context, String dirName, ReportLog report,
-            long fileSize, int bufferSize, int numberRepetition) throws Exception {
+            long fileSize, int bufferSize, int numberRepetition, IoEngine.Mode mode)
+            throws Exception {
         File file = FileUtil.createNewFilledFile(context,
                 dirName, fileSize);
         final byte[] data = FileUtil.generateRandomData(bufferSize);
@@ -381,16 +355,14 @@ public class FileUtil {
         double[] mbpsAll = new double[numberRepetition * numberRepeatInOneRun];
         for (int i = 0; i < numberRepetition; i++) {
             Log.i(TAG, "starting " + i + " -th round");
-            final RandomAccessFile randomFile = new RandomAccessFile(file, "rwd");  // force O_SYNC
-            randomFile.seek(0L);
-            double[] times = MeasureTime.measure(numberRepeatInOneRun, new MeasureRun() {
-
-                @Override
-                public void run(int i) throws IOException {
-                    randomFile.write(data);
-                }
-            });
-            randomFile.close();
+            IoEngine engine = IoEngine.open(mode, file, bufferSize, true);  // force O_SYNC
+            engine.setData(data);
+            double[] times;
+            try {
+                times = IoBenchmark.sequentialUpdate(engine, fileSize);
+            } finally {
+                engine.close();
+            }
             double[] mbps = ReportLog.calcRatePerSecArray((double)bufferSize / 1024 / 1024,
                     times);
             report.printArray(i + "-th round throughput",
@@ -398,7 +370,7 @@ public class FileUtil {
             ReportLog.copyArray(mbps, mbpsAll, i * numberRepeatInOneRun);
         }
         Stat.StatResult stat = Stat.getStat(mbpsAll);
-        report.printSummary("update throughput", stat.mAverage, ResultType.HIGHER_BETTER,
-                ResultUnit.MBPS);
+        report.printSummary(withIoMode("update throughput", mode), stat.mAverage,
+                ResultType.HIGHER_BETTER, ResultUnit.MBPS);
     }
 }
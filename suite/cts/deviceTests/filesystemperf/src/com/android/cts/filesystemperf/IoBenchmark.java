@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.filesystemperf;
+
+import com.android.cts.util.MeasureRun;
+import com.android.cts.util.MeasureTime;
+import com.android.cts.util.Stat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * I/O measurement loops shared by the device tests and the host command line tool.
+ * Nothing here depends on the Android framework.
+ * <p/>
+ * Host usage: IoBenchmark &lt;dir&gt; &lt;stream|channel|mmap|aligned&gt; &lt;file size in MB&gt;
+ * [block size in KB]
+ */
+public class IoBenchmark {
+    /** number of measurements done for random read / write */
+    public static final int RANDOM_RUNS = 16;
+
+    /**
+     * measure time taken for each IO run with amount R/W
+     * @param count
+     * @param run
+     * @param readAmount returns amount of read in bytes for each interval.
+     *        Value will not be written if /proc/self/io does not exist.
+     * @param writeAmount returns amount of write in bytes for each interval.
+     * @return time per each interval in ms, measured with {@link System#nanoTime()}
+     */
+    public static double[] measureIO(int count, double[] readAmount, double[] writeAmount,
+            MeasureRun run) throws Exception {
+        double[] result = new double[count];
+        ProcIoSampler sampler = ProcIoSampler.open();
+        long prevRd = 0;
+        long prevWr = 0;
+        if (sampler != null) {
+            sampler.sample();
+            prevRd = sampler.getReadBytes();
+            prevWr = sampler.getWriteBytes();
+        }
+        long prev = System.nanoTime();
+        try {
+            for (int i = 0; i < count; i++) {
+                run.run(i);
+                long current = System.nanoTime();
+                result[i] = (current - prev) / 1000000.0;
+                if (sampler != null) {
+                    sampler.sample();
+                    readAmount[i] = sampler.getReadBytes() - prevRd;
+                    writeAmount[i] = sampler.getWriteBytes() - prevWr;
+                    prevRd = sampler.getReadBytes();
+                    prevWr = sampler.getWriteBytes();
+                }
+                // do not count the sampling itself
+                prev = System.nanoTime();
+            }
+        } finally {
+            if (sampler != null) {
+                sampler.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generate block aligned random offsets covering the file once on average.
+     * The sequence is the same for every call with the same arguments.
+     */
+    public static long[] generateRandomOffsets(long fileSize, int blockSize) {
+        Random random = new Random(0);
+        final int count = (int) (fileSize / blockSize);
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            // align in buffer size
+            offsets[i] = (long) (random.nextFloat() * (fileSize - blockSize)) / blockSize
+                    * blockSize;
+        }
+        return offsets;
+    }
+
+    /**
+     * Read blocks at random offsets in {@link #RANDOM_RUNS} runs.
+     * @return time taken for each run in ms
+     */
+    public static double[] randomRead(final IoEngine engine, long fileSize, double[] rdAmount,
+            double[] wrAmount) throws Exception {
+        final long[] offsets = generateRandomOffsets(fileSize, engine.getBlockSize());
+        final int readsInOneMeasure = offsets.length / RANDOM_RUNS;
+        return measureIO(RANDOM_RUNS, rdAmount, wrAmount, new MeasureRun() {
+
+            @Override
+            public void run(int i) throws IOException {
+                int start = i * readsInOneMeasure;
+                int end = (i + 1) * readsInOneMeasure;
+                for (int j = start; j < end; j++) {
+                    engine.read(offsets[j]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write blocks at random offsets in {@link #RANDOM_RUNS} runs.
+     * @return time taken for each run in ms
+     */
+    public static double[] randomWrite(final IoEngine engine, long fileSize, double[] rdAmount,
+            double[] wrAmount) throws Exception {
+        final long[] offsets = generateRandomOffsets(fileSize, engine.getBlockSize());
+        final int writesInOneMeasure = offsets.length / RANDOM_RUNS;
+        return measureIO(RANDOM_RUNS, rdAmount, wrAmount, new MeasureRun() {
+
+            @Override
+            public void run(int i) throws IOException {
+                int start = i * writesInOneMeasure;
+                int end = (i + 1) * writesInOneMeasure;
+                for (int j = start; j < end; j++) {
+                    engine.write(offsets[j]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Overwrite the file block by block from the beginning.
+     * @return time taken for each block in ms
+     */
+    public static double[] sequentialUpdate(final IoEngine engine, long fileSize)
+            throws Exception {
+        final int blockSize = engine.getBlockSize();
+        return MeasureTime.measure((int) (fileSize / blockSize), new MeasureRun() {
+
+            @Override
+            public void run(int i) throws IOException {
+                engine.write((long) i * blockSize);
+            }
+        });
+    }
+
+    /**
+     * Read the whole file count times.
+     * @return time taken for each full read in ms
+     */
+    public static double[] sequentialRead(final IoEngine engine, int count) throws Exception {
+        return MeasureTime.measure(count, new MeasureRun() {
+
+            @Override
+            public void run(int i) throws IOException {
+                engine.readAll();
+            }
+        });
+    }
+
+    /**
+     * Fill the given file up to length with data. Length is rounded up to data.length.
+     */
+    public static void fillFile(File file, long length, byte[] data) throws IOException {
+        IoEngine engine = IoEngine.open(IoEngine.Mode.CHANNEL, file, data.length, false);
+        try {
+            engine.setData(data);
+            for (long written = 0; written < length; written += data.length) {
+                engine.write(written);
+            }
+        } finally {
+            engine.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: IoBenchmark <dir> <stream|channel|mmap|aligned> "
+                    + "<file size in MB> [block size in KB]");
+            System.exit(1);
+        }
+        File dir = new File(args[0]);
+        IoEngine.Mode mode = IoEngine.Mode.parse(args[1], IoEngine.Mode.STREAM);
+        long fileSize = Long.parseLong(args[2]) * 1024 * 1024;
+        int blockSize = args.length > 3 ? Integer.parseInt(args[3]) * 1024 : 4 * 1024;
+        double fileMb = (double) fileSize / 1024 / 1024;
+        byte[] data = new byte[blockSize];
+        new Random(0).nextBytes(data);
+
+        File file = new File(dir, "iobenchmark.tmp");
+        file.delete();
+        try {
+            long start = System.nanoTime();
+            fillFile(file, fileSize, data);
+            printResult("initial write", fileMb,
+                    new double[] { (System.nanoTime() - start) / 1000000.0 });
+
+            IoEngine engine = IoEngine.open(mode, file, blockSize, false);
+            engine.setData(data);
+            printResult("sequential read", fileMb, sequentialRead(engine, 3));
+            double[] rdAmount = new double[RANDOM_RUNS];
+            double[] wrAmount = new double[RANDOM_RUNS];
+            printResult("random read", fileMb / RANDOM_RUNS,
+                    randomRead(engine, fileSize, rdAmount, wrAmount));
+            engine.close();
+
+            engine = IoEngine.open(mode, file, blockSize, true);
+            engine.setData(data);
+            printResult("random sync write", fileMb / RANDOM_RUNS,
+                    randomWrite(engine, fileSize, rdAmount, wrAmount));
+            engine.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * print throughput statistics, with times in ms for transferring mb MB each.
+     * ReportLog is not used as it depends on junit.
+     */
+    private static void printResult(String name, double mb, double[] times) {
+        double[] mbps = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            mbps[i] = mb * 1000.0 / Math.max(times[i], 0.001);
+        }
+        Stat.StatResult stat = Stat.getStat(mbps);
+        System.out.println(String.format("%s: avg %.2f MB/s, min %.2f, max %.2f, stddev %.2f",
+                name, stat.mAverage, stat.mMin, stat.mMax, stat.mStddev));
+    }
+}
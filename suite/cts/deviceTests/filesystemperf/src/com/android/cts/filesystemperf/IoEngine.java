@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.filesystemperf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Reads and writes fixed size blocks of a file with a selectable I/O method.
+ * Each engine keeps one block buffer which is reused for all operations.
+ * <p/>
+ * This class does not depend on the Android framework so that the same I/O code can be run on a
+ * host to compare storage backends.
+ */
+public abstract class IoEngine {
+    /** block alignment used by {@link Mode#ALIGNED} */
+    public static final int ALIGNMENT = 4096;
+    /** size of the region mapped at a time by {@link Mode#MMAP} */
+    private static final long MAP_WINDOW_SIZE = 64L * 1024L * 1024L;
+
+    public enum Mode {
+        /** RandomAccessFile with a byte array, which was the only mode before */
+        STREAM,
+        /** FileChannel positional I/O with a reused direct ByteBuffer */
+        CHANNEL,
+        /** memory-mapped I/O, mapping the file in windows of 64MB */
+        MMAP,
+        /**
+         * Same as CHANNEL, but offsets and block size should be multiples of
+         * {@link IoEngine#ALIGNMENT}. O_DIRECT itself cannot be requested from Java.
+         */
+        ALIGNED;
+
+        /**
+         * Parse mode name, case insensitive
+         * @return parsed mode or defaultMode if name is null or empty
+         */
+        public static Mode parse(String name, Mode defaultMode) {
+            if (name == null || name.length() == 0) {
+                return defaultMode;
+            }
+            return valueOf(name.toUpperCase(Locale.US));
+        }
+    }
+
+    protected final File mFile;
+    protected final int mBlockSize;
+    protected final boolean mSync;
+    protected final RandomAccessFile mRaf;
+
+    /**
+     * Open the given file.
+     *
+     * @param mode I/O method to use
+     * @param file file to access. It is created if it does not exist.
+     * @param blockSize bytes transferred by each read or write
+     * @param sync if true, writes reach the storage before write returns (O_SYNC semantics)
+     */
+    public static IoEngine open(Mode mode, File file, int blockSize, boolean sync)
+            throws IOException {
+        switch (mode) {
+            case STREAM:
+                return new StreamEngine(file, blockSize, sync);
+            case CHANNEL:
+                return new ChannelEngine(file, blockSize, sync, false);
+            case MMAP:
+                return new MappedEngine(file, blockSize, sync);
+            case ALIGNED:
+                return new ChannelEngine(file, blockSize, sync, true);
+        }
+        throw new IllegalArgumentException("unknown mode " + mode);
+    }
+
+    protected IoEngine(File file, int blockSize, boolean sync, String rafMode)
+            throws IOException {
+        mFile = file;
+        mBlockSize = blockSize;
+        mSync = sync;
+        mRaf = new RandomAccessFile(file, rafMode);
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * Set the content written by {@link #write(long)}.
+     * @param data should have at least block size bytes
+     */
+    public abstract void setData(byte[] data);
+
+    /**
+     * Read one block from the given offset.
+     * @return bytes read, which can be smaller than block size at the end of the file
+     */
+    public abstract int read(long offset) throws IOException;
+
+    /**
+     * Write one block at the given offset. The file is extended if necessary.
+     */
+    public abstract void write(long offset) throws IOException;
+
+    /**
+     * Read the whole file block by block.
+     * @return bytes read
+     */
+    public long readAll() throws IOException {
+        long length = length();
+        long read = 0;
+        while (read < length) {
+            int r = read(read);
+            if (r <= 0) {
+                break;
+            }
+            read += r;
+        }
+        return read;
+    }
+
+    public void close() throws IOException {
+        mRaf.close();
+    }
+
+    /**
+     * @return length of the data in the file
+     */
+    protected long length() throws IOException {
+        return mRaf.length();
+    }
+
+    private static class StreamEngine extends IoEngine {
+        private final byte[] mBuffer;
+
+        StreamEngine(File file, int blockSize, boolean sync) throws IOException {
+            super(file, blockSize, sync, sync ? "rwd" : "rw");
+            mBuffer = new byte[blockSize];
+        }
+
+        @Override
+        public void setData(byte[] data) {
+            System.arraycopy(data, 0, mBuffer, 0, mBlockSize);
+        }
+
+        @Override
+        public int read(long offset) throws IOException {
+            mRaf.seek(offset);
+            return mRaf.read(mBuffer);
+        }
+
+        @Override
+        public void write(long offset) throws IOException {
+            mRaf.seek(offset);
+            mRaf.write(mBuffer);
+        }
+    }
+
+    private static class ChannelEngine extends IoEngine {
+        private final ByteBuffer mBuffer;
+        private final FileChannel mChannel;
+        private final boolean mAligned;
+
+        ChannelEngine(File file, int blockSize, boolean sync, boolean aligned)
+                throws IOException {
+            super(file, blockSize, sync, sync ? "rwd" : "rw");
+            if (aligned && (blockSize % ALIGNMENT) != 0) {
+                throw new IllegalArgumentException("block size " + blockSize
+                        + " not aligned to " + ALIGNMENT);
+            }
+            mAligned = aligned;
+            mBuffer = ByteBuffer.allocateDirect(blockSize);
+            mChannel = mRaf.getChannel();
+        }
+
+        @Override
+        public void setData(byte[] data) {
+            mBuffer.clear();
+            mBuffer.put(data, 0, mBlockSize);
+        }
+
+        @Override
+        public int read(long offset) throws IOException {
+            checkAlignment(offset);
+            mBuffer.clear();
+            int total = 0;
+            while (mBuffer.hasRemaining()) {
+                int r = mChannel.read(mBuffer, offset + total);
+                if (r < 0) {
+                    break;
+                }
+                total += r;
+            }
+            return total;
+        }
+
+        @Override
+        public void write(long offset) throws IOException {
+            checkAlignment(offset);
+            mBuffer.clear();
+            int total = 0;
+            while (mBuffer.hasRemaining()) {
+                total += mChannel.write(mBuffer, offset + total);
+            }
+        }
+
+        private void checkAlignment(long offset) {
+            if (mAligned && (offset % ALIGNMENT) != 0) {
+                throw new IllegalArgumentException("offset " + offset + " not aligned to "
+                        + ALIGNMENT);
+            }
+        }
+    }
+
+    private static class MappedEngine extends IoEngine {
+        private final FileChannel mChannel;
+        private final byte[] mData;
+        private MappedByteBuffer mWindow = null;
+        private long mWindowStart = 0;
+        private long mWindowEnd = 0;
+        /**
+         * length of the data, as the file itself is grown to whole windows while open and only
+         * truncated back in close()
+         */
+        private long mLength;
+
+        MappedEngine(File file, int blockSize, boolean sync) throws IOException {
+            // sync is done with force() after each write
+            super(file, blockSize, sync, "rw");
+            mChannel = mRaf.getChannel();
+            mData = new byte[blockSize];
+            mLength = mRaf.length();
+        }
+
+        @Override
+        public void setData(byte[] data) {
+            System.arraycopy(data, 0, mData, 0, mBlockSize);
+        }
+
+        @Override
+        public int read(long offset) throws IOException {
+            if (offset >= mLength) {
+                return -1;
+            }
+            int toRead = (int) Math.min(mBlockSize, mLength - offset);
+            int done = 0;
+            while (done < toRead) {
+                MappedByteBuffer window = mapWindow(offset + done);
+                int chunk = (int) Math.min(toRead - done, mWindowEnd - (offset + done));
+                window.position((int) (offset + done - mWindowStart));
+                window.get(mData, done, chunk);
+                done += chunk;
+            }
+            return toRead;
+        }
+
+        @Override
+        public void write(long offset) throws IOException {
+            mLength = Math.max(mLength, offset + mBlockSize);
+            int done = 0;
+            while (done < mBlockSize) {
+                MappedByteBuffer window = mapWindow(offset + done);
+                int chunk = (int) Math.min(mBlockSize - done, mWindowEnd - (offset + done));
+                window.position((int) (offset + done - mWindowStart));
+                window.put(mData, done, chunk);
+                // each chunk is in a different window, so this is one force() per window touched
+                if (mSync) {
+                    window.force();
+                }
+                done += chunk;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                mWindow = null;
+                mRaf.setLength(mLength);
+            } finally {
+                super.close();
+            }
+        }
+
+        @Override
+        protected long length() {
+            return mLength;
+        }
+
+        /**
+         * Map the whole window containing the given position. The file is grown to the end of the
+         * window first, so that a sequential write does not need a new mapping for each block.
+         */
+        private MappedByteBuffer mapWindow(long position) throws IOException {
+            if (mWindow == null || position < mWindowStart || position >= mWindowEnd) {
+                mWindowStart = (position / MAP_WINDOW_SIZE) * MAP_WINDOW_SIZE;
+                mWindowEnd = mWindowStart + MAP_WINDOW_SIZE;
+                if (mChannel.size() < mWindowEnd) {
+                    mRaf.setLength(mWindowEnd);
+                }
+                mWindow = mChannel.map(FileChannel.MapMode.READ_WRITE, mWindowStart,
+                        MAP_WINDOW_SIZE);
+            }
+            return mWindow;
+        }
+    }
+}
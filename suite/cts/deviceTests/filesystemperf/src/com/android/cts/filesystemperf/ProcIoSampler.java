@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.filesystemperf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads read_bytes and write_bytes from /proc/self/io.
+ * The file is kept open and parsed from a reused buffer, so sampling does not allocate.
+ */
+public class ProcIoSampler {
+    private static final String PROC_IO = "/proc/self/io";
+    private static final byte[] READ_BYTES = "read_bytes:".getBytes();
+    private static final byte[] WRITE_BYTES = "write_bytes:".getBytes();
+
+    private final RandomAccessFile mFile;
+    private final byte[] mBuffer = new byte[1024];
+    private long mReadBytes = 0;
+    private long mWriteBytes = 0;
+
+    private ProcIoSampler(RandomAccessFile file) {
+        mFile = file;
+    }
+
+    /**
+     * @return sampler or null if /proc/self/io is not available
+     */
+    public static ProcIoSampler open() {
+        File procIo = new File(PROC_IO);
+        if (!procIo.exists() || !procIo.canRead()) {
+            return null;
+        }
+        try {
+            return new ProcIoSampler(new RandomAccessFile(procIo, "r"));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the current values. Use {@link #getReadBytes()} and {@link #getWriteBytes()} to get
+     * them.
+     */
+    public void sample() throws IOException {
+        mFile.seek(0);
+        int length = 0;
+        while (length < mBuffer.length) {
+            int r = mFile.read(mBuffer, length, mBuffer.length - length);
+            if (r <= 0) {
+                break;
+            }
+            length += r;
+        }
+        int lineStart = 0;
+        while (lineStart < length) {
+            if (startsWith(lineStart, length, READ_BYTES)) {
+                mReadBytes = parseLong(lineStart + READ_BYTES.length, length);
+            } else if (startsWith(lineStart, length, WRITE_BYTES)) {
+                mWriteBytes = parseLong(lineStart + WRITE_BYTES.length, length);
+            }
+            while (lineStart < length && mBuffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+    }
+
+    /**
+     * @return bytes read from storage by this process at the last sample
+     */
+    public long getReadBytes() {
+        return mReadBytes;
+    }
+
+    /**
+     * @return bytes written to storage by this process at the last sample
+     */
+    public long getWriteBytes() {
+        return mWriteBytes;
+    }
+
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private boolean startsWith(int offset, int length, byte[] prefix) {
+        if (offset + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseLong(int offset, int length) {
+        while (offset < length && mBuffer[offset] == ' ') {
+            offset++;
+        }
+        long value = 0;
+        while (offset < length && mBuffer[offset] >= '0' && mBuffer[offset] <= '9') {
+            value = value * 10 + (mBuffer[offset] - '0');
+            offset++;
+        }
+        return value;
+    }
+}
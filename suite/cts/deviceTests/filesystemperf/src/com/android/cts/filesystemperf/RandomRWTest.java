@@ -38,7 +38,7 @@ public class RandomRWTest extends CtsAndroidTestCase {
             return;
         }
         FileUtil.doRandomReadTest(getContext(), DIR_RANDOM_RD, getReportLog(), fileSize,
-                READ_BUFFER_SIZE);
+                READ_BUFFER_SIZE, FileUtil.getIoMode(getInstrumentation()));
     }
 
     // It is taking too long in some device, and thus cannot run multiple times
@@ -47,6 +47,6 @@ public class RandomRWTest extends CtsAndroidTestCase {
         final int WRITE_BUFFER_SIZE = 4 * 1024;
         final long fileSize = 256 * 1024 * 1024;
         FileUtil.doRandomWriteTest(getContext(), DIR_RANDOM_WR, getReportLog(), fileSize,
-                WRITE_BUFFER_SIZE);
+                WRITE_BUFFER_SIZE, FileUtil.getIoMode(getInstrumentation()));
     }
 }
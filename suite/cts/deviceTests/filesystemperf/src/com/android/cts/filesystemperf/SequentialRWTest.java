@@ -18,7 +18,6 @@ package com.android.cts.filesystemperf;
 
 import android.cts.util.CtsAndroidTestCase;
 import com.android.cts.util.MeasureRun;
-import com.android.cts.util.MeasureTime;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 import com.android.cts.util.ReportLog;
@@ -26,7 +25,6 @@ import com.android.cts.util.Stat;
 import com.android.cts.util.TimeoutReq;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 public class SequentialRWTest extends CtsAndroidTestCase {
@@ -55,23 +53,24 @@ public class SequentialRWTest extends CtsAndroidTestCase {
         final byte[] data = FileUtil.generateRandomData(BUFFER_SIZE);
         final File[] files = FileUtil.createNewFiles(getContext(), DIR_SEQ_WR,
                 numberOfFiles);
+        final IoEngine.Mode mode = FileUtil.getIoMode(getInstrumentation());
         double[] rdAmount = new double[numberOfFiles];
         double[] wrAmount = new double[numberOfFiles];
         double[] times = FileUtil.measureIO(numberOfFiles, rdAmount, wrAmount, new MeasureRun() {
 
             @Override
             public void run(int i) throws IOException {
-                FileUtil.writeFile(files[i], data, false);
+                FileUtil.writeFile(mode, files[i], data);
             }
         });
         double[] mbps = ReportLog.calcRatePerSecArray((double)BUFFER_SIZE / 1024 / 1024, times);
-        getReportLog().printArray("write throughput",
+        getReportLog().printArray(FileUtil.withIoMode("write throughput", mode),
                 mbps, ResultType.HIGHER_BETTER, ResultUnit.MBPS);
         getReportLog().printArray("write amount", wrAmount, ResultType.NEUTRAL,
                 ResultUnit.BYTE);
         Stat.StatResult stat = Stat.getStat(mbps);
-        getReportLog().printSummary("write throughput", stat.mAverage, ResultType.HIGHER_BETTER,
-                ResultUnit.MBPS);
+        getReportLog().printSummary(FileUtil.withIoMode("write throughput", mode), stat.mAverage,
+                ResultType.HIGHER_BETTER, ResultUnit.MBPS);
     }
 
     @TimeoutReq(minutes = 60)
@@ -82,7 +81,7 @@ public class SequentialRWTest extends CtsAndroidTestCase {
         }
         final int NUMBER_REPETITION = 6;
         FileUtil.doSequentialUpdateTest(getContext(), DIR_SEQ_UPDATE, getReportLog(), fileSize,
-                BUFFER_SIZE, NUMBER_REPETITION);
+                BUFFER_SIZE, NUMBER_REPETITION, FileUtil.getIoMode(getInstrumentation()));
     }
 
     @TimeoutReq(minutes = 30)
@@ -101,25 +100,19 @@ public class SequentialRWTest extends CtsAndroidTestCase {
 
         final int NUMBER_READ = 10;
 
-        final byte[] data = new byte[BUFFER_SIZE];
-        double[] times = MeasureTime.measure(NUMBER_READ, new MeasureRun() {
-
-            @Override
-            public void run(int i) throws IOException {
-                final FileInputStream in = new FileInputStream(file);
-                long read = 0;
-                while (read < fileSize) {
-                    in.read(data);
-                    read += BUFFER_SIZE;
-                }
-                in.close();
-            }
-        });
+        IoEngine.Mode mode = FileUtil.getIoMode(getInstrumentation());
+        IoEngine engine = IoEngine.open(mode, file, BUFFER_SIZE, false);
+        double[] times;
+        try {
+            times = IoBenchmark.sequentialRead(engine, NUMBER_READ);
+        } finally {
+            engine.close();
+        }
         double[] mbps = ReportLog.calcRatePerSecArray((double)fileSize / 1024 / 1024, times);
-        getReportLog().printArray("read throughput",
+        getReportLog().printArray(FileUtil.withIoMode("read throughput", mode),
                 mbps, ResultType.HIGHER_BETTER, ResultUnit.MBPS);
         Stat.StatResult stat = Stat.getStat(mbps);
-        getReportLog().printSummary("read throughput", stat.mAverage, ResultType.HIGHER_BETTER,
-                ResultUnit.MBPS);
+        getReportLog().printSummary(FileUtil.withIoMode("read throughput", mode), stat.mAverage,
+                ResultType.HIGHER_BETTER, ResultUnit.MBPS);
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.filesystemperf;
+
+import com.android.cts.util.MeasureRun;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link IoEngine} and {@link IoBenchmark}, running on a host.
+ */
+public class IoEngineTest extends TestCase {
+    private static final int BLOCK_SIZE = IoEngine.ALIGNMENT;
+    private static final int BLOCKS = 8;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("ioengine", ".tmp");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testParse() {
+        assertEquals(IoEngine.Mode.MMAP, IoEngine.Mode.parse("mmap", IoEngine.Mode.STREAM));
+        assertEquals(IoEngine.Mode.CHANNEL, IoEngine.Mode.parse("Channel", IoEngine.Mode.STREAM));
+        assertEquals(IoEngine.Mode.STREAM, IoEngine.Mode.parse(null, IoEngine.Mode.STREAM));
+        assertEquals(IoEngine.Mode.ALIGNED, IoEngine.Mode.parse("", IoEngine.Mode.ALIGNED));
+        try {
+            IoEngine.Mode.parse("direct", IoEngine.Mode.STREAM);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that names with an i are parsed in a locale which upper cases it to a dotted I.
+     */
+    public void testParse_turkishLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(IoEngine.Mode.ALIGNED,
+                    IoEngine.Mode.parse("aligned", IoEngine.Mode.STREAM));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * Test that blocks written at any offset in each mode end up in the file, which is extended
+     * as needed, and are read back block by block.
+     */
+    public void testWriteRead() throws Exception {
+        for (IoEngine.Mode mode : IoEngine.Mode.values()) {
+            mFile.delete();
+            byte[] data = createData(mode.ordinal());
+            IoEngine engine = IoEngine.open(mode, mFile, BLOCK_SIZE, mode == IoEngine.Mode.MMAP);
+            try {
+                engine.setData(data);
+                // write backwards, so that the first write extends the file
+                for (int i = BLOCKS - 1; i >= 0; i--) {
+                    engine.write((long) i * BLOCK_SIZE);
+                }
+                assertEquals(mode.name(), BLOCK_SIZE, engine.read(BLOCK_SIZE * 3));
+                assertEquals(mode.name(), (long) BLOCKS * BLOCK_SIZE, engine.readAll());
+            } finally {
+                engine.close();
+            }
+            assertEquals(mode.name(), BLOCKS * BLOCK_SIZE, mFile.length());
+            byte[] block = new byte[BLOCK_SIZE];
+            RandomAccessFile file = new RandomAccessFile(mFile, "r");
+            try {
+                for (int i = 0; i < BLOCKS; i++) {
+                    file.readFully(block);
+                    assertTrue(mode.name() + " block " + i, Arrays.equals(data, block));
+                }
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Test that a read at the end of the file returns the bytes up to the end.
+     */
+    public void testRead_endOfFile() throws Exception {
+        IoBenchmark.fillFile(mFile, BLOCK_SIZE * 2, createData(0));
+        for (IoEngine.Mode mode : new IoEngine.Mode[] {
+                IoEngine.Mode.STREAM, IoEngine.Mode.CHANNEL, IoEngine.Mode.MMAP }) {
+            IoEngine engine = IoEngine.open(mode, mFile, BLOCK_SIZE, false);
+            try {
+                assertEquals(mode.name(), BLOCK_SIZE / 2, engine.read(BLOCK_SIZE * 3 / 2));
+                assertTrue(mode.name(), engine.read(BLOCK_SIZE * 2) <= 0);
+            } finally {
+                engine.close();
+            }
+        }
+    }
+
+    /**
+     * Test that the mapped engine grows the file to a whole window while open, does not read
+     * past the data written, and truncates the file to the data on close.
+     */
+    public void testMapped_truncatedOnClose() throws Exception {
+        IoBenchmark.fillFile(mFile, BLOCK_SIZE, createData(0));
+        IoEngine engine = IoEngine.open(IoEngine.Mode.MMAP, mFile, BLOCK_SIZE, false);
+        try {
+            engine.setData(createData(1));
+            engine.write(BLOCK_SIZE);
+            engine.write(BLOCK_SIZE * 2);
+            assertTrue(mFile.length() > BLOCK_SIZE * 3);
+            assertTrue(engine.read(BLOCK_SIZE * 3) <= 0);
+            assertEquals(BLOCK_SIZE * 3L, engine.readAll());
+        } finally {
+            engine.close();
+        }
+        assertEquals(BLOCK_SIZE * 3L, mFile.length());
+    }
+
+    public void testAligned_rejectsUnaligned() throws Exception {
+        try {
+            IoEngine.open(IoEngine.Mode.ALIGNED, mFile, BLOCK_SIZE + 512, false);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        IoEngine engine = IoEngine.open(IoEngine.Mode.ALIGNED, mFile, BLOCK_SIZE, false);
+        try {
+            engine.setData(createData(0));
+            engine.write(0);
+            try {
+                engine.write(512);
+                fail("IllegalArgumentException not thrown");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        } finally {
+            engine.close();
+        }
+    }
+
+    public void testGenerateRandomOffsets() {
+        long fileSize = BLOCK_SIZE * 64L;
+        long[] offsets = IoBenchmark.generateRandomOffsets(fileSize, BLOCK_SIZE);
+        assertEquals(64, offsets.length);
+        for (long offset : offsets) {
+            assertEquals(0, offset % BLOCK_SIZE);
+            assertTrue(offset >= 0 && offset + BLOCK_SIZE <= fileSize);
+        }
+        assertTrue(Arrays.equals(offsets, IoBenchmark.generateRandomOffsets(fileSize,
+                BLOCK_SIZE)));
+    }
+
+    /**
+     * Test that runs shorter than a millisecond are not measured as zero.
+     */
+    public void testMeasureIO_subMillisecond() throws Exception {
+        final int count = 20;
+        double[] times = IoBenchmark.measureIO(count, new double[count], new double[count],
+                new MeasureRun() {
+
+            @Override
+            public void run(int i) throws IOException {
+                long start = System.nanoTime();
+                while (System.nanoTime() - start < 100000) {
+                    // spin for 0.1ms
+                }
+            }
+        });
+        for (double time : times) {
+            assertTrue(Double.toString(time), time > 0 && time < 1000);
+        }
+    }
+
+    private static byte[] createData(int seed) {
+        byte[] data = new byte[BLOCK_SIZE];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -34,4 +34,22 @@ public class GLActivityIntentKeys {
      * The number of milliseconds to wait before timing out.
      */
     public final static String INTENT_EXTRA_TIMEOUT = "timeout";
+    /**
+     * The number of milliseconds an iteration can take, until its frame time is known well
+     * enough. If missing, a fixed number of frames is rendered.
+     */
+    public final static String INTENT_EXTRA_TIME_BUDGET = "time_budget";
+    /**
+     * The number of timed batches of frames an iteration renders at least.
+     */
+    public final static String INTENT_EXTRA_MIN_BATCHES = "min_batches";
+    /**
+     * The number of timed batches of frames an iteration renders at most.
+     */
+    public final static String INTENT_EXTRA_MAX_BATCHES = "max_batches";
+    /**
+     * The half width of the confidence interval of the frame time, relative to the frame time,
+     * at which an iteration stops.
+     */
+    public final static String INTENT_EXTRA_TARGET_ERROR = "target_error";
 }
@@ -23,6 +23,7 @@ import android.view.SurfaceView;
 import android.view.Surface;
 
 import com.android.cts.opengl.GLActivityIntentKeys;
+import com.android.cts.util.AdaptiveIterationController;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
@@ -30,6 +31,10 @@ import java.util.concurrent.Semaphore;
 public class GLPrimitiveActivity extends Activity {
 
     public final static String TAG = "GLPrimitiveActivity";
+    // Batches shorter than this are not timed precisely enough, the next one renders more frames.
+    private final static double MIN_BATCH_DURATION = 200;
+    // A batch renders at most this many times the requested number of frames.
+    private final static int MAX_BATCH_GROWTH = 64;
 
     private volatile Exception mException;
     private volatile Surface mSurface = null;
@@ -41,7 +46,12 @@ public class GLPrimitiveActivity extends Activity {
     private int mNumFrames;
     private int mNumIterations;
     private int mTimeout;
+    private int mTimeBudget;
+    private int mMinBatches;
+    private int mMaxBatches;
+    private double mTargetError;
     public double[] mFpsValues;
+    public AdaptiveIterationController[] mControllers;
 
     @Override
     public void onCreate(Bundle data) {
@@ -54,13 +64,19 @@ public class GLPrimitiveActivity extends Activity {
         mNumFrames = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_FRAMES, 0);
         mNumIterations = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_ITERATIONS, 0);
         mTimeout = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_TIMEOUT, 0);
+        mTimeBudget = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_TIME_BUDGET, 0);
+        mMinBatches = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_MIN_BATCHES, 1);
+        mMaxBatches = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_MAX_BATCHES, 1);
+        mTargetError = intent.getDoubleExtra(GLActivityIntentKeys.INTENT_EXTRA_TARGET_ERROR, 0);
         mFpsValues = new double[mNumIterations];
+        mControllers = new AdaptiveIterationController[mNumIterations];
 
         Log.i(TAG, "Benchmark: " + mBenchmark);
         Log.i(TAG, "Offscreen: " + mOffscreen);
         Log.i(TAG, "Num Frames: " + mNumFrames);
         Log.i(TAG, "Num Iterations: " + mNumIterations);
         Log.i(TAG, "Time Out: " + mTimeout);
+        Log.i(TAG, "Time Budget: " + mTimeBudget);
 
         SurfaceView surfaceView = new SurfaceView(this);
         surfaceView.getHolder().addCallback(new SurfaceHolder.Callback() {
@@ -136,42 +152,71 @@ public class GLPrimitiveActivity extends Activity {
             Log.i(TAG, mBenchmark + " Benchmark Started");
             // Creates a watchdog to ensure a iteration doesn't exceed the timeout.
             watchDog = new WatchDog(mTimeout, this);
-            // Used to record the start and end time of the iteration.
+            // Used to record the start and end time of a batch.
             double[] times = new double[2];
             for (int i = 0; i < mNumIterations && success; i++) {
                 // The workload to use for this iteration.
                 int workload = i + 1;
-                // Setup the benchmark.
-                switch (mBenchmark) {
-                    case FullPipeline:
-                        setupFullPipelineBenchmark(mSurface, mOffscreen, workload);
-                        break;
-                    case PixelOutput:
-                        setupPixelOutputBenchmark(mSurface, mOffscreen, workload);
-                        break;
-                    case ShaderPerf:
-                        setupShaderPerfBenchmark(mSurface, mOffscreen, workload);
-                        break;
-                    case ContextSwitch:
-                        setupContextSwitchBenchmark(mSurface, mOffscreen, workload);
-                        break;
+                AdaptiveIterationController controller = createController();
+                mControllers[i] = controller;
+                // Render batches of frames until the frame time is known well enough.
+                while (success && !controller.isDone()) {
+                    int numFrames = controller.getFramesForNextBatch();
+                    long batchStart = System.currentTimeMillis();
+                    // Setup the benchmark.
+                    switch (mBenchmark) {
+                        case FullPipeline:
+                            setupFullPipelineBenchmark(mSurface, mOffscreen, workload);
+                            break;
+                        case PixelOutput:
+                            setupPixelOutputBenchmark(mSurface, mOffscreen, workload);
+                            break;
+                        case ShaderPerf:
+                            setupShaderPerfBenchmark(mSurface, mOffscreen, workload);
+                            break;
+                        case ContextSwitch:
+                            setupContextSwitchBenchmark(mSurface, mOffscreen, workload);
+                            break;
+                    }
+                    watchDog.start();
+                    // Start benchmark.
+                    success = startBenchmark(numFrames, times);
+                    watchDog.stop();
+
+                    if (!success) {
+                        setException(new Exception("Benchmark failed to run"));
+                    } else {
+                        double duration = times[1] - times[0];
+                        double overhead = System.currentTimeMillis() - batchStart - duration;
+                        controller.addBatch(numFrames, duration, Math.max(0, overhead));
+                    }
                 }
-                watchDog.start();
-                // Start benchmark.
-                success = startBenchmark(mNumFrames, times);
-                watchDog.stop();
-
-                if (!success) {
-                    setException(new Exception("Benchmark failed to run"));
-                } else {
+                if (success) {
                     // Calculate FPS.
-                    mFpsValues[i] = mNumFrames * 1000.0f / (times[1] - times[0]);
+                    mFpsValues[i] = 1000.0 / controller.getMeanFrameTime();
+                    Log.i(TAG, "Workload " + workload + ": " + controller.getBatchCount()
+                            + " batches, " + controller.getStopReason());
                 }
             }
             complete();
             Log.i(TAG, mBenchmark + " Benchmark Completed");
         }
 
+        /**
+         * Without a time budget, an iteration renders a single batch of the requested number
+         * of frames.
+         */
+        private AdaptiveIterationController createController() {
+            if (mTimeBudget <= 0) {
+                return new AdaptiveIterationController(mNumFrames, 1, 1, 0,
+                        Double.POSITIVE_INFINITY);
+            }
+            AdaptiveIterationController controller = new AdaptiveIterationController(
+                    mNumFrames, mMinBatches, mMaxBatches, mTargetError, mTimeBudget);
+            controller.setBatchGrowth(mNumFrames * MAX_BATCH_GROWTH, MIN_BATCH_DURATION);
+            return controller;
+        }
+
         public void onTimeout() {
             setException(new Exception("Benchmark timed out"));
             complete();
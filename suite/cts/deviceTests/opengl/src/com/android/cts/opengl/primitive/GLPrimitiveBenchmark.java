@@ -15,12 +15,15 @@ package com.android.cts.opengl.primitive;
 
 import com.android.cts.opengl.GLActivityIntentKeys;
 import android.cts.util.CtsActivityInstrumentationTestCase2;
+import com.android.cts.util.AdaptiveIterationController;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 
 import android.content.Intent;
 import com.android.cts.util.TimeoutReq;
 
+import java.util.Arrays;
+
 /**
  * Runs the Primitive OpenGL ES 2.0 Benchmarks.
  */
@@ -29,6 +32,12 @@ public class GLPrimitiveBenchmark extends CtsActivityInstrumentationTestCase2<GL
     private static final int NUM_FRAMES = 100;
     private static final int NUM_ITERATIONS = 8;
     private static final int TIMEOUT = 1000000;
+    // Each iteration renders batches of frames until the frame time is known within 2%, or
+    // for 30 seconds.
+    private static final int TIME_BUDGET = 30000;
+    private static final int MIN_BATCHES = 3;
+    private static final int MAX_BATCHES = 30;
+    private static final double TARGET_ERROR = 0.02;
 
     public GLPrimitiveBenchmark() {
         super(GLPrimitiveActivity.class);
@@ -103,7 +112,7 @@ public class GLPrimitiveBenchmark extends CtsActivityInstrumentationTestCase2<GL
      *
      * @param benchmark An enum representing the benchmark to run.
      * @param offscreen Whether to render to an offscreen framebuffer rather than the screen.
-     * @param numFrames The number of frames to render.
+     * @param numFrames The number of frames to render in the first batch of each iteration.
      * @param numIterations The number of iterations to run, each iteration has a bigger workload.
      * @param timeout The milliseconds to wait for an iteration of the benchmark before timing out.
      * @throws Exception If the benchmark could not be run.
@@ -117,6 +126,10 @@ public class GLPrimitiveBenchmark extends CtsActivityInstrumentationTestCase2<GL
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_FRAMES, numFrames);
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_ITERATIONS, numIterations);
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TIMEOUT, timeout);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TIME_BUDGET, TIME_BUDGET);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_MIN_BATCHES, MIN_BATCHES);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_MAX_BATCHES, MAX_BATCHES);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TARGET_ERROR, TARGET_ERROR);
 
         GLPrimitiveActivity activity = null;
         setActivityIntent(intent);
@@ -130,13 +143,57 @@ public class GLPrimitiveBenchmark extends CtsActivityInstrumentationTestCase2<GL
             }
             score /= numIterations;// Average.
 
-            // TODO: maybe standard deviation / RMSE will be useful?
-
             getReportLog().printArray(
                     "Fps Values", fpsValues, ResultType.HIGHER_BETTER, ResultUnit.FPS);
+            reportConvergence(activity.mControllers);
             getReportLog().printSummary(
                     "Average Frames Per Second", score, ResultType.HIGHER_BETTER,
                     ResultUnit.SCORE);
         }
     }
+
+    /**
+     * Reports the frame time of each batch of each iteration, and how well the frame time of
+     * each iteration is known. A workload with fewer than two batches has no confidence
+     * interval, so the intervals are reported together with the workloads they belong to.
+     */
+    private void reportConvergence(AdaptiveIterationController[] controllers) {
+        double[] errors = new double[controllers.length];
+        double[] errorWorkloads = new double[controllers.length];
+        int errorCount = 0;
+        double[] batches = new double[controllers.length];
+        double[] framesPerBatch = new double[controllers.length];
+        int converged = 0;
+        for (int i = 0; i < controllers.length; i++) {
+            AdaptiveIterationController controller = controllers[i];
+            getReportLog().printArray("Batch Frame Times, Workload " + (i + 1),
+                    controller.getBatchFrameTimes(), ResultType.LOWER_BETTER, ResultUnit.MS);
+            double relativeError = controller.getRelativeError();
+            // not finite with fewer than two batches, or a mean frame time of 0
+            if (!Double.isInfinite(relativeError) && !Double.isNaN(relativeError)) {
+                errors[errorCount] = relativeError * 100;
+                errorWorkloads[errorCount] = i + 1;
+                errorCount++;
+            }
+            batches[i] = controller.getBatchCount();
+            framesPerBatch[i] = controller.getFramesForNextBatch();
+            if (controller.getStopReason() == AdaptiveIterationController.StopReason.CONVERGED) {
+                converged++;
+            }
+        }
+        if (errorCount > 0) {
+            getReportLog().printArray("Frame Time 95% Confidence Interval (+/- %)",
+                    Arrays.copyOf(errors, errorCount), ResultType.LOWER_BETTER,
+                    ResultUnit.NONE);
+            getReportLog().printArray("Confidence Interval Workloads",
+                    Arrays.copyOf(errorWorkloads, errorCount), ResultType.NEUTRAL,
+                    ResultUnit.NONE);
+        }
+        getReportLog().printArray(
+                "Batches", batches, ResultType.NEUTRAL, ResultUnit.COUNT);
+        getReportLog().printArray(
+                "Frames Per Batch", framesPerBatch, ResultType.NEUTRAL, ResultUnit.COUNT);
+        getReportLog().printValue("Converged Workloads", converged, ResultType.HIGHER_BETTER,
+                ResultUnit.COUNT);
+    }
 }
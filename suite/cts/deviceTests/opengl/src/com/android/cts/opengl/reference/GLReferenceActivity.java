@@ -14,6 +14,7 @@
 package com.android.cts.opengl.reference;
 
 import com.android.cts.opengl.GLActivityIntentKeys;
+import com.android.cts.util.AdaptiveIterationController;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -28,10 +29,18 @@ public class GLReferenceActivity extends Activity {
     private volatile Exception mException;
     private int mNumFrames;
     private int mTimeout;
+    private long mRunStart;
 
+    // Times of the first run.
     public double[] mSetUpTimes;
     public double[] mUpdateTimes;
     public double[] mRenderTimes;
+    // Totals over all runs.
+    public double mUpdateSum;
+    public double mRenderSum;
+    public int mFrameCount;
+    // Decides how many times the benchmark is run.
+    public AdaptiveIterationController mController;
 
     private Semaphore mSemaphore = new Semaphore(0);
 
@@ -41,11 +50,29 @@ public class GLReferenceActivity extends Activity {
         Intent intent = getIntent();
         mNumFrames = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_FRAMES, 0);
         mTimeout = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_TIMEOUT, 0);
+        int timeBudget = intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_TIME_BUDGET, 0);
+        if (timeBudget <= 0) {
+            // Run the benchmark once.
+            mController = new AdaptiveIterationController(mNumFrames, 1, 1, 0,
+                    Double.POSITIVE_INFINITY);
+        } else {
+            // The frames are tied to the scenes so every run renders all of them.
+            mController = new AdaptiveIterationController(mNumFrames,
+                    intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_MIN_BATCHES, 1),
+                    intent.getIntExtra(GLActivityIntentKeys.INTENT_EXTRA_MAX_BATCHES, 1),
+                    intent.getDoubleExtra(GLActivityIntentKeys.INTENT_EXTRA_TARGET_ERROR, 0),
+                    timeBudget);
+        }
 
         // Start benchmark
-        intent = new Intent(this, GLGameActivity.class);
+        startGame();
+    }
+
+    private void startGame() {
+        Intent intent = new Intent(this, GLGameActivity.class);
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_FRAMES, mNumFrames);
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TIMEOUT, mTimeout);
+        mRunStart = System.currentTimeMillis();
         startActivityForResult(intent, GAME_ACTIVITY_CODE);
     }
 
@@ -67,9 +94,27 @@ public class GLReferenceActivity extends Activity {
         if (requestCode == GAME_ACTIVITY_CODE) {
             if (resultCode == RESULT_OK) {
                 // Benchmark passed
-                mSetUpTimes = data.getDoubleArrayExtra(GLGameActivity.SET_UP_TIME);
-                mUpdateTimes = data.getDoubleArrayExtra(GLGameActivity.UPDATE_TIMES);
-                mRenderTimes = data.getDoubleArrayExtra(GLGameActivity.RENDER_TIMES);
+                double[] updateTimes = data.getDoubleArrayExtra(GLGameActivity.UPDATE_TIMES);
+                double[] renderTimes = data.getDoubleArrayExtra(GLGameActivity.RENDER_TIMES);
+                if (mSetUpTimes == null) {
+                    mSetUpTimes = data.getDoubleArrayExtra(GLGameActivity.SET_UP_TIME);
+                    mUpdateTimes = updateTimes;
+                    mRenderTimes = renderTimes;
+                }
+                double duration = 0;
+                for (int i = 0; i < mNumFrames; i++) {
+                    mUpdateSum += updateTimes[i];
+                    mRenderSum += renderTimes[i];
+                    duration += updateTimes[i] + renderTimes[i];
+                }
+                mFrameCount += mNumFrames;
+                double overhead = System.currentTimeMillis() - mRunStart - duration;
+                mController.addBatch(mNumFrames, duration, Math.max(0, overhead));
+                if (!mController.isDone()) {
+                    // Run the benchmark again.
+                    startGame();
+                    return;
+                }
             } else {
                 setException(new Exception("Benchmark failed to run"));
             }
@@ -16,6 +16,7 @@ package com.android.cts.opengl.reference;
 import com.android.cts.opengl.GLActivityIntentKeys;
 
 import android.cts.util.CtsActivityInstrumentationTestCase2;
+import com.android.cts.util.AdaptiveIterationController;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 import com.android.cts.util.TimeoutReq;
@@ -31,6 +32,11 @@ public class GLReferenceBenchmark extends CtsActivityInstrumentationTestCase2<GL
     private static final int NUM_SCENES = 2;
     private static final int NUM_FRAMES = NUM_FRAMES_PER_SCENE * NUM_SCENES;
     private static final int TIMEOUT = 1000000;
+    // The benchmark is run until its frame time is known within 2%, or for 2 minutes.
+    private static final int TIME_BUDGET = 120000;
+    private static final int MIN_RUNS = 3;
+    private static final int MAX_RUNS = 10;
+    private static final double TARGET_ERROR = 0.02;
 
     public GLReferenceBenchmark() {
         super(GLReferenceActivity.class);
@@ -44,6 +50,10 @@ public class GLReferenceBenchmark extends CtsActivityInstrumentationTestCase2<GL
         Intent intent = new Intent();
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_NUM_FRAMES, NUM_FRAMES);
         intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TIMEOUT, TIMEOUT);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TIME_BUDGET, TIME_BUDGET);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_MIN_BATCHES, MIN_RUNS);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_MAX_BATCHES, MAX_RUNS);
+        intent.putExtra(GLActivityIntentKeys.INTENT_EXTRA_TARGET_ERROR, TARGET_ERROR);
 
         GLReferenceActivity activity = null;
         setActivityIntent(intent);
@@ -55,15 +65,11 @@ public class GLReferenceBenchmark extends CtsActivityInstrumentationTestCase2<GL
             double[] updateTimes = activity.mUpdateTimes;
             double[] renderTimes = activity.mRenderTimes;
 
-            // Calculate update and render average.
-            double updateSum = updateTimes[0];
-            double renderSum = renderTimes[0];
-            for (int i = 0; i < NUM_FRAMES - 1; i++) {
-                updateSum += updateTimes[i + 1];
-                renderSum += renderTimes[i + 1];
-            }
-            double updateAverage = updateSum / NUM_FRAMES;
-            double renderAverage = renderSum / NUM_FRAMES;
+            AdaptiveIterationController controller = activity.mController;
+
+            // Calculate update and render average over all runs.
+            double updateAverage = activity.mUpdateSum / activity.mFrameCount;
+            double renderAverage = activity.mRenderSum / activity.mFrameCount;
 
             getReportLog().printArray(
                     "Set Up Times", setUpTimes, ResultType.LOWER_BETTER, ResultUnit.MS);
@@ -77,6 +83,16 @@ public class GLReferenceBenchmark extends CtsActivityInstrumentationTestCase2<GL
             getReportLog().printValue(
                     "Render Time Average", renderAverage, ResultType.LOWER_BETTER,
                     ResultUnit.MS);
+            getReportLog().printArray("Run Frame Times", controller.getBatchFrameTimes(),
+                    ResultType.LOWER_BETTER, ResultUnit.MS);
+            double relativeError = controller.getRelativeError();
+            // there is no confidence interval with fewer than two runs
+            if (!Double.isInfinite(relativeError)) {
+                getReportLog().printValue("Frame Time 95% Confidence Interval (+/- %)",
+                        relativeError * 100, ResultType.LOWER_BETTER, ResultUnit.NONE);
+            }
+            getReportLog().printValue("Runs", controller.getBatchCount(), ResultType.NEUTRAL,
+                    ResultUnit.COUNT);
             totalTime = setUpTimes[0] + setUpTimes[1] + setUpTimes[2] +
                     setUpTimes[3] + updateAverage + renderAverage;
             getReportLog().printSummary(
@@ -17,7 +17,9 @@
 #include <jni.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/syscall.h>
 #include <sys/time.h>
+#include <unistd.h>
 
 /* Code from now to qsort_local all copied from bionic source.
  * The code is duplicated here to remove dependency on optimized bionic
@@ -268,3 +270,16 @@ extern "C" JNIEXPORT jdouble JNICALL Java_com_android_cts_simplecpu_CpuNative_ru
     return totalTime;
 }
 
+extern "C" JNIEXPORT jboolean JNICALL Java_com_android_cts_simplecpu_CpuNative_pinToCpu(JNIEnv* env,
+        jclass clazz, jint cpu)
+{
+    if ((cpu < 0) || (cpu >= (int)(sizeof(unsigned long) * 8))) {
+        return JNI_FALSE;
+    }
+    // use the raw syscall as cpu_set_t helpers are not available in all NDK versions
+    unsigned long mask = 1UL << cpu;
+    if (syscall(__NR_sched_setaffinity, 0, sizeof(mask), &mask) != 0) {
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
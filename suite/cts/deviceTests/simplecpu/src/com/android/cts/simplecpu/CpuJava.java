@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.simplecpu;
+
+import com.android.cts.util.ScalingBenchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Pure Java version of {@link CpuNative}, for running the CPU scaling benchmark
+ * without the JNI library, for example on a host.
+ * <p/>
+ * Host usage: CpuJava [matrix dimension]
+ */
+public class CpuJava {
+
+    /**
+     * same as {@link CpuNative#runSort(int, int)} using Arrays.sort
+     */
+    public static double runSort(int numberElements, int repetition) {
+        int[] data = new int[numberElements];
+        double totalTime = 0;
+        for (int i = 0; i < repetition; i++) {
+            Random random = new Random(0);
+            for (int j = 0; j < numberElements; j++) {
+                data[j] = random.nextInt();
+            }
+            long start = System.nanoTime();
+            Arrays.sort(data);
+            long end = System.nanoTime();
+            totalTime += (end - start) / 1000000.0;
+        }
+        return totalTime;
+    }
+
+    /**
+     * same as {@link CpuNative#runMatrixMultiplication(int, int)}
+     * @param n should be multiple of 8
+     */
+    public static double runMatrixMultiplication(int n, int repetition) {
+        float[] a = new float[n * n];
+        float[] b = new float[n * n];
+        float[] c = new float[n * n];
+        double totalTime = 0;
+        for (int i = 0; i < repetition; i++) {
+            randomInit(a, 0);
+            randomInit(b, 1);
+            long start = System.nanoTime();
+            doMatrixMultiplication(a, b, c, n);
+            long end = System.nanoTime();
+            totalTime += (end - start) / 1000000.0;
+        }
+        return totalTime;
+    }
+
+    private static void randomInit(float[] array, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < array.length; i++) {
+            array[i] = random.nextInt();
+        }
+    }
+
+    /**
+     * C = A x B, same blocking as the native version
+     */
+    private static void doMatrixMultiplication(float[] a, float[] b, float[] c, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j += 8) {
+                float s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+                for (int k = 0; k < n; k++) {
+                    float v = a[i * n + k];
+                    int base = k * n + j;
+                    s0 += v * b[base];
+                    s1 += v * b[base + 1];
+                    s2 += v * b[base + 2];
+                    s3 += v * b[base + 3];
+                    s4 += v * b[base + 4];
+                    s5 += v * b[base + 5];
+                    s6 += v * b[base + 6];
+                    s7 += v * b[base + 7];
+                }
+                int out = i * n + j;
+                c[out] = s0;
+                c[out + 1] = s1;
+                c[out + 2] = s2;
+                c[out + 3] = s3;
+                c[out + 4] = s4;
+                c[out + 5] = s5;
+                c[out + 6] = s6;
+                c[out + 7] = s7;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int n = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        final int repetition = 10;
+        int cores = Runtime.getRuntime().availableProcessors();
+        ScalingBenchmark.StepResult[] results = ScalingBenchmark.sweep(
+                new ScalingBenchmark.Workload() {
+                    @Override
+                    public void prepare(int threadIndex, int numberThreads) {
+                        runMatrixMultiplication(n, 1);
+                    }
+
+                    @Override
+                    public double run(int threadIndex) {
+                        runMatrixMultiplication(n, repetition);
+                        return repetition;
+                    }
+                }, cores);
+        for (ScalingBenchmark.StepResult result : results) {
+            System.out.println(String.format(
+                    "matrix multiplication %d threads: %.1f ops, efficiency %.2f",
+                    result.mNumberThreads, result.mThroughput, result.mEfficiency));
+        }
+    }
+}
@@ -37,4 +37,11 @@ public class CpuNative {
      * @return time taken for computation, added for all repetition in ms
      */
     public static native double runMatrixMultiplication(int n, int repetition);
+
+    /**
+     * pin the calling thread to the given cpu.
+     * @param cpu
+     * @return false if pinning is not supported or the cpu is offline
+     */
+    public static native boolean pinToCpu(int cpu);
 }
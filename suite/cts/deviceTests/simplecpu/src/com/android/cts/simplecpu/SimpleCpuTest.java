@@ -21,6 +21,7 @@ import android.util.Log;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 import android.cts.util.CtsAndroidTestCase;
+import com.android.cts.util.ScalingBenchmark;
 import com.android.cts.util.Stat;
 import com.android.cts.util.TimeoutReq;
 
@@ -81,6 +82,14 @@ public class SimpleCpuTest extends CtsAndroidTestCase {
         doMatrixMultiplication(NUMBER_REPEAT, 600);
     }
 
+    public void testSortScaling128KB() throws Exception {
+        doTestSortScaling(128 * KB);
+    }
+
+    public void testMatrixMultiplicationScaling128() throws Exception {
+        doMatrixMultiplicationScaling(128);
+    }
+
     /**
      * run some code to force full CPU freq.
      */
@@ -131,4 +140,51 @@ public class SimpleCpuTest extends CtsAndroidTestCase {
                 ResultType.LOWER_BETTER, ResultUnit.MS);
     }
 
+    /**
+     * qsort on all cores at once, each thread sorting its own array
+     * @param arrayLength
+     */
+    private void doTestSortScaling(final int arrayLength) throws Exception {
+        final int numberRepeatInEachCall = 10;
+        ScalingBenchmark.StepResult[] results = ScalingBenchmark.sweep(
+                new PinnedWorkload() {
+                    @Override
+                    public double run(int threadIndex) {
+                        CpuNative.runSort(arrayLength, numberRepeatInEachCall);
+                        return numberRepeatInEachCall;
+                    }
+                }, Runtime.getRuntime().availableProcessors());
+        ScalingBenchmark.report(getReportLog(), "sorting", results, ResultUnit.OPS);
+    }
+
+    /**
+     * nxn matrix multiplication on all cores at once, each thread with its own matrices
+     * @param n should be multiple of 8
+     */
+    private void doMatrixMultiplicationScaling(final int n) throws Exception {
+        assertTrue(n % 8 == 0);
+        final int numberRepeatInEachCall = 10;
+        ScalingBenchmark.StepResult[] results = ScalingBenchmark.sweep(
+                new PinnedWorkload() {
+                    @Override
+                    public double run(int threadIndex) {
+                        CpuNative.runMatrixMultiplication(n, numberRepeatInEachCall);
+                        return numberRepeatInEachCall;
+                    }
+                }, Runtime.getRuntime().availableProcessors());
+        ScalingBenchmark.report(getReportLog(), "matrix mutiplication", results,
+                ResultUnit.OPS);
+    }
+
+    /**
+     * pins each worker thread to its own cpu when possible.
+     */
+    private static abstract class PinnedWorkload implements ScalingBenchmark.Workload {
+        @Override
+        public void prepare(int threadIndex, int numberThreads) {
+            if (!CpuNative.pinToCpu(threadIndex)) {
+                Log.w(TAG, "cannot pin thread " + threadIndex);
+            }
+        }
+    }
 }
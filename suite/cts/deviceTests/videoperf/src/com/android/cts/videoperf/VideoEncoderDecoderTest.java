@@ -16,7 +16,6 @@
 
 package com.android.cts.videoperf;
 
-import android.graphics.Point;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo.CodecCapabilities;
 import android.media.MediaFormat;
@@ -26,6 +25,7 @@ import android.cts.util.CtsAndroidTestCase;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
 import com.android.cts.util.Stat;
+import com.android.cts.util.YuvFrameVerifier;
 
 import java.nio.ByteBuffer;
 import java.lang.System;
@@ -38,9 +38,10 @@ import java.util.Vector;
  * data and decoder is used to decode the encoded video. This approach does not work where
  * there is only decoder. Performance index is total time taken for encoding and decoding
  * the whole frames.
- * To prevent sacrificing quality for faster encoding / decoding, randomly selected pixels are
- * compared with the original image. As the pixel comparison can slow down the decoding process,
- * only some randomly selected pixels are compared. As there can be only one performance index,
+ * To prevent sacrificing quality for faster encoding / decoding, randomly selected rows of
+ * each decoded frame are compared with the original image. The rows are copied out of the
+ * decoder buffer and compared on a separate thread, so that the comparison does not slow down
+ * the decoding process. As there can be only one performance index,
  * error above certain threshold in pixel value will be treated as an error.
  */
 public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
@@ -70,9 +71,10 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
     private int mVideoHeight;
 
     private Vector<ByteBuffer> mEncodedOutputBuffer;
-    // check this many pixels per each decoded frame
-    // checking too many points decreases decoder frame rates a lot.
-    private static final int PIXEL_CHECK_PER_FRAME = 1000;
+    // check this many rows per each decoded frame
+    private static final int ROW_CHECK_PER_FRAME = 8;
+    // decoded frames which can wait for being checked. Frames are not checked when all are busy.
+    private static final int FRAME_CHECK_QUEUE_LENGTH = 4;
     // RMS error in pixel values above this will be treated as error.
     private static final double PIXEL_RMS_ERROR_MARGAIN = 20.0;
     private Random mRandom;
@@ -223,6 +225,7 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
         int numBytesSubmitted = 0;
         int numBytesDequeued = 0;
         int inFramesCount = 0;
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
         long start = System.currentTimeMillis();
         while (true) {
             int index;
@@ -243,7 +246,6 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
 
                 }
             }
-            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
             index = codec.dequeueOutputBuffer(info, VIDEO_CODEC_WAIT_TIME_US /* timeoutUs */);
             if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
             } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
@@ -283,23 +285,24 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
         ByteBuffer buffer = inputBuffers[index];
         buffer.clear();
 
-        Point origin = getOrigin(frameCount);
+        int originX = getOriginX(frameCount);
+        int originY = getOriginY(frameCount);
         // Y color first
-        int srcOffsetY = origin.x + origin.y * mBufferWidth;
+        int srcOffsetY = originX + originY * mBufferWidth;
         final byte[] yBuffer = mYBuffer.array();
         for (int i = 0; i < mVideoHeight; i++) {
             buffer.put(yBuffer, srcOffsetY, mVideoWidth);
             srcOffsetY += mBufferWidth;
         }
         if (mSrcSemiPlanar) {
-            int srcOffsetU = origin.y / 2 * mBufferWidth + origin.x / 2 * 2;
+            int srcOffsetU = originY / 2 * mBufferWidth + originX / 2 * 2;
             final byte[] uvBuffer = mUVBuffer.array();
             for (int i = 0; i < mVideoHeight / 2; i++) {
                 buffer.put(uvBuffer, srcOffsetU, mVideoWidth);
                 srcOffsetU += mBufferWidth;
             }
         } else {
-            int srcOffsetU = origin.y / 2 * mBufferWidth / 2 + origin.x / 2;
+            int srcOffsetU = originY / 2 * mBufferWidth / 2 + originX / 2;
             int srcOffsetV = srcOffsetU + mBufferWidth / 2 * mBufferHeight / 2;
             final byte[] uvBuffer = mUVBuffer.array();
             for (int i = 0; i < mVideoHeight /2; i++) { //U only
@@ -343,22 +346,24 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
      * @param format format of media to decode
      * @return returns length-2 array with 0: time for decoding, 1 : rms error of pixels
      */
-    private double[] runDecoder(String mimeType, MediaFormat format) {
+    private double[] runDecoder(String mimeType, MediaFormat format) throws InterruptedException {
         MediaCodec codec = MediaCodec.createDecoderByType(mimeType);
         codec.configure(format, null /* surface */, null /* crypto */, 0 /* flags */);
         codec.start();
         ByteBuffer[] codecInputBuffers = codec.getInputBuffers();
         ByteBuffer[] codecOutputBuffers = codec.getOutputBuffers();
 
-        double totalErrorSquared = 0;
+        YuvFrameVerifier verifier = new YuvFrameVerifier(mYBuffer.array(), mUVBuffer.array(),
+                mBufferWidth, mBufferHeight, mSrcSemiPlanar, mVideoWidth, mVideoHeight,
+                ROW_CHECK_PER_FRAME, FRAME_CHECK_QUEUE_LENGTH, mRandom.nextLong());
+        verifier.setDecodedSemiPlanar(mDstSemiPlanar);
+        verifier.start();
 
         MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
         boolean sawOutputEOS = false;
         int inputLeft = mEncodedOutputBuffer.size();
         int inputBufferCount = 0;
         int outFrameCount = 0;
-        YUVValue expected = new YUVValue();
-        YUVValue decoded = new YUVValue();
         long start = System.currentTimeMillis();
         while (!sawOutputEOS) {
             if (inputLeft > 0) {
@@ -390,19 +395,7 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
                     printByteBuffer("UV ", buf, mVideoWidth * mVideoHeight, 20);
                     printByteBuffer("UV ", buf, mVideoWidth * mVideoHeight + mVideoWidth * 60, 20);
                 }
-                Point origin = getOrigin(outFrameCount);
-                for (int i = 0; i < PIXEL_CHECK_PER_FRAME; i++) {
-                    int w = mRandom.nextInt(mVideoWidth);
-                    int h = mRandom.nextInt(mVideoHeight);
-                    getPixelValuesFromYUVBuffers(origin.x, origin.y, w, h, expected);
-                    getPixelValuesFromOutputBuffer(buf, w, h, decoded);
-                    if (VERBOSE) {
-                        Log.i(TAG, outFrameCount + "-" + i + "- th round expcted " + expected.mY +
-                                "," + expected.mU + "," + expected.mV + "  decoded " + decoded.mY +
-                                "," + decoded.mU + "," + decoded.mV);
-                    }
-                    totalErrorSquared += expected.calcErrorSquared(decoded);
-                }
+                verifier.submit(buf, getOriginX(outFrameCount), getOriginY(outFrameCount));
                 codec.releaseOutputBuffer(outputBufIndex, false /* render */);
                 if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
                     Log.d(TAG, "saw output EOS.");
@@ -425,35 +418,57 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
                             Integer.toHexString(colorFormat));
                     // give up and return as nothing can be done
                     codec.release();
+                    verifier.finish();
                     return null;
                 }
+                verifier.setDecodedSemiPlanar(mDstSemiPlanar);
             }
         }
         long finish = System.currentTimeMillis();
         codec.stop();
         codec.release();
         codec = null;
+        verifier.finish();
         assertTrue(outFrameCount >= TOTAL_FRAMES);
-        // divide by 3 as sum is done for Y, U, V.
-        double errorRms = Math.sqrt(totalErrorSquared / PIXEL_CHECK_PER_FRAME / outFrameCount / 3);
-        double[] result = { (double) finish - start, errorRms };
+        assertTrue(verifier.getVerifiedFrames() > 0);
+        if (verifier.getSkippedFrames() > 0) {
+            Log.i(TAG, verifier.getSkippedFrames() + " of " + outFrameCount
+                    + " frames not checked");
+        }
+        double[] result = { (double) finish - start, verifier.getRmsError() };
         return result;
     }
 
     /**
-     *  returns origin in the absolute frame for given frame count.
+     *  returns x of the origin in the absolute frame for given frame count.
      *  The video scene is moving by moving origin per each frame.
      */
-    private Point getOrigin(int frameCount) {
+    private static int getOriginX(int frameCount) {
         if (frameCount < 100) {
-            return new Point(2 * frameCount, 0);
+            return 2 * frameCount;
         } else if (frameCount < 200) {
-            return new Point(200, (frameCount - 100) * 2);
+            return 200;
         } else {
             if (frameCount > 300) { // for safety
                 frameCount = 300;
             }
-            return new Point(600 - frameCount * 2, 600 - frameCount * 2);
+            return 600 - frameCount * 2;
+        }
+    }
+
+    /**
+     *  returns y of the origin in the absolute frame for given frame count.
+     */
+    private static int getOriginY(int frameCount) {
+        if (frameCount < 100) {
+            return 0;
+        } else if (frameCount < 200) {
+            return (frameCount - 100) * 2;
+        } else {
+            if (frameCount > 300) { // for safety
+                frameCount = 300;
+            }
+            return 600 - frameCount * 2;
         }
     }
 
@@ -499,72 +514,6 @@ public class VideoEncoderDecoderTest extends CtsAndroidTestCase {
         }
     }
 
-    /**
-     * class to store pixel values in YUV
-     *
-     */
-    public class YUVValue {
-        public byte mY;
-        public byte mU;
-        public byte mV;
-        public YUVValue() {
-        }
-
-        public boolean equalTo(YUVValue other) {
-            return (mY == other.mY) && (mU == other.mU) && (mV == other.mV);
-        }
-
-        public double calcErrorSquared(YUVValue other) {
-            double yDelta = mY - other.mY;
-            double uDelta = mU - other.mU;
-            double vDelta = mV - other.mV;
-            return yDelta * yDelta + uDelta * uDelta + vDelta * vDelta;
-        }
-    }
-
-    /**
-     * Read YUV values from given position (x,y) for given origin (originX, originY)
-     * The whole data is already available from YBuffer and UVBuffer.
-     * @param result pass the result via this. This is for avoiding creating / destroying too many
-     *               instances
-     */
-    private void getPixelValuesFromYUVBuffers(int originX, int originY, int x, int y,
-            YUVValue result) {
-        result.mY = mYBuffer.get((originY + y) * mBufferWidth + (originX + x));
-        if (mSrcSemiPlanar) {
-            int index = (originY + y) / 2 * mBufferWidth + (originX + x) / 2 * 2;
-            //Log.d(TAG, "YUV " + originX + "," + originY + "," + x + "," + y + "," + index);
-            result.mU = mUVBuffer.get(index);
-            result.mV = mUVBuffer.get(index + 1);
-        } else {
-            int vOffset = mBufferWidth * mBufferHeight / 4;
-            int index = (originY + y) / 2 * mBufferWidth / 2 + (originX + x) / 2;
-            result.mU = mUVBuffer.get(index);
-            result.mV = mUVBuffer.get(vOffset + index);
-        }
-    }
-
-    /**
-     * Read YUV pixels from decoded output buffer for give (x, y) position
-     * Output buffer is composed of Y parts followed by U/V
-     * @param result pass the result via this. This is for avoiding creating / destroying too many
-     *               instances
-     */
-    private void getPixelValuesFromOutputBuffer(ByteBuffer buffer, int x, int y, YUVValue result) {
-        result.mY = buffer.get(y * mVideoWidth + x);
-        if (mDstSemiPlanar) {
-            int index = mVideoWidth * mVideoHeight + y / 2 * mVideoWidth + x / 2 * 2;
-            //Log.d(TAG, "Decoded " + x + "," + y + "," + index);
-            result.mU = buffer.get(index);
-            result.mV = buffer.get(index + 1);
-        } else {
-            int vOffset = mVideoWidth * mVideoHeight / 4;
-            int index = mVideoWidth * mVideoHeight + y / 2 * mVideoWidth / 2 + x / 2;
-            result.mU = buffer.get(index);
-            result.mV = buffer.get(index + vOffset);
-        }
-    }
-
     /**
      * Y cannot have full range. clamp it to prevent invalid value.
      */
@@ -20,7 +20,10 @@ import android.util.Log;
 import com.android.uiautomator.platform.JankTestBase;
 
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Scanner;
 
 public class CtsJankTestBase extends JankTestBase {
@@ -33,6 +36,8 @@ public class CtsJankTestBase extends JankTestBase {
     protected static long SLEEP_TIME = 2000; // 2 seconds
     protected static int NUM_ITERATIONS = 5;
     protected static int TRACE_TIME = 5;
+    // read by CtsHostJankTest, one file per iteration
+    private final static String FRAME_TRACE_FILE = "/data/local/tmp/%s_frames_%d.txt";
 
     @Override
     protected String getPropertyString(Bundle params, String key)
@@ -94,4 +99,37 @@ public class CtsJankTestBase extends JankTestBase {
             }
         }
     }
+
+    /**
+     * Saves the timestamps SurfaceFlinger kept for the last frames of the given window, so that
+     * the host can analyze every frame rather than the averages computed on the device.
+     */
+    protected void saveFrameTimestamps(String windowName, int iteration) throws Exception {
+        String fileName = String.format(FRAME_TRACE_FILE, getName(), iteration);
+        Process p = Runtime.getRuntime().exec(
+                new String[] { "dumpsys", "SurfaceFlinger", "--latency", windowName });
+        InputStream in = p.getInputStream();
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(fileName);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+            if (out != null) {
+                out.close();
+            }
+            int status = p.waitFor();
+            p.destroy();
+            if (status != 0) {
+                throw new RuntimeException(
+                        String.format("Dump frame timestamps of %s, status: %s", windowName,
+                                status));
+            }
+        }
+        Log.i(TAG, "Saved frame timestamps to " + fileName);
+    }
 }
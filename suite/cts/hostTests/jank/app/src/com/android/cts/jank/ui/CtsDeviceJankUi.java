@@ -71,6 +71,7 @@ public class CtsDeviceJankUi extends CtsJankTestBase {
             Log.i(TAG, "Dumping SurfaceFlinger buffer");
             boolean result = SurfaceFlingerHelper.dumpFrameLatency(APP_WINDOW_NAME, true);
             assertTrue("SurfaceFlingerHelper could not get timestamps", result);
+            saveFrameTimestamps(APP_WINDOW_NAME, i);
 
             // Stop systrace
             endTrace();
@@ -17,23 +17,26 @@ import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.util.HostReportLog;
 import com.android.cts.util.ResultType;
 import com.android.cts.util.ResultUnit;
-import com.android.ddmlib.IShellOutputReceiver;
+import com.android.cts.util.Stat;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.MultiLineReceiver;
 import com.android.tradefed.build.IBuildInfo;
 import com.android.tradefed.device.ITestDevice;
 import com.android.tradefed.testtype.DeviceTestCase;
 import com.android.tradefed.testtype.IBuildReceiver;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.io.FileReader;
+import java.io.Reader;
 
 public class CtsHostJankTest extends DeviceTestCase implements IBuildReceiver {
 
     private static final String TAG = CtsHostJankTest.class.getSimpleName();
     private static final String DEVICE_LOCATION = "/data/local/tmp/";
     private static final String RUN_UI_AUTOMATOR_CMD = "uiautomator runtest %s -c %s";
+    // written by CtsJankTestBase.saveFrameTimestamps for each iteration of a test
+    private static final String FRAME_TRACE_FILE = "%s_frames_%d.txt";
     private final String mHostTestClass;
     private final String mDeviceTestClass;
     private final String mJarName;
@@ -77,57 +80,60 @@ public class CtsHostJankTest extends DeviceTestCase implements IBuildReceiver {
         // Run ui automator test.
         mDevice.executeShellCommand(
                 String.format(RUN_UI_AUTOMATOR_CMD, mJarName, mDeviceTestClass + "#" + testName),
-                new IShellOutputReceiver() {
-                    private StringBuilder sb = new StringBuilder();
-
-                    public void addOutput(byte[] data, int offset, int length) {
-                        byte[] raw = new byte[length];
-                        for (int i = 0; i < length; i++) {
-                            raw[i] = data[i + offset];
+                new MultiLineReceiver() {
+                    @Override
+                    public void processNewLines(String[] lines) {
+                        for (String line : lines) {
+                            Log.logAndDisplay(LogLevel.INFO, TAG, line);
                         }
-                        sb.append(new String(raw));
-                    }
-
-                    public void flush() {
-                        Log.logAndDisplay(LogLevel.INFO, TAG, sb.toString());
                     }
 
+                    @Override
                     public boolean isCancelled() {
                         return false;
                     }
                 });
 
-        // Pull result file across
-        File result = mDevice.pullFile(DEVICE_LOCATION + "UiJankinessTestsOutput.txt");
-        assertNotNull("Couldn't get result file", result);
-        // Parse result file
-        Scanner in = new Scanner(result);
-        HashMap<String, Double> results = new HashMap<String, Double>(4);
-        while (in.hasNextLine()) {
-            String[] parts = in.nextLine().split(":");
-            if (parts.length == 2) {
-                results.put(parts[0], Double.parseDouble(parts[1]));
+        // Pull the frame timestamps of each iteration across and analyze them.
+        FrameTimingAnalyzer analyzer = new FrameTimingAnalyzer();
+        for (int i = 0; ; i++) {
+            File trace = mDevice.pullFile(
+                    DEVICE_LOCATION + String.format(FRAME_TRACE_FILE, testName, i));
+            if (trace == null) {
+                break;
+            }
+            Reader reader = new FileReader(trace);
+            try {
+                analyzer.addTrace(reader);
+            } finally {
+                reader.close();
+                trace.delete();
             }
         }
-        Log.logAndDisplay(LogLevel.INFO, TAG, "Results: " + results);
-        assertEquals("Could not parse the results file: ", 4, results.size());
+        Log.logAndDisplay(LogLevel.INFO, TAG, String.format("%d frames in %d traces, %d janks",
+                analyzer.getFrameCount(), analyzer.getTraceCount(), analyzer.getJankCount()));
+        assertTrue("Couldn't get frame timestamps", analyzer.getTraceCount() > 0);
+        assertTrue("No frame was presented", analyzer.getFrameTimeCount() > 0);
 
-        double avgNumJanks = results.get("average number of jankiness");
-        double maxNumJanks = results.get("max number of jankiness");
-        double avgFrameRate = results.get("average frame rate");
-        double avgMaxAccFrames = results.get("average of max accumulated frames");
+        double[] janks = analyzer.getJanksPerTrace();
 
         // Create and deliver the report.
         HostReportLog report =
                 new HostReportLog(mDevice.getSerialNumber(), mHostTestClass + "#" + testName);
-        report.printValue(
-                "Average Frame Rate", avgFrameRate, ResultType.HIGHER_BETTER, ResultUnit.COUNT);
-        report.printValue("Average of Maximum Accumulated Frames", avgMaxAccFrames,
+        report.printValue("Average Frame Rate", Stat.getAverage(analyzer.getFrameRates()),
+                ResultType.HIGHER_BETTER, ResultUnit.FPS);
+        report.printArray("Frame Time Percentiles (50, 90, 95, 99)",
+                analyzer.getFrameTimePercentiles(), ResultType.LOWER_BETTER, ResultUnit.MS);
+        report.printArray("Longest Frame Times", analyzer.getLongestFrameTimes(),
+                ResultType.LOWER_BETTER, ResultUnit.MS);
+        report.printArray("Frames per Number of Refresh Periods Taken",
+                analyzer.getRefreshPeriodHistogram(), ResultType.NEUTRAL, ResultUnit.COUNT);
+        report.printValue("Missed Vsyncs", analyzer.getMissedVsyncCount(),
+                ResultType.LOWER_BETTER, ResultUnit.COUNT);
+        report.printValue("Maximum Number of Janks", Stat.getMax(janks),
                 ResultType.LOWER_BETTER, ResultUnit.COUNT);
-        report.printValue(
-                "Maximum Number of Janks", maxNumJanks, ResultType.LOWER_BETTER, ResultUnit.COUNT);
-        report.printSummary(
-                "Average Number of Janks", avgNumJanks, ResultType.LOWER_BETTER, ResultUnit.SCORE);
+        report.printSummary("Average Number of Janks", Stat.getAverage(janks),
+                ResultType.LOWER_BETTER, ResultUnit.SCORE);
         report.deliverReportToHost();
     }
 
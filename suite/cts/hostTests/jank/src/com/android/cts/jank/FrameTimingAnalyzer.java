@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.cts.jank;
+
+import com.android.cts.util.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes frame time statistics from the frame timestamps dumped by
+ * {@code dumpsys SurfaceFlinger --latency <window>}.
+ * <p/>
+ * A dump starts with the refresh period in nanoseconds, followed by one line per frame holding
+ * the desired present time, the actual present time and the time the frame was ready, all in
+ * nanoseconds. Slots which were never used hold 0, and frames whose fence has not signaled yet
+ * hold {@link Long#MAX_VALUE}; both are ignored.
+ * <p/>
+ * The frame time is the time between the actual present times of two consecutive frames. A frame
+ * which was presented more than one refresh period after the previous one missed a vsync and is
+ * counted as a jank. Several dumps, one per iteration, can be added, frame times are never
+ * computed across two dumps.
+ */
+public class FrameTimingAnalyzer {
+    /** percentiles of the frame time reported by {@link #getFrameTimePercentiles()} */
+    public static final double[] PERCENTILES = { 50.0, 90.0, 95.0, 99.0 };
+    /** frames taking this many refresh periods or more share the last histogram bucket */
+    public static final int MAX_HISTOGRAM_PERIODS = 6;
+    /** number of frame times reported by {@link #getLongestFrameTimes()} */
+    public static final int LONGEST_FRAMES = 5;
+
+    private static final double NS_PER_MS = 1000.0 * 1000.0;
+
+    // frame times in ms, 1 us to 10 s with 0.1% precision
+    private final Histogram mFrameTimes = new Histogram(0.001, 10000.0, 3);
+    // mPeriodCounts[i] is the number of frames which took i + 1 refresh periods
+    private final long[] mPeriodCounts = new long[MAX_HISTOGRAM_PERIODS];
+    // longest frame times in ms, in decreasing order
+    private final double[] mLongestFrames = new double[LONGEST_FRAMES];
+    private final List<Integer> mJanksPerTrace = new ArrayList<Integer>();
+    private final List<Double> mFrameRates = new ArrayList<Double>();
+    private long mFrameCount = 0;
+    private long mMissedVsyncs = 0;
+
+    /**
+     * Add the frames of a single dump. The reader is not closed.
+     *
+     * @throws IOException if the dump could not be read or does not start with a refresh period
+     */
+    public void addTrace(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        String line = in.readLine();
+        long refreshPeriod = (line == null) ? -1 : parseTimestamp(line.trim());
+        if (refreshPeriod <= 0) {
+            throw new IOException("Frame latency dump does not start with a refresh period: "
+                    + line);
+        }
+        int janks = 0;
+        int frames = 0;
+        long first = 0;
+        long previous = 0;
+        while ((line = in.readLine()) != null) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length != 3) {
+                continue;
+            }
+            long present = parseTimestamp(parts[1]);
+            if (present <= 0 || present == Long.MAX_VALUE) {
+                continue;
+            }
+            if (frames > 0) {
+                if (present <= previous) {
+                    // the dump wrapped around or is corrupted, do not invent a frame time
+                    continue;
+                }
+                long frameTime = present - previous;
+                int periods = (int) Math.max(1, Math.round((double) frameTime / refreshPeriod));
+                if (periods > 1) {
+                    janks++;
+                    mMissedVsyncs += periods - 1;
+                }
+                mPeriodCounts[Math.min(periods, MAX_HISTOGRAM_PERIODS) - 1]++;
+                recordFrameTime(frameTime / NS_PER_MS);
+            } else {
+                first = present;
+            }
+            previous = present;
+            frames++;
+        }
+        mFrameCount += frames;
+        mJanksPerTrace.add(janks);
+        mFrameRates.add(frames > 1 ? (frames - 1) * 1000.0 / ((previous - first) / NS_PER_MS)
+                : 0.0);
+    }
+
+    private void recordFrameTime(double frameTimeMs) {
+        mFrameTimes.record(frameTimeMs);
+        int i = LONGEST_FRAMES;
+        while (i > 0 && mLongestFrames[i - 1] < frameTimeMs) {
+            i--;
+        }
+        if (i < LONGEST_FRAMES) {
+            System.arraycopy(mLongestFrames, i, mLongestFrames, i + 1, LONGEST_FRAMES - i - 1);
+            mLongestFrames[i] = frameTimeMs;
+        }
+    }
+
+    /**
+     * @return the timestamp in the given string, or -1 if it is not a number
+     */
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return number of dumps added
+     */
+    public int getTraceCount() {
+        return mJanksPerTrace.size();
+    }
+
+    /**
+     * @return number of frames presented in all dumps
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return number of frame times measured, one less than the frames of each dump
+     */
+    public long getFrameTimeCount() {
+        return mFrameTimes.getCount();
+    }
+
+    /**
+     * @return number of frames which missed at least one vsync, in all dumps
+     */
+    public int getJankCount() {
+        int janks = 0;
+        for (int count : mJanksPerTrace) {
+            janks += count;
+        }
+        return janks;
+    }
+
+    /**
+     * @return number of vsyncs without a new frame, in all dumps
+     */
+    public long getMissedVsyncCount() {
+        return mMissedVsyncs;
+    }
+
+    /**
+     * @return number of janks of each dump, in the order they were added
+     */
+    public double[] getJanksPerTrace() {
+        double[] janks = new double[mJanksPerTrace.size()];
+        for (int i = 0; i < janks.length; i++) {
+            janks[i] = mJanksPerTrace.get(i);
+        }
+        return janks;
+    }
+
+    /**
+     * @return frames per second of each dump, in the order they were added
+     */
+    public double[] getFrameRates() {
+        double[] rates = new double[mFrameRates.size()];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = mFrameRates.get(i);
+        }
+        return rates;
+    }
+
+    /**
+     * @return frame time in ms for each of {@link #PERCENTILES}, NaN if no frame time was measured
+     */
+    public double[] getFrameTimePercentiles() {
+        return mFrameTimes.getPercentiles(PERCENTILES);
+    }
+
+    /**
+     * @return all frame times in ms, summarized
+     */
+    public Histogram getFrameTimes() {
+        return mFrameTimes;
+    }
+
+    /**
+     * @return the {@link #LONGEST_FRAMES} longest frame times in ms, longest first. Fewer are
+     *         returned if fewer frame times were measured.
+     */
+    public double[] getLongestFrameTimes() {
+        int count = (int) Math.min(LONGEST_FRAMES, mFrameTimes.getCount());
+        return Arrays.copyOf(mLongestFrames, count);
+    }
+
+    /**
+     * @return number of frames which took 1, 2, ... refresh periods, the last element counting
+     *         the frames which took {@link #MAX_HISTOGRAM_PERIODS} periods or more
+     */
+    public double[] getRefreshPeriodHistogram() {
+        double[] counts = new double[MAX_HISTOGRAM_PERIODS];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = mPeriodCounts[i];
+        }
+        return counts;
+    }
+}
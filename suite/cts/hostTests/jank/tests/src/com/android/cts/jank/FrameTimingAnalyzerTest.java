@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.cts.jank;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Unit tests for {@link FrameTimingAnalyzer}.
+ */
+public class FrameTimingAnalyzerTest extends TestCase {
+
+    // 120 frames of a list scroll at 60 Hz, where the frames after frames 29, 60 and 94 took
+    // 2, 3 and 5 refresh periods. Unused slots and a frame with a pending fence surround them.
+    private static final String SCROLLING_TRACE = "frame_latency_scrolling.txt";
+    private static final double PERIOD_MS = 16.666666;
+    private static final double TOLERANCE_MS = 0.2;
+
+    private FrameTimingAnalyzer mAnalyzer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAnalyzer = new FrameTimingAnalyzer();
+    }
+
+    /**
+     * Test the statistics of a recorded trace.
+     */
+    public void testAddTrace() throws IOException {
+        addResource(SCROLLING_TRACE);
+
+        assertEquals(1, mAnalyzer.getTraceCount());
+        assertEquals(120, mAnalyzer.getFrameCount());
+        assertEquals(119, mAnalyzer.getFrameTimeCount());
+        assertEquals(3, mAnalyzer.getJankCount());
+        assertEquals(1 + 2 + 4, mAnalyzer.getMissedVsyncCount());
+        assertArrayEquals(new double[] { 116, 1, 1, 0, 1, 0 },
+                mAnalyzer.getRefreshPeriodHistogram(), 0.0);
+        assertArrayEquals(new double[] { 5 * PERIOD_MS, 3 * PERIOD_MS, 2 * PERIOD_MS,
+                PERIOD_MS, PERIOD_MS }, mAnalyzer.getLongestFrameTimes(), TOLERANCE_MS);
+
+        double[] percentiles = mAnalyzer.getFrameTimePercentiles();
+        assertEquals(FrameTimingAnalyzer.PERCENTILES.length, percentiles.length);
+        assertEquals(PERIOD_MS, percentiles[0], TOLERANCE_MS);
+        assertEquals(PERIOD_MS, percentiles[2], TOLERANCE_MS);
+        // the 99th percentile of 119 frames is the second longest frame
+        assertEquals(3 * PERIOD_MS, percentiles[3], TOLERANCE_MS);
+
+        // 119 frame times over 126 refresh periods
+        assertEquals(119 * 1000.0 / (126 * PERIOD_MS), mAnalyzer.getFrameRates()[0], 0.1);
+    }
+
+    /**
+     * Test that the time between two traces is not taken for a frame time.
+     */
+    public void testAddTrace_multiple() throws IOException {
+        addResource(SCROLLING_TRACE);
+        addResource(SCROLLING_TRACE);
+        mAnalyzer.addTrace(new StringReader("16666666\n"
+                + "0\t0\t0\n"
+                + "10\t9999000000000000\t5\n"
+                + "10\t9999000016666666\t5\n"
+                + "10\t9999000033333333\t5\n"));
+
+        assertEquals(3, mAnalyzer.getTraceCount());
+        assertEquals(243, mAnalyzer.getFrameCount());
+        assertEquals(240, mAnalyzer.getFrameTimeCount());
+        assertArrayEquals(new double[] { 3, 3, 0 }, mAnalyzer.getJanksPerTrace(), 0.0);
+        assertEquals(5 * PERIOD_MS, mAnalyzer.getFrameTimes().getMax(), TOLERANCE_MS);
+        assertEquals(60.0, mAnalyzer.getFrameRates()[2], 0.01);
+    }
+
+    /**
+     * Test that a trace without any frame gives no frame time.
+     */
+    public void testAddTrace_noFrames() throws IOException {
+        mAnalyzer.addTrace(new StringReader("16666666\n0\t0\t0\n0\t0\t0\n"));
+
+        assertEquals(1, mAnalyzer.getTraceCount());
+        assertEquals(0, mAnalyzer.getFrameTimeCount());
+        assertEquals(0, mAnalyzer.getLongestFrameTimes().length);
+        assertTrue(Double.isNaN(mAnalyzer.getFrameTimePercentiles()[0]));
+    }
+
+    /**
+     * Test that output which is not a frame latency dump is rejected.
+     */
+    public void testAddTrace_invalid() {
+        try {
+            mAnalyzer.addTrace(new StringReader("Can't find window SurfaceView\n"));
+            fail("IOException not thrown");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, mAnalyzer.getTraceCount());
+    }
+
+    private void addResource(String name) throws IOException {
+        Reader reader = new InputStreamReader(getClass().getResourceAsStream(name), "UTF-8");
+        try {
+            mAnalyzer.addTrace(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void assertArrayEquals(double[] expected, double[] actual, double delta) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("element " + i, expected[i], actual[i], delta);
+        }
+    }
+}
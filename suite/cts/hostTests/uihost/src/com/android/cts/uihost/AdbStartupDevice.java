@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.uihost;
+
+import com.android.cts.uihost.StartupBenchmark.Phase;
+import com.android.tradefed.device.ITestDevice;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link StartupBenchmark.Device} driving a real device through adb.
+ * <p/>
+ * The install time is measured on the host. The other phases are taken from the device logs:
+ * the dexopt start and end messages, the am_proc_start and am_proc_bound events, and the
+ * TotalTime printed by {@code am start -W}. Log timestamps have a resolution of 1 ms.
+ */
+public class AdbStartupDevice implements StartupBenchmark.Device {
+    private static final String CLEAR_LOGS_CMD = "logcat -c -b main -b events";
+    private static final String DUMP_MAIN_LOG_CMD = "logcat -v time -d -b main";
+    private static final String DUMP_EVENT_LOG_CMD = "logcat -v time -d -b events";
+    private static final String START_CMD = "am start -W -n %s/%s";
+    private static final String STOP_CMD = "am force-stop %s";
+    private static final String HOME_CMD = "input keyevent 3";
+    private static final String DEXOPT_BEGIN = "DexInv: --- BEGIN";
+    private static final String DEXOPT_END = "DexInv: --- END";
+    private static final String PROC_START = "am_proc_start";
+    private static final String PROC_BOUND = "am_proc_bound";
+    private static final Pattern TOTAL_TIME = Pattern.compile("^TotalTime: (\\d+)",
+            Pattern.MULTILINE);
+    // MM-dd HH:mm:ss.SSS at the start of each line of logcat -v time
+    private static final Pattern LOG_TIME = Pattern.compile(
+            "^\\d\\d-\\d\\d (\\d\\d):(\\d\\d):(\\d\\d)\\.(\\d\\d\\d) ");
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private final ITestDevice mDevice;
+
+    public AdbStartupDevice(ITestDevice device) {
+        mDevice = device;
+    }
+
+    @Override
+    public double[] install(File apk) throws Exception {
+        mDevice.executeShellCommand(CLEAR_LOGS_CMD);
+        long start = System.nanoTime();
+        String error = mDevice.installPackage(apk, false);
+        long end = System.nanoTime();
+        if (error != null) {
+            throw new IllegalStateException("Failed to install " + apk + ": " + error);
+        }
+        double[] phases = createPhases();
+        phases[Phase.INSTALL.ordinal()] = (end - start) / 1000.0 / 1000.0;
+        phases[Phase.DEXOPT.ordinal()] = getInterval(
+                mDevice.executeShellCommand(DUMP_MAIN_LOG_CMD), DEXOPT_BEGIN, DEXOPT_END, null);
+        return phases;
+    }
+
+    @Override
+    public void uninstall(String packageName) throws Exception {
+        mDevice.uninstallPackage(packageName);
+    }
+
+    @Override
+    public double[] launch(String packageName, String activityName) throws Exception {
+        mDevice.executeShellCommand(CLEAR_LOGS_CMD);
+        String output = mDevice.executeShellCommand(
+                String.format(START_CMD, packageName, activityName));
+        Matcher matcher = TOTAL_TIME.matcher(output);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Failed to launch " + packageName + "/"
+                    + activityName + ": " + output);
+        }
+        double[] phases = createPhases();
+        phases[Phase.FIRST_FRAME.ordinal()] = Double.parseDouble(matcher.group(1));
+        phases[Phase.PROCESS_START.ordinal()] = getInterval(
+                mDevice.executeShellCommand(DUMP_EVENT_LOG_CMD), PROC_START, PROC_BOUND,
+                packageName);
+        return phases;
+    }
+
+    @Override
+    public void stop(String packageName) throws Exception {
+        mDevice.executeShellCommand(String.format(STOP_CMD, packageName));
+    }
+
+    @Override
+    public void goHome() throws Exception {
+        mDevice.executeShellCommand(HOME_CMD);
+    }
+
+    private static double[] createPhases() {
+        double[] phases = new double[Phase.values().length];
+        Arrays.fill(phases, Double.NaN);
+        return phases;
+    }
+
+    /**
+     * Return the time between the first log line containing startMarker and the first later
+     * line containing endMarker.
+     *
+     * @param log output of logcat -v time
+     * @param filter if not null, only lines also containing it are considered
+     * @return the time in ms, or NaN if either line is missing
+     */
+    static double getInterval(String log, String startMarker, String endMarker, String filter) {
+        long start = -1;
+        for (String line : log.split("\r?\n")) {
+            if (filter != null && !line.contains(filter)) {
+                continue;
+            }
+            String marker = (start < 0) ? startMarker : endMarker;
+            if (!line.contains(marker)) {
+                continue;
+            }
+            long time = getLogTime(line);
+            if (time < 0) {
+                continue;
+            }
+            if (start < 0) {
+                start = time;
+            } else {
+                // the log may cross midnight
+                return (time >= start) ? time - start : time + MS_PER_DAY - start;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return the time of day of the log line in ms, or -1 if it has no timestamp
+     */
+    private static long getLogTime(String line) {
+        Matcher matcher = LOG_TIME.matcher(line);
+        if (!matcher.find()) {
+            return -1;
+        }
+        return ((Long.parseLong(matcher.group(1)) * 60 + Long.parseLong(matcher.group(2))) * 60
+                + Long.parseLong(matcher.group(3))) * 1000 + Long.parseLong(matcher.group(4));
+    }
+}
@@ -18,32 +18,25 @@ package com.android.cts.uihost;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.util.HostReportLog;
-import com.android.cts.util.MeasureRun;
-import com.android.cts.util.MeasureTime;
-import com.android.cts.util.ResultType;
-import com.android.cts.util.ResultUnit;
 import com.android.cts.util.ReportLog;
-import com.android.cts.util.Stat;
-import com.android.ddmlib.Log;
 import com.android.tradefed.build.IBuildInfo;
 import com.android.tradefed.device.ITestDevice;
 import com.android.tradefed.testtype.DeviceTestCase;
 import com.android.tradefed.testtype.IBuildReceiver;
 
-import java.io.File;
-
-
 /**
  * Test to measure installation time of a APK.
+ * Every run installs the APK while it is not installed, so the time includes dexopt.
  */
 public class InstallTimeTest extends DeviceTestCase implements IBuildReceiver {
     private CtsBuildHelper mBuild;
     private ITestDevice mDevice;
 
-    private static final String TAG = "InstallTimeTest";
     static final String PACKAGE = "com.replica.replicaisland";
     static final String APK = "com.replica.replicaisland.apk";
-    private static final double OUTLIER_THRESHOLD = 0.1;
+    static final String ACTIVITY = ".AndouKun";
+    private static final int WARMUP_RUNS = 1;
+    private static final int MEASURED_RUNS = 10;
 
     @Override
     public void setBuild(IBuildInfo buildInfo) {
@@ -66,28 +59,13 @@ public class InstallTimeTest extends DeviceTestCase implements IBuildReceiver {
     public void testInstallTime() throws Exception {
         HostReportLog report =
                 new HostReportLog(mDevice.getSerialNumber(), ReportLog.getClassMethodNames());
-        final int NUMBER_REPEAT = 10;
-        final CtsBuildHelper build = mBuild;
-        final ITestDevice device = mDevice;
-        double[] result = MeasureTime.measure(NUMBER_REPEAT, new MeasureRun() {
-            @Override
-            public void prepare(int i) throws Exception {
-                device.uninstallPackage(PACKAGE);
-            }
-            @Override
-            public void run(int i) throws Exception {
-                File app = build.getTestApp(APK);
-                device.installPackage(app, false);
-            }
-        });
-        report.printArray("install time", result, ResultType.LOWER_BETTER,
-                ResultUnit.MS);
-        Stat.StatResult stat = Stat.getStatWithOutlierRejection(result, OUTLIER_THRESHOLD);
-        if (stat.mDataCount != result.length) {
-            Log.w(TAG, "rejecting " + (result.length - stat.mDataCount) + " outliers");
-        }
-        report.printSummary("install time", stat.mAverage, ResultType.LOWER_BETTER,
-                ResultUnit.MS);
+        StartupBenchmark benchmark = new StartupBenchmark(new AdbStartupDevice(mDevice),
+                WARMUP_RUNS, MEASURED_RUNS);
+        StartupBenchmark.App app =
+                new StartupBenchmark.App(mBuild.getTestApp(APK), PACKAGE, ACTIVITY);
+        StartupBenchmark.ScenarioResult result =
+                benchmark.run(StartupBenchmark.Scenario.COLD_INSTALL, app, null);
+        StartupBenchmark.report(report, result);
         report.deliverReportToHost();
     }
 
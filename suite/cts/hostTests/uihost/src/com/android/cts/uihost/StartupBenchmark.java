@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.uihost;
+
+import com.android.cts.util.ReportLog;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+import com.android.cts.util.Stat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Host driven benchmark of installing and starting apps.
+ * <p/>
+ * Each {@link Scenario} puts the device in a known state before every run, and then times one
+ * operation: the time the host waited for the operation, and the time of each {@link Phase} as
+ * told by the device. Warmup runs are done first and thrown away.
+ * <p/>
+ * The device is reached through {@link Device}, so that the benchmark can run against a
+ * simulated device.
+ */
+public class StartupBenchmark {
+    /** percentiles reported for each timing */
+    public static final double[] PERCENTILES = { 50.0, 90.0, 99.0 };
+
+    /**
+     * What is measured.
+     */
+    public enum Scenario {
+        /** install an apk which is not installed */
+        COLD_INSTALL,
+        /** launch an app for the first time after it was installed */
+        FIRST_LAUNCH,
+        /** launch an app whose process is running with its activity in the background */
+        WARM_LAUNCH,
+        /** launch an app from another running app, both having been launched before */
+        TASK_SWITCH
+    }
+
+    /**
+     * Part of an operation timed by the device. Phases can overlap.
+     */
+    public enum Phase {
+        /** from the start to the end of the installation */
+        INSTALL,
+        /** optimization of the dex files, part of INSTALL */
+        DEXOPT,
+        /** from the creation of the app process to its attachment to the system */
+        PROCESS_START,
+        /** from the launch request to the first frame drawn, including PROCESS_START */
+        FIRST_FRAME
+    }
+
+    /**
+     * Operations on the device under test. Each timed operation returns the time of every
+     * {@link Phase} in ms, indexed by {@link Phase#ordinal()}, and NaN for the phases which
+     * were not part of the operation or could not be measured.
+     */
+    public interface Device {
+        /**
+         * Install the apk, whose package is not installed.
+         */
+        double[] install(File apk) throws Exception;
+
+        void uninstall(String packageName) throws Exception;
+
+        /**
+         * Start the activity and return once its first frame was drawn.
+         */
+        double[] launch(String packageName, String activityName) throws Exception;
+
+        /**
+         * Kill all processes of the package.
+         */
+        void stop(String packageName) throws Exception;
+
+        /**
+         * Bring the home screen to the front, leaving the running apps in the background.
+         */
+        void goHome() throws Exception;
+    }
+
+    /**
+     * App used by the benchmark.
+     */
+    public static class App {
+        public final File mApk;
+        public final String mPackageName;
+        public final String mActivityName;
+
+        /**
+         * @param activityName class name of the activity to launch, relative to the package if
+         *        it starts with a dot
+         */
+        public App(File apk, String packageName, String activityName) {
+            mApk = apk;
+            mPackageName = packageName;
+            mActivityName = activityName;
+        }
+    }
+
+    /**
+     * Timings of the measured runs of a scenario.
+     */
+    public static class ScenarioResult {
+        public Scenario mScenario;
+        /** time the host waited for each run in ms */
+        public double[] mTotalMs;
+        /** mPhaseMs[phase.ordinal()][run] in ms, NaN if the device did not tell */
+        public double[][] mPhaseMs;
+    }
+
+    private final Device mDevice;
+    private final int mWarmupRuns;
+    private final int mMeasuredRuns;
+
+    /**
+     * @param warmupRuns number of runs done before the measured ones, not reported
+     * @param measuredRuns number of runs reported, 1 or more
+     */
+    public StartupBenchmark(Device device, int warmupRuns, int measuredRuns) {
+        if (warmupRuns < 0 || measuredRuns < 1) {
+            throw new IllegalArgumentException("invalid number of runs " + warmupRuns + " + "
+                    + measuredRuns);
+        }
+        mDevice = device;
+        mWarmupRuns = warmupRuns;
+        mMeasuredRuns = measuredRuns;
+    }
+
+    /**
+     * Measure the given scenario. The app is left installed.
+     *
+     * @param other app switched from in {@link Scenario#TASK_SWITCH}, unused otherwise
+     */
+    public ScenarioResult run(Scenario scenario, App app, App other) throws Exception {
+        if (scenario == Scenario.TASK_SWITCH && other == null) {
+            throw new IllegalArgumentException("task switching needs a second app");
+        }
+        if (scenario == Scenario.WARM_LAUNCH || scenario == Scenario.TASK_SWITCH) {
+            reinstall(app);
+            if (other != null) {
+                reinstall(other);
+            }
+        }
+        ScenarioResult result = new ScenarioResult();
+        result.mScenario = scenario;
+        result.mTotalMs = new double[mMeasuredRuns];
+        result.mPhaseMs = new double[Phase.values().length][mMeasuredRuns];
+        for (int i = -mWarmupRuns; i < mMeasuredRuns; i++) {
+            prepare(scenario, app, other);
+            long start = nanoTime();
+            double[] phases = measure(scenario, app);
+            long end = nanoTime();
+            if (i < 0) {
+                continue;
+            }
+            result.mTotalMs[i] = (end - start) / 1000.0 / 1000.0;
+            for (int phase = 0; phase < result.mPhaseMs.length; phase++) {
+                result.mPhaseMs[phase][i] =
+                        (phases != null && phase < phases.length) ? phases[phase] : Double.NaN;
+            }
+        }
+        return result;
+    }
+
+    private void prepare(Scenario scenario, App app, App other) throws Exception {
+        switch (scenario) {
+            case COLD_INSTALL:
+                mDevice.uninstall(app.mPackageName);
+                break;
+            case FIRST_LAUNCH:
+                reinstall(app);
+                break;
+            case WARM_LAUNCH:
+                mDevice.launch(app.mPackageName, app.mActivityName);
+                mDevice.goHome();
+                break;
+            case TASK_SWITCH:
+                mDevice.launch(app.mPackageName, app.mActivityName);
+                mDevice.launch(other.mPackageName, other.mActivityName);
+                break;
+        }
+    }
+
+    private double[] measure(Scenario scenario, App app) throws Exception {
+        if (scenario == Scenario.COLD_INSTALL) {
+            return mDevice.install(app.mApk);
+        }
+        return mDevice.launch(app.mPackageName, app.mActivityName);
+    }
+
+    private void reinstall(App app) throws Exception {
+        mDevice.stop(app.mPackageName);
+        mDevice.uninstall(app.mPackageName);
+        mDevice.install(app.mApk);
+    }
+
+    /**
+     * Time source for the host side measurement, can be replaced for testing.
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Report the percentiles of the time taken by the runs and by each phase the device timed,
+     * and the median time taken by the runs as summary.
+     */
+    public static void report(ReportLog report, ScenarioResult result) {
+        String name = getDisplayName(result.mScenario);
+        report.printArray(name + " time percentiles (50, 90, 99)",
+                getPercentiles(result.mTotalMs), ResultType.LOWER_BETTER, ResultUnit.MS);
+        for (Phase phase : Phase.values()) {
+            double[] values = removeNaN(result.mPhaseMs[phase.ordinal()]);
+            if (values.length > 0) {
+                report.printArray(name + " " + getDisplayName(phase)
+                        + " time percentiles (50, 90, 99)", getPercentiles(values),
+                        ResultType.LOWER_BETTER, ResultUnit.MS);
+            }
+        }
+        report.printSummary(name + " time", Stat.getPercentile(result.mTotalMs, 50.0),
+                ResultType.LOWER_BETTER, ResultUnit.MS);
+    }
+
+    /**
+     * @return the constant name in lower case words, the same in every locale
+     */
+    private static String getDisplayName(Enum<?> value) {
+        return value.name().toLowerCase(Locale.US).replace('_', ' ');
+    }
+
+    /**
+     * @return the value of each of {@link #PERCENTILES} in values
+     */
+    static double[] getPercentiles(double[] values) {
+        double[] percentiles = new double[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentiles[i] = Stat.getPercentile(values, PERCENTILES[i]);
+        }
+        return percentiles;
+    }
+
+    private static double[] removeNaN(double[] values) {
+        double[] result = new double[values.length];
+        int count = 0;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                result[count++] = value;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
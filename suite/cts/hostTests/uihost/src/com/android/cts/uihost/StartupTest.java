@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.uihost;
+
+import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.tradefed.util.HostReportLog;
+import com.android.cts.util.TimeoutReq;
+import com.android.tradefed.build.IBuildInfo;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.testtype.DeviceTestCase;
+import com.android.tradefed.testtype.IBuildReceiver;
+
+/**
+ * Measure the time to launch an app just installed, an app in the background, and to switch
+ * between two apps, driven from the host by {@link StartupBenchmark}.
+ */
+public class StartupTest extends DeviceTestCase implements IBuildReceiver {
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 10;
+    static final String PACKAGE_A = "com.android.cts.taskswitching.appa";
+    static final String PACKAGE_B = "com.android.cts.taskswitching.appb";
+    static final String APK_A = "CtsDeviceTaskswitchingAppA.apk";
+    static final String APK_B = "CtsDeviceTaskswitchingAppB.apk";
+    static final String ACTIVITY_A = ".AppAActivity";
+    static final String ACTIVITY_B = ".AppBActivity";
+
+    private CtsBuildHelper mBuild;
+    private ITestDevice mDevice;
+    private StartupBenchmark mBenchmark;
+
+    @Override
+    public void setBuild(IBuildInfo buildInfo) {
+        mBuild = CtsBuildHelper.createBuildHelper(buildInfo);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDevice = getDevice();
+        mBenchmark = new StartupBenchmark(new AdbStartupDevice(mDevice), WARMUP_RUNS,
+                MEASURED_RUNS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDevice.uninstallPackage(PACKAGE_A);
+        mDevice.uninstallPackage(PACKAGE_B);
+        super.tearDown();
+    }
+
+    @TimeoutReq(minutes = 30)
+    public void testFirstLaunch() throws Exception {
+        runScenario(StartupBenchmark.Scenario.FIRST_LAUNCH);
+    }
+
+    @TimeoutReq(minutes = 30)
+    public void testWarmLaunch() throws Exception {
+        runScenario(StartupBenchmark.Scenario.WARM_LAUNCH);
+    }
+
+    @TimeoutReq(minutes = 30)
+    public void testTaskSwitch() throws Exception {
+        runScenario(StartupBenchmark.Scenario.TASK_SWITCH);
+    }
+
+    private void runScenario(StartupBenchmark.Scenario scenario) throws Exception {
+        HostReportLog report = new HostReportLog(mDevice.getSerialNumber(),
+                getClass().getName() + "#" + getName());
+        StartupBenchmark.App appA =
+                new StartupBenchmark.App(mBuild.getTestApp(APK_A), PACKAGE_A, ACTIVITY_A);
+        StartupBenchmark.App appB =
+                new StartupBenchmark.App(mBuild.getTestApp(APK_B), PACKAGE_B, ACTIVITY_B);
+        StartupBenchmark.ScenarioResult result = mBenchmark.run(scenario, appA, appB);
+        StartupBenchmark.report(report, result);
+        report.deliverReportToHost();
+    }
+}
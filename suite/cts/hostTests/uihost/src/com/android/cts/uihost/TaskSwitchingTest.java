@@ -18,8 +18,8 @@ package com.android.cts.uihost;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.result.CtsReportUtil;
-import com.android.cts.tradefed.util.CtsHostStore;
-import com.android.cts.tradefed.util.HostReportLog;
+import com.android.cts.tradefed.util.MetricsBus;
+import com.android.cts.util.ReportCodec;
 import com.android.cts.util.ReportLog;
 import com.android.cts.util.TimeoutReq;
 import com.android.ddmlib.Log;
@@ -90,8 +90,6 @@ public class TaskSwitchingTest extends DeviceTestCase implements IBuildReceiver
 
     @TimeoutReq(minutes = 30)
     public void testTaskswitching() throws Exception {
-        HostReportLog report =
-                new HostReportLog(mDevice.getSerialNumber(), ReportLog.getClassMethodNames());
         RemoteAndroidTestRunner testRunner = new RemoteAndroidTestRunner(PACKAGES[0], CTS_RUNNER,
                 mDevice.getIDevice());
         LocalListener listener = new LocalListener();
@@ -101,8 +99,8 @@ public class TaskSwitchingTest extends DeviceTestCase implements IBuildReceiver
             fail(result.getRunFailureMessage());
         }
         assertNotNull("no performance data", mCtsReport);
-        CtsHostStore.storeCtsResult(mDevice.getSerialNumber(),
-                ReportLog.getClassMethodNames(), mCtsReport);
+        MetricsBus.publish(mDevice.getSerialNumber(), ReportLog.getClassMethodNames(),
+                ReportCodec.decode(mCtsReport));
 
     }
 
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.uihost;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the log parsing of {@link AdbStartupDevice}.
+ */
+public class AdbStartupDeviceTest extends TestCase {
+
+    private static final String EVENT_LOG =
+            "10-18 23:59:59.950 I/am_create_activity(  412): [0,1,2,com.foo/.Main,...]\n"
+            + "10-18 23:59:59.990 I/am_proc_start(  412): [0,1234,10045,com.bar,activity,"
+            + "com.bar/.Main]\n"
+            + "10-18 23:59:59.995 I/am_proc_start(  412): [0,1235,10046,com.foo,activity,"
+            + "com.foo/.Main]\n"
+            + "10-19 00:00:00.180 I/am_proc_bound(  412): [0,1235,com.foo]\n"
+            + "10-19 00:00:00.230 I/am_proc_bound(  412): [0,1234,com.bar]\n";
+
+    public void testGetInterval() {
+        assertEquals(185.0, AdbStartupDevice.getInterval(EVENT_LOG, "am_proc_start",
+                "am_proc_bound", "com.foo"));
+        assertEquals(240.0, AdbStartupDevice.getInterval(EVENT_LOG, "am_proc_start",
+                "am_proc_bound", "com.bar"));
+        assertEquals(190.0, AdbStartupDevice.getInterval(
+                "10-18 12:00:00.100 I/dalvikvm( 1234): DexInv: --- BEGIN '/data/app/a-1.apk' "
+                + "(bootstrap=0) ---\r\n"
+                + "10-18 12:00:00.290 I/dalvikvm( 1234): DexInv: --- END '/data/app/a-1.apk' "
+                + "(success) ---\r\n", "DexInv: --- BEGIN", "DexInv: --- END", null));
+    }
+
+    public void testGetInterval_missing() {
+        assertTrue(Double.isNaN(AdbStartupDevice.getInterval(EVENT_LOG, "am_proc_start",
+                "am_proc_died", null)));
+        assertTrue(Double.isNaN(AdbStartupDevice.getInterval("", "a", "b", null)));
+    }
+}
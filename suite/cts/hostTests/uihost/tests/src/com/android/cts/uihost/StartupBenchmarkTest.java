@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.uihost;
+
+import com.android.cts.uihost.StartupBenchmark.Phase;
+import com.android.cts.uihost.StartupBenchmark.Scenario;
+import com.android.cts.util.MetricRecord;
+import com.android.cts.util.ReportCodec;
+import com.android.cts.util.ReportLog;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link StartupBenchmark}, against a simulated device.
+ */
+public class StartupBenchmarkTest extends TestCase {
+
+    private static final double INSTALL_MS = 300;
+    private static final double DEXOPT_MS = 120;
+    private static final double PROCESS_START_MS = 250;
+    private static final double COLD_FRAME_MS = 600;
+    private static final double WARM_FRAME_MS = 150;
+    private static final double SWITCH_FRAME_MS = 100;
+    private static final double TOLERANCE_MS = 30;
+
+    /**
+     * Device which checks that each operation is done in a sensible state, and takes a fixed
+     * time for it depending on that state. Every timed operation is 1 ms slower than the previous
+     * one, so that dropping warmup runs can be checked.
+     */
+    private static class SimulatedDevice implements StartupBenchmark.Device {
+        final Set<String> mInstalled = new HashSet<String>();
+        final Set<String> mRunning = new HashSet<String>();
+        String mForeground = null;
+        long mNowNs = 0;
+        int mOperations = 0;
+
+        @Override
+        public double[] install(File apk) {
+            String packageName = apk.getName();
+            assertFalse(packageName + " already installed", mInstalled.contains(packageName));
+            mInstalled.add(packageName);
+            return take(INSTALL_MS, DEXOPT_MS, Double.NaN, Double.NaN);
+        }
+
+        @Override
+        public void uninstall(String packageName) {
+            stop(packageName);
+            mInstalled.remove(packageName);
+        }
+
+        @Override
+        public double[] launch(String packageName, String activityName) {
+            assertTrue(packageName + " not installed", mInstalled.contains(packageName));
+            double[] phases;
+            if (!mRunning.contains(packageName)) {
+                phases = take(Double.NaN, Double.NaN, PROCESS_START_MS, COLD_FRAME_MS);
+            } else if (mForeground == null) {
+                phases = take(Double.NaN, Double.NaN, Double.NaN, WARM_FRAME_MS);
+            } else {
+                phases = take(Double.NaN, Double.NaN, Double.NaN, SWITCH_FRAME_MS);
+            }
+            mRunning.add(packageName);
+            mForeground = packageName;
+            return phases;
+        }
+
+        @Override
+        public void stop(String packageName) {
+            mRunning.remove(packageName);
+            if (packageName.equals(mForeground)) {
+                mForeground = null;
+            }
+        }
+
+        @Override
+        public void goHome() {
+            mForeground = null;
+        }
+
+        private double[] take(double install, double dexopt, double processStart,
+                double firstFrame) {
+            double[] phases = new double[] { install, dexopt, processStart, firstFrame };
+            double slowdown = mOperations++;
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] += slowdown;
+            }
+            double total = Double.isNaN(phases[0]) ? phases[3] : phases[0];
+            mNowNs += (long) (total * 1000 * 1000);
+            return phases;
+        }
+    }
+
+    /** Exposes the recorded results. */
+    private static class RecordingReportLog extends ReportLog {
+        ReportCodec.Report take() {
+            return takeReport();
+        }
+    }
+
+    private SimulatedDevice mDevice;
+    private StartupBenchmark mBenchmark;
+    private StartupBenchmark.App mAppA;
+    private StartupBenchmark.App mAppB;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDevice = new SimulatedDevice();
+        mBenchmark = new StartupBenchmark(mDevice, 2, 5) {
+            @Override
+            long nanoTime() {
+                return mDevice.mNowNs;
+            }
+        };
+        mAppA = new StartupBenchmark.App(new File("a"), "a", ".A");
+        mAppB = new StartupBenchmark.App(new File("b"), "b", ".B");
+    }
+
+    public void testColdInstall() throws Exception {
+        StartupBenchmark.ScenarioResult result = mBenchmark.run(Scenario.COLD_INSTALL, mAppA,
+                null);
+        assertEquals(Scenario.COLD_INSTALL, result.mScenario);
+        assertEquals(5, result.mTotalMs.length);
+        assertEquals(INSTALL_MS, result.mTotalMs[0], TOLERANCE_MS);
+        assertEquals(INSTALL_MS, result.mPhaseMs[Phase.INSTALL.ordinal()][0], TOLERANCE_MS);
+        assertEquals(DEXOPT_MS, result.mPhaseMs[Phase.DEXOPT.ordinal()][0], TOLERANCE_MS);
+        assertTrue(Double.isNaN(result.mPhaseMs[Phase.FIRST_FRAME.ordinal()][0]));
+        assertTrue(mDevice.mInstalled.contains("a"));
+    }
+
+    public void testFirstLaunch() throws Exception {
+        StartupBenchmark.ScenarioResult result = mBenchmark.run(Scenario.FIRST_LAUNCH, mAppA,
+                null);
+        for (int i = 0; i < result.mTotalMs.length; i++) {
+            assertEquals(COLD_FRAME_MS, result.mTotalMs[i], TOLERANCE_MS);
+            assertEquals(PROCESS_START_MS,
+                    result.mPhaseMs[Phase.PROCESS_START.ordinal()][i], TOLERANCE_MS);
+            assertTrue(Double.isNaN(result.mPhaseMs[Phase.INSTALL.ordinal()][i]));
+        }
+    }
+
+    public void testWarmLaunch() throws Exception {
+        StartupBenchmark.ScenarioResult result = mBenchmark.run(Scenario.WARM_LAUNCH, mAppA,
+                null);
+        for (int i = 0; i < result.mTotalMs.length; i++) {
+            assertEquals(WARM_FRAME_MS, result.mTotalMs[i], TOLERANCE_MS);
+            assertTrue(Double.isNaN(result.mPhaseMs[Phase.PROCESS_START.ordinal()][i]));
+        }
+    }
+
+    public void testTaskSwitch() throws Exception {
+        StartupBenchmark.ScenarioResult result = mBenchmark.run(Scenario.TASK_SWITCH, mAppA,
+                mAppB);
+        for (int i = 0; i < result.mTotalMs.length; i++) {
+            assertEquals(SWITCH_FRAME_MS, result.mTotalMs[i], TOLERANCE_MS);
+        }
+        assertEquals("a", mDevice.mForeground);
+        assertTrue(mDevice.mRunning.contains("b"));
+    }
+
+    public void testTaskSwitch_noOtherApp() throws Exception {
+        try {
+            mBenchmark.run(Scenario.TASK_SWITCH, mAppA, null);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that warmup runs are not part of the result.
+     */
+    public void testWarmupDropped() throws Exception {
+        StartupBenchmark.ScenarioResult result = mBenchmark.run(Scenario.COLD_INSTALL, mAppA,
+                null);
+        // the 2 warmup runs took 300 and 301 ms
+        double[] expected = new double[] { 302, 303, 304, 305, 306 };
+        assertTrue(Arrays.toString(result.mTotalMs), Arrays.equals(expected, result.mTotalMs));
+    }
+
+    public void testReport() throws Exception {
+        StartupBenchmark.ScenarioResult result = new StartupBenchmark.ScenarioResult();
+        result.mScenario = Scenario.FIRST_LAUNCH;
+        result.mTotalMs = new double[] { 50, 10, 40, 20, 30 };
+        result.mPhaseMs = new double[Phase.values().length][];
+        Arrays.fill(result.mPhaseMs, new double[] { Double.NaN, Double.NaN, Double.NaN,
+                Double.NaN, Double.NaN });
+        result.mPhaseMs[Phase.PROCESS_START.ordinal()] =
+                new double[] { 5, Double.NaN, 1, 3, 2 };
+
+        RecordingReportLog log = new RecordingReportLog();
+        StartupBenchmark.report(log, result);
+        ReportCodec.Report report = log.take();
+
+        assertEquals("first launch time", report.mSummary.getMessage());
+        assertEquals(30.0, report.mSummary.getValues()[0]);
+        assertEquals(2, report.mDetails.size());
+        MetricRecord total = report.mDetails.get(0);
+        assertEquals("first launch time percentiles (50, 90, 99)", total.getMessage());
+        assertTrue(Arrays.equals(new double[] { 30, 50, 50 }, total.getValues()));
+        MetricRecord processStart = report.mDetails.get(1);
+        assertEquals("first launch process start time percentiles (50, 90, 99)",
+                processStart.getMessage());
+        assertTrue(Arrays.equals(new double[] { 2, 5, 5 }, processStart.getValues()));
+    }
+
+    /**
+     * Test that the metric names don't depend on the default locale, which lower cases I to a
+     * dotless i in Turkish.
+     */
+    public void testReport_turkishLocale() throws Exception {
+        StartupBenchmark.ScenarioResult result = new StartupBenchmark.ScenarioResult();
+        result.mScenario = Scenario.FIRST_LAUNCH;
+        result.mTotalMs = new double[] { 10 };
+        result.mPhaseMs = new double[Phase.values().length][];
+        Arrays.fill(result.mPhaseMs, new double[] { Double.NaN });
+
+        RecordingReportLog log = new RecordingReportLog();
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            StartupBenchmark.report(log, result);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+        assertEquals("first launch time", log.take().mSummary.getMessage());
+    }
+}
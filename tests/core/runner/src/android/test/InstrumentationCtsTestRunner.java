@@ -71,6 +71,8 @@ public class InstrumentationCtsTestRunner extends InstrumentationTestRunner {
 
     private TestEnvironment mEnvironment;
 
+    private Bundle mArguments;
+
     @Override
     public void onCreate(Bundle arguments) {
         // We might want to move this to /sdcard, if is is mounted/writable.
@@ -88,6 +90,7 @@ public class InstrumentationCtsTestRunner extends InstrumentationTestRunner {
 
         mEnvironment = new TestEnvironment();
 
+        mArguments = arguments;
         if (arguments != null) {
             String classArg = arguments.getString(ARGUMENT_TEST_CLASS);
             mSingleTest = classArg != null && classArg.contains("#");
@@ -109,6 +112,14 @@ public class InstrumentationCtsTestRunner extends InstrumentationTestRunner {
         super.onCreate(arguments);
     }
 
+    /**
+     * Returns the arguments passed to this instrumentation, such as the ones given with
+     * {@code am instrument -e <name> <value>}, or null if there are none.
+     */
+    public Bundle getArguments() {
+        return mArguments;
+    }
+
     @Override
     protected AndroidTestRunner getAndroidTestRunner() {
         AndroidTestRunner runner = super.getAndroidTestRunner();
@@ -38,6 +38,7 @@ $(LOCAL_BUILT_MODULE): $(LOCAL_PATH)/etc/$(LOCAL_MODULE) | $(ACP)
 # ============================================================
 subdirs := $(addprefix $(LOCAL_PATH)/,$(addsuffix /Android.mk, \
 		src \
+		tests \
 	))
 
 include $(subdirs)
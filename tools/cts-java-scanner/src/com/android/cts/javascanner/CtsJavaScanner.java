@@ -16,7 +16,10 @@
 package com.android.cts.javascanner;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Class that searches a source directory for native gTests and outputs a
@@ -26,19 +29,24 @@ public class CtsJavaScanner {
 
     private static void usage(String[] args) {
         System.err.println("Arguments: " + Arrays.asList(args));
-        System.err.println("Usage: cts-java-scanner -s SOURCE_DIR -d DOCLET_PATH");
+        System.err.println("Usage: cts-java-scanner -s SOURCE_DIR -d DOCLET_PATH [-j]");
+        System.err.println("  -j: always run javadoc with the doclet instead of the in-process"
+                + " source scanner");
         System.exit(1);
     }
 
     public static void main(String[] args) throws Exception {
         File sourceDir = null;
         File docletPath = null;
+        boolean useJavadoc = false;
 
         for (int i = 0; i < args.length; i++) {
             if ("-s".equals(args[i])) {
                 sourceDir = new File(getArg(args, ++i, "Missing value for source directory"));
             } else if ("-d".equals(args[i])) {
                 docletPath = new File(getArg(args, ++i, "Missing value for docletPath"));
+            } else if ("-j".equals(args[i])) {
+                useJavadoc = true;
             } else {
                 System.err.println("Unsupported flag: " + args[i]);
                 usage(args);
@@ -55,10 +63,44 @@ public class CtsJavaScanner {
             usage(args);
         }
 
+        if (!useJavadoc) {
+            try {
+                scanSources(sourceDir);
+                System.exit(0);
+            } catch (IOException e) {
+                // nothing was printed, as the output is written after all files were parsed
+                System.err.println(e.getMessage() + ", falling back to javadoc");
+            }
+        }
+
         DocletRunner runner = new DocletRunner(sourceDir, docletPath);
         System.exit(runner.runJavaDoc());
     }
 
+    /**
+     * Lists the tests with {@link SourceIndexer}, using the same source and class path as the
+     * javadoc run.
+     */
+    private static void scanSources(File sourceDir) throws IOException {
+        List<File> sourcePath = toFiles(DocletRunner.getSourcePath(sourceDir));
+        List<File> classPath = new ArrayList<File>();
+        for (File file : toFiles(DocletRunner.getClassPath())) {
+            if (file.exists()) {
+                classPath.add(file);
+            }
+        }
+        SourceIndexer indexer = new SourceIndexer(sourcePath, classPath);
+        indexer.run(toFiles(DocletRunner.getSourceFiles(sourceDir)), System.out);
+    }
+
+    private static List<File> toFiles(List<String> paths) {
+        List<File> files = new ArrayList<File>();
+        for (String path : paths) {
+            files.add(new File(path));
+        }
+        return files;
+    }
+
     private static String getArg(String[] args, int index, String message) {
         if (index < args.length) {
             return args[index];
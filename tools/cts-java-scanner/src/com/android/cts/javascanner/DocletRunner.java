@@ -40,9 +40,9 @@ class DocletRunner {
         args.add("-docletpath");
         args.add(mDocletPath.toString());
         args.add("-sourcepath");
-        args.add(getSourcePath(mSourceDir));
+        args.add(join(getSourcePath(mSourceDir), ":"));
         args.add("-classpath");
-        args.add(getClassPath());
+        args.add(join(getClassPath(), ":"));
         args.addAll(getSourceFiles(mSourceDir));
 
         Process process = new ProcessBuilder(args).start();
@@ -61,7 +61,7 @@ class DocletRunner {
         return process.waitFor();
     }
 
-    private String getSourcePath(File sourceDir) {
+    static List<String> getSourcePath(File sourceDir) {
         List<String> sourcePath = new ArrayList<String>();
         sourcePath.add("./frameworks/base/core/java");
         sourcePath.add("./frameworks/base/test-runner/src");
@@ -74,16 +74,16 @@ class DocletRunner {
         sourcePath.add("./frameworks/testing/uiautomator/library/testrunner-src");
         sourcePath.add("./frameworks/testing/uiautomator_test_libraries/src");
         sourcePath.add(sourceDir.toString());
-        return join(sourcePath, ":");
+        return sourcePath;
     }
 
-    private String getClassPath() {
+    static List<String> getClassPath() {
         List<String> classPath = new ArrayList<String>();
         classPath.add("./prebuilts/misc/common/tradefed/tradefed-prebuilt.jar");
-        return join(classPath, ":");
+        return classPath;
     }
 
-    private List<String> getSourceFiles(File sourceDir) {
+    static List<String> getSourceFiles(File sourceDir) {
         List<String> sourceFiles = new ArrayList<String>();
 
         File[] files = sourceDir.listFiles(new FileFilter() {
@@ -104,7 +104,7 @@ class DocletRunner {
         return sourceFiles;
     }
 
-    private String join(List<String> options, String delimiter) {
+    private static String join(List<String> options, String delimiter) {
         StringBuilder builder = new StringBuilder();
         int numOptions = options.size();
         for (int i = 0; i < numOptions; i++) {
@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.javascanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the declarations of a Java source file that the doclet looks at: the package, the
+ * imports, the classes with their super class as written, and the public or protected methods
+ * named test* with their TimeoutReq annotation. Method bodies and field initializers are
+ * skipped without being parsed, as are interfaces, enums and annotation types.
+ */
+class JavaSourceParser {
+
+    static final String TIMEOUT_ANNOTATION = "TimeoutReq";
+
+    private static final Set<String> MODIFIERS = new HashSet<String>(Arrays.asList(
+            "public", "protected", "private", "static", "abstract", "final", "native",
+            "synchronized", "transient", "volatile", "strictfp"));
+
+    /** Declarations of one source file. */
+    static class ParsedFile {
+        String mPackage = "";
+        final List<String> mImports = new ArrayList<String>();
+        /** classes with nested classes following their enclosing class */
+        final List<ParsedClass> mClasses = new ArrayList<ParsedClass>();
+    }
+
+    static class ParsedClass {
+        /** simple name, or names separated by '.' for nested classes */
+        final String mName;
+        /** super class as written without type arguments, or null */
+        final String mSuperName;
+        final boolean mAbstract;
+        /** whether javadoc documents this class: it and its enclosing classes are visible */
+        final boolean mIncluded;
+        final List<ParsedMethod> mMethods = new ArrayList<ParsedMethod>();
+
+        ParsedClass(String name, String superName, boolean isAbstract, boolean included) {
+            mName = name;
+            mSuperName = superName;
+            mAbstract = isAbstract;
+            mIncluded = included;
+        }
+    }
+
+    static class ParsedMethod {
+        final String mName;
+        /** TimeoutReq annotation name as written, or null */
+        final String mTimeoutAnnotation;
+        /** minutes of the TimeoutReq annotation, -1 if not set */
+        final int mTimeout;
+
+        ParsedMethod(String name, String timeoutAnnotation, int timeout) {
+            mName = name;
+            mTimeoutAnnotation = timeoutAnnotation;
+            mTimeout = timeout;
+        }
+    }
+
+    private final String mPath;
+    private final List<String> mTokens;
+    private final ParsedFile mFile = new ParsedFile();
+    private int mPos = 0;
+
+    // annotation state of the declaration being parsed
+    private String mTimeoutAnnotation;
+    private int mTimeout;
+
+    private JavaSourceParser(String path, List<String> tokens) {
+        mPath = path;
+        mTokens = tokens;
+    }
+
+    /**
+     * @param path used in error messages
+     * @throws IOException if the source cannot be parsed
+     */
+    static ParsedFile parse(String path, String source) throws IOException {
+        JavaSourceParser parser = new JavaSourceParser(path, tokenize(source));
+        parser.parseCompilationUnit();
+        return parser.mFile;
+    }
+
+    private void parseCompilationUnit() throws IOException {
+        parseModifiers(new HashSet<String>());
+        if (accept("package")) {
+            mFile.mPackage = parseQualifiedName();
+            expect(";");
+        }
+        while (accept("import")) {
+            if (accept("static")) {
+                skipPast(";");
+                continue;
+            }
+            StringBuilder name = new StringBuilder(parseQualifiedName());
+            if (accept(".")) {
+                expect("*");
+                name.append(".*");
+            }
+            mFile.mImports.add(name.toString());
+            expect(";");
+        }
+        parseBody(null, true);
+    }
+
+    /**
+     * Parses declarations up to the closing brace of the body of outer, or to the end of the
+     * file if outer is null.
+     */
+    private void parseBody(ParsedClass outer, boolean outerIncluded) throws IOException {
+        while (true) {
+            if (mPos >= mTokens.size()) {
+                if (outer == null) {
+                    return;
+                }
+                throw error("unexpected end of file in class " + outer.mName);
+            }
+            if (accept("}")) {
+                if (outer == null) {
+                    throw error("unbalanced '}'");
+                }
+                return;
+            }
+            if (accept(";")) {
+                continue;
+            }
+            Set<String> modifiers = new HashSet<String>();
+            parseModifiers(modifiers);
+            boolean visible = modifiers.contains("public") || modifiers.contains("protected");
+            if (accept("class")) {
+                String name = parseIdentifier();
+                String fullName = outer == null ? name : outer.mName + "." + name;
+                skipTypeParameters();
+                String superName = null;
+                if (accept("extends")) {
+                    superName = parseType();
+                }
+                skipTo("{");
+                mPos++;
+                boolean included = outerIncluded && visible;
+                ParsedClass parsed = new ParsedClass(fullName, superName,
+                        modifiers.contains("abstract"), included);
+                mFile.mClasses.add(parsed);
+                parseBody(parsed, included);
+            } else if (accept("interface") || accept("enum")
+                    || (peek("@") && peek(1, "interface"))) {
+                skipTo("{");
+                skipBalanced();
+            } else if (outer == null) {
+                throw error("expected a type declaration at '" + token() + "'");
+            } else if (peek("{")) {
+                // initializer
+                skipBalanced();
+            } else {
+                parseMember(outer, visible);
+            }
+        }
+    }
+
+    /**
+     * Parses a field, method or constructor after its modifiers.
+     */
+    private void parseMember(ParsedClass outer, boolean visible) throws IOException {
+        String last = null;
+        while (true) {
+            String token = token();
+            if (token.equals("(")) {
+                skipBalanced();
+                while (!peek("{") && !peek(";")) {
+                    mPos++;
+                    checkEnd();
+                }
+                if (peek("{")) {
+                    skipBalanced();
+                } else {
+                    mPos++;
+                }
+                if (visible && last != null && last.startsWith("test")) {
+                    outer.mMethods.add(new ParsedMethod(last, mTimeoutAnnotation, mTimeout));
+                }
+                return;
+            } else if (token.equals("=")) {
+                skipPast(";");
+                return;
+            } else if (token.equals(";")) {
+                mPos++;
+                return;
+            } else if (token.equals("<")) {
+                skipTypeParameters();
+            } else if (token.equals("{") || token.equals("[")) {
+                skipBalanced();
+            } else if (token.equals("@")) {
+                parseModifiers(new HashSet<String>());
+            } else {
+                last = token;
+                mPos++;
+            }
+        }
+    }
+
+    /**
+     * Parses modifiers and annotations into modifiers, remembering a TimeoutReq annotation.
+     */
+    private void parseModifiers(Set<String> modifiers) throws IOException {
+        mTimeoutAnnotation = null;
+        mTimeout = -1;
+        while (mPos < mTokens.size()) {
+            if (peek("@") && !peek(1, "interface")) {
+                mPos++;
+                String name = parseQualifiedName();
+                boolean timeout = name.equals(TIMEOUT_ANNOTATION)
+                        || name.endsWith("." + TIMEOUT_ANNOTATION);
+                if (timeout) {
+                    mTimeoutAnnotation = name;
+                }
+                if (peek("(")) {
+                    if (timeout) {
+                        parseTimeout();
+                    } else {
+                        skipBalanced();
+                    }
+                }
+            } else if (MODIFIERS.contains(token())) {
+                modifiers.add(token());
+                mPos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parses the arguments of a TimeoutReq annotation. Only integer literals are supported.
+     */
+    private void parseTimeout() throws IOException {
+        int start = mPos;
+        skipBalanced();
+        List<String> args = mTokens.subList(start + 1, mPos - 1);
+        if (args.isEmpty()) {
+            return;
+        }
+        if (args.size() != 3 || !args.get(0).equals("minutes") || !args.get(1).equals("=")) {
+            throw error("unsupported " + TIMEOUT_ANNOTATION + " arguments " + args);
+        }
+        try {
+            mTimeout = Integer.decode(args.get(2));
+        } catch (NumberFormatException e) {
+            throw error("unsupported " + TIMEOUT_ANNOTATION + " value " + args.get(2));
+        }
+    }
+
+    /**
+     * Parses a class type and returns its name without type arguments.
+     */
+    private String parseType() throws IOException {
+        StringBuilder name = new StringBuilder(parseIdentifier());
+        while (true) {
+            if (peek("<")) {
+                skipTypeParameters();
+            } else if (peek(".") && mPos + 1 < mTokens.size()
+                    && isIdentifier(mTokens.get(mPos + 1))) {
+                mPos++;
+                name.append('.').append(parseIdentifier());
+            } else {
+                return name.toString();
+            }
+        }
+    }
+
+    private String parseQualifiedName() throws IOException {
+        StringBuilder name = new StringBuilder(parseIdentifier());
+        while (peek(".") && mPos + 1 < mTokens.size() && isIdentifier(mTokens.get(mPos + 1))) {
+            mPos++;
+            name.append('.').append(parseIdentifier());
+        }
+        return name.toString();
+    }
+
+    private String parseIdentifier() throws IOException {
+        String token = token();
+        if (!isIdentifier(token)) {
+            throw error("expected an identifier at '" + token + "'");
+        }
+        mPos++;
+        return token;
+    }
+
+    /**
+     * Skips type parameters or arguments if there are any.
+     */
+    private void skipTypeParameters() throws IOException {
+        if (peek("<")) {
+            skipBalanced('<', '>');
+        }
+    }
+
+    /**
+     * Skips from an opening bracket past its matching closing bracket.
+     */
+    private void skipBalanced() throws IOException {
+        skipBalanced('(', ')');
+    }
+
+    /**
+     * Skips from an opening bracket past its matching closing bracket. Only brackets of the
+     * same kind as open are counted, except for '(', '[' and '{' which are counted together.
+     */
+    private void skipBalanced(char open, char close) throws IOException {
+        boolean angles = open == '<';
+        int depth = 0;
+        do {
+            String token = token();
+            if (token.length() == 1) {
+                char c = token.charAt(0);
+                if (angles ? c == '<' : (c == '(' || c == '[' || c == '{')) {
+                    depth++;
+                } else if (angles ? c == '>' : (c == ')' || c == ']' || c == '}')) {
+                    depth--;
+                }
+            }
+            mPos++;
+        } while (depth > 0);
+    }
+
+    /**
+     * Skips past the next token at the current nesting level.
+     */
+    private void skipPast(String end) throws IOException {
+        skipTo(end);
+        mPos++;
+    }
+
+    /**
+     * Skips to the next token at the current nesting level, skipping bracketed code.
+     */
+    private void skipTo(String end) throws IOException {
+        while (!token().equals(end)) {
+            if (peek("(") || peek("[") || peek("{")) {
+                skipBalanced();
+            } else {
+                mPos++;
+            }
+        }
+    }
+
+    private boolean accept(String token) {
+        if (peek(token)) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) throws IOException {
+        if (!accept(token)) {
+            throw error("expected '" + token + "' at '" + token() + "'");
+        }
+    }
+
+    private boolean peek(String token) {
+        return peek(0, token);
+    }
+
+    private boolean peek(int offset, String token) {
+        return mPos + offset < mTokens.size() && mTokens.get(mPos + offset).equals(token);
+    }
+
+    private String token() throws IOException {
+        checkEnd();
+        return mTokens.get(mPos);
+    }
+
+    private void checkEnd() throws IOException {
+        if (mPos >= mTokens.size()) {
+            throw error("unexpected end of file");
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("cannot parse " + mPath + ": " + message);
+    }
+
+    private static boolean isIdentifier(String token) {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    /**
+     * Splits source into identifiers, numbers and single character symbols. Comments are dropped
+     * and string and character literals are replaced by "" and ''.
+     */
+    static List<String> tokenize(String source) {
+        List<String> tokens = new ArrayList<String>();
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i < length && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < length && source.charAt(i) != c) {
+                    i += source.charAt(i) == '\\' ? 2 : 1;
+                }
+                i++;
+                tokens.add(c == '"' ? "\"\"" : "''");
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                tokens.add(source.substring(start, i));
+            } else if (c >= '0' && c <= '9' || (c == '.' && i + 1 < length
+                    && Character.isDigit(source.charAt(i + 1)))) {
+                int start = i;
+                while (i < length) {
+                    char d = source.charAt(i);
+                    if (Character.isLetterOrDigit(d) || d == '.' || d == '_') {
+                        i++;
+                    } else if ((d == '+' || d == '-') && isExponent(source.charAt(i - 1))) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                tokens.add(source.substring(start, i));
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isExponent(char c) {
+        return c == 'e' || c == 'E' || c == 'p' || c == 'P';
+    }
+}
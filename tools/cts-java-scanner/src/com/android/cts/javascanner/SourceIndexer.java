@@ -0,0 +1,585 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.javascanner;
+
+import com.android.cts.javascanner.JavaSourceParser.ParsedClass;
+import com.android.cts.javascanner.JavaSourceParser.ParsedFile;
+import com.android.cts.javascanner.JavaSourceParser.ParsedMethod;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lists test classes and methods in the same format as CtsJavaScannerDoclet without running
+ * javadoc. Source files are parsed in parallel by {@link JavaSourceParser} and super classes
+ * are resolved through the imports, the scanned files, the source path and the class path, in
+ * the way javadoc would find them.
+ * <p/>
+ * If the {@code cts.javascanner.cacheDir} system property is set, the declarations parsed from
+ * each file are kept in that directory by the SHA-1 of the file content.
+ */
+class SourceIndexer {
+    static final String CACHE_DIR_PROPERTY = "cts.javascanner.cacheDir";
+
+    private static final String JUNIT_TEST_CASE_CLASS_NAME = "junit.framework.TestCase";
+    private static final String TIMEOUT_ANNOTATION_CLASS_NAME = "com.android.cts.util.TimeoutReq";
+    private static final String CACHE_HEADER = "SourceIndexer 1";
+
+    /** A class found in source or on the class path. */
+    private static class ClassInfo {
+        final String mName;
+        final String mPackage;
+        /** source declarations, null for classes from the class path or not found */
+        final ParsedFile mFile;
+        final ParsedClass mParsed;
+        /** class from the class path, or null */
+        final Class<?> mClass;
+        ClassInfo mSuperClass;
+        boolean mResolved;
+
+        ClassInfo(String name, String pkg, ParsedFile file, ParsedClass parsed, Class<?> clazz) {
+            mName = name;
+            mPackage = pkg;
+            mFile = file;
+            mParsed = parsed;
+            mClass = clazz;
+        }
+    }
+
+    private final List<File> mSourcePath;
+    private final ClassLoader mClassPath;
+    private final File mCacheDir;
+    /** classes by canonical name, including the ones which were not found */
+    private final Map<String, ClassInfo> mClasses = new HashMap<String, ClassInfo>();
+    /** parsed source path files by path, null if the file does not exist */
+    private final Map<String, ParsedFile> mSourcePathFiles = new HashMap<String, ParsedFile>();
+
+    /**
+     * @param sourcePath roots of the source files of super classes
+     * @param classPath JARs or directories with classes of super classes
+     */
+    SourceIndexer(List<File> sourcePath, List<File> classPath) throws IOException {
+        mSourcePath = sourcePath;
+        URL[] urls = new URL[classPath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = classPath.get(i).toURI().toURL();
+        }
+        // no parent, so that only classes of the class path are found
+        mClassPath = new URLClassLoader(urls, null);
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        mCacheDir = dir == null || dir.length() == 0 ? null : new File(dir);
+    }
+
+    /**
+     * Prints the tests of the given source files to out, in the format of the doclet.
+     *
+     * @throws IOException if a file cannot be read or parsed, or the methods of a class on the
+     *         class path cannot be listed. Nothing is printed then.
+     */
+    void run(List<File> sourceFiles, PrintStream out) throws IOException {
+        List<ParsedFile> files = parseAll(sourceFiles);
+        List<ClassInfo> included = new ArrayList<ClassInfo>();
+        for (ParsedFile file : files) {
+            for (ParsedClass parsed : file.mClasses) {
+                ClassInfo info = new ClassInfo(canonicalName(file.mPackage, parsed.mName),
+                        file.mPackage, file, parsed, null);
+                // like javadoc, the first definition of a class wins
+                if (!mClasses.containsKey(info.mName)) {
+                    mClasses.put(info.mName, info);
+                }
+                if (parsed.mIncluded) {
+                    included.add(info);
+                }
+            }
+        }
+
+        // nothing is printed if a class fails, so that the caller can fall back to javadoc
+        StringWriter output = new StringWriter();
+        PrintWriter writer = new PrintWriter(output);
+        for (ClassInfo info : included) {
+            if (info.mParsed.mAbstract || !isValidJUnitTestCase(info)) {
+                continue;
+            }
+            writer.append("suite:").println(info.mPackage);
+            writer.append("case:").println(info.mParsed.mName);
+            for (ClassInfo c = info; c != null; c = getSuperClass(c)) {
+                printTests(c, writer);
+            }
+        }
+        writer.flush();
+        out.print(output);
+        out.flush();
+    }
+
+    private boolean isValidJUnitTestCase(ClassInfo info) {
+        while ((info = getSuperClass(info)) != null) {
+            if (JUNIT_TEST_CASE_CLASS_NAME.equalsIgnoreCase(info.mName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void printTests(ClassInfo info, PrintWriter writer) throws IOException {
+        if (info.mParsed != null) {
+            for (ParsedMethod method : info.mParsed.mMethods) {
+                int timeout = -1;
+                if (method.mTimeoutAnnotation != null && TIMEOUT_ANNOTATION_CLASS_NAME.equals(
+                        resolve(info, method.mTimeoutAnnotation))) {
+                    timeout = method.mTimeout;
+                }
+                printTest(writer, method.mName, timeout);
+            }
+        } else if (info.mClass != null) {
+            Method[] methods;
+            try {
+                methods = info.mClass.getDeclaredMethods();
+            } catch (LinkageError e) {
+                // a class used in a method signature is not on the class path
+                throw new IOException("cannot list methods of " + info.mName + ": " + e);
+            }
+            for (Method method : methods) {
+                if (!method.getName().startsWith("test") || method.isSynthetic()
+                        || (method.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED)) == 0) {
+                    continue;
+                }
+                printTest(writer, method.getName(), getTimeout(method));
+            }
+        }
+    }
+
+    private static void printTest(PrintWriter writer, String name, int timeout) {
+        writer.append("test:");
+        if (timeout >= 0) {
+            writer.append(name).println(":" + timeout);
+        } else {
+            writer.println(name);
+        }
+    }
+
+    private static int getTimeout(Method method) {
+        for (Annotation annotation : method.getDeclaredAnnotations()) {
+            if (annotation.annotationType().getName().equals(TIMEOUT_ANNOTATION_CLASS_NAME)) {
+                try {
+                    Object value = annotation.annotationType().getMethod("minutes")
+                            .invoke(annotation);
+                    return (Integer) value;
+                } catch (Exception e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the super class, or null if there is none or it is java.lang.Object.
+     */
+    private ClassInfo getSuperClass(ClassInfo info) {
+        if (!info.mResolved) {
+            info.mResolved = true;
+            if (info.mParsed != null && info.mParsed.mSuperName != null) {
+                String name = resolve(info, info.mParsed.mSuperName);
+                if (name == null) {
+                    System.err.println("cannot find class " + info.mParsed.mSuperName
+                            + ", super class of " + info.mName);
+                } else {
+                    info.mSuperClass = findClass(name);
+                }
+            } else if (info.mClass != null && info.mClass.getSuperclass() != null) {
+                info.mSuperClass = findClass(info.mClass.getSuperclass().getCanonicalName());
+            }
+            if (info.mSuperClass != null && info.mSuperClass.mName.equals("java.lang.Object")) {
+                info.mSuperClass = null;
+            }
+        }
+        return info.mSuperClass;
+    }
+
+    /**
+     * Resolves a type name as written in the source of context to its canonical name, or null
+     * if it cannot be found. Names are looked up like the compiler does, except that member
+     * classes inherited from super classes are not considered.
+     */
+    private String resolve(ClassInfo context, String name) {
+        int dot = name.indexOf('.');
+        String first = dot < 0 ? name : name.substring(0, dot);
+        String rest = dot < 0 ? "" : name.substring(dot);
+        String resolved = resolveSimpleName(context, first);
+        if (resolved != null) {
+            if (rest.length() == 0) {
+                return resolved;
+            }
+            return exists(resolved + rest) ? resolved + rest : null;
+        }
+        // a canonical name
+        if (dot >= 0 && exists(name)) {
+            return name;
+        }
+        return null;
+    }
+
+    private String resolveSimpleName(ClassInfo context, String name) {
+        ParsedFile file = context.mFile;
+        // classes nested in the class or its enclosing classes, then top level classes
+        String outer = context.mParsed.mName;
+        while (true) {
+            String candidate = canonicalName(context.mPackage, outer + "." + name);
+            if (exists(candidate)) {
+                return candidate;
+            }
+            int dot = outer.lastIndexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            outer = outer.substring(0, dot);
+        }
+        for (ParsedClass parsed : file.mClasses) {
+            if (parsed.mName.equals(name)) {
+                return canonicalName(context.mPackage, name);
+            }
+        }
+        for (String imported : file.mImports) {
+            if (imported.endsWith("." + name)) {
+                // a class which cannot be found still has its name
+                return imported;
+            }
+        }
+        String candidate = canonicalName(context.mPackage, name);
+        if (exists(candidate)) {
+            return candidate;
+        }
+        for (String imported : file.mImports) {
+            if (imported.endsWith(".*")) {
+                candidate = imported.substring(0, imported.length() - 1) + name;
+                if (exists(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        candidate = "java.lang." + name;
+        if (exists(candidate)) {
+            return candidate;
+        }
+        return null;
+    }
+
+    private boolean exists(String name) {
+        ClassInfo info = findClass(name);
+        return info.mParsed != null || info.mClass != null;
+    }
+
+    /**
+     * Finds a class by canonical name in the scanned files, the source path or the class path.
+     * Classes which are not found are returned without declarations.
+     */
+    private ClassInfo findClass(String name) {
+        ClassInfo info = mClasses.get(name);
+        if (info != null) {
+            return info;
+        }
+        // try each split of the name into a package and a top level class
+        for (int dot = name.indexOf('.'); dot >= 0 && info == null;
+                dot = name.indexOf('.', dot + 1)) {
+            info = findClass(name.substring(0, dot), name.substring(dot + 1));
+        }
+        if (info == null) {
+            info = findClass("", name);
+        }
+        if (info == null) {
+            info = new ClassInfo(name, "", null, null, null);
+        }
+        mClasses.put(name, info);
+        return info;
+    }
+
+    private ClassInfo findClass(String pkg, String className) {
+        int dot = className.indexOf('.');
+        String topLevel = dot < 0 ? className : className.substring(0, dot);
+        String relativePath = (pkg.length() == 0 ? "" : pkg.replace('.', '/') + "/")
+                + topLevel + ".java";
+        for (File root : mSourcePath) {
+            ParsedFile file = parseSourcePathFile(new File(root, relativePath));
+            if (file != null && file.mPackage.equals(pkg)) {
+                for (ParsedClass parsed : file.mClasses) {
+                    if (parsed.mName.equals(className)) {
+                        return new ClassInfo(canonicalName(pkg, className), pkg, file, parsed,
+                                null);
+                    }
+                }
+            }
+        }
+        try {
+            String binaryName = canonicalName(pkg, className.replace('.', '$'));
+            Class<?> clazz = Class.forName(binaryName, false, mClassPath);
+            return new ClassInfo(canonicalName(pkg, className), pkg, null, null, clazz);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    private ParsedFile parseSourcePathFile(File file) {
+        String path = file.getPath();
+        if (mSourcePathFiles.containsKey(path)) {
+            return mSourcePathFiles.get(path);
+        }
+        ParsedFile parsed = null;
+        if (file.isFile()) {
+            try {
+                parsed = parse(file);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        mSourcePathFiles.put(path, parsed);
+        return parsed;
+    }
+
+    private static String canonicalName(String pkg, String name) {
+        return pkg.length() == 0 ? name : pkg + "." + name;
+    }
+
+    /**
+     * Parses all files in parallel.
+     *
+     * @return the declarations of each file in the order of files
+     */
+    private List<ParsedFile> parseAll(List<File> files) throws IOException {
+        int threads = Math.max(1, Math.min(files.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ParsedFile>> futures = new ArrayList<Future<ParsedFile>>();
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<ParsedFile>() {
+                    @Override
+                    public ParsedFile call() throws IOException {
+                        return parse(file);
+                    }
+                }));
+            }
+            List<ParsedFile> results = new ArrayList<ParsedFile>();
+            for (Future<ParsedFile> future : futures) {
+                results.add(getResult(future));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ParsedFile getResult(Future<ParsedFile> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("parsing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Parses one file, using the cached declarations if a file with the same content was
+     * parsed before.
+     */
+    private ParsedFile parse(File file) throws IOException {
+        byte[] content = readFully(file);
+        File cacheFile = mCacheDir == null ? null : new File(mCacheDir, sha1(content) + ".txt");
+        if (cacheFile != null) {
+            ParsedFile cached = readCache(cacheFile);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ParsedFile parsed = JavaSourceParser.parse(file.getPath(), new String(content, "UTF-8"));
+        if (cacheFile != null) {
+            writeCache(cacheFile, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Returns the declarations stored in cacheFile, or null if there is none or it cannot be
+     * read. The format is a header line followed by lines "package &lt;name&gt;",
+     * "import &lt;name&gt;", "class &lt;name&gt; &lt;super class or -&gt; &lt;flags&gt;" where
+     * the flags are 'a' for abstract and 'i' for included, and "method &lt;name&gt;
+     * &lt;timeout annotation or -&gt; &lt;timeout&gt;".
+     */
+    private static ParsedFile readCache(File cacheFile) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile),
+                    "UTF-8"));
+            if (!CACHE_HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            ParsedFile file = new ParsedFile();
+            ParsedClass current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(" ");
+                if (tokens[0].equals("package") && tokens.length == 2) {
+                    file.mPackage = tokens[1];
+                } else if (tokens[0].equals("import") && tokens.length == 2) {
+                    file.mImports.add(tokens[1]);
+                } else if (tokens[0].equals("class") && tokens.length == 4) {
+                    current = new ParsedClass(tokens[1], fromCache(tokens[2]),
+                            tokens[3].contains("a"), tokens[3].contains("i"));
+                    file.mClasses.add(current);
+                } else if (tokens[0].equals("method") && tokens.length == 4 && current != null) {
+                    current.mMethods.add(new ParsedMethod(tokens[1], fromCache(tokens[2]),
+                            Integer.parseInt(tokens[3])));
+                } else {
+                    return null;
+                }
+            }
+            return file;
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Stores the declarations in cacheFile. Failing to do so only costs parsing again next
+     * time, so errors are reported and ignored.
+     */
+    private static void writeCache(File cacheFile, ParsedFile file) {
+        File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("cannot create cache directory " + dir);
+            return;
+        }
+        // write to a temporary file first so that readers never see a partial file
+        File tmpFile = new File(dir, cacheFile.getName() + "." + System.nanoTime() + ".tmp");
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+                    "UTF-8"));
+            writer.println(CACHE_HEADER);
+            if (file.mPackage.length() > 0) {
+                writer.println("package " + file.mPackage);
+            }
+            for (String imported : file.mImports) {
+                writer.println("import " + imported);
+            }
+            for (ParsedClass parsed : file.mClasses) {
+                writer.println("class " + parsed.mName + " " + toCache(parsed.mSuperName) + " "
+                        + (parsed.mAbstract ? "a" : "") + (parsed.mIncluded ? "i" : "") + "-");
+                for (ParsedMethod method : parsed.mMethods) {
+                    writer.println("method " + method.mName + " "
+                            + toCache(method.mTimeoutAnnotation) + " " + method.mTimeout);
+                }
+            }
+            writer.close();
+            if (writer.checkError() || !tmpFile.renameTo(cacheFile)) {
+                System.err.println("cannot write cache file " + cacheFile);
+            }
+        } catch (IOException e) {
+            System.err.println("cannot write cache file " + cacheFile + ": " + e);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            tmpFile.delete();
+        }
+    }
+
+    private static String toCache(String value) {
+        return value == null ? "-" : value;
+    }
+
+    private static String fromCache(String value) {
+        return value.equals("-") ? null : value;
+    }
+
+    private static String sha1(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest(content)) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.javascanner;
+
+import com.android.cts.javascanner.JavaSourceParser.ParsedClass;
+import com.android.cts.javascanner.JavaSourceParser.ParsedFile;
+import com.android.cts.javascanner.JavaSourceParser.ParsedMethod;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link JavaSourceParser}.
+ */
+public class JavaSourceParserTest extends TestCase {
+
+    public void testTokenize() {
+        assertEquals(Arrays.asList("a", "=", "\"\"", "+", "''", ";", "b", "(", "1.5e-3", ")"),
+                JavaSourceParser.tokenize("a = \"x\\\"}\" /* { */ + '\\'';\n"
+                        + "// class X {\nb(1.5e-3)"));
+    }
+
+    public void testParse() throws IOException {
+        ParsedFile file = JavaSourceParser.parse("Foo.java",
+                "/* header */\n"
+                + "package android.foo.cts;\n"
+                + "import android.util.Log;\n"
+                + "import static org.junit.Assert.*;\n"
+                + "import com.android.cts.util.*;\n"
+                + "public class FooTest extends android.test.AndroidTestCase {\n"
+                + "    private static final String S = \"}\";\n"
+                + "    static { init(); }\n"
+                + "    @TimeoutReq(minutes = 15)\n"
+                + "    public void testSlow() throws Exception { if (true) { } }\n"
+                + "    @Override\n"
+                + "    protected void testProtected() {}\n"
+                + "    private void testPrivate() {}\n"
+                + "    public void helper() {}\n"
+                + "    public <T> List<T> testGeneric(Map<String, T> m) { return null; }\n"
+                + "    public static abstract class Inner<T> extends Base<T> {\n"
+                + "        public abstract void testInner();\n"
+                + "    }\n"
+                + "    interface Callback { void testNotAClass(); }\n"
+                + "    class Hidden {}\n"
+                + "}\n"
+                + "class Other extends FooTest {}\n");
+
+        assertEquals("android.foo.cts", file.mPackage);
+        assertEquals(Arrays.asList("android.util.Log", "com.android.cts.util.*"), file.mImports);
+        assertEquals(4, file.mClasses.size());
+
+        ParsedClass foo = file.mClasses.get(0);
+        assertEquals("FooTest", foo.mName);
+        assertEquals("android.test.AndroidTestCase", foo.mSuperName);
+        assertFalse(foo.mAbstract);
+        assertTrue(foo.mIncluded);
+        assertEquals(3, foo.mMethods.size());
+        ParsedMethod slow = foo.mMethods.get(0);
+        assertEquals("testSlow", slow.mName);
+        assertEquals("TimeoutReq", slow.mTimeoutAnnotation);
+        assertEquals(15, slow.mTimeout);
+        ParsedMethod testProtected = foo.mMethods.get(1);
+        assertEquals("testProtected", testProtected.mName);
+        assertNull(testProtected.mTimeoutAnnotation);
+        assertEquals(-1, testProtected.mTimeout);
+        assertEquals("testGeneric", foo.mMethods.get(2).mName);
+
+        ParsedClass inner = file.mClasses.get(1);
+        assertEquals("FooTest.Inner", inner.mName);
+        assertEquals("Base", inner.mSuperName);
+        assertTrue(inner.mAbstract);
+        assertTrue(inner.mIncluded);
+        assertEquals("testInner", inner.mMethods.get(0).mName);
+
+        ParsedClass hidden = file.mClasses.get(2);
+        assertEquals("FooTest.Hidden", hidden.mName);
+        assertNull(hidden.mSuperName);
+        assertFalse(hidden.mIncluded);
+
+        ParsedClass other = file.mClasses.get(3);
+        assertEquals("Other", other.mName);
+        assertFalse(other.mIncluded);
+    }
+
+    public void testParse_defaultPackage() throws IOException {
+        ParsedFile file = JavaSourceParser.parse("Foo.java", "public class Foo {}");
+        assertEquals("", file.mPackage);
+        assertEquals("Foo", file.mClasses.get(0).mName);
+    }
+
+    public void testParse_errors() {
+        String[] sources = new String[] {
+            "public class Foo {",
+            "public class Foo {}}",
+            "package foo; int x;",
+            "class Foo { @TimeoutReq(minutes = LONG) public void testA() {} }",
+            "class Foo { @TimeoutReq(5) public void testA() {} }",
+        };
+        for (String source : sources) {
+            try {
+                JavaSourceParser.parse("Foo.java", source);
+                fail("IOException not thrown for " + source);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("cannot parse Foo.java: "));
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.javascanner;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link SourceIndexer}.
+ */
+public class SourceIndexerTest extends TestCase {
+
+    /** Class on the class path whose methods cannot be listed without {@link Missing}. */
+    public static class BrokenBase extends TestCase {
+        public void testMissing(Missing missing) {
+        }
+    }
+
+    /** Left out of the class path. */
+    public static class Missing {
+    }
+
+    private File mDir;
+    private File mSourceDir;
+    private File mClassDir;
+    private String mCacheDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCacheDir = System.getProperty(SourceIndexer.CACHE_DIR_PROPERTY);
+        System.clearProperty(SourceIndexer.CACHE_DIR_PROPERTY);
+        mDir = File.createTempFile("sourceindexer", "");
+        mDir.delete();
+        mSourceDir = new File(mDir, "src");
+        mClassDir = new File(mDir, "classes");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mCacheDir != null) {
+            System.setProperty(SourceIndexer.CACHE_DIR_PROPERTY, mCacheDir);
+        }
+        delete(mDir);
+        super.tearDown();
+    }
+
+    /**
+     * Test that tests are listed with their timeouts, including the ones of super classes in
+     * the source path, and that abstract and hidden classes are skipped.
+     */
+    public void testRun() throws Exception {
+        File fooTest = writeSource("android/foo/cts/FooTest.java",
+                "package android.foo.cts;\n"
+                + "import com.android.cts.util.TimeoutReq;\n"
+                + "public class FooTest extends BaseTest {\n"
+                + "    @TimeoutReq(minutes = 5)\n"
+                + "    public void testA() {}\n"
+                + "    public static class NestedTest extends FooTest {\n"
+                + "        public void testNested() {}\n"
+                + "    }\n"
+                + "}\n"
+                + "class HiddenTest extends BaseTest {\n"
+                + "    public void testHidden() {}\n"
+                + "}\n");
+        writeSource("android/foo/cts/BaseTest.java",
+                "package android.foo.cts;\n"
+                + "public abstract class BaseTest extends junit.framework.TestCase {\n"
+                + "    public void testBase() {}\n"
+                + "}\n");
+
+        assertEquals(Arrays.asList("suite:android.foo.cts", "case:FooTest", "test:testA:5",
+                "test:testBase", "suite:android.foo.cts", "case:FooTest.NestedTest",
+                "test:testNested", "test:testA:5", "test:testBase"),
+                run(fooTest, getJUnitClassPath()));
+    }
+
+    /**
+     * Test that a class which is not a TestCase is not listed.
+     */
+    public void testRun_notTestCase() throws Exception {
+        File foo = writeSource("foo/Foo.java",
+                "package foo;\npublic class Foo extends Thread { public void testA() {} }\n");
+        assertEquals(new ArrayList<String>(), run(foo, getJUnitClassPath()));
+    }
+
+    /**
+     * Test that a super class on the class path whose methods use a missing class fails the
+     * run without printing anything, instead of throwing NoClassDefFoundError.
+     */
+    public void testRun_missingClass() throws Exception {
+        copyClass(BrokenBase.class);
+        File fooTest = writeSource("foo/FooTest.java",
+                "package foo;\n"
+                + "import " + SourceIndexerTest.class.getName() + ";\n"
+                + "public class FooTest extends SourceIndexerTest.BrokenBase {\n"
+                + "    public void testA() {}\n"
+                + "}\n");
+        List<File> classPath = new ArrayList<File>(getJUnitClassPath());
+        classPath.add(mClassDir);
+        SourceIndexer indexer = new SourceIndexer(Arrays.asList(mSourceDir), classPath);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            indexer.run(Arrays.asList(fooTest), new PrintStream(out));
+            fail("IOException not thrown");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(BrokenBase.class.getSimpleName()));
+        }
+        assertEquals(0, out.size());
+    }
+
+    /**
+     * Test that parsed files are only cached when a cache directory is set, and that the cache
+     * gives the same result.
+     */
+    public void testRun_cache() throws Exception {
+        File fooTest = writeSource("foo/FooTest.java",
+                "package foo;\npublic class FooTest extends junit.framework.TestCase {\n"
+                + "    public void testA() {}\n}\n");
+        List<String> expected = Arrays.asList("suite:foo", "case:FooTest", "test:testA");
+        assertEquals(expected, run(fooTest, getJUnitClassPath()));
+        assertEquals(1, mDir.listFiles().length);
+
+        File cacheDir = new File(mDir, "cache");
+        System.setProperty(SourceIndexer.CACHE_DIR_PROPERTY, cacheDir.getPath());
+        assertEquals(expected, run(fooTest, getJUnitClassPath()));
+        assertEquals(1, cacheDir.listFiles().length);
+        assertEquals(expected, run(fooTest, getJUnitClassPath()));
+    }
+
+    private List<String> run(File sourceFile, List<File> classPath) throws IOException {
+        SourceIndexer indexer = new SourceIndexer(Arrays.asList(mSourceDir), classPath);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        indexer.run(Arrays.asList(sourceFile), new PrintStream(out));
+        List<String> lines = new ArrayList<String>();
+        for (String line : out.toString("UTF-8").split("\n")) {
+            if (line.length() > 0) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the JAR or directory junit.framework.TestCase is loaded from
+     */
+    private static List<File> getJUnitClassPath() throws Exception {
+        return Arrays.asList(new File(TestCase.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI()));
+    }
+
+    private File writeSource(String path, String content) throws IOException {
+        File file = new File(mSourceDir, path);
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private void copyClass(Class<?> clazz) throws IOException {
+        String name = clazz.getName().replace('.', '/') + ".class";
+        File file = new File(mClassDir, name);
+        file.getParentFile().mkdirs();
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
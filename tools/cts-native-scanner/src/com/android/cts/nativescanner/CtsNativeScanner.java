@@ -27,19 +27,23 @@ public class CtsNativeScanner {
 
     private static void usage(String[] args) {
         System.err.println("Arguments: " + Arrays.asList(args));
-        System.err.println("Usage: cts-native-scanner -s SOURCE_DIR -t TEST_SUITE");
+        System.err.println("Usage: cts-native-scanner -s SOURCE_DIR -t TEST_SUITE [-v]");
+        System.err.println("  -v: print the number of scanned files and the throughput to stderr");
         System.exit(1);
     }
 
     public static void main(String[] args) throws Exception {
         File sourceDir = null;
         String testSuite = null;
+        boolean verbose = false;
 
         for (int i = 0; i < args.length; i++) {
             if ("-s".equals(args[i])) {
                 sourceDir = new File(getArg(args, ++i, "Missing value for source directory"));
             } else if ("-t".equals(args[i])) {
                 testSuite = getArg(args, ++i, "Missing value for test suite");
+            } else if ("-v".equals(args[i])) {
+                verbose = true;
             } else {
                 System.err.println("Unsupported flag: " + args[i]);
                 usage(args);
@@ -61,6 +65,9 @@ public class CtsNativeScanner {
         for (String name : testNames) {
             System.out.println(name);
         }
+        if (verbose) {
+            System.err.println(scanner.getStats());
+        }
     }
 
     private static String getArg(String[] args, int index, String message) {
@@ -16,13 +16,29 @@
 
 package com.android.cts.nativescanner;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,42 +55,226 @@ import java.util.regex.Pattern;
  * test:Test1
  * test:Test2
  *
+ * Directories are listed and files are scanned in parallel, but the output is always in the
+ * order of a depth first walk with the entries of each directory sorted by name. Files are
+ * matched byte by byte, large ones through a memory mapping. If the
+ * {@code cts.nativescanner.cacheDir} system property is set, the tests found in each file are
+ * kept in that directory by the SHA-1 of the file content.
  */
 class TestScanner {
 
+    static final String CACHE_DIR_PROPERTY = "cts.nativescanner.cacheDir";
+
+    private static final String CACHE_HEADER = "TestScanner 2";
+
+    /** files at least this large are memory-mapped, smaller ones are read */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+
     /** Directory to recursively scan for gTest test declarations. */
     private final File mSourceDir;
 
     private final String mTestSuite;
 
+    /** file with the tests found in each file by the last scan, or null */
+    private final File mCacheFile;
+
+    private int mFileCount;
+    private int mCachedFileCount;
+    private long mScannedBytes;
+    private long mElapsedMs;
+
+    /** Tests found in one file with the SHA-1 of its content. */
+    private static class FileTests {
+        final String mDigest;
+        final long mLength;
+        /** test case and test name of each test in file order */
+        final List<String[]> mTests;
+        /** true if the tests were taken from the cache */
+        final boolean mCached;
+
+        FileTests(String digest, long length, List<String[]> tests, boolean cached) {
+            mDigest = digest;
+            mLength = length;
+            mTests = tests;
+            mCached = cached;
+        }
+    }
+
     TestScanner(File sourceDir, String testSuite) {
+        this(sourceDir, testSuite, getDefaultCacheFile(sourceDir));
+    }
+
+    /**
+     * @param cacheFile file to keep the tests of each file in between scans, or null
+     */
+    TestScanner(File sourceDir, String testSuite, File cacheFile) {
         mSourceDir = sourceDir;
         mTestSuite = testSuite;
+        mCacheFile = cacheFile;
     }
 
     public List<String> getTestNames() throws IOException {
-        List<String> testNames = new ArrayList<String>();
-        scanDir(mSourceDir, testNames);
-        return testNames;
+        long start = System.currentTimeMillis();
+        mFileCount = 0;
+        mCachedFileCount = 0;
+        mScannedBytes = 0;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<File> files = listFiles(executor);
+            final Map<String, List<String[]>> cache = readCache();
+            List<Future<FileTests>> futures = new ArrayList<Future<FileTests>>();
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<FileTests>() {
+                    @Override
+                    public FileTests call() throws IOException {
+                        return scanFile(file, cache);
+                    }
+                }));
+            }
+
+            List<String> testNames = new ArrayList<String>();
+            Map<String, List<String[]>> newCache = new HashMap<String, List<String[]>>();
+            for (int i = 0; i < files.size(); i++) {
+                FileTests tests = getResult(futures.get(i));
+                if (tests.mCached) {
+                    mCachedFileCount++;
+                } else {
+                    mScannedBytes += tests.mLength;
+                }
+                newCache.put(tests.mDigest, tests.mTests);
+                addTestNames(tests.mTests, testNames);
+            }
+            mFileCount = files.size();
+            if (mCachedFileCount != mFileCount || cache.size() != newCache.size()) {
+                writeCache(newCache);
+            }
+            return testNames;
+        } finally {
+            executor.shutdownNow();
+            mElapsedMs = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * @return one line describing the number of files and the throughput of the last scan
+     */
+    public String getStats() {
+        double mb = mScannedBytes / (1024.0 * 1024.0);
+        return String.format("scanned %d files (%d cached), %.2f MB in %d ms, %.2f MB/s",
+                mFileCount, mCachedFileCount, mb, mElapsedMs,
+                mb * 1000.0 / Math.max(mElapsedMs, 1));
+    }
+
+    /**
+     * Lists the C++ files under the source directory. Directories of the same depth are listed
+     * in parallel.
+     *
+     * @return the files in depth first order with the entries of each directory sorted by name
+     */
+    private List<File> listFiles(ExecutorService executor) throws IOException {
+        final Map<File, File[]> children = new HashMap<File, File[]>();
+        List<File> level = Arrays.asList(mSourceDir);
+        while (!level.isEmpty()) {
+            List<Future<File[]>> futures = new ArrayList<Future<File[]>>();
+            for (final File dir : level) {
+                futures.add(executor.submit(new Callable<File[]>() {
+                    @Override
+                    public File[] call() {
+                        File[] entries = dir.listFiles();
+                        if (entries == null) {
+                            return new File[0];
+                        }
+                        Arrays.sort(entries);
+                        return entries;
+                    }
+                }));
+            }
+            List<File> nextLevel = new ArrayList<File>();
+            for (int i = 0; i < level.size(); i++) {
+                File[] entries = getResult(futures.get(i));
+                children.put(level.get(i), entries);
+                for (File entry : entries) {
+                    if (entry.isDirectory()) {
+                        nextLevel.add(entry);
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        List<File> files = new ArrayList<File>();
+        addFiles(mSourceDir, children, files);
+        return files;
     }
 
-    private void scanDir(File dir, List<String> testNames) throws FileNotFoundException {
-        // Find both C++ files to find tests and directories to look for more tests!
-        File[] files = dir.listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.endsWith(".cpp") || filename.endsWith(".cc")
-                        || new File(dir, filename).isDirectory();
+    private static void addFiles(File dir, Map<File, File[]> children, List<File> files) {
+        for (File entry : children.get(dir)) {
+            if (children.containsKey(entry)) {
+                addFiles(entry, children, files);
+            } else {
+                String name = entry.getName();
+                if (name.endsWith(".cpp") || name.endsWith(".cc")) {
+                    files.add(entry);
+                }
             }
-        });
+        }
+    }
 
-        for (int i = 0; i < files.length; i++) {
-            File file = files[i];
-            if (file.isDirectory()) {
-                scanDir(file, testNames);
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("scanning failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the tests of file, taken from cache if it has the SHA-1 of its content.
+     */
+    private FileTests scanFile(File file, Map<String, List<String[]>> cache)
+            throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            ByteBuffer buffer;
+            if (length >= MAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
             } else {
-                scanFile(new Scanner(file), testNames);
+                buffer = ByteBuffer.allocate((int) length);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                }
+                buffer.flip();
             }
+            if (mCacheFile == null) {
+                return new FileTests(null, length, findTests(buffer), false);
+            }
+            String digest = sha1(buffer.duplicate());
+            List<String[]> cached = cache.get(digest);
+            if (cached != null) {
+                return new FileTests(digest, length, cached, true);
+            }
+            return new FileTests(digest, length, findTests(buffer), false);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void addTestNames(List<String[]> tests, List<String> testNames) {
+        String lastCase = "";
+        for (String[] test : tests) {
+            if (!lastCase.equals(test[0])) {
+                testNames.add("suite:" + mTestSuite);
+                testNames.add("case:" + test[0]);
+                lastCase = test[0];
+            }
+            testNames.add("test:" + test[1]);
         }
     }
 
@@ -112,4 +312,207 @@ class TestScanner {
             }
         }
     }
+
+    /**
+     * Byte level equivalent of {@link #METHOD_REGEX} applied to each line of buffer.
+     *
+     * @return test case and test name of each test declaration in buffer
+     */
+    static List<String[]> findTests(ByteBuffer buffer) {
+        List<String[]> tests = new ArrayList<String[]>();
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            String[] test = matchLine(buffer, lineStart, lineEnd);
+            if (test != null) {
+                tests.add(test);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return tests;
+    }
+
+    private static String[] matchLine(ByteBuffer buffer, int start, int end) {
+        int i = skipSpaces(buffer, start, end);
+        if (end - i < 4 || buffer.get(i) != 'T' || buffer.get(i + 1) != 'E'
+                || buffer.get(i + 2) != 'S' || buffer.get(i + 3) != 'T') {
+            return null;
+        }
+        i += 4;
+        if (i + 1 < end && buffer.get(i) == '_' && buffer.get(i + 1) == 'F') {
+            i += 2;
+        }
+        if (i >= end || buffer.get(i) != '(') {
+            return null;
+        }
+        int caseStart = ++i;
+        i = skipWord(buffer, i, end);
+        if (i == caseStart || i >= end || buffer.get(i) != ',') {
+            return null;
+        }
+        int caseEnd = i;
+        i = skipSpaces(buffer, i + 1, end);
+        int testStart = i;
+        i = skipWord(buffer, i, end);
+        if (i == testStart || i >= end || buffer.get(i) != ')') {
+            return null;
+        }
+        return new String[] {
+                toString(buffer, caseStart, caseEnd), toString(buffer, testStart, i) };
+    }
+
+    /** skips characters matching \s on a single line */
+    private static int skipSpaces(ByteBuffer buffer, int i, int end) {
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b != ' ' && b != '\t' && b != 0x0b && b != '\f') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /** skips characters matching \w */
+    private static int skipWord(ByteBuffer buffer, int i, int end) {
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (!((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '_')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static String toString(ByteBuffer buffer, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) buffer.get(i);
+        }
+        return new String(chars);
+    }
+
+    private static File getDefaultCacheFile(File sourceDir) {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.length() == 0) {
+            return null;
+        }
+        return new File(dir, sha1(sourceDir.getAbsolutePath()) + ".txt");
+    }
+
+    /**
+     * Returns the tests stored in the cache file by the SHA-1 of the file content, or an empty
+     * map if there is none or it cannot be read. The format is a header line followed by lines
+     * "file &lt;SHA-1&gt;" and "test &lt;test case&gt; &lt;test name&gt;".
+     */
+    private Map<String, List<String[]>> readCache() {
+        Map<String, List<String[]>> cache = new HashMap<String, List<String[]>>();
+        if (mCacheFile == null || !mCacheFile.isFile()) {
+            return cache;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mCacheFile),
+                    "UTF-8"));
+            if (!CACHE_HEADER.equals(reader.readLine())) {
+                return cache;
+            }
+            List<String[]> current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(" ");
+                if (tokens[0].equals("file") && tokens.length == 2) {
+                    current = new ArrayList<String[]>();
+                    cache.put(tokens[1], current);
+                } else if (tokens[0].equals("test") && tokens.length == 3 && current != null) {
+                    current.add(new String[] { tokens[1], tokens[2] });
+                } else {
+                    return new HashMap<String, List<String[]>>();
+                }
+            }
+            return cache;
+        } catch (IOException e) {
+            return new HashMap<String, List<String[]>>();
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the tests of each file in the cache file. Failing to do so only costs scanning
+     * again next time, so errors are reported and ignored.
+     */
+    private void writeCache(Map<String, List<String[]>> cache) {
+        if (mCacheFile == null) {
+            return;
+        }
+        File dir = mCacheFile.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("cannot create cache directory " + dir);
+            return;
+        }
+        // write to a temporary file first so that readers never see a partial file
+        File tmpFile = new File(dir, mCacheFile.getName() + "." + System.nanoTime() + ".tmp");
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+                    "UTF-8"));
+            writer.println(CACHE_HEADER);
+            for (Map.Entry<String, List<String[]>> entry : cache.entrySet()) {
+                writer.println("file " + entry.getKey());
+                for (String[] test : entry.getValue()) {
+                    writer.println("test " + test[0] + " " + test[1]);
+                }
+            }
+            writer.close();
+            if (writer.checkError() || !tmpFile.renameTo(mCacheFile)) {
+                System.err.println("cannot write cache file " + mCacheFile);
+            }
+        } catch (IOException e) {
+            System.err.println("cannot write cache file " + mCacheFile + ": " + e);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            tmpFile.delete();
+        }
+    }
+
+    private static String sha1(String value) {
+        try {
+            return sha1(ByteBuffer.wrap(value.getBytes("UTF-8")));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return the lower case hex SHA-1 of the remaining bytes of buffer, which are consumed
+     */
+    static String sha1(ByteBuffer buffer) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+        digest.update(buffer);
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
 }
@@ -20,11 +20,15 @@ import com.android.cts.nativescanner.TestScanner;
 import junit.framework.TestCase;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.StringReader;
 import java.lang.StringBuilder;
+import java.nio.ByteBuffer;
 import java.util.Scanner;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -59,4 +63,121 @@ public class TestScannerTest extends TestCase {
         assertFalse(it.hasNext());
         scanner.close();
     }
+
+    public void testFindTests() throws Exception {
+        String source = "foobar\n"  // ignored
+                + "  TEST_F(TestCase1, TestName1)\r\n"  // valid
+                + "TEST(TestCase1,TestName2) {\n"  // valid
+                + "TEST_F(TestCase2, TestName1 foo)\n"  // ignored
+                + "foo TEST_F(TestCase2, TestName1)\n"  // ignored
+                + "TEST_G(TestCase2, TestName1)\n"  // ignored
+                + "TEST_F(TestCase2, TestName3)";  // valid, no line end
+
+        List<String[]> tests = TestScanner.findTests(ByteBuffer.wrap(source.getBytes("UTF-8")));
+        assertEquals(3, tests.size());
+        assertEquals("TestCase1", tests.get(0)[0]);
+        assertEquals("TestName1", tests.get(0)[1]);
+        assertEquals("TestCase1", tests.get(1)[0]);
+        assertEquals("TestName2", tests.get(1)[1]);
+        assertEquals("TestCase2", tests.get(2)[0]);
+        assertEquals("TestName3", tests.get(2)[1]);
+    }
+
+    public void testGetTestNames() throws Exception {
+        File dir = createTempDir();
+        File cacheFile = new File(dir, "cache.txt");
+        try {
+            File sourceDir = new File(dir, "src");
+            writeFile(new File(sourceDir, "b/b.cpp"), "TEST(B, b)\n");
+            writeFile(new File(sourceDir, "a.cc"), "TEST(A, a1)\nTEST(A, a2)\n");
+            writeFile(new File(sourceDir, "c.cpp"), "TEST(C, c)\n");
+            writeFile(new File(sourceDir, "d.h"), "TEST(D, d)\n");
+
+            TestScanner testScanner = new TestScanner(sourceDir, "TestSuite", cacheFile);
+            List<String> names = testScanner.getTestNames();
+            assertEquals(Arrays.asList("suite:TestSuite", "case:A", "test:a1", "test:a2",
+                    "suite:TestSuite", "case:B", "test:b",
+                    "suite:TestSuite", "case:C", "test:c"), names);
+            assertTrue(cacheFile.isFile());
+
+            // the second scan reads the cache and gives the same result
+            testScanner = new TestScanner(sourceDir, "TestSuite", cacheFile);
+            assertEquals(names, testScanner.getTestNames());
+            assertTrue(testScanner.getStats().contains("(3 cached)"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Test that a file changed without a change of its size and modification time is scanned
+     * again, and that a file with the content of a cached one is not.
+     */
+    public void testGetTestNames_changedContent() throws Exception {
+        File dir = createTempDir();
+        File cacheFile = new File(dir, "cache.txt");
+        try {
+            File sourceDir = new File(dir, "src");
+            File file = new File(sourceDir, "a.cpp");
+            writeFile(file, "TEST(A, a1)\n");
+            new TestScanner(sourceDir, "TestSuite", cacheFile).getTestNames();
+
+            long lastModified = file.lastModified();
+            writeFile(file, "TEST(A, a2)\n");
+            file.setLastModified(lastModified);
+            writeFile(new File(sourceDir, "b.cpp"), "TEST(A, a1)\n");
+            TestScanner testScanner = new TestScanner(sourceDir, "TestSuite", cacheFile);
+            assertEquals(Arrays.asList("suite:TestSuite", "case:A", "test:a2",
+                    "suite:TestSuite", "case:A", "test:a1"), testScanner.getTestNames());
+            assertTrue(testScanner.getStats().contains("(1 cached)"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    public void testGetTestNames_noCache() throws Exception {
+        File dir = createTempDir();
+        try {
+            writeFile(new File(dir, "a.cpp"), "TEST(A, a1)\n");
+            TestScanner testScanner = new TestScanner(dir, "TestSuite", null);
+            assertEquals(Arrays.asList("suite:TestSuite", "case:A", "test:a1"),
+                    testScanner.getTestNames());
+            assertTrue(testScanner.getStats().contains("(0 cached)"));
+            assertEquals(1, dir.listFiles().length);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    public void testSha1() throws Exception {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                TestScanner.sha1(ByteBuffer.wrap("abc".getBytes("UTF-8"))));
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("nativescanner", "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
 }
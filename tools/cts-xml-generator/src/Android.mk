@@ -19,7 +19,11 @@ LOCAL_PATH := $(call my-dir)
 # ============================================================
 include $(CLEAR_VARS)
 
-LOCAL_SRC_FILES := $(call all-subdir-java-files)
+LOCAL_SRC_FILES := $(call all-subdir-java-files) \
+    ../../../libs/commonutil/src/com/android/cts/util/ClassFileInfo.java \
+    ../../../libs/commonutil/src/com/android/cts/util/TestJarScanner.java \
+    ../../../libs/commonutil/src/com/android/cts/util/TestMetadataIndex.java \
+    ../../../libs/commonutil/src/com/android/cts/util/TimeoutReq.java
 LOCAL_JAR_MANIFEST := MANIFEST.mf
 
 LOCAL_MODULE := cts-xml-generator
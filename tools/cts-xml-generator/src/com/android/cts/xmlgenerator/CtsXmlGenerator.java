@@ -15,96 +15,295 @@
  */
 package com.android.cts.xmlgenerator;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import com.android.cts.util.TestJarScanner;
+import com.android.cts.util.TestMetadataIndex;
 
 import vogar.ExpectationStore;
 import vogar.ModeId;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-/** Class that outputs a test package xml. */
+/**
+ * Class that outputs a test package xml.
+ * <p/>
+ * With -b, it outputs the XMLs of many packages in one run. Each line of the batch file has the
+ * arguments of one package, which must include -l with the test list and -o with the output
+ * file. The packages are generated in parallel, and packages with the same expectation files,
+ * given on the line or on the command line, share one parsed ExpectationStore.
+ * <p/>
+ * With -x, it also writes the test index of the given JAR next to the output, with .idx in place
+ * of .xml, so that the host can look up test metadata without loading classes. -c gives the class
+ * path holding the super classes of the tests, like junit.framework.TestCase.
+ */
 public class CtsXmlGenerator {
 
     private static void usage(String[] args) {
         System.err.println("Arguments: " + Arrays.asList(args));
         System.err.println("Usage: cts-xml-generator -p PACKAGE_NAME -n NAME [-t TEST_TYPE]"
                 + " [-j JAR_PATH] [-i INSTRUMENTATION] [-m MANIFEST_FILE] [-e EXPECTATION_FILE]"
-                + " [-o OUTPUT_FILE]");
+                + " [-l TEST_LIST_FILE] [-o OUTPUT_FILE] [-x JAR_FILE [-c CLASS_PATH]]");
+        System.err.println("       cts-xml-generator -b BATCH_FILE [-e EXPECTATION_FILE]");
         System.exit(1);
     }
 
+    /** Arguments of one package. */
+    private static class PackageArgs {
+        String mAppPackageName = null;
+        String mName = null;
+        String mOutputPath = null;
+        Set<File> mExpectationFiles = new HashSet<File>();
+        File mManifestFile = null;
+        String mInstrumentation = null;
+        String mTestType = null;
+        String mJarPath = null;
+        String mAppNameSpace = null;
+        String mTargetNameSpace = null;
+        String mRunner = null;
+        /** test list, or null to read it from standard in */
+        File mTestList = null;
+        File mBatchFile = null;
+        /** JAR to write the test index of, or null */
+        File mIndexedJar = null;
+        String mIndexClassPath = "";
+    }
+
     public static void main(String[] args) throws Exception {
-        String appPackageName = null;
-        String name = null;
-        String outputPath = null;
-        Set<File> expectationFiles = new HashSet<File>();
-        File manifestFile = null;
-        String instrumentation = null;
-        String testType = null;
-        String jarPath = null;
-        String appNameSpace = null;
-        String targetNameSpace = null;
+        PackageArgs packageArgs = parseArgs(args);
+        if (packageArgs.mBatchFile != null) {
+            System.exit(runBatch(packageArgs.mBatchFile, packageArgs.mExpectationFiles));
+        }
+        checkArgs(packageArgs, args);
+
+        ExpectationStore store = ExpectationStore.parse(packageArgs.mExpectationFiles,
+                ModeId.DEVICE);
+        generate(packageArgs, store);
+    }
 
+    private static PackageArgs parseArgs(String[] args) {
+        PackageArgs result = new PackageArgs();
         for (int i = 0; i < args.length; i++) {
             if ("-p".equals(args[i])) {
-                appPackageName = getArg(args, ++i, "Missing value for test package");
+                result.mAppPackageName = getArg(args, ++i, "Missing value for test package");
             } else if ("-n".equals(args[i])) {
-                name = getArg(args, ++i, "Missing value for executable name");
+                result.mName = getArg(args, ++i, "Missing value for executable name");
             } else if ("-t".equals(args[i])) {
-                testType = getArg(args, ++i, "Missing value for test type");
+                result.mTestType = getArg(args, ++i, "Missing value for test type");
             } else if ("-j".equals(args[i])) {
-                jarPath = getArg(args, ++i, "Missing value for jar path");
+                result.mJarPath = getArg(args, ++i, "Missing value for jar path");
             } else if ("-m".equals(args[i])) {
-                manifestFile = new File(getArg(args, ++i, "Missing value for manifest"));
+                result.mManifestFile = new File(getArg(args, ++i, "Missing value for manifest"));
             } else if ("-i".equals(args[i])) {
-                instrumentation = getArg(args, ++i, "Missing value for instrumentation");
+                result.mInstrumentation = getArg(args, ++i, "Missing value for instrumentation");
             } else if ("-e".equals(args[i])) {
-                expectationFiles.add(new File(getArg(args, ++i,
+                result.mExpectationFiles.add(new File(getArg(args, ++i,
                         "Missing value for expectation store")));
             } else if ("-o".equals(args[i])) {
-                outputPath = getArg(args, ++i, "Missing value for output file");
+                result.mOutputPath = getArg(args, ++i, "Missing value for output file");
             } else if ("-a".equals(args[i])) {
-                appNameSpace =  getArg(args, ++i, "Missing value for app name space");
+                result.mAppNameSpace =  getArg(args, ++i, "Missing value for app name space");
             } else if ("-r".equals(args[i])) {
-                targetNameSpace =  getArg(args, ++i, "Missing value for target name space");
+                result.mTargetNameSpace =  getArg(args, ++i,
+                        "Missing value for target name space");
+            } else if ("-l".equals(args[i])) {
+                result.mTestList = new File(getArg(args, ++i, "Missing value for test list"));
+            } else if ("-b".equals(args[i])) {
+                result.mBatchFile = new File(getArg(args, ++i, "Missing value for batch file"));
+            } else if ("-x".equals(args[i])) {
+                result.mIndexedJar = new File(getArg(args, ++i, "Missing value for indexed jar"));
+            } else if ("-c".equals(args[i])) {
+                result.mIndexClassPath = getArg(args, ++i, "Missing value for class path");
             } else {
                 System.err.println("Unsupported flag: " + args[i]);
                 usage(args);
             }
         }
+        return result;
+    }
 
-        String runner = null;
-
-        if (manifestFile != null) {
-            Document manifest = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-                    .parse(manifestFile);
-            Element documentElement = manifest.getDocumentElement();
-            appNameSpace = documentElement.getAttribute("package");
-            runner = getElementAttribute(documentElement, "instrumentation",
-                    "android:name");
-            targetNameSpace = getElementAttribute(documentElement, "instrumentation",
-                    "android:targetPackage");
+    /**
+     * Checks the required arguments and reads the manifest, if any.
+     */
+    private static void checkArgs(PackageArgs packageArgs, String[] args)
+            throws IOException, XMLStreamException {
+        if (packageArgs.mManifestFile != null) {
+            readManifest(packageArgs);
         }
 
-        if (appPackageName == null) {
+        if (packageArgs.mAppPackageName == null) {
             System.out.println("Package name is required");
             usage(args);
-        } else if (name == null) {
+        } else if (packageArgs.mName == null) {
             System.out.println("Executable name is required");
             usage(args);
+        } else if (packageArgs.mIndexedJar != null && packageArgs.mOutputPath == null) {
+            System.out.println("Output file is required to write a test index");
+            usage(args);
+        }
+    }
+
+    private static void generate(PackageArgs packageArgs, ExpectationStore store)
+            throws IOException {
+        XmlGenerator generator = new XmlGenerator(store, packageArgs.mAppNameSpace,
+                packageArgs.mAppPackageName, packageArgs.mName, packageArgs.mRunner,
+                packageArgs.mInstrumentation, packageArgs.mTargetNameSpace,
+                packageArgs.mJarPath, packageArgs.mTestType, packageArgs.mOutputPath);
+        if (packageArgs.mTestList == null) {
+            generator.writePackageXml();
+        } else {
+            InputStream testList = new FileInputStream(packageArgs.mTestList);
+            try {
+                generator.writePackageXml(testList);
+            } finally {
+                testList.close();
+            }
         }
+        if (packageArgs.mIndexedJar != null) {
+            writeIndex(packageArgs);
+        }
+    }
 
-        ExpectationStore store = ExpectationStore.parse(expectationFiles, ModeId.DEVICE);
-        XmlGenerator generator = new XmlGenerator(store, appNameSpace, appPackageName,
-                name, runner, instrumentation, targetNameSpace, jarPath, testType, outputPath);
-        generator.writePackageXml();
+    private static void writeIndex(PackageArgs packageArgs) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        for (String path : packageArgs.mIndexClassPath.split(File.pathSeparator)) {
+            if (path.length() > 0) {
+                urls.add(new File(path).toURI().toURL());
+            }
+        }
+        // only used to read the class files of super classes, nothing is loaded
+        ClassLoader classPath = new URLClassLoader(urls.toArray(new URL[urls.size()]), null);
+        String outputPath = packageArgs.mOutputPath;
+        if (outputPath.endsWith(".xml")) {
+            outputPath = outputPath.substring(0, outputPath.length() - ".xml".length());
+        }
+        new TestJarScanner(classPath).scan(packageArgs.mIndexedJar)
+                .write(new File(outputPath + TestMetadataIndex.INDEX_SUFFIX));
+    }
+
+    /**
+     * Generates the packages of the batch file in parallel.
+     * <p/>
+     * Exposed for unit testing.
+     *
+     * @param expectationFiles used by all packages in addition to their own
+     * @return exit code, 1 if any package failed
+     */
+    static int runBatch(File batchFile, Set<File> expectationFiles) throws Exception {
+        List<PackageArgs> packages = new ArrayList<PackageArgs>();
+        BufferedReader reader = new BufferedReader(new FileReader(batchFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] args = splitArgs(line);
+                PackageArgs packageArgs = parseArgs(args);
+                checkArgs(packageArgs, args);
+                if (packageArgs.mTestList == null || packageArgs.mOutputPath == null) {
+                    System.err.println("Test list and output file are required in batch mode");
+                    usage(args);
+                }
+                packageArgs.mExpectationFiles.addAll(expectationFiles);
+                packages.add(packageArgs);
+            }
+        } finally {
+            reader.close();
+        }
+
+        // parse each set of expectation files once, before the packages run in parallel
+        final Map<Set<File>, ExpectationStore> stores =
+                new HashMap<Set<File>, ExpectationStore>();
+        for (PackageArgs packageArgs : packages) {
+            if (!stores.containsKey(packageArgs.mExpectationFiles)) {
+                stores.put(packageArgs.mExpectationFiles,
+                        ExpectationStore.parse(packageArgs.mExpectationFiles, ModeId.DEVICE));
+            }
+        }
+
+        int threads = Math.max(1, Math.min(packages.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int exitCode = 0;
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final PackageArgs packageArgs : packages) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        generate(packageArgs, stores.get(packageArgs.mExpectationFiles));
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Failed to generate " + packages.get(i).mOutputPath
+                            + ": " + e.getCause());
+                    exitCode = 1;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return exitCode;
+    }
+
+    /**
+     * Splits a batch file line into arguments at white space. Double quotes group white space
+     * into one argument and are removed.
+     */
+    static String[] splitArgs(String line) {
+        List<String> args = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inArg = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArg) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                current.append(c);
+                inArg = true;
+            }
+        }
+        if (inArg) {
+            args.add(current.toString());
+        }
+        return args.toArray(new String[args.size()]);
     }
 
     private static String getArg(String[] args, int index, String message) {
@@ -117,13 +316,53 @@ public class CtsXmlGenerator {
         }
     }
 
-    private static String getElementAttribute(Element parentElement, String elementName,
-            String attributeName) {
-        NodeList nodeList = parentElement.getElementsByTagName(elementName);
-        if (nodeList.getLength() > 0) {
-             Element element = (Element) nodeList.item(0);
-             return element.getAttribute(attributeName);
+    /**
+     * Reads the package name and the instrumentation of the manifest into packageArgs. Like
+     * DOM getAttribute(), missing attributes are read as empty strings, but the runner and the
+     * target name space stay null if there is no instrumentation element.
+     */
+    private static void readManifest(PackageArgs packageArgs)
+            throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        InputStream in = new FileInputStream(packageArgs.mManifestFile);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            boolean root = true;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (root) {
+                    packageArgs.mAppNameSpace = getAttribute(reader, "package");
+                    packageArgs.mRunner = null;
+                    packageArgs.mTargetNameSpace = null;
+                    root = false;
+                } else if ("instrumentation".equals(getName(reader.getPrefix(),
+                        reader.getLocalName()))) {
+                    packageArgs.mRunner = getAttribute(reader, "android:name");
+                    packageArgs.mTargetNameSpace = getAttribute(reader,
+                            "android:targetPackage");
+                    break;
+                }
+            }
+            reader.close();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(getName(reader.getAttributePrefix(i),
+                    reader.getAttributeLocalName(i)))) {
+                return reader.getAttributeValue(i);
+            }
         }
-        return null;
+        return "";
+    }
+
+    private static String getName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
     }
 }
@@ -16,15 +16,46 @@
 
 package com.android.cts.xmlgenerator;
 
-public class Test implements Comparable<Test> {
-    private String mName;
-    private int mTimeout;
+/**
+ * One line of the test list: a test with the suite and case it is in. Cases and suites without
+ * tests are kept as entries without a test name, or without a case name, so that they are still
+ * written out.
+ */
+public class Test {
+    /** components of the suite name like {"android", "holo", "cts"} */
+    private final String[] mSuite;
+    private final String mCaseName;
+    /** position of the case in the test list, to keep cases with the same name apart */
+    private final int mCaseIndex;
+    private final String mName;
+    private final int mTimeout;
 
-    public Test(String name, int timeout) {
+    public Test(String[] suite, String caseName, int caseIndex, String name, int timeout) {
+        mSuite = suite;
+        mCaseName = caseName;
+        mCaseIndex = caseIndex;
         mName = name;
         mTimeout = timeout;
     }
 
+    public String[] getSuite() {
+        return mSuite;
+    }
+
+    /**
+     * @return case name or null for an entry which only declares its suite
+     */
+    public String getCaseName() {
+        return mCaseName;
+    }
+
+    public int getCaseIndex() {
+        return mCaseIndex;
+    }
+
+    /**
+     * @return test name or null for an entry which only declares its case
+     */
     public String getName() {
         return mName;
     }
@@ -32,9 +63,4 @@ public class Test implements Comparable<Test> {
     public int getTimeout() {
         return mTimeout;
     }
-
-    @Override
-    public int compareTo(Test another) {
-        return getName().compareTo(another.getName());
-    }
 }
@@ -15,11 +15,16 @@
  */
 package com.android.cts.xmlgenerator;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collection;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 /**
  * Parser of test lists that are in the format of:
@@ -28,78 +33,94 @@ import java.util.Scanner;
  * case:HoloTest
  * test:testHolo
  * test:testHoloDialog[:timeout_value]
+ *
+ * The tests are returned as a flat list sorted in the order they are written to the XML:
+ * suites by name with nested suites before cases, cases by name and tests by name.
  */
 class TestListParser {
 
-    public Collection<TestSuite> parse(InputStream input) {
-        Map<String, TestSuite> suiteMap = new HashMap<String, TestSuite>();
-        TestSuite currentSuite = null;
-        TestCase currentCase = null;
-        Scanner scanner = null;
-        try {
-            scanner = new Scanner(input);
-            while(scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] tokens = line.split(":");
-                if (tokens.length < 2) {
-                    continue;
-                }
-
-                String key = tokens[0];
-                String value = tokens[1];
-                if ("suite".equals(key)) {
-                    currentSuite = handleSuite(suiteMap, value);
-                } else if ("case".equals(key)) {
-                    currentCase = handleCase(currentSuite, value);
-                } else if ("test".equals(key)) {
-                    int timeout = -1;
-                    if (tokens.length == 3) {
-                        timeout = Integer.parseInt(tokens[2]);
-                    }
-                    handleTest(currentCase, value, timeout);
+    private static final Comparator<Test> XML_ORDER = new Comparator<Test>() {
+        @Override
+        public int compare(Test a, Test b) {
+            String[] suiteA = a.getSuite();
+            String[] suiteB = b.getSuite();
+            int length = Math.min(suiteA.length, suiteB.length);
+            for (int i = 0; i < length; i++) {
+                int result = suiteA[i].compareTo(suiteB[i]);
+                if (result != 0) {
+                    return result;
                 }
             }
-        } finally {
-            if (scanner != null) {
-                scanner.close();
+            if (suiteA.length != suiteB.length) {
+                // nested suites are written before the cases of their parent
+                return suiteA.length > suiteB.length ? -1 : 1;
+            }
+            int result = compareNullFirst(a.getCaseName(), b.getCaseName());
+            if (result != 0) {
+                return result;
             }
+            if (a.getCaseIndex() != b.getCaseIndex()) {
+                return a.getCaseIndex() < b.getCaseIndex() ? -1 : 1;
+            }
+            return compareNullFirst(a.getName(), b.getName());
         }
-        return suiteMap.values();
-    }
+    };
 
-    private TestSuite handleSuite(Map<String, TestSuite> suiteMap, String fullSuite) {
-        String[] suites = fullSuite.split("\\.");
-        int numSuites = suites.length;
-        TestSuite lastSuite = null;
+    /**
+     * @return the tests sorted in XML order. Tests with equal names keep their input order.
+     */
+    public List<Test> parse(InputStream input) throws IOException {
+        List<Test> tests = new ArrayList<Test>();
+        // suites with the same name share their name components
+        Map<String, String[]> suites = new HashMap<String, String[]>();
+        String[] currentSuite = null;
+        String[] caseSuite = null;
+        String currentCase = null;
+        int caseIndex = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] tokens = line.split(":");
+            if (tokens.length < 2) {
+                continue;
+            }
 
-        for (int i = 0; i < numSuites; i++) {
-            String name = suites[i];
-            if (lastSuite != null) {
-                if (lastSuite.hasSuite(name)) {
-                    lastSuite = lastSuite.getSuite(name);
-                } else {
-                    TestSuite newSuite = new TestSuite(name);
-                    lastSuite.addSuite(newSuite);
-                    lastSuite = newSuite;
+            String key = tokens[0];
+            String value = tokens[1];
+            if ("suite".equals(key)) {
+                currentSuite = suites.get(value);
+                if (currentSuite == null) {
+                    currentSuite = value.split("\\.");
+                    suites.put(value, currentSuite);
                 }
-            } else if (suiteMap.containsKey(name)) {
-                lastSuite = suiteMap.get(name);
-            } else {
-                lastSuite = new TestSuite(name);
-                suiteMap.put(name, lastSuite);
+                tests.add(new Test(currentSuite, null, 0, null, -1));
+            } else if ("case".equals(key)) {
+                if (currentSuite == null) {
+                    throw new IllegalArgumentException("case " + value + " without suite");
+                }
+                caseSuite = currentSuite;
+                currentCase = value;
+                caseIndex++;
+                tests.add(new Test(caseSuite, currentCase, caseIndex, null, -1));
+            } else if ("test".equals(key)) {
+                if (currentCase == null) {
+                    throw new IllegalArgumentException("test " + value + " without case");
+                }
+                int timeout = -1;
+                if (tokens.length == 3) {
+                    timeout = Integer.parseInt(tokens[2]);
+                }
+                tests.add(new Test(caseSuite, currentCase, caseIndex, value, timeout));
             }
         }
-
-        return lastSuite;
+        Collections.sort(tests, XML_ORDER);
+        return tests;
     }
 
-    private TestCase handleCase(TestSuite suite, String caseName) {
-        TestCase testCase = new TestCase(caseName);
-        suite.addCase(testCase);
-        return testCase;
-    }
-
-    private void handleTest(TestCase testCase, String test, int timeout) {
-        testCase.addTest(test, timeout);
+    private static int compareNullFirst(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
     }
 }
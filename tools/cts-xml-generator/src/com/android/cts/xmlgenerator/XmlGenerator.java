@@ -19,14 +19,14 @@ package com.android.cts.xmlgenerator;
 import vogar.Expectation;
 import vogar.ExpectationStore;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -88,6 +88,15 @@ class XmlGenerator {
     }
 
     public void writePackageXml() throws IOException {
+        writePackageXml(System.in);
+    }
+
+    /**
+     * Writes the package XML for the test list read from testList.
+     */
+    public void writePackageXml(InputStream testList) throws IOException {
+        List<Test> tests = new TestListParser().parse(testList);
+
         OutputStream output = System.out;
         if (mOutputPath != null) {
             File outputFile = new File(mOutputPath);
@@ -96,9 +105,9 @@ class XmlGenerator {
 
         PrintWriter writer = null;
         try {
-            writer = new PrintWriter(output);
+            writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(output)));
             writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            writeTestPackage(writer);
+            writeTestPackage(writer, tests);
         } finally {
             if (writer != null) {
                 writer.close();
@@ -106,7 +115,7 @@ class XmlGenerator {
         }
     }
 
-    private void writeTestPackage(PrintWriter writer) {
+    private void writeTestPackage(PrintWriter writer, List<Test> tests) {
         writer.append("<TestPackage");
         if (mAppNamespace != null) {
             writer.append(" appNameSpace=\"").append(mAppNamespace).append("\"");
@@ -135,54 +144,64 @@ class XmlGenerator {
 
         writer.println(" version=\"1.0\">");
 
-        TestListParser parser = new TestListParser();
-        Collection<TestSuite> suites = parser.parse(System.in);
-        StringBuilder nameCollector = new StringBuilder();
-        writeTestSuites(writer, suites, nameCollector);
+        writeTests(writer, tests);
         writer.println("</TestPackage>");
     }
 
-    private void writeTestSuites(PrintWriter writer, Collection<TestSuite> suites,
-            StringBuilder nameCollector) {
-        Collection<TestSuite> sorted = sortCollection(suites);
-        for (TestSuite suite : sorted) {
-            writer.append("<TestSuite name=\"").append(suite.getName()).println("\">");
-
-            String namePart = suite.getName();
-            if (nameCollector.length() > 0) {
-                namePart = "." + namePart;
+    /**
+     * Writes the tests, which are sorted in XML order, opening and closing suites and cases
+     * as the entries move through them.
+     */
+    private void writeTests(PrintWriter writer, List<Test> tests) {
+        String[] openSuite = new String[0];
+        Test openCase = null;
+        // name of the current suite, case and test for the expectation lookup
+        StringBuilder nameCollector = new StringBuilder();
+        for (Test test : tests) {
+            String[] suite = test.getSuite();
+            int common = 0;
+            if (suite != openSuite) {
+                while (common < openSuite.length && common < suite.length
+                        && openSuite[common].equals(suite[common])) {
+                    common++;
+                }
+            } else {
+                common = suite.length;
             }
-            nameCollector.append(namePart);
-
-            writeTestSuites(writer, suite.getSuites(), nameCollector);
-            writeTestCases(writer, suite.getCases(), nameCollector);
-
-            nameCollector.delete(nameCollector.length() - namePart.length(),
-                    nameCollector.length());
-            writer.println("</TestSuite>");
-        }
-    }
-
-    private void writeTestCases(PrintWriter writer, Collection<TestCase> cases,
-            StringBuilder nameCollector) {
-        Collection<TestCase> sorted = sortCollection(cases);
-        for (TestCase testCase : sorted) {
-            String name = testCase.getName();
-            writer.append("<TestCase name=\"").append(name).println("\">");
-            nameCollector.append('.').append(name);
-
-            writeTests(writer, testCase.getTests(), nameCollector);
-
-            nameCollector.delete(nameCollector.length() - name.length() - 1,
-                    nameCollector.length());
-            writer.println("</TestCase>");
-        }
-    }
+            if (openCase != null && (common < openSuite.length || common < suite.length
+                    || test.getCaseName() == null
+                    || test.getCaseIndex() != openCase.getCaseIndex())) {
+                writer.println("</TestCase>");
+                nameCollector.setLength(nameCollector.length() - openCase.getCaseName().length()
+                        - 1);
+                openCase = null;
+            }
+            for (int i = openSuite.length - 1; i >= common; i--) {
+                writer.println("</TestSuite>");
+                nameCollector.setLength(Math.max(0,
+                        nameCollector.length() - openSuite[i].length() - 1));
+            }
+            for (int i = common; i < suite.length; i++) {
+                writer.append("<TestSuite name=\"").append(suite[i]).println("\">");
+                if (nameCollector.length() > 0) {
+                    nameCollector.append('.');
+                }
+                nameCollector.append(suite[i]);
+            }
+            openSuite = suite;
 
-    private void writeTests(PrintWriter writer, Collection<Test> tests,
-            StringBuilder nameCollector) {
-        Collection<Test> sorted = sortCollection(tests);
-        for (Test test : sorted) {
+            if (test.getCaseName() == null) {
+                continue;
+            }
+            if (openCase == null) {
+                writer.append("<TestCase name=\"").append(test.getCaseName()).println("\">");
+                nameCollector.append('.').append(test.getCaseName());
+                openCase = test;
+            }
+            if (test.getName() == null) {
+                continue;
+            }
+            int caseLength = nameCollector.length();
             nameCollector.append('#').append(test.getName());
             writer.append("<Test name=\"").append(test.getName()).append("\"");
             if (isKnownFailure(mExpectations, nameCollector.toString())) {
@@ -192,16 +211,14 @@ class XmlGenerator {
                 writer.append(" timeout=\"" + test.getTimeout() + "\"");
             }
             writer.println(" />");
-
-            nameCollector.delete(nameCollector.length() - test.getName().length() - 1,
-                    nameCollector.length());
+            nameCollector.setLength(caseLength);
+        }
+        if (openCase != null) {
+            writer.println("</TestCase>");
+        }
+        for (int i = 0; i < openSuite.length; i++) {
+            writer.println("</TestSuite>");
         }
-    }
-
-    private <E extends Comparable<E>> Collection<E> sortCollection(Collection<E> col) {
-        List<E> list = new ArrayList<E>(col);
-        Collections.sort(list);
-        return list;
     }
 
     public static boolean isKnownFailure(ExpectationStore expectationStore, String testName) {
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.xmlgenerator;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for the batch mode of {@link CtsXmlGenerator}.
+ */
+public class CtsXmlGeneratorTest extends TestCase {
+
+    private File mDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("xmlgenerator", "");
+        mDir.delete();
+        mDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+        super.tearDown();
+    }
+
+    public void testSplitArgs() {
+        assertEquals(Arrays.asList("-t", "", "-i", "a b", "-n", "Foo"),
+                Arrays.asList(CtsXmlGenerator.splitArgs("  -t \"\" -i \"a b\"\t-n Foo ")));
+        assertEquals(0, CtsXmlGenerator.splitArgs("   ").length);
+    }
+
+    /**
+     * Test that every package of the batch file is written, and a package which fails does not
+     * stop the others.
+     */
+    public void testRunBatch() throws Exception {
+        write("a.list", "suite:android.a\ncase:ATest\ntest:testA\n");
+        write("b.list", "suite:android.b\ncase:BTest\ntest:testB\n");
+        File batch = write("batch", "# comment\n"
+                + line("a") + "\n\n"
+                + line("missing") + "\n"
+                + line("b") + "\n");
+
+        assertEquals(1, CtsXmlGenerator.runBatch(batch, Collections.<File>emptySet()));
+        assertTrue(new File(mDir, "a.xml").isFile());
+        assertTrue(new File(mDir, "b.xml").isFile());
+    }
+
+    private String line(String name) {
+        return "-t \"\" -n " + name + " -p android." + name + " -l "
+                + new File(mDir, name + ".list") + " -o " + new File(mDir, name + ".xml");
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(mDir, name);
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.xmlgenerator;
+
+import vogar.ExpectationStore;
+import vogar.ModeId;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+/**
+ * Unit tests for {@link XmlGenerator} and {@link TestListParser}.
+ */
+public class XmlGeneratorTest extends TestCase {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<TestPackage appPackageName=\"android.foo\" name=\"CtsFooTestCases\""
+            + " version=\"1.0\">\n";
+
+    private File mOutput;
+    private File mExpectations;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mOutput = File.createTempFile("xmlgenerator", ".xml");
+        mExpectations = File.createTempFile("xmlgenerator", ".txt");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mOutput.delete();
+        mExpectations.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that suites with the same name are merged, nested suites are written before the
+     * cases of their parent, and cases and tests are sorted by name.
+     */
+    public void testWritePackageXml() throws IOException {
+        assertEquals(HEADER
+                + "<TestSuite name=\"android\">\n"
+                + "<TestSuite name=\"foo\">\n"
+                + "<TestSuite name=\"cts\">\n"
+                + "<TestCase name=\"ATest\">\n"
+                + "<Test name=\"testA\" />\n"
+                + "</TestCase>\n"
+                + "<TestCase name=\"BTest\">\n"
+                + "<Test name=\"testA\" />\n"
+                + "<Test name=\"testB\" />\n"
+                + "</TestCase>\n"
+                + "</TestSuite>\n"
+                + "<TestCase name=\"FooTest\">\n"
+                + "<Test name=\"testFoo\" />\n"
+                + "</TestCase>\n"
+                + "</TestSuite>\n"
+                + "</TestSuite>\n"
+                + "</TestPackage>\n",
+                generate(null,
+                        "suite:android.foo",
+                        "case:FooTest",
+                        "test:testFoo",
+                        "suite:android.foo.cts",
+                        "case:BTest",
+                        "test:testB",
+                        "test:testA",
+                        "case:ATest",
+                        "test:testA"));
+    }
+
+    /**
+     * Test that suites and cases without tests are still written, and that cases with the same
+     * name in one suite are kept apart.
+     */
+    public void testWritePackageXml_emptyAndDuplicate() throws IOException {
+        assertEquals(HEADER
+                + "<TestSuite name=\"android\">\n"
+                + "<TestSuite name=\"empty\">\n"
+                + "</TestSuite>\n"
+                + "<TestSuite name=\"foo\">\n"
+                + "<TestCase name=\"EmptyTest\">\n"
+                + "</TestCase>\n"
+                + "<TestCase name=\"FooTest\">\n"
+                + "<Test name=\"testB\" />\n"
+                + "</TestCase>\n"
+                + "<TestCase name=\"FooTest\">\n"
+                + "<Test name=\"testA\" />\n"
+                + "</TestCase>\n"
+                + "</TestSuite>\n"
+                + "</TestSuite>\n"
+                + "</TestPackage>\n",
+                generate(null,
+                        "suite:android.foo",
+                        "case:FooTest",
+                        "test:testB",
+                        "case:EmptyTest",
+                        "suite:android.empty",
+                        "suite:android.foo",
+                        "case:FooTest",
+                        "test:testA"));
+    }
+
+    /**
+     * Test that timeouts and known failures are written as attributes of the tests.
+     */
+    public void testWritePackageXml_timeoutAndExpectation() throws IOException {
+        FileWriter writer = new FileWriter(mExpectations);
+        try {
+            writer.write("[\n{\n  name: \"android.foo.FooTest#testFail\",\n  bug: 1\n}\n]\n");
+        } finally {
+            writer.close();
+        }
+        ExpectationStore store = ExpectationStore.parse(Collections.singleton(mExpectations),
+                ModeId.DEVICE);
+        assertEquals(HEADER
+                + "<TestSuite name=\"android\">\n"
+                + "<TestSuite name=\"foo\">\n"
+                + "<TestCase name=\"FooTest\">\n"
+                + "<Test name=\"testFail\" expectation=\"failure\" />\n"
+                + "<Test name=\"testSlow\" timeout=\"15\" />\n"
+                + "</TestCase>\n"
+                + "</TestSuite>\n"
+                + "</TestSuite>\n"
+                + "</TestPackage>\n",
+                generate(store,
+                        "suite:android.foo",
+                        "case:FooTest",
+                        "test:testSlow:15",
+                        "test:testFail"));
+    }
+
+    public void testParse_errors() throws IOException {
+        String[] lists = new String[] {
+            "case:FooTest\n",
+            "suite:android.foo\ntest:testA\n",
+        };
+        for (String list : lists) {
+            try {
+                new TestListParser().parse(new ByteArrayInputStream(list.getBytes("UTF-8")));
+                fail("IllegalArgumentException not thrown for " + list);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Writes the package XML of the given test list lines to the output file.
+     *
+     * @return the content of the output file
+     */
+    private String generate(ExpectationStore store, String... lines) throws IOException {
+        StringBuilder testList = new StringBuilder();
+        for (String line : lines) {
+            testList.append(line).append('\n');
+        }
+        XmlGenerator generator = new XmlGenerator(store, null, "android.foo",
+                "CtsFooTestCases", null, null, null, null, null, mOutput.getPath());
+        generator.writePackageXml(new ByteArrayInputStream(
+                testList.toString().getBytes("UTF-8")));
+
+        InputStream in = new FileInputStream(mOutput);
+        try {
+            byte[] content = new byte[(int) mOutput.length()];
+            int offset = 0;
+            while (offset < content.length) {
+                int read = in.read(content, offset, content.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(content, 0, offset, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
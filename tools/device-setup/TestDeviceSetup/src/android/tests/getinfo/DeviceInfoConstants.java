@@ -23,6 +23,16 @@ package android.tests.getinfo;
  */
 public interface DeviceInfoConstants {
 
+    /**
+     * Instrumentation argument selecting the probes to run: {@link #PROBES_CHEAP},
+     * {@link #PROBES_EXPENSIVE}, only the process scan of the expensive ones with
+     * {@link #PROBES_PROCESSES}, or all of them if it is not given.
+     */
+    public static final String PROBES = "probes";
+    public static final String PROBES_CHEAP = "cheap";
+    public static final String PROBES_EXPENSIVE = "expensive";
+    public static final String PROBES_PROCESSES = "processes";
+
     public static final String OPEN_GL_COMPRESSED_TEXTURE_FORMATS =
             "openGlCompressedTextureFormats";
     public static final String SYS_LIBRARIES = "systemlibraries";
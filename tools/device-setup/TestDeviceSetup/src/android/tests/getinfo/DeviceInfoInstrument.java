@@ -17,9 +17,10 @@
 package android.tests.getinfo;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.Instrumentation;
 import android.content.Context;
-import android.content.Intent;
+import android.content.pm.ConfigurationInfo;
 import android.content.pm.FeatureInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
@@ -40,6 +41,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 import java.util.Set;
 
@@ -49,18 +51,40 @@ public class DeviceInfoInstrument extends Instrumentation implements DeviceInfoC
 
     private static Bundle mResults = new Bundle();
 
+    private String mProbes;
+
     public DeviceInfoInstrument() {
         super();
     }
 
     @Override
     public void onCreate(Bundle arguments) {
+        if (arguments != null) {
+            mProbes = arguments.getString(PROBES);
+        }
         start();
     }
 
     @Override
     public void onStart() {
+        boolean all = mProbes == null;
+        if (all || PROBES_CHEAP.equals(mProbes)) {
+            addCheapResults();
+        }
+        if (all || PROBES_EXPENSIVE.equals(mProbes)) {
+            addGLESResults();
+        }
+        if (all || PROBES_EXPENSIVE.equals(mProbes) || PROBES_PROCESSES.equals(mProbes)) {
+            addProcessResults();
+        }
+        finish(Activity.RESULT_OK, mResults);
+    }
 
+    /**
+     * Add the results which are read from the system services and properties in a few
+     * milliseconds.
+     */
+    private void addCheapResults() {
         addResult(BUILD_ID, Build.ID);
         addResult(PRODUCT_NAME, Build.PRODUCT);
         addResult(BUILD_DEVICE, Build.DEVICE);
@@ -93,13 +117,7 @@ public class DeviceInfoInstrument extends Instrumentation implements DeviceInfoC
         String screenSize = getScreenSize();
         addResult(SCREEN_SIZE, screenSize);
 
-        Intent intent = new Intent();
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        intent.setClass(this.getContext(), DeviceInfoActivity.class);
-
-        DeviceInfoActivity activity = (DeviceInfoActivity) startActivitySync(intent);
-        waitForIdleSync();
-        activity.waitForAcitityToFinish();
+        addConfigurationResults();
 
         TelephonyManager tm = (TelephonyManager) getContext().getSystemService(
                 Context.TELEPHONY_SERVICE);
@@ -123,10 +141,6 @@ public class DeviceInfoInstrument extends Instrumentation implements DeviceInfoC
         String features = getFeatures();
         addResult(FEATURES, features);
 
-        // processes
-        String processes = getProcesses();
-        addResult(PROCESSES, processes);
-
         // OpenGL ES version
         String openGlEsVersion = getOpenGlEsVersion();
         addResult(OPEN_GL_ES_VERSION, openGlEsVersion);
@@ -144,8 +158,31 @@ public class DeviceInfoInstrument extends Instrumentation implements DeviceInfoC
 
         // Multi-user support
         addResult(MULTI_USER, getMultiUserInfo());
+    }
 
-        finish(Activity.RESULT_OK, mResults);
+    /**
+     * Add the results of creating a GLES context of each version, which takes seconds. Nothing
+     * is shown on screen, so this may run while tests are running.
+     */
+    private void addGLESResults() {
+        ActivityManager am = (ActivityManager) getContext().getSystemService(
+                Context.ACTIVITY_SERVICE);
+        ConfigurationInfo info = am.getDeviceConfigurationInfo();
+        int glVersion = (info.reqGlEsVersion & 0xffff0000) >> 16;
+        GLESProbe glesProbe = new GLESProbe();
+        glesProbe.probe(glVersion);
+        addResult(OPEN_GL_COMPRESSED_TEXTURE_FORMATS, glesProbe.getCompressedTextureFormats());
+        addResult(GRAPHICS_VENDOR, glesProbe.getVendor());
+        addResult(GRAPHICS_RENDERER, glesProbe.getRenderer());
+    }
+
+    /**
+     * Add the processes running as root, which takes seconds to read from the status of every
+     * process.
+     */
+    private void addProcessResults() {
+        String processes = getProcesses();
+        addResult(PROCESSES, processes);
     }
 
     /**
@@ -206,6 +243,69 @@ public class DeviceInfoInstrument extends Instrumentation implements DeviceInfoC
         return screenSize;
     }
 
+    /**
+     * Add the input devices and locales of the configuration.
+     */
+    private void addConfigurationResults() {
+        Configuration con = getContext().getResources().getConfiguration();
+        String touchScreen = null;
+        if (con.touchscreen == Configuration.TOUCHSCREEN_UNDEFINED) {
+            touchScreen = "undefined";
+        } else if (con.touchscreen == Configuration.TOUCHSCREEN_NOTOUCH) {
+            touchScreen = "notouch";
+        } else if (con.touchscreen == Configuration.TOUCHSCREEN_STYLUS) {
+            touchScreen = "stylus";
+        } else if (con.touchscreen == Configuration.TOUCHSCREEN_FINGER) {
+            touchScreen = "finger";
+        }
+        if (touchScreen != null) {
+            addResult(TOUCH_SCREEN, touchScreen);
+        }
+
+        String navigation = null;
+        if (con.navigation == Configuration.NAVIGATION_UNDEFINED) {
+            navigation = "undefined";
+        } else if (con.navigation == Configuration.NAVIGATION_NONAV) {
+            navigation = "nonav";
+        } else if (con.navigation == Configuration.NAVIGATION_DPAD) {
+            navigation = "drap";
+        } else if (con.navigation == Configuration.NAVIGATION_TRACKBALL) {
+            navigation = "trackball";
+        } else if (con.navigation == Configuration.NAVIGATION_WHEEL) {
+            navigation = "wheel";
+        }
+
+        if (navigation != null) {
+            addResult(NAVIGATION, navigation);
+        }
+
+        String keypad = null;
+        if (con.keyboard == Configuration.KEYBOARD_UNDEFINED) {
+            keypad = "undefined";
+        } else if (con.keyboard == Configuration.KEYBOARD_NOKEYS) {
+            keypad = "nokeys";
+        } else if (con.keyboard == Configuration.KEYBOARD_QWERTY) {
+            keypad = "qwerty";
+        } else if (con.keyboard == Configuration.KEYBOARD_12KEY) {
+            keypad = "12key";
+        }
+        if (keypad != null) {
+            addResult(KEYPAD, keypad);
+        }
+
+        String[] locales = getContext().getAssets().getLocales();
+        StringBuilder localeList = new StringBuilder();
+        for (String s : locales) {
+            if (s.length() == 0) { // default locale
+                localeList.append(new Locale("en", "US").toString());
+            } else {
+                localeList.append(s);
+            }
+            localeList.append(";");
+        }
+        addResult(LOCALES, localeList.toString());
+    }
+
     private String getScreenDensityBucket(DisplayMetrics metrics) {
         switch (metrics.densityDpi) {
             case DisplayMetrics.DENSITY_LOW:
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tests.getinfo;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES10;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Scanner;
+import java.util.Set;
+
+/**
+ * Queries the compressed texture formats, vendor and renderer of each GLES version.
+ * <p/>
+ * The contexts are made current on a 1x1 pbuffer surface, so that no window is shown over the
+ * activities of a test package running at the same time.
+ */
+class GLESProbe {
+    private static final String TAG = "GLESProbe";
+
+    private final Set<String> mFormats = new HashSet<String>();
+    private String mVendor;
+    private String mRenderer;
+
+    /**
+     * Query GLES versions 1 to glVersion on the calling thread.
+     *
+     * @param glVersion the highest major version of GLES supported by the device
+     */
+    public void probe(int glVersion) {
+        EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (display == EGL14.EGL_NO_DISPLAY
+                || !EGL14.eglInitialize(display, version, 0, version, 1)) {
+            Log.e(TAG, "Unable to initialize EGL");
+            return;
+        }
+        for (int i = 1; i <= glVersion; i++) {
+            probeVersion(display, i);
+        }
+    }
+
+    private void probeVersion(EGLDisplay display, int glVersion) {
+        int renderableType;
+        if (glVersion == 1) {
+            renderableType = EGL14.EGL_OPENGL_ES_BIT;
+        } else if (glVersion == 2) {
+            renderableType = EGL14.EGL_OPENGL_ES2_BIT;
+        } else {
+            renderableType = EGLExt.EGL_OPENGL_ES3_BIT_KHR;
+        }
+        int[] configAttribs = {
+            EGL14.EGL_RENDERABLE_TYPE, renderableType,
+            EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0)
+                || numConfigs[0] == 0) {
+            Log.e(TAG, "No pbuffer config for GLES " + glVersion);
+            return;
+        }
+        int[] contextAttribs = { EGL14.EGL_CONTEXT_CLIENT_VERSION, glVersion, EGL14.EGL_NONE };
+        EGLContext context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+                contextAttribs, 0);
+        if (context == EGL14.EGL_NO_CONTEXT) {
+            Log.e(TAG, "Unable to create a GLES " + glVersion + " context");
+            return;
+        }
+        int[] surfaceAttribs = { EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE };
+        EGLSurface surface = EGL14.eglCreatePbufferSurface(display, configs[0], surfaceAttribs,
+                0);
+        try {
+            if (surface == EGL14.EGL_NO_SURFACE
+                    || !EGL14.eglMakeCurrent(display, surface, surface, context)) {
+                Log.e(TAG, "Unable to make a GLES " + glVersion + " context current");
+                return;
+            }
+            readStrings(glVersion);
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
+                    EGL14.EGL_NO_CONTEXT);
+        } finally {
+            if (surface != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(display, surface);
+            }
+            EGL14.eglDestroyContext(display, context);
+        }
+    }
+
+    private void readStrings(int glVersion) {
+        String extensions;
+        if (glVersion == 2) {
+            extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+            mVendor = GLES20.glGetString(GLES20.GL_VENDOR);
+            mRenderer = GLES20.glGetString(GLES20.GL_RENDERER);
+        } else if (glVersion == 3) {
+            extensions = GLES30.glGetString(GLES30.GL_EXTENSIONS);
+            mVendor = GLES30.glGetString(GLES30.GL_VENDOR);
+            mRenderer = GLES30.glGetString(GLES30.GL_RENDERER);
+        } else {
+            extensions = GLES10.glGetString(GLES10.GL_EXTENSIONS);
+            mVendor = GLES10.glGetString(GLES10.GL_VENDOR);
+            mRenderer = GLES10.glGetString(GLES10.GL_RENDERER);
+        }
+        Log.i(TAG, "extensions : " + extensions);
+        Log.i(TAG, "vendor : " + mVendor);
+        Log.i(TAG, "renderer : " + mRenderer);
+        if (extensions == null) {
+            return;
+        }
+        Scanner scanner = new Scanner(extensions);
+        scanner.useDelimiter(" ");
+        while (scanner.hasNext()) {
+            String ext = scanner.next();
+            if (ext.contains("texture")) {
+                if (ext.contains("compression") || ext.contains("compressed")) {
+                    Log.i(TAG, "Compression supported: " + ext);
+                    mFormats.add(ext);
+                }
+            }
+        }
+    }
+
+    /** @return the compressed texture formats of all versions, each followed by ";" */
+    public String getCompressedTextureFormats() {
+        StringBuilder builder = new StringBuilder();
+        for (String format : mFormats) {
+            builder.append(format);
+            builder.append(";");
+        }
+        return builder.toString();
+    }
+
+    /** @return the vendor reported by the highest version, or null if none could be queried */
+    public String getVendor() {
+        return mVendor;
+    }
+
+    /** @return the renderer reported by the highest version, or null if none could be queried */
+    public String getRenderer() {
+        return mRenderer;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.tradefed.benchmark;
+
+import com.android.cts.tradefed.testtype.GeeTestResultParser;
+import com.android.ddmlib.testrunner.ITestRunListener;
+import com.android.ddmlib.testrunner.TestIdentifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures {@link GeeTestResultParser} throughput on gtest output. The output is
+ * read fully into memory first and handed to the parser in chunks of the size
+ * adb uses, so only parsing is measured.
+ * <p/>
+ * Two ways of feeding the parser are compared: the raw bytes through
+ * {@link GeeTestResultParser#addOutput(byte[], int, int)}, and decoded and
+ * split lines through {@link GeeTestResultParser#processNewLines(String[])}
+ * as a MultiLineReceiver would pass them.
+ * <p/>
+ * Usage: GeeTestResultParserBenchmark [gtest log ...]. Without arguments a
+ * synthetic log shaped like the bionic tests output is generated.
+ */
+public class GeeTestResultParserBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /** ways of feeding the parser which are compared */
+    private enum Mode {
+        BYTES, LINES
+    }
+
+    /** Counts events so that they are not optimized away. */
+    private static class CountingListener implements ITestRunListener {
+        long mEvents = 0;
+        long mTraceChars = 0;
+
+        @Override
+        public void testRunStarted(String runName, int testCount) {
+            mEvents++;
+        }
+
+        @Override
+        public void testStarted(TestIdentifier test) {
+            mEvents++;
+        }
+
+        @Override
+        public void testFailed(TestFailure status, TestIdentifier test, String trace) {
+            mEvents++;
+            mTraceChars += trace.length();
+        }
+
+        @Override
+        public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+            mEvents++;
+        }
+
+        @Override
+        public void testRunFailed(String errorMessage) {
+            mEvents++;
+        }
+
+        @Override
+        public void testRunStopped(long elapsedTime) {
+            mEvents++;
+        }
+
+        @Override
+        public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+            mEvents++;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            run("synthetic bionic log", generateLog(20000, 0.05, 200));
+        } else {
+            for (String arg : args) {
+                run(arg, readFile(new File(arg)));
+            }
+        }
+    }
+
+    private static void run(String name, byte[] data) throws IOException {
+        System.out.println(String.format("%s: %.2f MB", name, data.length / 1024.0 / 1024.0));
+        for (Mode mode : Mode.values()) {
+            CountingListener listener = null;
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                listener = parse(data, mode);
+            }
+            double[] mbps = new double[MEASURED_RUNS];
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                long start = System.nanoTime();
+                parse(data, mode);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                mbps[i] = data.length / 1024.0 / 1024.0 / seconds;
+            }
+            Arrays.sort(mbps);
+            System.out.println(String.format(
+                    "  %-6s median %8.2f MB/s, best %8.2f MB/s, %d events, %d trace chars",
+                    mode, mbps[MEASURED_RUNS / 2], mbps[MEASURED_RUNS - 1], listener.mEvents,
+                    listener.mTraceChars));
+        }
+    }
+
+    private static CountingListener parse(byte[] data, Mode mode) throws IOException {
+        CountingListener listener = new CountingListener();
+        GeeTestResultParser parser = new GeeTestResultParser("benchmark", listener);
+        if (mode == Mode.BYTES) {
+            for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+                parser.addOutput(data, i, Math.min(CHUNK_SIZE, data.length - i));
+            }
+            parser.flush();
+        } else {
+            // what MultiLineReceiver does: decode each chunk, split and trim the lines
+            String unfinished = "";
+            for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+                String text = unfinished
+                        + new String(data, i, Math.min(CHUNK_SIZE, data.length - i), "UTF-8");
+                int end = text.lastIndexOf('\n');
+                unfinished = text.substring(end + 1);
+                if (end >= 0) {
+                    String[] lines = text.substring(0, end).split("\n");
+                    for (int j = 0; j < lines.length; j++) {
+                        lines[j] = lines[j].trim();
+                    }
+                    parser.processNewLines(lines);
+                }
+            }
+            if (unfinished.length() > 0) {
+                parser.processNewLines(new String[] { unfinished.trim() });
+            }
+            parser.done();
+        }
+        return listener;
+    }
+
+    /**
+     * Generates gtest output in which a fraction of the tests fail, each
+     * failure printing up to {@code maxFailureLines} lines like the ones of
+     * EXPECT_EQ.
+     */
+    private static byte[] generateLog(int tests, double failureRate, int maxFailureLines) {
+        Random random = new Random(0);
+        StringBuilder builder = new StringBuilder();
+        builder.append("[==========] Running ").append(tests).append(" tests from ")
+                .append(tests / 20).append(" test cases.\r\n");
+        builder.append("[----------] Global test environment set-up.\r\n");
+        for (int i = 0; i < tests; i++) {
+            String testCase = "stdio_test_" + (i / 20);
+            String test = testCase + ".printf_" + i;
+            if (i % 20 == 0) {
+                builder.append("[----------] 20 tests from ").append(testCase).append("\r\n");
+            }
+            builder.append("[ RUN      ] ").append(test).append("\r\n");
+            if (random.nextDouble() < failureRate) {
+                int lines = 1 + random.nextInt(maxFailureLines);
+                for (int j = 0; j < lines; j++) {
+                    builder.append("bionic/tests/stdio_test.cpp:").append(100 + j)
+                            .append(": Failure\r\nValue of: buf\r\n  Actual: \"")
+                            .append(random.nextInt()).append("\"\r\nExpected: \"0x1p+0\"\r\n");
+                }
+                builder.append("[  FAILED  ] ").append(test).append(" (")
+                        .append(random.nextInt(10)).append(" ms)\r\n");
+            } else {
+                builder.append("[       OK ] ").append(test).append(" (")
+                        .append(random.nextInt(10)).append(" ms)\r\n");
+            }
+        }
+        builder.append("[----------] Global test environment tear-down\r\n");
+        builder.append("[==========] ").append(tests).append(" tests from ").append(tests / 20)
+                .append(" test cases ran. (12345 ms total)\r\n");
+        try {
+            return builder.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return offset == data.length ? data : Arrays.copyOf(data, offset);
+        } finally {
+            in.close();
+        }
+    }
+}
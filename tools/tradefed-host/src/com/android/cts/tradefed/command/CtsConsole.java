@@ -19,6 +19,8 @@ import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.build.CtsBuildProvider;
 import com.android.cts.tradefed.result.ITestResultRepo;
 import com.android.cts.tradefed.result.ITestSummary;
+import com.android.cts.tradefed.result.PerfRegressionDetector;
+import com.android.cts.tradefed.result.PerfTrendStore;
 import com.android.cts.tradefed.result.PlanCreator;
 import com.android.cts.tradefed.result.TestResultRepo;
 import com.android.cts.tradefed.testtype.ITestPackageRepo;
@@ -33,6 +35,7 @@ import com.android.tradefed.util.TableFormatter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -91,6 +94,21 @@ public class CtsConsole extends Console {
                 }
             }
         }, LIST_PATTERN, "r(?:esults)?");
+        ArgRunnable<CaptureList> listRegressionsCommand = new ArgRunnable<CaptureList>() {
+            @Override
+            public void run(CaptureList args) {
+                // Skip 2 tokens to get past listPattern and "regressions"
+                String[] flatArgs = new String[args.size() - 2];
+                for (int i = 2; i < args.size(); i++) {
+                    flatArgs[i - 2] = args.get(i).get(0);
+                }
+                CtsBuildHelper ctsBuild = getCtsBuild();
+                if (ctsBuild != null) {
+                    listRegressions(ctsBuild, flatArgs);
+                }
+            }
+        };
+        trie.put(listRegressionsCommand, LIST_PATTERN, "regressions", null);
 
         // find existing help for 'LIST_PATTERN' commands, and append these commands help
         String listHelp = commandHelp.get(LIST_PATTERN);
@@ -101,7 +119,9 @@ public class CtsConsole extends Console {
         String combinedHelp = listHelp +
                 "\tp[lans]\t\tList all CTS test plans" + LINE_SEPARATOR +
                 "\tpackages\tList all CTS packages" + LINE_SEPARATOR +
-                "\tr[esults]\tList all CTS results" + LINE_SEPARATOR;
+                "\tr[esults]\tList all CTS results" + LINE_SEPARATOR +
+                "\tregressions\tList performance regressions across CTS results" +
+                LINE_SEPARATOR;
         commandHelp.put(LIST_PATTERN, combinedHelp);
 
         ArgRunnable<CaptureList> addDerivedCommand = new ArgRunnable<CaptureList>() {
@@ -167,6 +187,10 @@ public class CtsConsole extends Console {
         helpBuilder.append("currently in the queue waiting to be allocated devices\n");
         helpBuilder.append("  l/list r/results: list CTS results currently present in the ");
         helpBuilder.append("repository\n");
+        helpBuilder.append("  l/list regressions [--alpha 0.01] [--min-change percent] ");
+        helpBuilder.append("[--min-sessions 3] [--fingerprint/-f build] [--test/-t test]: list ");
+        helpBuilder.append("the performance metrics which got significantly worse on a device ");
+        helpBuilder.append("build across the sessions in the repository\n");
         helpBuilder.append("Add:\n");
         helpBuilder.append("  add derivedplan --plan plane_name --session/-s session_id -r ");
         helpBuilder.append("[pass/fail/notExecuted/timeout]: derive a plan from the given ");
@@ -215,6 +239,47 @@ public class CtsConsole extends Console {
         tableFormatter.displayTable(table, new PrintWriter(System.out, true));
     }
 
+    private void listRegressions(CtsBuildHelper ctsBuild, String[] flatArgs) {
+        PerfRegressionDetector detector = new PerfRegressionDetector();
+        try {
+            ArgsOptionParser optionParser = new ArgsOptionParser(detector);
+            optionParser.parse(Arrays.asList(flatArgs));
+        } catch (ConfigurationException e) {
+            printLine("Error: " + e.getMessage());
+            printLine(ArgsOptionParser.getOptionHelp(false, detector));
+            return;
+        }
+        PerfTrendStore store;
+        try {
+            store = new PerfTrendStore(new File(ctsBuild.getResultsDir(),
+                    PerfTrendStore.FILE_NAME));
+            int added = store.ingest(new TestResultRepo(ctsBuild.getResultsDir()));
+            printLine(String.format("Added %d sessions to the performance history", added));
+        } catch (IOException e) {
+            printLine(String.format("Failed to update the performance history: %s",
+                    e.getMessage()));
+            return;
+        }
+        TableFormatter tableFormatter = new TableFormatter();
+        List<List<String>> table = new ArrayList<List<String>>();
+        table.add(Arrays.asList("Session", "Build fingerprint", "Test", "Metric", "Unit",
+                "Before", "After", "Change %", "p-value"));
+        for (PerfRegressionDetector.Regression regression :
+                detector.detect(store.getSeries())) {
+            PerfTrendStore.Series series = regression.getSeries();
+            table.add(Arrays.asList(regression.getSession(),
+                    series.getFingerprint(),
+                    series.getTest(),
+                    series.getMetric(),
+                    series.getUnit().getXmlString(),
+                    String.format("%.2f", regression.getMeanBefore()),
+                    String.format("%.2f", regression.getMeanAfter()),
+                    String.format("%+.1f", regression.getChangePercent()),
+                    String.format("%.2g", regression.getPValue())));
+        }
+        tableFormatter.displayTable(table, new PrintWriter(System.out, true));
+    }
+
     private void addDerivedPlan(CtsBuildHelper ctsBuild, String[] flatArgs) {
         PlanCreator creator = new PlanCreator();
         try {
@@ -15,13 +15,21 @@
  */
 package com.android.cts.tradefed.device;
 
+import android.tests.getinfo.DeviceInfoConstants;
+
 import com.android.ddmlib.Log;
 import com.android.tradefed.device.DeviceNotAvailableException;
 import com.android.tradefed.device.ITestDevice;
 import com.android.tradefed.result.ITestInvocationListener;
+import com.android.tradefed.result.ResultForwarder;
 import com.android.tradefed.testtype.InstrumentationTest;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Collects info from device under test.
@@ -29,6 +37,13 @@ import java.io.File;
  * This class simply serves as a conduit for grabbing info from device using the device info
  * collector apk, and forwarding that data directly to the {@link ITestInvocationListener} as run
  * metrics.
+ * <p/>
+ * The info is collected in two passes. The cheap probes run first, before any test. The
+ * expensive ones, the GLES query and the root process scan, run in the background while the
+ * first test package runs, and their metrics are forwarded afterwards as a second device info
+ * run. The GLES info only depends on the build, so it is cached by device serial and build
+ * fingerprint, and later invocations on the same build only scan the processes in the second
+ * pass. Everything else, like the processes, the SIM and the storage, is collected every time.
  */
 public class DeviceInfoCollector {
 
@@ -36,6 +51,63 @@ public class DeviceInfoCollector {
     private static final String APK_NAME = "TestDeviceSetup";
     public static final String APP_PACKAGE_NAME = "android.tests.devicesetup";
     private static final String INSTRUMENTATION_NAME = "android.tests.getinfo.DeviceInfoInstrument";
+    private static final String FINGERPRINT_COMMAND = "getprop ro.build.fingerprint";
+    /** time to wait for the expensive probes once the first package is done */
+    private static final long EXPENSIVE_INFO_TIMEOUT_MS = 5 * 60 * 1000;
+    /** metrics of the expensive probes which only depend on the build */
+    private static final List<String> CACHED_KEYS = Arrays.asList(
+            DeviceInfoConstants.OPEN_GL_COMPRESSED_TEXTURE_FORMATS,
+            DeviceInfoConstants.GRAPHICS_VENDOR,
+            DeviceInfoConstants.GRAPHICS_RENDERER);
+
+    /** metrics of {@link #CACHED_KEYS}, by device serial and build fingerprint */
+    private static final Map<String, Map<String, String>> sCache =
+            new HashMap<String, Map<String, String>>();
+
+    private final ITestDevice mDevice;
+    private final File mApkFile;
+    private long mExpensiveInfoTimeoutMs = EXPENSIVE_INFO_TIMEOUT_MS;
+    private String mCacheKey;
+    private boolean mCheapInfoCollected;
+    private Map<String, String> mCachedMetrics;
+    private volatile Map<String, String> mExpensiveMetrics;
+    private Thread mExpensiveThread;
+
+    /**
+     * A {@link ResultForwarder} that keeps the run metrics, unless the run failed.
+     */
+    private static class MetricsCollector extends ResultForwarder {
+        private boolean mFailed = false;
+        private Map<String, String> mMetrics;
+
+        MetricsCollector(ITestInvocationListener... listeners) {
+            super(listeners);
+        }
+
+        @Override
+        public void testRunFailed(String errorMessage) {
+            mFailed = true;
+            super.testRunFailed(errorMessage);
+        }
+
+        @Override
+        public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+            mMetrics = new HashMap<String, String>(runMetrics);
+            super.testRunEnded(elapsedTime, runMetrics);
+        }
+
+        /**
+         * @return the run metrics, or <code>null</code> if the run failed
+         */
+        Map<String, String> getMetrics() {
+            return mFailed ? null : mMetrics;
+        }
+    }
+
+    public DeviceInfoCollector(ITestDevice device, File testApkDir) {
+        mDevice = device;
+        mApkFile = new File(testApkDir, String.format("%s.apk", APK_NAME));
+    }
 
     /**
      * Installs and runs the device info collector instrumentation, and forwards results
@@ -47,19 +119,178 @@ public class DeviceInfoCollector {
      */
     public static void collectDeviceInfo(ITestDevice device, File testApkDir,
             ITestInvocationListener listener) throws DeviceNotAvailableException {
-        File apkFile = new File(testApkDir, String.format("%s.apk", APK_NAME));
-        if (!apkFile.exists()) {
-            Log.e(LOG_TAG, String.format("Could not find %s", apkFile.getAbsolutePath()));
+        DeviceInfoCollector collector = new DeviceInfoCollector(device, testApkDir);
+        collector.collectCheapInfo(listener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(listener, true);
+    }
+
+    /**
+     * Exposed for unit testing.
+     */
+    void setExpensiveInfoTimeout(long timeoutMs) {
+        mExpensiveInfoTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Runs the cheap probes and forwards their results to the <var>listener</var>, and looks up
+     * the GLES info cached for the device build.
+     *
+     * @throws DeviceNotAvailableException
+     */
+    public void collectCheapInfo(ITestInvocationListener listener)
+            throws DeviceNotAvailableException {
+        String fingerprint = mDevice.executeShellCommand(FINGERPRINT_COMMAND).trim();
+        mCacheKey = fingerprint.isEmpty() ? null
+                : String.format("%s/%s", mDevice.getSerialNumber(), fingerprint);
+        mCachedMetrics = getCachedInfo(mCacheKey);
+        if (mCachedMetrics != null) {
+            Log.i(LOG_TAG, String.format("Using GLES info cached for %s", fingerprint));
+        }
+        mCheapInfoCollected = runProbes(DeviceInfoConstants.PROBES_CHEAP, listener) != null;
+    }
+
+    /**
+     * Starts the expensive probes in the background, or only the process scan if the GLES info
+     * was cached. Does nothing if the cheap probes failed.
+     * <p/>
+     * They do not show anything on screen, so tests can run meanwhile.
+     */
+    public void startExpensiveInfo() {
+        if (!mCheapInfoCollected || mExpensiveThread != null) {
+            return;
+        }
+        final String probes = mCachedMetrics != null ? DeviceInfoConstants.PROBES_PROCESSES
+                : DeviceInfoConstants.PROBES_EXPENSIVE;
+        mExpensiveThread = new Thread(String.format("%s-%s", LOG_TAG,
+                mDevice.getSerialNumber())) {
+            @Override
+            public void run() {
+                try {
+                    mExpensiveMetrics = runProbes(probes);
+                } catch (DeviceNotAvailableException e) {
+                    Log.w(LOG_TAG, String.format("Device %s became unavailable while "
+                            + "collecting device info: %s", mDevice.getSerialNumber(),
+                            e.getMessage()));
+                }
+            }
+        };
+        mExpensiveThread.setDaemon(true);
+        mExpensiveThread.start();
+    }
+
+    /**
+     * Waits for the probes started by {@link #startExpensiveInfo()}, and forwards their results
+     * and the cached GLES info to the <var>listener</var> as a second device info run. Caches
+     * the GLES info if it was probed. Does nothing if the probes were not started or were
+     * already forwarded.
+     * <p/>
+     * Must be called on the thread which reports the test results, as the listeners are not
+     * thread safe.
+     *
+     * @param wait <code>false</code> to only forward what is already collected, e.g. if the
+     *            device is not available anymore
+     */
+    public void forwardExpensiveInfo(ITestInvocationListener listener, boolean wait) {
+        Thread thread = mExpensiveThread;
+        if (thread == null) {
+            return;
+        }
+        mExpensiveThread = null;
+        if (wait) {
+            try {
+                thread.join(mExpensiveInfoTimeoutMs);
+            } catch (InterruptedException e) {
+                Log.w(LOG_TAG, "Interrupted while waiting for device info");
+            }
+        }
+        Map<String, String> metrics = new HashMap<String, String>();
+        if (mCachedMetrics != null) {
+            metrics.putAll(mCachedMetrics);
+        }
+        if (thread.isAlive()) {
+            Log.w(LOG_TAG, String.format("Device info not collected after %d ms, omitting it",
+                    wait ? mExpensiveInfoTimeoutMs : 0));
+        } else if (mExpensiveMetrics != null) {
+            metrics.putAll(mExpensiveMetrics);
+            if (mCachedMetrics == null && mCacheKey != null) {
+                Map<String, String> cachedMetrics = new HashMap<String, String>();
+                for (String key : CACHED_KEYS) {
+                    if (mExpensiveMetrics.containsKey(key)) {
+                        cachedMetrics.put(key, mExpensiveMetrics.get(key));
+                    }
+                }
+                putCachedInfo(mCacheKey, cachedMetrics);
+            }
+        }
+        if (!metrics.isEmpty()) {
+            forwardMetrics(metrics, listener);
+        }
+    }
+
+    /**
+     * Runs the given probes of the device info collector instrumentation, and forwards the
+     * results to the <var>listeners</var>.
+     * <p/>
+     * Exposed for unit testing.
+     *
+     * @return the metrics, or <code>null</code> if the run failed
+     */
+    Map<String, String> runProbes(String probes, ITestInvocationListener... listeners)
+            throws DeviceNotAvailableException {
+        if (!mApkFile.exists()) {
+            Log.e(LOG_TAG, String.format("Could not find %s", mApkFile.getAbsolutePath()));
         }
         // collect the instrumentation bundle results using instrumentation test
         // should work even though no tests will actually be run
         InstrumentationTest instrTest = new InstrumentationTest();
-        instrTest.setDevice(device);
-        instrTest.setInstallFile(apkFile);
+        instrTest.setDevice(mDevice);
+        instrTest.setInstallFile(mApkFile);
         // no need to collect tests and re-run
         instrTest.setRerunMode(false);
         instrTest.setPackageName(APP_PACKAGE_NAME);
         instrTest.setRunnerName(INSTRUMENTATION_NAME);
-        instrTest.run(listener);
+        instrTest.addInstrumentationArg(DeviceInfoConstants.PROBES, probes);
+        MetricsCollector collector = new MetricsCollector(listeners);
+        instrTest.run(collector);
+        return collector.getMetrics();
+    }
+
+    /**
+     * @return the info cached for the given key, or <code>null</code> if there is none
+     */
+    static Map<String, String> getCachedInfo(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (sCache) {
+            return sCache.get(key);
+        }
+    }
+
+    /**
+     * Exposed for unit testing.
+     */
+    static void putCachedInfo(String key, Map<String, String> metrics) {
+        synchronized (sCache) {
+            sCache.put(key, Collections.unmodifiableMap(metrics));
+        }
+    }
+
+    /**
+     * Exposed for unit testing.
+     */
+    static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+        }
+    }
+
+    /**
+     * Forwards the metrics to the <var>listener</var> as a device info run.
+     */
+    private void forwardMetrics(Map<String, String> metrics, ITestInvocationListener listener) {
+        listener.testRunStarted(APP_PACKAGE_NAME, 0);
+        listener.testRunEnded(0, new HashMap<String, String>(metrics));
     }
 }
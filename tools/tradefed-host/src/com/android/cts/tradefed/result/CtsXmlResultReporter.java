@@ -19,7 +19,8 @@ package com.android.cts.tradefed.result;
 import com.android.cts.tradefed.build.CtsBuildHelper;
 import com.android.cts.tradefed.device.DeviceInfoCollector;
 import com.android.cts.tradefed.testtype.CtsTest;
-import com.android.cts.tradefed.util.CtsHostStore;
+import com.android.cts.tradefed.util.MetricsBus;
+import com.android.cts.util.ReportCodec;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.Log.LogLevel;
 import com.android.ddmlib.testrunner.TestIdentifier;
@@ -44,8 +45,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Writes results to an XML files in the CTS format.
@@ -54,7 +53,7 @@ import java.util.regex.Pattern;
  * <p/>
  * Outputs xml in format governed by the cts_result.xsd
  */
-public class CtsXmlResultReporter implements ITestInvocationListener {
+public class CtsXmlResultReporter implements ITestInvocationListener, MetricsBus.Listener {
     private static final String LOG_TAG = "CtsXmlResultReporter";
 
     static final String TEST_RESULT_FILE_NAME = "testResult.xml";
@@ -89,17 +88,21 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
     @Option(name = "result-server", description = "Server to publish test results.")
     private String mResultServer;
 
+    @Option(name = "result-server-max-rate", description =
+            "Maximum rate in bytes per second to upload test results at. 0 for no limit.")
+    private long mResultServerMaxRate = 0;
+
     protected IBuildInfo mBuildInfo;
     private String mStartTime;
     private String mDeviceSerial;
     private TestResults mResults = new TestResults();
     private TestPackageResult mCurrentPkgResult = null;
+    private TestIdentifier mCurrentTest = null;
     private boolean mIsDeviceInfoRun = false;
     private ResultReporter mReporter;
     private File mLogDir;
     private String mSuiteName;
-
-    private static final Pattern mCtsLogPattern = Pattern.compile("(.*)\\+\\+\\+\\+(.*)");
+    private final MetricsBus mMetricsBus = new MetricsBus();
 
     public void setReportDir(File reportDir) {
         mReportDir = reportDir;
@@ -140,7 +143,11 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
             logResult("Created result dir %s", mReportDir.getName());
         }
         mSuiteName = ctsBuildHelper.getSuiteName();
-        mReporter = new ResultReporter(mResultServer, mSuiteName);
+        mReporter = new ResultReporter(mResultServer, mSuiteName,
+                new File(ctsBuildHelper.getResultsDir(), ResultUploader.SPOOL_DIR_NAME),
+                mResultServerMaxRate);
+        mMetricsBus.subscribe(this);
+        MetricsBus.register(mDeviceSerial, mMetricsBus);
 
         // TODO: allow customization of log dir
         // create a unique directory for saving logs, with same name as result dir
@@ -225,11 +232,14 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
      */
     @Override
     public void testRunStarted(String name, int numTests) {
-        if (mCurrentPkgResult != null && !name.equals(mCurrentPkgResult.getAppPackageName())) {
+        mIsDeviceInfoRun = name.equals(DeviceInfoCollector.APP_PACKAGE_NAME);
+        // device info may arrive between packages, the previous package is displayed once the
+        // next one starts
+        if (mCurrentPkgResult != null && !mIsDeviceInfoRun
+                && !name.equals(mCurrentPkgResult.getAppPackageName())) {
             // display results from previous run
             logCompleteRun(mCurrentPkgResult);
         }
-        mIsDeviceInfoRun = name.equals(DeviceInfoCollector.APP_PACKAGE_NAME);
         if (mIsDeviceInfoRun) {
             logResult("Collecting device info");
         } else  {
@@ -247,8 +257,9 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
      * {@inheritDoc}
      */
     @Override
-    public void testStarted(TestIdentifier test) {
+    public synchronized void testStarted(TestIdentifier test) {
         mCurrentPkgResult.insertTest(test);
+        mCurrentTest = test;
     }
 
     /**
@@ -263,7 +274,8 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
      * {@inheritDoc}
      */
     @Override
-    public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+    public synchronized void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+        mCurrentTest = null;
         collectCtsResults(test, testMetrics);
         mCurrentPkgResult.reportTestEnded(test);
         Test result = mCurrentPkgResult.findTest(test);
@@ -280,21 +292,38 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
     private void collectCtsResults(TestIdentifier test, Map<String, String> testMetrics) {
         // device test can have performance results in testMetrics
         String perfResult = CtsReportUtil.getCtsResultFromMetrics(testMetrics);
-        // host test should be checked in CtsHostStore.
-        if (perfResult == null) {
-            perfResult = CtsHostStore.removeCtsResult(mDeviceSerial, test.toString());
-        }
         if (perfResult != null) {
-            // CTS result is passed in Summary++++Details format.
-            // Extract Summary and Details, and pass them.
-            Matcher m = mCtsLogPattern.matcher(perfResult);
-            if (m.find()) {
-                mCurrentPkgResult.reportPerformanceResult(test, CtsTestStatus.PASS, m.group(1),
-                        m.group(2));
-            } else {
+            try {
+                ReportCodec.Report report = ReportCodec.decode(perfResult);
+                mCurrentPkgResult.reportPerformanceResult(test, CtsTestStatus.PASS,
+                        report.mSummary, report.mDetails);
+            } catch (IllegalArgumentException e) {
                 logResult("CTS Result unrecognizable:" + perfResult);
             }
+            return;
+        }
+        // host test results which could not be delivered while the test was running
+        ReportCodec.Report report = mMetricsBus.take(test.toString());
+        if (report != null) {
+            mCurrentPkgResult.reportPerformanceResult(test, CtsTestStatus.PASS, report.mSummary,
+                    report.mDetails);
+        }
+    }
+
+    /**
+     * Receives host test results published on this invocation's {@link MetricsBus}.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean onMetrics(String classMethodName, ReportCodec.Report report) {
+        TestIdentifier test = mCurrentTest;
+        if (test == null || !classMethodName.equals(test.toString())) {
+            return false;
         }
+        mCurrentPkgResult.reportPerformanceResult(test, CtsTestStatus.PASS, report.mSummary,
+                report.mDetails);
+        return true;
     }
 
     /**
@@ -314,6 +343,8 @@ public class CtsXmlResultReporter implements ITestInvocationListener {
      */
     @Override
     public void invocationEnded(long elapsedTime) {
+        MetricsBus.unregister(mDeviceSerial, mMetricsBus);
+        mMetricsBus.clear();
         // display the results of the last completed run
         if (mCurrentPkgResult != null) {
             logCompleteRun(mCurrentPkgResult);
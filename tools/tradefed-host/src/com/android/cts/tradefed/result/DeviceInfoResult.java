@@ -322,6 +322,10 @@ class DeviceInfoResult extends AbstractXmlPullParser {
     /**
      * Populate the device info metrics with values collected from device.
      * <p/>
+     * The metrics of a device can arrive in several parts, in any order: the results of the
+     * expensive probes are reported after the first test package. Metrics of a part that were not
+     * stored yet are added as they are.
+     * <p/>
      * Check that the provided device info metrics are consistent with the currently stored metrics.
      * If any inconsistencies occur, logs errors and stores error messages in the metrics map
      */
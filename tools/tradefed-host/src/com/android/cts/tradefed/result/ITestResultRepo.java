@@ -45,4 +45,9 @@ public interface ITestResultRepo {
      */
     public File getReportDir(int sessionId);
 
+    /**
+     * @return the number of sessions. Session ids are 0 to the number of sessions - 1
+     */
+    public int getSessionCount();
+
 }
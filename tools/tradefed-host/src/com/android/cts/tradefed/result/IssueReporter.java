@@ -28,21 +28,47 @@ import com.android.tradefed.result.TestSummary;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * Class that sends a HTTP POST multipart/form-data request containing details
- * about a test failure.
+ * about test failures.
+ * <p/>
+ * Failures with the same stack trace signature, see {@link #getSignature(String)}, are reported
+ * once with the names of all the tests that failed that way. Up to {@link #MAX_BATCH_ISSUES}
+ * distinct failures are sent in one request, with the repeated testName, stackTrace and
+ * failureCount form values of each, and they share the first bug report taken for any of them.
+ * A signature which was already sent is not reported again in the same invocation.
+ * <p/>
+ * At most {@link #MAX_QUEUED_BATCHES} requests wait to be sent; failures beyond that are only
+ * counted, so a storm of failures cannot run out of memory.
  */
 public class IssueReporter implements ITestInvocationListener {
 
     private static final int BUGREPORT_SIZE = 500 * 1024;
 
+    /** maximum number of distinct failures sent in one request */
+    static final int MAX_BATCH_ISSUES = 10;
+    /** maximum number of requests waiting to be sent */
+    static final int MAX_QUEUED_BATCHES = 4;
+    /** maximum number of test names sent for one failure */
+    static final int MAX_TEST_NAMES = 50;
+    /** maximum number of characters of a stack trace which are sent */
+    static final int MAX_STACK_TRACE_CHARS = 16 * 1024;
+    /** number of signatures already sent which are remembered */
+    private static final int MAX_SENT_SIGNATURES = 1000;
+    /** number of stack frames that make up the signature of a failure */
+    private static final int SIGNATURE_FRAMES = 5;
+
     private static final String PRODUCT_NAME_KEY = "buildName";
     private static final String BUILD_TYPE_KEY = "build_type";
     private static final String BUILD_ID_KEY = "buildID";
@@ -50,18 +76,66 @@ public class IssueReporter implements ITestInvocationListener {
     @Option(name = "issue-server", description = "Server url to post test failures to.")
     private String mServerUrl;
 
-    private final ExecutorService mReporterService = Executors.newCachedThreadPool();
+    private final ExecutorService mReporterService = Executors.newSingleThreadExecutor();
+    private final AtomicInteger mQueuedBatches = new AtomicInteger();
+
+    // failures not sent yet, by signature
+    private final Map<String, Issue> mBatch = new LinkedHashMap<String, Issue>();
+    private byte[] mBatchBugReport;
+    // signatures sent in this invocation, least recently seen first
+    private final Map<String, Boolean> mSentSignatures = new LinkedHashMap<String, Boolean>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SENT_SIGNATURES;
+        }
+    };
+    private int mDuplicateFailures = 0;
+    private int mDroppedFailures = 0;
 
     private Issue mCurrentIssue;
     private String mBuildId;
     private String mBuildType;
     private String mProductName;
 
+    public IssueReporter() {
+    }
+
+    /**
+     * Exposed for unit testing.
+     */
+    IssueReporter(String serverUrl) {
+        mServerUrl = serverUrl;
+    }
+
     @Override
     public void testFailed(TestFailure status, TestIdentifier test, String trace) {
-        mCurrentIssue = new Issue();
-        mCurrentIssue.mTestName = test.toString();
-        mCurrentIssue.mStackTrace = trace;
+        mCurrentIssue = null;
+        if (isEmpty(mServerUrl) || isEmpty(trace)) {
+            return;
+        }
+        String signature = getSignature(trace);
+        Issue issue = mBatch.get(signature);
+        if (issue == null) {
+            // get() also marks the signature as recently seen
+            if (mSentSignatures.get(signature) != null) {
+                mDuplicateFailures++;
+                return;
+            }
+            if (mBatch.size() >= MAX_BATCH_ISSUES) {
+                flushBatch();
+            }
+            // the batch is kept until the build info is known
+            if (mBatch.size() >= MAX_BATCH_ISSUES
+                    || mQueuedBatches.get() >= MAX_QUEUED_BATCHES) {
+                mDroppedFailures++;
+                return;
+            }
+            issue = new Issue(trace);
+            mBatch.put(signature, issue);
+        }
+        issue.addTest(test.toString());
+        mCurrentIssue = issue;
     }
 
     @Override
@@ -80,20 +154,18 @@ public class IssueReporter implements ITestInvocationListener {
      * This is only called when the --bugreport option is enabled.
      */
     private void setBugReport(InputStreamSource dataStream) throws IOException {
-        if (mCurrentIssue != null) {
-            // Only one bug report can be stored at a time and they are gzipped to
-            // about 0.5 MB so there shoudn't be any memory leak bringing down CTS.
+        // only the first bug report of a batch is kept, which is enough to diagnose failures
+        // which happened in the same time frame
+        if (mCurrentIssue != null && mBatchBugReport == null) {
             InputStream input = null;
             try {
                 input = dataStream.createInputStream();
-                mCurrentIssue.mBugReport = getBytes(input, BUGREPORT_SIZE);
+                mBatchBugReport = getBytes(input, BUGREPORT_SIZE);
             } finally {
                 if (input != null) {
                     input.close();
                 }
             }
-        } else {
-            CLog.e("setBugReport is getting called on an empty issue...");
         }
     }
 
@@ -117,17 +189,63 @@ public class IssueReporter implements ITestInvocationListener {
         return byteOutput.toByteArray();
     }
 
+    /**
+     * Returns the signature of a failure: the exception type and the top stack frames, starting
+     * at the first frame which is not in an assertion framework, so that failures of different
+     * assertions do not all share the frames of {@code Assert.fail}.
+     * The exception message is left out since it often holds values like timings or object
+     * ids which differ from one occurrence of the same failure to the next.
+     */
+    static String getSignature(String trace) {
+        StringBuilder signature = new StringBuilder();
+        int frames = 0;
+        boolean first = true;
+        for (String line : trace.split("\n")) {
+            line = line.trim();
+            if (first) {
+                int colon = line.indexOf(':');
+                signature.append(colon < 0 ? line : line.substring(0, colon));
+                first = false;
+            } else if (line.startsWith("at ")) {
+                if (frames == 0 && isAssertionFrame(line.substring(3))) {
+                    continue;
+                }
+                signature.append('\n').append(line);
+                if (++frames == SIGNATURE_FRAMES) {
+                    break;
+                }
+            }
+        }
+        return signature.toString();
+    }
+
+    /**
+     * @param frame a stack frame, like "junit.framework.Assert.fail(Assert.java:50)"
+     * @return whether the frame is in JUnit or in an android.test assertion class
+     */
+    private static boolean isAssertionFrame(String frame) {
+        if (frame.startsWith("junit.framework.") || frame.startsWith("org.junit.")) {
+            return true;
+        }
+        if (!frame.startsWith("android.test.")) {
+            return false;
+        }
+        int paren = frame.indexOf('(');
+        String method = paren < 0 ? frame : frame.substring(0, paren);
+        int dot = method.lastIndexOf('.');
+        String className = method.substring(method.lastIndexOf('.', dot - 1) + 1, dot);
+        return className.contains("Assert");
+    }
+
     @Override
     public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
-        if (mCurrentIssue != null) {
-            mReporterService.submit(mCurrentIssue);
-            mCurrentIssue = null;
-        }
+        mCurrentIssue = null;
     }
 
     @Override
     public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
         setDeviceMetrics(runMetrics);
+        flushBatch();
     }
 
     /** Set device information. Populated once when the device info app runs. */
@@ -143,8 +261,43 @@ public class IssueReporter implements ITestInvocationListener {
         }
     }
 
+    /**
+     * Queue the pending failures to be sent in one request, unless the build info of the device
+     * is not known yet. They are then kept until it is, and their signatures are not marked as
+     * sent.
+     */
+    private void flushBatch() {
+        mCurrentIssue = null;
+        if (mBatch.isEmpty() || !hasBuildInfo()) {
+            return;
+        }
+        for (String signature : mBatch.keySet()) {
+            mSentSignatures.put(signature, Boolean.TRUE);
+        }
+        Batch batch = new Batch(new ArrayList<Issue>(mBatch.values()), mBatchBugReport,
+                mProductName, mBuildType, mBuildId);
+        mBatch.clear();
+        mBatchBugReport = null;
+        mQueuedBatches.incrementAndGet();
+        mReporterService.submit(batch);
+    }
+
+    private boolean hasBuildInfo() {
+        return !isEmpty(mBuildId) && !isEmpty(mBuildType) && !isEmpty(mProductName);
+    }
+
     @Override
     public void invocationEnded(long elapsedTime) {
+        flushBatch();
+        for (Issue issue : mBatch.values()) {
+            // no build info was reported
+            mDroppedFailures += issue.mFailureCount;
+        }
+        mBatch.clear();
+        if (mDuplicateFailures > 0 || mDroppedFailures > 0) {
+            CLog.i("Did not report %d repeated and %d dropped failures", mDuplicateFailures,
+                    mDroppedFailures);
+        }
         try {
             mReporterService.shutdown();
             if (!mReporterService.awaitTermination(1, TimeUnit.MINUTES)) {
@@ -155,40 +308,78 @@ public class IssueReporter implements ITestInvocationListener {
         }
     }
 
-    class Issue implements Callable<Void> {
+    /** Failures of one or more tests with the same signature. */
+    static class Issue {
 
-        private String mTestName;
-        private String mStackTrace;
-        private byte[] mBugReport;
+        private final String mStackTrace;
+        private final List<String> mTestNames = new ArrayList<String>();
+        private int mFailureCount = 0;
 
-        @Override
-        public Void call() throws Exception {
-            if (isEmpty(mServerUrl)
-                    || isEmpty(mBuildId)
-                    || isEmpty(mBuildType)
-                    || isEmpty(mProductName)
-                    || isEmpty(mTestName)
-                    || isEmpty(mStackTrace)) {
-                return null;
+        Issue(String stackTrace) {
+            mStackTrace = stackTrace.length() > MAX_STACK_TRACE_CHARS
+                    ? stackTrace.substring(0, MAX_STACK_TRACE_CHARS) : stackTrace;
+        }
+
+        void addTest(String testName) {
+            mFailureCount++;
+            if (mTestNames.size() < MAX_TEST_NAMES) {
+                mTestNames.add(testName);
             }
+        }
+    }
+
+    /** Failures sent in one request. */
+    class Batch implements Callable<Void> {
 
-            new MultipartForm(mServerUrl)
-                    .addFormValue("productName", mProductName)
-                    .addFormValue("buildType", mBuildType)
-                    .addFormValue("buildId", mBuildId)
-                    .addFormValue("testName", mTestName)
-                    .addFormValue("stackTrace", mStackTrace)
-                    .addFormFile("bugReport", "bugreport.txt.gz", mBugReport)
-                    .submit();
+        private final List<Issue> mIssues;
+        private final byte[] mBugReport;
+        private final String mBatchProductName;
+        private final String mBatchBuildType;
+        private final String mBatchBuildId;
 
-            return null;
+        Batch(List<Issue> issues, byte[] bugReport, String productName, String buildType,
+                String buildId) {
+            mIssues = issues;
+            mBugReport = bugReport;
+            mBatchProductName = productName;
+            mBatchBuildType = buildType;
+            mBatchBuildId = buildId;
         }
 
-        private boolean isEmpty(String value) {
-            return value == null || value.trim().isEmpty();
+        @Override
+        public Void call() throws Exception {
+            try {
+                MultipartForm form = new MultipartForm(mServerUrl)
+                        .addFormValue("productName", mBatchProductName)
+                        .addFormValue("buildType", mBatchBuildType)
+                        .addFormValue("buildId", mBatchBuildId);
+                for (Issue issue : mIssues) {
+                    StringBuilder testNames = new StringBuilder();
+                    for (String testName : issue.mTestNames) {
+                        if (testNames.length() > 0) {
+                            testNames.append('\n');
+                        }
+                        testNames.append(testName);
+                    }
+                    form.addFormValue("testName", testNames.toString())
+                            .addFormValue("stackTrace", issue.mStackTrace)
+                            .addFormValue("failureCount", Integer.toString(issue.mFailureCount));
+                }
+                if (mBugReport != null) {
+                    form.addFormFile("bugReport", "bugreport.txt.gz", mBugReport);
+                }
+                form.submit();
+                return null;
+            } finally {
+                mQueuedBatches.decrementAndGet();
+            }
         }
     }
 
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
     @Override
     public void invocationStarted(IBuildInfo buildInfo) {
     }
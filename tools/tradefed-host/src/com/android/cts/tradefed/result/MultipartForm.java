@@ -17,35 +17,50 @@
 package com.android.cts.tradefed.result;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
-/** MultipartForm builds a multipart form and submits it. */
+/**
+ * MultipartForm builds a multipart form and submits it.
+ * <p/>
+ * A form value name can be added several times, for example to send a list of items.
+ * A form file given as a {@link File} is gzipped while it is sent in chunks, so it is never
+ * held in memory, and the upload rate can be limited with {@link #setMaxBytesPerSecond(long)}.
+ */
 class MultipartForm {
 
     private static final String FORM_DATA_BOUNDARY = "C75I55u3R3p0r73r";
+    private static final int CHUNK_SIZE = 64 * 1024;
 
     private final String mServerUrl;
 
-    private final Map<String, String> mFormValues = new HashMap<String, String>();
+    // name and value pairs, in the order they were added
+    private final List<String[]> mFormValues = new ArrayList<String[]>();
 
     private String mName;
     private String mFileName;
     private byte[] mData;
+    private File mFile;
+    private long mMaxBytesPerSecond = 0;
 
     public MultipartForm(String serverUrl) {
         mServerUrl = serverUrl;
     }
 
     public MultipartForm addFormValue(String name, String value) {
-        mFormValues.put(name, value);
+        mFormValues.add(new String[] {name, value});
         return this;
     }
 
@@ -53,6 +68,28 @@ class MultipartForm {
         mName = name;
         mFileName = fileName;
         mData = data;
+        mFile = null;
+        return this;
+    }
+
+    /**
+     * Add a file which is gzipped while it is submitted.
+     */
+    public MultipartForm addFormFile(String name, String fileName, File file) {
+        mName = name;
+        mFileName = fileName;
+        mData = null;
+        mFile = file;
+        return this;
+    }
+
+    /**
+     * Limit the rate at which the form is sent.
+     *
+     * @param maxBytesPerSecond the maximum rate, or 0 for no limit
+     */
+    public MultipartForm setMaxBytesPerSecond(long maxBytesPerSecond) {
+        mMaxBytesPerSecond = maxBytesPerSecond;
         return this;
     }
 
@@ -79,14 +116,26 @@ class MultipartForm {
             connection.setRequestProperty("Content-Type",
                     "multipart/form-data; boundary=" + FORM_DATA_BOUNDARY);
 
-            byte[] body = getContentBody();
-            connection.setRequestProperty("Content-Length", Integer.toString(body.length));
+            if (mFile != null) {
+                // the compressed size is not known up front
+                connection.setChunkedStreamingMode(CHUNK_SIZE);
+                OutputStream output = connection.getOutputStream();
+                try {
+                    writeContentBody(throttle(output));
+                } finally {
+                    output.close();
+                }
+            } else {
+                byte[] body = getContentBody();
+                connection.setRequestProperty("Content-Length", Integer.toString(body.length));
+                connection.setFixedLengthStreamingMode(body.length);
 
-            OutputStream output = connection.getOutputStream();
-            try {
-                output.write(body);
-            } finally {
-                output.close();
+                OutputStream output = connection.getOutputStream();
+                try {
+                    throttle(output).write(body);
+                } finally {
+                    output.close();
+                }
             }
 
             // Open the stream to get a response. Otherwise request will be cancelled.
@@ -110,8 +159,8 @@ class MultipartForm {
         PrintWriter writer = new PrintWriter(new OutputStreamWriter(byteOutput));
         writer.println();
 
-        for (Map.Entry<String, String> formValue : mFormValues.entrySet()) {
-            writeFormField(writer, formValue.getKey(), formValue.getValue());
+        for (String[] formValue : mFormValues) {
+            writeFormField(writer, formValue[0], formValue[1]);
         }
 
         if (mData != null) {
@@ -126,6 +175,47 @@ class MultipartForm {
         return byteOutput.toByteArray();
     }
 
+    /**
+     * Write the form with the gzipped contents of {@link #mFile}.
+     */
+    private void writeContentBody(OutputStream output) throws IOException {
+        ByteArrayOutputStream headerOutput = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(headerOutput));
+        writer.println();
+        for (String[] formValue : mFormValues) {
+            writeFormField(writer, formValue[0], formValue[1]);
+        }
+        writeFormFileHeader(writer, mName, mFileName);
+        writer.flush();
+        output.write(headerOutput.toByteArray());
+
+        // do not close the gzip stream, which would close the connection's stream
+        GZIPOutputStream gzipOutput = new GZIPOutputStream(output, CHUNK_SIZE);
+        InputStream input = new FileInputStream(mFile);
+        try {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int numRead;
+            while ((numRead = input.read(buffer)) != -1) {
+                gzipOutput.write(buffer, 0, numRead);
+            }
+        } finally {
+            input.close();
+        }
+        gzipOutput.finish();
+
+        headerOutput.reset();
+        writer.println();
+        writer.append("--").append(FORM_DATA_BOUNDARY).println("--");
+        writer.close();
+        output.write(headerOutput.toByteArray());
+        output.flush();
+    }
+
+    private OutputStream throttle(OutputStream output) {
+        return mMaxBytesPerSecond > 0
+                ? new ThrottledOutputStream(output, mMaxBytesPerSecond) : output;
+    }
+
     private void writeFormField(PrintWriter writer, String name, String value) {
         writer.append("--").println(FORM_DATA_BOUNDARY);
         writer.append("Content-Disposition: form-data; name=\"").append(name).println("\"");
@@ -141,4 +231,50 @@ class MultipartForm {
         writer.println("Content-Transfer-Encoding: binary");
         writer.println();
     }
+
+    /**
+     * Output stream which sleeps as needed to keep the average rate under a limit.
+     */
+    static class ThrottledOutputStream extends FilterOutputStream {
+        private final long mMaxBytesPerSecond;
+        private final long mStartTime = System.currentTimeMillis();
+        private long mBytesWritten = 0;
+
+        ThrottledOutputStream(OutputStream output, long maxBytesPerSecond) {
+            super(output);
+            mMaxBytesPerSecond = maxBytesPerSecond;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // write in slices of a tenth of a second so the rate stays smooth
+            int slice = (int) Math.max(1, Math.min(CHUNK_SIZE, mMaxBytesPerSecond / 10));
+            while (len > 0) {
+                int count = Math.min(slice, len);
+                pause();
+                out.write(b, off, count);
+                mBytesWritten += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void pause() throws IOException {
+            long due = mStartTime + mBytesWritten * 1000 / mMaxBytesPerSecond;
+            long delay = due - System.currentTimeMillis();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
 }
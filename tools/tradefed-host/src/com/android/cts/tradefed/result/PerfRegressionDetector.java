@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.cts.util.ResultType;
+import com.android.tradefed.config.Option;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finds the sessions after which a performance metric of a device build got significantly
+ * worse.
+ * <p/>
+ * The change points of each {@link PerfTrendStore.Series} are found by binary segmentation:
+ * the split of the values with the largest t statistic of the difference of means is kept if it
+ * is significant, and both sides are split again. The significance is that of the maximum
+ * statistic over all splits, found by comparing it to the maxima of random permutations of the
+ * values. Unlike a t-test of the best split alone, this does not depend on the noise being
+ * normal, and a series of noise only has a change point with a probability of at most alpha.
+ * A change point where the metric got worse by at least the minimum change is a regression. Metrics of {@link ResultType#NEUTRAL} or {@link ResultType#WARNING}
+ * type have no worse direction and are not checked.
+ * <p/>
+ * All {@link Option} fields can be populated via
+ * {@link com.android.tradefed.config.ArgsOptionParser}.
+ */
+public class PerfRegressionDetector {
+
+    /** seed of the permutations of each series, so that a check can be repeated */
+    private static final long PERMUTATION_SEED = 0x5eed;
+
+    @Option(name = "alpha", description = "the significance level of a change")
+    private double mAlpha = 0.01;
+
+    @Option(name = "permutations", description = "the number of random permutations of the "
+            + "values to estimate the significance of a change. At least 1 / alpha")
+    private int mPermutations = 999;
+
+    @Option(name = "min-change",
+            description = "the minimum change of the mean, in percent, to report a regression")
+    private double mMinChangePercent = 5.0;
+
+    @Option(name = "min-sessions",
+            description = "the minimum number of sessions on each side of a change. At least 2")
+    private int mMinSessions = 3;
+
+    @Option(name = "fingerprint", shortName = 'f',
+            description = "only check the builds with a fingerprint containing this")
+    private String mFingerprintFilter = null;
+
+    @Option(name = "test", shortName = 't',
+            description = "only check the tests with a class name#test name containing this")
+    private String mTestFilter = null;
+
+    /**
+     * A significant change of a metric for the worse.
+     */
+    public static class Regression {
+        private final PerfTrendStore.Series mSeries;
+        private final int mIndex;
+        private final double mMeanBefore;
+        private final double mMeanAfter;
+        private final double mPValue;
+
+        Regression(PerfTrendStore.Series series, int index, double meanBefore, double meanAfter,
+                double pValue) {
+            mSeries = series;
+            mIndex = index;
+            mMeanBefore = meanBefore;
+            mMeanAfter = meanAfter;
+            mPValue = pValue;
+        }
+
+        public PerfTrendStore.Series getSeries() {
+            return mSeries;
+        }
+
+        /**
+         * @return the first session with the worse value
+         */
+        public String getSession() {
+            return mSeries.getSessions().get(mIndex);
+        }
+
+        /**
+         * @return the mean of the values from the previous change point to this one
+         */
+        public double getMeanBefore() {
+            return mMeanBefore;
+        }
+
+        /**
+         * @return the mean of the values from this change point to the next one
+         */
+        public double getMeanAfter() {
+            return mMeanAfter;
+        }
+
+        /**
+         * @return the change of the mean, in percent of the mean before
+         */
+        public double getChangePercent() {
+            return (mMeanAfter - mMeanBefore) / Math.abs(mMeanBefore) * 100.0;
+        }
+
+        /**
+         * @return the permutation p-value of the change
+         */
+        public double getPValue() {
+            return mPValue;
+        }
+    }
+
+    /**
+     * Create a {@link PerfRegressionDetector} with the default option values.
+     */
+    public PerfRegressionDetector() {
+    }
+
+    /**
+     * Create a {@link PerfRegressionDetector} using the specified option values.
+     */
+    public PerfRegressionDetector(double alpha, double minChangePercent, int minSessions) {
+        mAlpha = alpha;
+        mMinChangePercent = minChangePercent;
+        mMinSessions = minSessions;
+    }
+
+    /**
+     * Find the regressions of the given series.
+     *
+     * @return the regressions, in the order of the series and of the sessions of each series
+     */
+    public List<Regression> detect(Collection<PerfTrendStore.Series> allSeries) {
+        List<Regression> regressions = new ArrayList<Regression>();
+        for (PerfTrendStore.Series series : allSeries) {
+            if (!isChecked(series)) {
+                continue;
+            }
+            double[] values = series.getValues();
+            List<Integer> changePoints = new ArrayList<Integer>();
+            List<Double> pValues = new ArrayList<Double>();
+            findChangePoints(values, 0, values.length, new Random(PERMUTATION_SEED),
+                    changePoints, pValues);
+            List<Integer> sorted = new ArrayList<Integer>(changePoints);
+            Collections.sort(sorted);
+            for (int i = 0; i < sorted.size(); i++) {
+                int changePoint = sorted.get(i);
+                int start = i == 0 ? 0 : sorted.get(i - 1);
+                int end = i == sorted.size() - 1 ? values.length : sorted.get(i + 1);
+                double meanBefore = mean(values, start, changePoint);
+                double meanAfter = mean(values, changePoint, end);
+                Regression regression = new Regression(series, changePoint, meanBefore,
+                        meanAfter, pValues.get(changePoints.indexOf(changePoint)));
+                if (isWorse(series.getType(), regression)) {
+                    regressions.add(regression);
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private boolean isChecked(PerfTrendStore.Series series) {
+        if (series.getType() != ResultType.HIGHER_BETTER
+                && series.getType() != ResultType.LOWER_BETTER) {
+            return false;
+        }
+        if (mFingerprintFilter != null && !series.getFingerprint().contains(mFingerprintFilter)) {
+            return false;
+        }
+        return mTestFilter == null || series.getTest().contains(mTestFilter);
+    }
+
+    private boolean isWorse(ResultType type, Regression regression) {
+        if (regression.getMeanBefore() == 0) {
+            return false;
+        }
+        double change = regression.getChangePercent();
+        if (type == ResultType.LOWER_BETTER) {
+            return change >= mMinChangePercent;
+        }
+        return -change >= mMinChangePercent;
+    }
+
+    /**
+     * Add the change points of values from start to end to changePoints, and their p-values to
+     * pValues.
+     * <p/>
+     * Exposed for unit testing.
+     */
+    void findChangePoints(double[] values, int start, int end, Random random,
+            List<Integer> changePoints, List<Double> pValues) {
+        int minSessions = Math.max(2, mMinSessions);
+        if (end - start < 2 * minSessions) {
+            return;
+        }
+        double[] segment = Arrays.copyOfRange(values, start, end);
+        int bestSplit = getBestSplit(segment, minSessions);
+        double observed = getMaxStatistic(segment, minSessions);
+        // the p-value of the maximum over all splits, so each split tried is accounted for
+        int exceeded = 0;
+        for (int i = 0; i < mPermutations; i++) {
+            shuffle(segment, random);
+            if (getMaxStatistic(segment, minSessions) >= observed) {
+                exceeded++;
+            }
+        }
+        double pValue = (exceeded + 1.0) / (mPermutations + 1.0);
+        if (pValue >= mAlpha) {
+            return;
+        }
+        changePoints.add(start + bestSplit);
+        pValues.add(pValue);
+        findChangePoints(values, start, start + bestSplit, random, changePoints, pValues);
+        findChangePoints(values, start + bestSplit, end, random, changePoints, pValues);
+    }
+
+    /**
+     * @return the split of values with the largest t statistic, with at least minSessions
+     *         values on each side
+     */
+    private static int getBestSplit(double[] values, int minSessions) {
+        double[] statistics = getStatistics(values, minSessions);
+        int bestSplit = minSessions;
+        for (int split = minSessions; split <= values.length - minSessions; split++) {
+            if (statistics[split] > statistics[bestSplit]) {
+                bestSplit = split;
+            }
+        }
+        return bestSplit;
+    }
+
+    private static double getMaxStatistic(double[] values, int minSessions) {
+        double max = 0;
+        for (double statistic : getStatistics(values, minSessions)) {
+            max = Math.max(max, statistic);
+        }
+        return max;
+    }
+
+    /**
+     * Compute the absolute two sample t statistic with pooled variance of the difference of the
+     * means of values[0, split) and values[split, length) for each split with at least
+     * minSessions values on each side.
+     * <p/>
+     * Exposed for unit testing.
+     *
+     * @return the statistics by split, 0 for the splits not computed
+     */
+    static double[] getStatistics(double[] values, int minSessions) {
+        int n = values.length;
+        double mean = mean(values, 0, n);
+        // prefix sums of the centered values, to compute each split in constant time
+        double[] sums = new double[n + 1];
+        double[] squareSums = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            double value = values[i] - mean;
+            sums[i + 1] = sums[i] + value;
+            squareSums[i + 1] = squareSums[i] + value * value;
+        }
+        double[] statistics = new double[n + 1];
+        for (int split = minSessions; split <= n - minSessions; split++) {
+            int n1 = split;
+            int n2 = n - split;
+            double mean1 = sums[split] / n1;
+            double mean2 = (sums[n] - sums[split]) / n2;
+            double squares = squareSums[n] - n1 * mean1 * mean1 - n2 * mean2 * mean2;
+            double pooledVariance = Math.max(0, squares) / (n - 2);
+            double difference = Math.abs(mean1 - mean2);
+            if (pooledVariance == 0) {
+                // the difference is certain, if any
+                statistics[split] = difference == 0 ? 0 : Double.POSITIVE_INFINITY;
+            } else {
+                statistics[split] = difference
+                        / Math.sqrt(pooledVariance * (1.0 / n1 + 1.0 / n2));
+            }
+        }
+        return statistics;
+    }
+
+    private static void shuffle(double[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    private static double mean(double[] values, int start, int end) {
+        double sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += values[i];
+        }
+        return sum / (end - start);
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import android.tests.getinfo.DeviceInfoConstants;
+
+import com.android.cts.util.MetricRecord;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+import com.android.ddmlib.testrunner.TestIdentifier;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local time series store of the performance results of the sessions in a
+ * {@link ITestResultRepo}.
+ * <p/>
+ * Each sample is a value of a metric reported by a test on a device build, keyed by build
+ * fingerprint, test and metric, in the session which reported it. A summary gives one sample,
+ * and each array of the details one sample with the average of its values. Metrics with a
+ * value which is not finite, like an undefined confidence interval, are not sampled, since a
+ * single one would make every statistic of their series undefined.
+ * <p/>
+ * The store is a tab separated text file which is only appended to as sessions are added, so
+ * that {@link #ingest(ITestResultRepo)} only parses the results of the new sessions, and of the
+ * sessions which changed since they were added, like continued sessions. The samples of
+ * sessions that were deleted from the repository are kept.
+ */
+public class PerfTrendStore {
+    /** name of the store file in the results directory */
+    public static final String FILE_NAME = "perf_trends.txt";
+    static final String SUMMARY = "summary";
+    static final String DETAILS = "details";
+
+    private static final String SESSION_RECORD = "S";
+    private static final String SAMPLE_RECORD = "M";
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * A value of a metric in a session.
+     */
+    public static class Sample {
+        final String mSession;
+        final String mFingerprint;
+        final String mTest;
+        /** {@link #SUMMARY} or {@link #DETAILS} */
+        final String mKind;
+        final String mMessage;
+        final ResultType mType;
+        final ResultUnit mUnit;
+        final double mValue;
+
+        public Sample(String session, String fingerprint, String test, String kind,
+                String message, ResultType type, ResultUnit unit, double value) {
+            mSession = session;
+            mFingerprint = fingerprint;
+            mTest = test;
+            mKind = kind;
+            mMessage = message;
+            mType = type;
+            mUnit = unit;
+            mValue = value;
+        }
+
+        String getSeriesKey() {
+            return mFingerprint + SEPARATOR + mTest + SEPARATOR + mKind + SEPARATOR + mMessage;
+        }
+    }
+
+    /**
+     * The values of a metric of a test on a device build, in session order.
+     */
+    public static class Series {
+        private final Sample mFirst;
+        private final List<String> mSessions = new ArrayList<String>();
+        private double[] mValues = new double[8];
+
+        Series(Sample first) {
+            mFirst = first;
+        }
+
+        void add(Sample sample) {
+            if (mSessions.size() == mValues.length) {
+                double[] values = new double[mValues.length * 2];
+                System.arraycopy(mValues, 0, values, 0, mValues.length);
+                mValues = values;
+            }
+            mValues[mSessions.size()] = sample.mValue;
+            mSessions.add(sample.mSession);
+        }
+
+        public String getFingerprint() {
+            return mFirst.mFingerprint;
+        }
+
+        /**
+         * @return the test, as class name#test name
+         */
+        public String getTest() {
+            return mFirst.mTest;
+        }
+
+        /**
+         * @return the message of the metric, followed by " (details)" for a details array
+         */
+        public String getMetric() {
+            return DETAILS.equals(mFirst.mKind) ? mFirst.mMessage + " (details)"
+                    : mFirst.mMessage;
+        }
+
+        public ResultType getType() {
+            return mFirst.mType;
+        }
+
+        public ResultUnit getUnit() {
+            return mFirst.mUnit;
+        }
+
+        /**
+         * @return the session of each value
+         */
+        public List<String> getSessions() {
+            return mSessions;
+        }
+
+        public double[] getValues() {
+            double[] values = new double[mSessions.size()];
+            System.arraycopy(mValues, 0, values, 0, values.length);
+            return values;
+        }
+    }
+
+    private final File mFile;
+    /** last modification time of the result of each session in the store */
+    private final Map<String, Long> mSessions = new HashMap<String, Long>();
+    private final List<Sample> mSamples = new ArrayList<Sample>();
+
+    /**
+     * Create a {@link PerfTrendStore}, and load the samples already in the file.
+     *
+     * @param file the store file, which is created when the first session is added
+     * @throws IOException if the file exists but cannot be read
+     */
+    public PerfTrendStore(File file) throws IOException {
+        mFile = file;
+        if (mFile.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * Add the sessions of the repository which are not in the store, or changed since they
+     * were added.
+     *
+     * @return the number of sessions added
+     * @throws IOException if the store file cannot be written
+     */
+    public int ingest(ITestResultRepo repo) throws IOException {
+        int added = 0;
+        for (int sessionId = 0; sessionId < repo.getSessionCount(); sessionId++) {
+            File reportDir = repo.getReportDir(sessionId);
+            String session = reportDir.getName();
+            long lastModified = new File(reportDir,
+                    CtsXmlResultReporter.TEST_RESULT_FILE_NAME).lastModified();
+            Long storedLastModified = mSessions.get(session);
+            if (storedLastModified != null && storedLastModified == lastModified) {
+                continue;
+            }
+            TestResults results = repo.getResult(sessionId);
+            if (results == null) {
+                // already logged, try again next time
+                continue;
+            }
+            addSession(session, lastModified, getSamples(session, results));
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Return the performance samples of a session result.
+     * <p/>
+     * Exposed for unit testing.
+     *
+     * @return the samples, empty if the result has no single build fingerprint
+     */
+    static List<Sample> getSamples(String session, TestResults results) {
+        List<Sample> samples = new ArrayList<Sample>();
+        String fingerprint = results.getDeviceInfoMetrics().get(
+                DeviceInfoConstants.BUILD_FINGERPRINT);
+        if (fingerprint == null || fingerprint.isEmpty() || fingerprint.startsWith("ERROR")) {
+            CLog.w("Skipping performance results of session %s, build fingerprint is '%s'",
+                    session, fingerprint);
+            return samples;
+        }
+        for (TestPackageResult pkg : results.getPackages()) {
+            for (Map.Entry<TestIdentifier, Test> entry :
+                    pkg.getPerformanceResults().entrySet()) {
+                String test = entry.getKey().toString();
+                MetricRecord summary = entry.getValue().getSummary();
+                if (isFinite(summary.getValue())) {
+                    samples.add(new Sample(session, fingerprint, test, SUMMARY,
+                            summary.getMessage(), summary.getType(), summary.getUnit(),
+                            summary.getValue()));
+                }
+                List<MetricRecord> details = entry.getValue().getDetails();
+                if (details == null) {
+                    continue;
+                }
+                for (MetricRecord detail : details) {
+                    double[] values = detail.getValues();
+                    if (values.length == 0) {
+                        continue;
+                    }
+                    double sum = 0;
+                    for (double value : values) {
+                        sum += value;
+                    }
+                    if (!isFinite(sum)) {
+                        // a value is not finite, or the sum overflowed
+                        continue;
+                    }
+                    samples.add(new Sample(session, fingerprint, test, DETAILS,
+                            detail.getMessage(), detail.getType(), detail.getUnit(),
+                            sum / values.length));
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    /**
+     * Add the samples of a session, replacing the samples stored for it if any.
+     * <p/>
+     * Exposed for unit testing.
+     *
+     * @param lastModified last modification time of the session result
+     * @throws IOException if the store file cannot be written
+     */
+    void addSession(String session, long lastModified, Collection<Sample> samples)
+            throws IOException {
+        boolean replace = mSessions.containsKey(session);
+        mSessions.put(session, lastModified);
+        if (replace) {
+            List<Sample> kept = new ArrayList<Sample>(mSamples.size());
+            for (Sample sample : mSamples) {
+                if (!sample.mSession.equals(session)) {
+                    kept.add(sample);
+                }
+            }
+            mSamples.clear();
+            mSamples.addAll(kept);
+        }
+        mSamples.addAll(samples);
+        if (replace) {
+            rewrite();
+        } else {
+            Writer writer = new BufferedWriter(new FileWriter(mFile, true));
+            try {
+                writeSession(writer, session, lastModified, samples);
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * @return whether the session is in the store
+     */
+    public boolean hasSession(String session) {
+        return mSessions.containsKey(session);
+    }
+
+    /**
+     * @return the number of samples in the store
+     */
+    public int getSampleCount() {
+        return mSamples.size();
+    }
+
+    /**
+     * @return all series, each ordered by session name, which is the session start time
+     */
+    public Collection<Series> getSeries() {
+        List<Sample> samples = new ArrayList<Sample>(mSamples);
+        // stable, so samples of the same session keep their order
+        Collections.sort(samples, new Comparator<Sample>() {
+            @Override
+            public int compare(Sample sample0, Sample sample1) {
+                return sample0.mSession.compareTo(sample1.mSession);
+            }
+        });
+        Map<String, Series> seriesMap = new LinkedHashMap<String, Series>();
+        for (Sample sample : samples) {
+            String key = sample.getSeriesKey();
+            Series series = seriesMap.get(key);
+            if (series == null) {
+                series = new Series(sample);
+                seriesMap.put(key, series);
+            }
+            series.add(sample);
+        }
+        return seriesMap.values();
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(mFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                try {
+                    if (fields[0].equals(SESSION_RECORD) && fields.length == 3) {
+                        mSessions.put(fields[1], Long.parseLong(fields[2]));
+                    } else if (fields[0].equals(SAMPLE_RECORD) && fields.length == 9
+                            && mSessions.containsKey(fields[1])) {
+                        // the session record is written before its samples
+                        double value = Double.parseDouble(fields[8]);
+                        if (isFinite(value)) {
+                            mSamples.add(new Sample(fields[1], fields[2], fields[3], fields[4],
+                                    fields[5], ResultType.valueOf(fields[6]),
+                                    ResultUnit.valueOf(fields[7]), value));
+                        } else {
+                            // written before non-finite values were skipped
+                            CLog.w("Ignoring sample which is not finite in %s: %s", mFile,
+                                    line);
+                        }
+                    } else {
+                        CLog.w("Ignoring malformed line in %s: %s", mFile, line);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // includes NumberFormatException
+                    CLog.w("Ignoring malformed line in %s: %s", mFile, line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Write the whole store to a new file, and replace the store file with it.
+     */
+    private void rewrite() throws IOException {
+        File newFile = new File(mFile.getPath() + ".tmp");
+        Map<String, List<Sample>> sessionSamples = new LinkedHashMap<String, List<Sample>>();
+        for (String session : mSessions.keySet()) {
+            sessionSamples.put(session, new ArrayList<Sample>());
+        }
+        for (Sample sample : mSamples) {
+            sessionSamples.get(sample.mSession).add(sample);
+        }
+        Writer writer = new BufferedWriter(new FileWriter(newFile));
+        try {
+            for (Map.Entry<String, List<Sample>> entry : sessionSamples.entrySet()) {
+                writeSession(writer, entry.getKey(), mSessions.get(entry.getKey()),
+                        entry.getValue());
+            }
+        } finally {
+            writer.close();
+        }
+        if (!newFile.renameTo(mFile)) {
+            // renameTo does not replace an existing file on all platforms
+            mFile.delete();
+            if (!newFile.renameTo(mFile)) {
+                throw new IOException(String.format("Could not replace %s", mFile));
+            }
+        }
+    }
+
+    private static void writeSession(Writer writer, String session, long lastModified,
+            Collection<Sample> samples) throws IOException {
+        writer.write(SESSION_RECORD + SEPARATOR + session + SEPARATOR + lastModified + "\n");
+        for (Sample sample : samples) {
+            writer.write(SAMPLE_RECORD + SEPARATOR + sample.mSession + SEPARATOR
+                    + clean(sample.mFingerprint) + SEPARATOR + clean(sample.mTest) + SEPARATOR
+                    + sample.mKind + SEPARATOR + clean(sample.mMessage) + SEPARATOR
+                    + sample.mType.name() + SEPARATOR + sample.mUnit.name() + SEPARATOR
+                    + sample.mValue + "\n");
+        }
+    }
+
+    /**
+     * @return the string with the separators and line breaks replaced by spaces
+     */
+    private static String clean(String field) {
+        return field == null ? "" : field.replaceAll("[\\t\\r\\n]", " ");
+    }
+}
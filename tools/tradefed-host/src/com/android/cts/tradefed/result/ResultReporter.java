@@ -17,41 +17,39 @@
 package com.android.cts.tradefed.result;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * Class that sends a HTTP POST multipart/form-data request containing
  * the test result XML.
+ * <p/>
+ * The upload is queued on the {@link ResultUploader} of the spool directory and the result
+ * is gzipped while it is sent, so reporting returns at once whatever the size of the result.
  */
 class ResultReporter {
 
-    private static final int RESULT_XML_BYTES = 500 * 1024;
-
     private final String mServerUrl;
     private final String mSuiteName;
-
-    ResultReporter(String serverUrl, String suiteName) {
+    private final long mMaxBytesPerSecond;
+    private final ResultUploader mUploader;
+
+    /**
+     * @param spoolDir directory to keep pending uploads in
+     * @param maxBytesPerSecond upload rate limit, or 0 for no limit
+     */
+    ResultReporter(String serverUrl, String suiteName, File spoolDir, long maxBytesPerSecond) {
         mServerUrl = serverUrl;
         mSuiteName = suiteName;
+        mMaxBytesPerSecond = maxBytesPerSecond;
+        // start uploading what previous sessions left over
+        mUploader = isEmpty(serverUrl) ? null : ResultUploader.getUploader(spoolDir);
     }
 
     public void reportResult(File reportFile) throws IOException {
-        if (isEmpty(mServerUrl)) {
+        if (mUploader == null) {
             return;
         }
-
-        InputStream input = new FileInputStream(reportFile);
-        try {
-            byte[] data = IssueReporter.getBytes(input, RESULT_XML_BYTES);
-            new MultipartForm(mServerUrl)
-                    .addFormValue("suite", mSuiteName)
-                    .addFormFile("resultXml", "testResult.xml.gz", data)
-                    .submit();
-        } finally {
-            input.close();
-        }
+        mUploader.enqueue(mServerUrl, mSuiteName, reportFile, mMaxBytesPerSecond);
     }
 
     private boolean isEmpty(String value) {
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Uploads test results to a result server from a background thread, so an invocation never
+ * waits for the network.
+ * <p/>
+ * Every upload is first stored as a job file in a spool directory. Failed uploads are retried
+ * with exponential backoff, and uploads which were still pending when CTS exited are picked up
+ * again by the next uploader started on the same directory.
+ */
+class ResultUploader {
+
+    /** name of the spool directory in the results directory */
+    static final String SPOOL_DIR_NAME = ".uploads";
+    static final String JOB_SUFFIX = ".upload";
+
+    static final int MAX_ATTEMPTS = 8;
+    static final long INITIAL_BACKOFF_MS = 30 * 1000;
+    static final long MAX_BACKOFF_MS = 60 * 60 * 1000;
+
+    private static final String SERVER_URL_KEY = "serverUrl";
+    private static final String SUITE_NAME_KEY = "suiteName";
+    private static final String REPORT_FILE_KEY = "reportFile";
+    private static final String MAX_RATE_KEY = "maxBytesPerSecond";
+    private static final String ATTEMPTS_KEY = "attempts";
+    private static final String NEXT_ATTEMPT_KEY = "nextAttemptTime";
+
+    // uploaders of the spool directories in use, they run for the lifetime of the process
+    private static final Map<File, ResultUploader> sUploaders = new HashMap<File, ResultUploader>();
+
+    private final File mSpoolDir;
+    private final long mInitialBackoffMs;
+    private final long mMaxBackoffMs;
+    private final int mMaxAttempts;
+    private final Object mLock = new Object();
+    /** job files this uploader could not read or update, left for the next uploader */
+    private final Set<File> mSkippedFiles = new HashSet<File>();
+    private Thread mThread;
+    private boolean mStopped = false;
+
+    /**
+     * Returns the started uploader of the given spool directory.
+     */
+    static ResultUploader getUploader(File spoolDir) {
+        File key = spoolDir.getAbsoluteFile();
+        synchronized (sUploaders) {
+            ResultUploader uploader = sUploaders.get(key);
+            if (uploader == null) {
+                uploader = new ResultUploader(key, INITIAL_BACKOFF_MS, MAX_BACKOFF_MS,
+                        MAX_ATTEMPTS);
+                uploader.start();
+                sUploaders.put(key, uploader);
+            }
+            return uploader;
+        }
+    }
+
+    /**
+     * Exposed for unit testing.
+     *
+     * @param spoolDir directory to store the pending uploads in
+     * @param initialBackoffMs delay before the first retry, doubled for each further retry
+     * @param maxBackoffMs maximum delay between retries
+     * @param maxAttempts number of attempts after which an upload is dropped
+     */
+    ResultUploader(File spoolDir, long initialBackoffMs, long maxBackoffMs, int maxAttempts) {
+        mSpoolDir = spoolDir;
+        mInitialBackoffMs = initialBackoffMs;
+        mMaxBackoffMs = maxBackoffMs;
+        mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * Start the thread which uploads the pending jobs.
+     */
+    void start() {
+        synchronized (mLock) {
+            if (mThread != null) {
+                return;
+            }
+            mThread = new Thread("ResultUploader") {
+                @Override
+                public void run() {
+                    runJobs();
+                }
+            };
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stop the upload thread. Pending jobs stay in the spool directory.
+     */
+    void shutdown() throws InterruptedException {
+        Thread thread;
+        synchronized (mLock) {
+            mStopped = true;
+            mLock.notifyAll();
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Queue an upload of the result XML. The file is read when it is uploaded.
+     *
+     * @param maxBytesPerSecond upload rate limit, or 0 for no limit
+     * @throws IOException if the job could not be stored
+     */
+    void enqueue(String serverUrl, String suiteName, File reportFile, long maxBytesPerSecond)
+            throws IOException {
+        if (!mSpoolDir.isDirectory() && !mSpoolDir.mkdirs()) {
+            throw new IOException("Could not create " + mSpoolDir);
+        }
+        Job job = new Job(new File(mSpoolDir, "result-" + UUID.randomUUID() + JOB_SUFFIX));
+        job.mServerUrl = serverUrl;
+        job.mSuiteName = suiteName;
+        job.mReportFile = reportFile.getAbsoluteFile();
+        job.mMaxBytesPerSecond = maxBytesPerSecond;
+        job.mNextAttemptTime = System.currentTimeMillis();
+        try {
+            job.save();
+        } catch (IOException e) {
+            job.delete();
+            throw e;
+        }
+        synchronized (mLock) {
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of uploads which have not succeeded or been dropped yet.
+     */
+    int getPendingCount() {
+        File[] files = listJobFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    private File[] listJobFiles() {
+        return mSpoolDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(JOB_SUFFIX);
+            }
+        });
+    }
+
+    private void runJobs() {
+        try {
+            while (true) {
+                Job job;
+                synchronized (mLock) {
+                    if (mStopped) {
+                        return;
+                    }
+                    job = getNextJob();
+                    long now = System.currentTimeMillis();
+                    if (job == null || job.mNextAttemptTime > now) {
+                        // a wait of 0 lasts until the next enqueue
+                        mLock.wait(job == null ? 0 : job.mNextAttemptTime - now);
+                        continue;
+                    }
+                }
+                upload(job);
+            }
+        } catch (InterruptedException e) {
+            CLog.w("Result upload interrupted");
+        }
+    }
+
+    /**
+     * Returns the job which is due first, or null if there is none.
+     */
+    private Job getNextJob() {
+        File[] files = listJobFiles();
+        if (files == null) {
+            return null;
+        }
+        Job next = null;
+        for (File file : files) {
+            if (mSkippedFiles.contains(file)) {
+                continue;
+            }
+            Job job;
+            try {
+                job = Job.load(file);
+            } catch (IOException e) {
+                CLog.w("Skipping upload job %s: %s", file, e);
+                mSkippedFiles.add(file);
+                continue;
+            }
+            if (job == null) {
+                // an incomplete or corrupt job, which can never succeed
+                file.delete();
+            } else if (next == null || job.mNextAttemptTime < next.mNextAttemptTime) {
+                next = job;
+            }
+        }
+        return next;
+    }
+
+    private void upload(Job job) {
+        if (!job.mReportFile.isFile()) {
+            CLog.w("Dropping upload of missing result %s", job.mReportFile);
+            job.delete();
+            return;
+        }
+        try {
+            new MultipartForm(job.mServerUrl)
+                    .addFormValue("suite", job.mSuiteName)
+                    .addFormFile("resultXml", "testResult.xml.gz", job.mReportFile)
+                    .setMaxBytesPerSecond(job.mMaxBytesPerSecond)
+                    .submit();
+            CLog.i("Uploaded %s to %s", job.mReportFile, job.mServerUrl);
+            job.delete();
+        } catch (IOException e) {
+            retry(job, e);
+        } catch (RuntimeException e) {
+            // like a bad server URL, which must not stop the uploads of other jobs
+            retry(job, e);
+        }
+    }
+
+    /**
+     * Schedule the next attempt of a failed upload, or drop it after the maximum number of
+     * attempts.
+     */
+    private void retry(Job job, Exception e) {
+        job.mAttempts++;
+        if (job.mAttempts >= mMaxAttempts) {
+            CLog.e("Giving up uploading %s after %d attempts: %s", job.mReportFile,
+                    job.mAttempts, e);
+            job.delete();
+            return;
+        }
+        long backoff = getBackoff(job.mAttempts);
+        CLog.w("Failed to upload %s, retrying in %d s: %s", job.mReportFile,
+                backoff / 1000, e);
+        job.mNextAttemptTime = System.currentTimeMillis() + backoff;
+        try {
+            job.save();
+        } catch (IOException saveError) {
+            // without the new attempt time it would be retried right away, forever
+            CLog.e("Skipping upload of %s: %s", job.mReportFile, saveError);
+            mSkippedFiles.add(job.mFile);
+        }
+    }
+
+    /**
+     * Returns the delay before the next attempt after the given number of failed attempts.
+     */
+    long getBackoff(int attempts) {
+        long backoff = mInitialBackoffMs;
+        for (int i = 1; i < attempts && backoff < mMaxBackoffMs; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, mMaxBackoffMs);
+    }
+
+    /**
+     * A pending upload, stored as a properties file.
+     */
+    private static class Job {
+        private final File mFile;
+        String mServerUrl;
+        String mSuiteName;
+        File mReportFile;
+        long mMaxBytesPerSecond = 0;
+        int mAttempts = 0;
+        long mNextAttemptTime = 0;
+
+        Job(File file) {
+            mFile = file;
+        }
+
+        /**
+         * Returns the job stored in the given file, or null if its content is not a valid job.
+         *
+         * @throws IOException if the file could not be read
+         */
+        static Job load(File file) throws IOException {
+            Properties props = new Properties();
+            InputStream input = new FileInputStream(file);
+            try {
+                props.load(input);
+            } finally {
+                input.close();
+            }
+            String serverUrl = props.getProperty(SERVER_URL_KEY);
+            String reportFile = props.getProperty(REPORT_FILE_KEY);
+            if (serverUrl == null || reportFile == null) {
+                return null;
+            }
+            Job job = new Job(file);
+            job.mServerUrl = serverUrl;
+            job.mSuiteName = props.getProperty(SUITE_NAME_KEY, "");
+            job.mReportFile = new File(reportFile);
+            try {
+                job.mMaxBytesPerSecond = Long.parseLong(props.getProperty(MAX_RATE_KEY, "0"));
+                job.mAttempts = Integer.parseInt(props.getProperty(ATTEMPTS_KEY, "0"));
+                job.mNextAttemptTime = Long.parseLong(props.getProperty(NEXT_ATTEMPT_KEY, "0"));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return job;
+        }
+
+        /**
+         * Store the job. The file is replaced at once, so it is never seen half written.
+         */
+        void save() throws IOException {
+            Properties props = new Properties();
+            props.setProperty(SERVER_URL_KEY, mServerUrl);
+            props.setProperty(SUITE_NAME_KEY, mSuiteName == null ? "" : mSuiteName);
+            props.setProperty(REPORT_FILE_KEY, mReportFile.getPath());
+            props.setProperty(MAX_RATE_KEY, Long.toString(mMaxBytesPerSecond));
+            props.setProperty(ATTEMPTS_KEY, Integer.toString(mAttempts));
+            props.setProperty(NEXT_ATTEMPT_KEY, Long.toString(mNextAttemptTime));
+
+            // not named *.upload, so the upload thread ignores it until it is renamed
+            File tmpFile = new File(mFile.getParentFile(), mFile.getName() + ".tmp");
+            OutputStream output = new FileOutputStream(tmpFile);
+            try {
+                props.store(output, null);
+            } finally {
+                output.close();
+            }
+            if (!tmpFile.renameTo(mFile)) {
+                tmpFile.delete();
+                throw new IOException("Could not rename " + tmpFile + " to " + mFile);
+            }
+        }
+
+        void delete() {
+            mFile.delete();
+        }
+    }
+}
@@ -15,7 +15,10 @@
  */
 package com.android.cts.tradefed.result;
 
-import com.android.ddmlib.Log;
+import com.android.cts.util.MetricRecord;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+import com.android.tradefed.log.LogUtil.CLog;
 import com.android.tradefed.result.TestResult;
 
 import org.kxml2.io.KXmlSerializer;
@@ -23,6 +26,9 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Data structure that represents a "Test" result XML element.
@@ -44,9 +50,6 @@ class Test extends AbstractXmlPullParser {
     private static final String SCORETYPE_ATTR = "scoreType";
     private static final String UNIT_ATTR = "unit";
     private static final String SOURCE_ATTR = "source";
-    // separators for the message
-    private static final String LOG_SEPARATOR = "\\+\\+\\+";
-    private static final String LOG_ELEM_SEPARATOR = "\\|";
 
     private String mName;
     private CtsTestStatus mResult;
@@ -55,8 +58,8 @@ class Test extends AbstractXmlPullParser {
     private String mMessage;
     private String mStackTrace;
     // summary and details passed from cts
-    private String mSummary;
-    private String mDetails;
+    private MetricRecord mSummary;
+    private List<MetricRecord> mDetails;
 
     /**
      * Create an empty {@link Test}
@@ -120,19 +123,19 @@ class Test extends AbstractXmlPullParser {
         mMessage = getFailureMessageFromStackTrace(mStackTrace);
     }
 
-    public String getSummary() {
+    public MetricRecord getSummary() {
         return mSummary;
     }
 
-    public void setSummary(String summary) {
+    public void setSummary(MetricRecord summary) {
         mSummary = summary;
     }
 
-    public String getDetails() {
+    public List<MetricRecord> getDetails() {
         return mDetails;
     }
 
-    public void setDetails(String details) {
+    public void setDetails(List<MetricRecord> details) {
         mDetails = details;
     }
 
@@ -171,109 +174,51 @@ class Test extends AbstractXmlPullParser {
         if (mSummary != null) {
             // <Summary message = "screen copies per sec" scoretype="higherBetter" unit="fps">
             // 23938.82978723404</Summary>
-            PerfResultSummary summary = parseSummary(mSummary);
-            if (summary != null) {
-                serializer.startTag(CtsXmlResultReporter.ns, SUMMARY_TAG);
-                serializer.attribute(CtsXmlResultReporter.ns, MESSAGE_ATTR, summary.mMessage);
-                if (summary.mTarget.length() != 0 && !summary.mTarget.equals(" ")) {
-                    serializer.attribute(CtsXmlResultReporter.ns, TARGET_ATTR, summary.mTarget);
-                }
-                serializer.attribute(CtsXmlResultReporter.ns, SCORETYPE_ATTR, summary.mType);
-                serializer.attribute(CtsXmlResultReporter.ns, UNIT_ATTR, summary.mUnit);
-                serializer.text(summary.mValue);
-                serializer.endTag(CtsXmlResultReporter.ns, SUMMARY_TAG);
-                // add details only if summary is present
-                // <Details>
-                //   <ValueArray source=”com.android.cts.dram.BandwidthTest#doRunMemcpy:98”
-                //                    message=”measure1” unit="ms" scoretype="higherBetter">
-                //     <Value>0.0</Value>
-                //     <Value>0.1</Value>
-                //   </ValueArray>
-                // </Details>
-                if (mDetails != null) {
-                    PerfResultDetail[] ds = parseDetails(mDetails);
-                    serializer.startTag(CtsXmlResultReporter.ns, DETAILS_TAG);
-                        for (PerfResultDetail d : ds) {
-                            if (d == null) {
-                                continue;
-                            }
-                            serializer.startTag(CtsXmlResultReporter.ns, VALUEARRAY_TAG);
-                            serializer.attribute(CtsXmlResultReporter.ns, SOURCE_ATTR, d.mSource);
-                            serializer.attribute(CtsXmlResultReporter.ns, MESSAGE_ATTR,
-                                    d.mMessage);
-                            serializer.attribute(CtsXmlResultReporter.ns, SCORETYPE_ATTR, d.mType);
-                            serializer.attribute(CtsXmlResultReporter.ns, UNIT_ATTR, d.mUnit);
-                            for (String v : d.mValues) {
-                                if (v == null) {
-                                    continue;
-                                }
-                                serializer.startTag(CtsXmlResultReporter.ns, VALUE_TAG);
-                                serializer.text(v);
-                                serializer.endTag(CtsXmlResultReporter.ns, VALUE_TAG);
-                            }
-                            serializer.endTag(CtsXmlResultReporter.ns, VALUEARRAY_TAG);
-                        }
-                    serializer.endTag(CtsXmlResultReporter.ns, DETAILS_TAG);
+            serializer.startTag(CtsXmlResultReporter.ns, SUMMARY_TAG);
+            serializer.attribute(CtsXmlResultReporter.ns, MESSAGE_ATTR, mSummary.getMessage());
+            if (mSummary.hasTarget()) {
+                serializer.attribute(CtsXmlResultReporter.ns, TARGET_ATTR,
+                        Double.toString(mSummary.getTarget()));
+            }
+            serializer.attribute(CtsXmlResultReporter.ns, SCORETYPE_ATTR,
+                    mSummary.getType().getXmlString());
+            serializer.attribute(CtsXmlResultReporter.ns, UNIT_ATTR,
+                    mSummary.getUnit().getXmlString());
+            serializer.text(Double.toString(mSummary.getValue()));
+            serializer.endTag(CtsXmlResultReporter.ns, SUMMARY_TAG);
+            // add details only if summary is present
+            // <Details>
+            //   <ValueArray source=”com.android.cts.dram.BandwidthTest#doRunMemcpy:98”
+            //                    message=”measure1” unit="ms" scoretype="higherBetter">
+            //     <Value>0.0</Value>
+            //     <Value>0.1</Value>
+            //   </ValueArray>
+            // </Details>
+            if (mDetails != null) {
+                serializer.startTag(CtsXmlResultReporter.ns, DETAILS_TAG);
+                for (MetricRecord d : mDetails) {
+                    serializer.startTag(CtsXmlResultReporter.ns, VALUEARRAY_TAG);
+                    serializer.attribute(CtsXmlResultReporter.ns, SOURCE_ATTR, d.getSource());
+                    serializer.attribute(CtsXmlResultReporter.ns, MESSAGE_ATTR, d.getMessage());
+                    serializer.attribute(CtsXmlResultReporter.ns, SCORETYPE_ATTR,
+                            d.getType().getXmlString());
+                    serializer.attribute(CtsXmlResultReporter.ns, UNIT_ATTR,
+                            d.getUnit().getXmlString());
+                    // every value is kept, as the result is parsed again to continue a
+                    // session and to collect performance trends
+                    for (double v : d.getValues()) {
+                        serializer.startTag(CtsXmlResultReporter.ns, VALUE_TAG);
+                        serializer.text(Double.toString(v));
+                        serializer.endTag(CtsXmlResultReporter.ns, VALUE_TAG);
+                    }
+                    serializer.endTag(CtsXmlResultReporter.ns, VALUEARRAY_TAG);
                 }
+                serializer.endTag(CtsXmlResultReporter.ns, DETAILS_TAG);
             }
         }
         serializer.endTag(CtsXmlResultReporter.ns, TAG);
     }
 
-    /**
-     *  class containing performance result.
-     */
-    public static class PerfResultCommon {
-        public String mMessage;
-        public String mType;
-        public String mUnit;
-    }
-
-    private class PerfResultSummary extends PerfResultCommon {
-        public String mTarget;
-        public String mValue;
-    }
-
-    private class PerfResultDetail extends PerfResultCommon {
-        public String mSource;
-        public String[] mValues;
-    }
-
-    private PerfResultSummary parseSummary(String summary) {
-        String[] elems = summary.split(LOG_ELEM_SEPARATOR);
-        PerfResultSummary r = new PerfResultSummary();
-        if (elems.length < 5) {
-            Log.w(TAG, "wrong message " + summary);
-            return null;
-        }
-        r.mMessage = elems[0];
-        r.mTarget = elems[1];
-        r.mType = elems[2];
-        r.mUnit = elems[3];
-        r.mValue = elems[4];
-        return r;
-    }
-
-    private PerfResultDetail[] parseDetails(String details) {
-        String[] arrays = details.split(LOG_SEPARATOR);
-        PerfResultDetail[] rs = new PerfResultDetail[arrays.length];
-        for (int i = 0; i < arrays.length; i++) {
-            String[] elems = arrays[i].split(LOG_ELEM_SEPARATOR);
-            if (elems.length < 5) {
-                Log.w(TAG, "wrong message " + arrays[i]);
-                continue;
-            }
-            PerfResultDetail r = new PerfResultDetail();
-            r.mSource = elems[0];
-            r.mMessage = elems[1];
-            r.mType = elems[2];
-            r.mUnit = elems[3];
-            r.mValues = elems[4].split(" ");
-            rs[i] = r;
-        }
-        return rs;
-    }
-
     /**
      * Strip out any invalid XML characters that might cause the report to be unviewable.
      * http://www.w3.org/TR/REC-xml/#dt-character
@@ -329,10 +274,125 @@ class Test extends AbstractXmlPullParser {
                 mMessage = getAttribute(parser, MESSAGE_ATTR);
             } else if (eventType == XmlPullParser.START_TAG && parser.getName().equals(STACK_TAG)) {
                 mStackTrace = parser.nextText();
+            } else if (eventType == XmlPullParser.START_TAG &&
+                    parser.getName().equals(SUMMARY_TAG)) {
+                MetricRecord summary = parseSummary(parser);
+                if (summary != null) {
+                    mSummary = summary;
+                }
+            } else if (eventType == XmlPullParser.START_TAG &&
+                    parser.getName().equals(VALUEARRAY_TAG)) {
+                MetricRecord details = parseValueArray(parser);
+                if (details != null) {
+                    if (mDetails == null) {
+                        mDetails = new ArrayList<MetricRecord>();
+                    }
+                    mDetails.add(details);
+                }
             } else if (eventType == XmlPullParser.END_TAG && parser.getName().equals(TAG)) {
                 return;
             }
             eventType = parser.next();
         }
     }
+
+    /**
+     * @return the summary, or <code>null</code> if it is invalid. An invalid metric is only
+     *         logged, so that the rest of the result stays usable.
+     */
+    private MetricRecord parseSummary(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        String message = getAttribute(parser, MESSAGE_ATTR);
+        String target = getAttribute(parser, TARGET_ATTR);
+        String type = getAttribute(parser, SCORETYPE_ATTR);
+        String unit = getAttribute(parser, UNIT_ATTR);
+        String value = parser.nextText();
+        ResultType resultType = parseType(type);
+        ResultUnit resultUnit = parseUnit(unit);
+        Double summaryValue = parseValue(value);
+        Double targetValue = target == null ? Double.valueOf(Double.NaN) : parseValue(target);
+        if (resultType == null || resultUnit == null || summaryValue == null
+                || targetValue == null) {
+            CLog.w("Ignoring invalid summary '%s' of %s: %s=%s %s=%s %s=%s value %s", message,
+                    getName(), SCORETYPE_ATTR, type, UNIT_ATTR, unit, TARGET_ATTR, target, value);
+            return null;
+        }
+        return new MetricRecord(null, message, resultType, resultUnit, targetValue,
+                new double[] { summaryValue });
+    }
+
+    /**
+     * @return the details, or <code>null</code> if they are invalid
+     */
+    private MetricRecord parseValueArray(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        String source = getAttribute(parser, SOURCE_ATTR);
+        String message = getAttribute(parser, MESSAGE_ATTR);
+        String type = getAttribute(parser, SCORETYPE_ATTR);
+        String unit = getAttribute(parser, UNIT_ATTR);
+        List<Double> values = new ArrayList<Double>();
+        String invalidValue = null;
+        int eventType = parser.next();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG && parser.getName().equals(VALUE_TAG)) {
+                String text = parser.nextText();
+                Double value = parseValue(text);
+                if (value == null) {
+                    invalidValue = text;
+                } else {
+                    values.add(value);
+                }
+            } else if (eventType == XmlPullParser.END_TAG &&
+                    parser.getName().equals(VALUEARRAY_TAG)) {
+                break;
+            }
+            eventType = parser.next();
+        }
+        ResultType resultType = parseType(type);
+        ResultUnit resultUnit = parseUnit(unit);
+        if (resultType == null || resultUnit == null || invalidValue != null) {
+            CLog.w("Ignoring invalid details '%s' of %s: %s=%s %s=%s value %s", message,
+                    getName(), SCORETYPE_ATTR, type, UNIT_ATTR, unit, invalidValue);
+            return null;
+        }
+        double[] valueArray = new double[values.size()];
+        for (int i = 0; i < valueArray.length; i++) {
+            valueArray[i] = values.get(i);
+        }
+        return new MetricRecord(source, message, resultType, resultUnit, Double.NaN,
+                valueArray);
+    }
+
+    /**
+     * @return the type, or <code>null</code> if it is unknown
+     */
+    private static ResultType parseType(String type) {
+        try {
+            return ResultType.valueOf(String.valueOf(type).toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the unit, or <code>null</code> if it is unknown
+     */
+    private static ResultUnit parseUnit(String unit) {
+        try {
+            return ResultUnit.valueOf(String.valueOf(unit).toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number, or <code>null</code> if it is not one
+     */
+    private static Double parseValue(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 }
@@ -146,6 +146,29 @@ class TestCase extends AbstractXmlPullParser {
         }
     }
 
+    /**
+     * Adds tests contained in this result that reported a performance summary.
+     *
+     * @param results the {@link Map} of {@link TestIdentifier}s to their {@link Test} to add to
+     * @param parentSuiteNames a {@link Deque} of parent suite names. Used to
+     *            construct the full class name of the test
+     */
+    void addPerformanceResults(Map<TestIdentifier, Test> results,
+            Deque<String> parentSuiteNames) {
+        if (getName() != null) {
+            parentSuiteNames.addLast(getName());
+        }
+        String fullClassName = ArrayUtil.join(".", parentSuiteNames);
+        for (Test test : mChildTestMap.values()) {
+            if (test.getSummary() != null) {
+                results.put(new TestIdentifier(fullClassName, test.getName()), test);
+            }
+        }
+        if (getName() != null) {
+            parentSuiteNames.removeLast();
+        }
+    }
+
     /**
      * Count the number of tests in this {@link TestCase} with given status.
      *
@@ -19,6 +19,7 @@ import android.tests.getinfo.DeviceInfoConstants;
 
 import com.android.cts.tradefed.device.DeviceInfoCollector;
 import com.android.cts.tradefed.testtype.CtsTest;
+import com.android.cts.util.MetricRecord;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.log.LogUtil.CLog;
 
@@ -32,6 +33,7 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -198,6 +200,18 @@ class TestPackageResult  extends AbstractXmlPullParser {
         return tests;
     }
 
+    /**
+     * Return the tests contained in this result that reported a performance summary
+     *
+     * @return a map of {@link TestIdentifer}s to their {@link Test} results, in result order
+     */
+    Map<TestIdentifier, Test> getPerformanceResults() {
+        Map<TestIdentifier, Test> results = new LinkedHashMap<TestIdentifier, Test>();
+        Deque<String> suiteNames = new LinkedList<String>();
+        mSuiteRoot.addPerformanceResults(results, suiteNames);
+        return results;
+    }
+
     /**
      * Populate values in this package result from run metrics
      * @param runResult
@@ -278,9 +292,11 @@ class TestPackageResult  extends AbstractXmlPullParser {
      * report performance result
      * @param test
      * @param status
-     * @param perf
+     * @param summary summary of the performance result, can be null
+     * @param details detailed value arrays
      */
-    public void reportPerformanceResult(TestIdentifier test, CtsTestStatus status, String summary, String details) {
+    public void reportPerformanceResult(TestIdentifier test, CtsTestStatus status,
+            MetricRecord summary, List<MetricRecord> details) {
         Test result = findTest(test);
         result.setResultStatus(status);
         result.setSummary(summary);
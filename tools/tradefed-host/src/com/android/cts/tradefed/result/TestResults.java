@@ -199,6 +199,13 @@ class TestResults extends AbstractXmlPullParser {
         return pkgResult;
     }
 
+    /**
+     * @return the collected device info metrics, like the build fingerprint
+     */
+    public Map<String, String> getDeviceInfoMetrics() {
+        return Collections.unmodifiableMap(mDeviceInfo.getMetrics());
+    }
+
     /**
      * Populate the results with collected device info metrics.
      * @param runMetrics
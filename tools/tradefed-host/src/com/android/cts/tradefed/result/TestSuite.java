@@ -222,6 +222,29 @@ class TestSuite extends AbstractXmlPullParser {
         }
     }
 
+    /**
+     * Adds tests contained in this result that reported a performance summary.
+     *
+     * @param results the {@link Map} of {@link TestIdentifier}s to their {@link Test} to add to
+     * @param parentSuiteNames a {@link Deque} of parent suite names. Used to construct the full
+     * class name of the test
+     */
+    void addPerformanceResults(Map<TestIdentifier, Test> results,
+            Deque<String> parentSuiteNames) {
+        if (getName() != null) {
+            parentSuiteNames.addLast(getName());
+        }
+        for (TestSuite suite : mChildSuiteMap.values()) {
+            suite.addPerformanceResults(results, parentSuiteNames);
+        }
+        for (TestCase testCase : mChildTestCaseMap.values()) {
+            testCase.addPerformanceResults(results, parentSuiteNames);
+        }
+        if (getName() != null) {
+            parentSuiteNames.removeLast();
+        }
+    }
+
     /**
      * Count the number of tests in this {@link TestSuite} with given status.
      *
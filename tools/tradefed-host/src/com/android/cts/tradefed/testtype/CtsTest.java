@@ -167,6 +167,9 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
 
     private long mPrevRebootTime; // last reboot time
 
+    /** collector of the device info of this run, or null if it was skipped or forwarded */
+    private DeviceInfoCollector mDeviceInfoCollector;
+
     /** data structure for a {@link IRemoteTest} and its known tests */
     class TestPackage {
         private final IRemoteTest mTestForPackage;
@@ -436,6 +439,8 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
                 rebootDevice();
             }
             mPrevRebootTime = System.currentTimeMillis();
+            // the expensive device info probes run along with the first package
+            startDeviceInfo();
 
             while (!mRemainingTestPkgs.isEmpty()) {
                 TestPackage knownTests = mRemainingTestPkgs.get(0);
@@ -451,6 +456,7 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
                 forwardPackageDetails(knownTests.getPackageDef(), listener);
                 test.run(filter);
                 mRemainingTestPkgs.remove(0);
+                forwardDeviceInfo(listener, true);
                 if (mRemainingTestPkgs.size() > 0) {
                     rebootIfNecessary(knownTests, mRemainingTestPkgs.get(0));
                     // remove artifacts like status bar from the previous test.
@@ -470,7 +476,12 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
 
             uninstallPrequisiteApks(uninstallPackages);
 
+        } catch (DeviceNotAvailableException e) {
+            // don't wait for device info probes on a device which is gone
+            forwardDeviceInfo(listener, false);
+            throw e;
         } finally {
+            forwardDeviceInfo(listener, true);
             filter.reportUnexecutedTests();
         }
     }
@@ -747,8 +758,9 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
     }
 
     /**
-     * Runs the device info collector instrumentation on device, and forwards it to test listeners
-     * as run metrics.
+     * Runs the cheap probes of the device info collector instrumentation on device, and forwards
+     * it to test listeners as run metrics. The expensive probes are run along with the first
+     * package, see {@link #startDeviceInfo()}.
      * <p/>
      * Exposed so unit tests can mock.
      *
@@ -757,7 +769,30 @@ public class CtsTest implements IDeviceTest, IResumableTest, IShardableTest, IBu
     void collectDeviceInfo(ITestDevice device, CtsBuildHelper ctsBuild,
             ITestInvocationListener listener) throws DeviceNotAvailableException {
         if (!mSkipDeviceInfo) {
-            DeviceInfoCollector.collectDeviceInfo(device, ctsBuild.getTestCasesDir(), listener);
+            mDeviceInfoCollector = new DeviceInfoCollector(device, ctsBuild.getTestCasesDir());
+            mDeviceInfoCollector.collectCheapInfo(listener);
+        }
+    }
+
+    /**
+     * Starts the expensive device info probes in the background, if they are needed.
+     */
+    private void startDeviceInfo() {
+        if (mDeviceInfoCollector != null) {
+            mDeviceInfoCollector.startExpensiveInfo();
+        }
+    }
+
+    /**
+     * Waits for the expensive device info probes, and forwards their results to the listener.
+     * Only the first call does anything.
+     *
+     * @param wait <code>false</code> to only forward the results which are already collected
+     */
+    private void forwardDeviceInfo(ITestInvocationListener listener, boolean wait) {
+        if (mDeviceInfoCollector != null) {
+            mDeviceInfoCollector.forwardExpensiveInfo(listener, wait);
+            mDeviceInfoCollector = null;
         }
     }
 
@@ -17,22 +17,23 @@ package com.android.cts.tradefed.testtype;
 
 import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.Log;
-import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.testrunner.ITestRunListener;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.testtype.testdefs.XmlDefsTest;
 
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * TODO: Merge change to add package prefix to tradefed's GTestResultParser.
- *       Otherwise this file should be the same as TradeFed's version.
+ * Deliberately diverges from TradeFed's GTestResultParser. Besides adding the package prefix to
+ * test class names, it parses the raw shell output bytes itself instead of extending
+ * MultiLineReceiver, so that large native test logs are not decoded, split and trimmed line by
+ * line, and it bounds the output kept for each test. Changes to TradeFed's version need to be
+ * ported by hand.
  *
  * Parses the 'raw output mode' results of native tests using GTest that run from shell, and informs
  * a ITestRunListener of the results.
@@ -88,9 +89,29 @@ import java.util.regex.Pattern;
  * </pre>
  *
  * All other lines are ignored.
+ *
+ * <p>The output is parsed as it arrives, without decoding it to strings: lines are matched
+ * against the tags as bytes, and strings are only created for the names of started tests and
+ * for the output of failed tests. At most {@link #MAX_TEST_OUTPUT_BYTES} of output are kept per
+ * test and lines are cut after {@link #MAX_LINE_BYTES}, so a test printing a lot of output does
+ * not use a lot of memory.
  */
-public class GeeTestResultParser extends MultiLineReceiver {
+public class GeeTestResultParser implements IShellOutputReceiver {
     private static final String LOG_TAG = "GTestResultParser";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** maximum number of bytes of output kept for one test */
+    static final int MAX_TEST_OUTPUT_BYTES = 64 * 1024;
+    /** maximum number of bytes of a line, the rest of the line is dropped */
+    static final int MAX_LINE_BYTES = 16 * 1024;
+
+    private static final byte[] UNKNOWN_CLASS = toBytes("UNKNOWN_CLASS");
+    private static final byte[] UNKNOWN_TEST = toBytes("UNKNOWN_TEST");
+    private static final byte[] RUNNING = toBytes("Running");
+    private static final byte[] TEST = toBytes(" test");
+    private static final byte[] MS = toBytes(" ms)");
+    private static final byte[] MS_TOTAL = toBytes(" ms total)");
+    private static final byte[] CRLF = toBytes("\r\n");
 
     // Variables to keep track of state
     private TestResult mCurrentTestResult = null;
@@ -113,13 +134,28 @@ public class GeeTestResultParser extends MultiLineReceiver {
 
     private String mCoverageTarget = null;
 
+    /** The end of the output which is not a complete line yet. */
+    private byte[] mPartialLine = new byte[256];
+    private int mPartialLineLength = 0;
+
+    /** Reused for the test identifier of each line. */
+    private final ParsedTestInfo mParsedInfo = new ParsedTestInfo();
+
+    /** The number found by {@link #findLastTime(byte[], int, int, byte[])}. */
+    private long mParsedTime;
+
     /**
      * Test result data
      */
     private static class TestResult {
         private String mTestName = null;
         private String mTestClass = null;
-        private StringBuilder mStackTrace = null;
+        /** the names as they appear in the output, to match the end tag without decoding it */
+        private byte[] mTestNameBytes = null;
+        private byte[] mTestClassBytes = null;
+        private byte[] mOutput = null;
+        private int mOutputLength = 0;
+        private int mDroppedOutputBytes = 0;
         @SuppressWarnings("unused")
         private Long mRunTime = null;
 
@@ -136,7 +172,40 @@ public class GeeTestResultParser extends MultiLineReceiver {
          * @return true if there is currently a stack trace, false otherwise
          */
         boolean hasStackTrace() {
-            return mStackTrace != null;
+            return mOutput != null;
+        }
+
+        /**
+         * Appends a line of output, separated from the previous one by CRLF. Output beyond
+         * {@link #MAX_TEST_OUTPUT_BYTES} is counted but dropped.
+         */
+        void appendOutput(byte[] data, int start, int end) {
+            if (mOutput == null) {
+                mOutput = new byte[Math.min(Math.max(end - start, 128), MAX_TEST_OUTPUT_BYTES)];
+            } else {
+                append(CRLF, 0, CRLF.length);
+            }
+            append(data, start, end);
+        }
+
+        private void append(byte[] data, int start, int end) {
+            int length = end - start;
+            int room = MAX_TEST_OUTPUT_BYTES - mOutputLength;
+            if (length > room) {
+                mDroppedOutputBytes += length - room;
+                length = room;
+            }
+            if (length == 0) {
+                return;
+            }
+            if (mOutputLength + length > mOutput.length) {
+                byte[] output = new byte[Math.min(Math.max(mOutput.length * 2,
+                        mOutputLength + length), MAX_TEST_OUTPUT_BYTES)];
+                System.arraycopy(mOutput, 0, output, 0, mOutputLength);
+                mOutput = output;
+            }
+            System.arraycopy(data, start, mOutput, mOutputLength, length);
+            mOutputLength += length;
         }
 
         /**
@@ -148,7 +217,12 @@ public class GeeTestResultParser extends MultiLineReceiver {
          */
         String getTrace() {
             if (hasStackTrace()) {
-                return mStackTrace.toString();
+                String trace = new String(mOutput, 0, mOutputLength, UTF8);
+                if (mDroppedOutputBytes > 0) {
+                    trace += String.format("\r\n... %d bytes of output dropped",
+                            mDroppedOutputBytes);
+                }
+                return trace;
             } else {
                 Log.e(LOG_TAG, "Could not find stack trace for failed test");
                 return new Throwable("Unknown failure").toString();
@@ -173,28 +247,44 @@ public class GeeTestResultParser extends MultiLineReceiver {
         }
     }
 
-    /** Internal helper struct to store parsed test info. */
+    /**
+     * Internal helper struct to store parsed test info. The names are ranges of a byte array,
+     * which is the parsed line or one of {@link #UNKNOWN_CLASS} and {@link #UNKNOWN_TEST}.
+     */
     private static class ParsedTestInfo {
-        String mTestName = null;
-        String mTestClassName = null;
-        String mTestRunTime = null;
+        byte[] mTestNameData;
+        int mTestNameStart;
+        int mTestNameEnd;
+        byte[] mTestClassData;
+        int mTestClassStart;
+        int mTestClassEnd;
+        /** the run time in ms, or -1 if there is none */
+        long mTestRunTime;
+
+        String getTestName() {
+            return new String(mTestNameData, mTestNameStart, mTestNameEnd - mTestNameStart,
+                    UTF8);
+        }
 
-        public ParsedTestInfo(String testName, String testClassName, String testRunTime) {
-            mTestName = testName;
-            mTestClassName = testClassName;
-            mTestRunTime = testRunTime;
+        String getTestClassName() {
+            return new String(mTestClassData, mTestClassStart, mTestClassEnd - mTestClassStart,
+                    UTF8);
         }
     }
 
     /** Prefixes used to demarcate and identify output. */
     private static class Prefixes {
         @SuppressWarnings("unused")
-        private static final String INFORMATIONAL_MARKER = "[----------]";
-        private static final String START_TEST_RUN_MARKER = "[==========] Running";
-        private static final String TEST_RUN_MARKER = "[==========]";
-        private static final String START_TEST_MARKER = "[ RUN      ]";
-        private static final String OK_TEST_MARKER = "[       OK ]";
-        private static final String FAILED_TEST_MARKER = "[  FAILED  ]";
+        private static final byte[] INFORMATIONAL_MARKER = toBytes("[----------]");
+        private static final byte[] START_TEST_RUN_MARKER = toBytes("[==========] Running");
+        private static final byte[] TEST_RUN_MARKER = toBytes("[==========]");
+        private static final byte[] START_TEST_MARKER = toBytes("[ RUN      ]");
+        private static final byte[] OK_TEST_MARKER = toBytes("[       OK ]");
+        private static final byte[] FAILED_TEST_MARKER = toBytes("[  FAILED  ]");
+    }
+
+    private static byte[] toBytes(String text) {
+        return text.getBytes(UTF8);
     }
 
     /**
@@ -252,58 +342,185 @@ public class GeeTestResultParser extends MultiLineReceiver {
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Complete lines are parsed in place, only the unfinished last line is copied.
      */
     @Override
+    public void addOutput(byte[] data, int offset, int length) {
+        if (mIsCancelled) {
+            return;
+        }
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n') {
+                if (mPartialLineLength > 0) {
+                    appendPartialLine(data, lineStart, i);
+                    processLine(mPartialLine, 0, mPartialLineLength);
+                    mPartialLineLength = 0;
+                } else {
+                    processLine(data, lineStart, Math.min(i, lineStart + MAX_LINE_BYTES));
+                }
+                lineStart = i + 1;
+            }
+        }
+        appendPartialLine(data, lineStart, end);
+    }
+
+    private void appendPartialLine(byte[] data, int start, int end) {
+        int length = Math.min(end - start, MAX_LINE_BYTES - mPartialLineLength);
+        if (length <= 0) {
+            return;
+        }
+        if (mPartialLineLength + length > mPartialLine.length) {
+            byte[] line = new byte[Math.min(Math.max(mPartialLine.length * 2,
+                    mPartialLineLength + length), MAX_LINE_BYTES)];
+            System.arraycopy(mPartialLine, 0, line, 0, mPartialLineLength);
+            mPartialLine = line;
+        }
+        System.arraycopy(data, start, mPartialLine, mPartialLineLength, length);
+        mPartialLineLength += length;
+    }
+
+    /**
+     * Parses the unfinished last line, and reports the end of the output.
+     */
+    @Override
+    public void flush() {
+        if (mPartialLineLength > 0) {
+            processLine(mPartialLine, 0, mPartialLineLength);
+            mPartialLineLength = 0;
+        }
+        done();
+    }
+
+    /**
+     * Processes a line of output, without the line feed. The data is only valid during the
+     * call.
+     *
+     * @param data the buffer holding the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line
+     */
+    protected void processLine(byte[] data, int start, int end) {
+        parse(data, start, end);
+    }
+
+    /**
+     * Parses lines of output which were already split and decoded.
+     *
+     * @param lines the lines, without line feeds
+     */
     public void processNewLines(String[] lines) {
         for (String line : lines) {
-            parse(line);
+            byte[] data = toBytes(line);
+            parse(data, 0, data.length);
         }
     }
 
     /**
      * Parse an individual output line.
      *
-     * @param line  Text output line
+     * @param line the buffer holding the line
+     * @param start the index of the first byte of the line
+     * @param end the index after the last byte of the line
      */
-    private void parse(String line) {
-        String message = null;
+    private void parse(byte[] line, int start, int end) {
+        // trim the line like String.trim()
+        while (start < end && (line[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (line[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
 
-        if (mTestRunInProgress || line.startsWith(Prefixes.TEST_RUN_MARKER)) {
-            if (line.startsWith(Prefixes.START_TEST_MARKER)) {
+        if (mTestRunInProgress || startsWith(line, start, end, Prefixes.TEST_RUN_MARKER)) {
+            if (startsWith(line, start, end, Prefixes.START_TEST_MARKER)) {
                 // Individual test started
-                message = line.substring(Prefixes.START_TEST_MARKER.length()).trim();
-                processTestStartedTag(message);
+                processTestStartedTag(line, start + Prefixes.START_TEST_MARKER.length, end);
             }
-            else if (line.startsWith(Prefixes.OK_TEST_MARKER)) {
+            else if (startsWith(line, start, end, Prefixes.OK_TEST_MARKER)) {
                 // Individual test completed successfully
-                message = line.substring(Prefixes.OK_TEST_MARKER.length()).trim();
-                processOKTag(message);
+                processOKTag(line, start + Prefixes.OK_TEST_MARKER.length, end);
                 clearCurrentTestResult();
             }
-            else if (line.startsWith(Prefixes.FAILED_TEST_MARKER)) {
+            else if (startsWith(line, start, end, Prefixes.FAILED_TEST_MARKER)) {
                 // Individual test completed with failure
-                message = line.substring(Prefixes.FAILED_TEST_MARKER.length()).trim();
-                processFailedTag(message);
+                processFailedTag(line, start + Prefixes.FAILED_TEST_MARKER.length, end);
                 clearCurrentTestResult();
             }
-            else if (line.startsWith(Prefixes.START_TEST_RUN_MARKER)) {
+            else if (startsWith(line, start, end, Prefixes.START_TEST_RUN_MARKER)) {
                 // Test run started
-                // Make sure to leave the "Running" in the string
-                message = line.substring(Prefixes.TEST_RUN_MARKER.length()).trim();
-                processRunStartedTag(message);
+                // Make sure to leave the "Running" in the message
+                processRunStartedTag(line, start + Prefixes.TEST_RUN_MARKER.length, end);
             }
-            else if (line.startsWith(Prefixes.TEST_RUN_MARKER)) {
+            else if (startsWith(line, start, end, Prefixes.TEST_RUN_MARKER)) {
                 // Test run ended
                 // This is for the end of the test suite run, so make sure this else-if is after the
                 // check for START_TEST_SUITE_MARKER
-                message = line.substring(Prefixes.TEST_RUN_MARKER.length()).trim();
-                processRunCompletedTag(message);
+                processRunCompletedTag(line, start + Prefixes.TEST_RUN_MARKER.length, end);
             }
             else if (testInProgress()) {
                 // Note this does not handle the case of an error outside an actual test run
-                appendTestOutputLine(line);
+                appendTestOutputLine(line, start, end);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given range of {@code line} starts with {@code prefix}.
+     */
+    private static boolean startsWith(byte[] line, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given ranges hold the same bytes.
+     */
+    private static boolean rangeEquals(byte[] a, int aStart, int aEnd, byte[] b, int bStart,
+            int bEnd) {
+        if (aEnd - aStart != bEnd - bStart) {
+            return false;
+        }
+        for (int i = aStart, j = bStart; i < aEnd; i++, j++) {
+            if (a[i] != b[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the last "(&lt;digits&gt;&lt;suffix&gt;" in the given range of {@code line}, like
+     * "(12 ms)". The number is stored in {@link #mParsedTime}, -1 if it is too large.
+     *
+     * @return the index of the opening parenthesis, or -1 if there is none
+     */
+    private int findLastTime(byte[] line, int start, int end, byte[] suffix) {
+        for (int open = end - 2 - suffix.length; open >= start; open--) {
+            if (line[open] != '(') {
+                continue;
+            }
+            int i = open + 1;
+            long value = 0;
+            while (i < end && line[i] >= '0' && line[i] <= '9') {
+                value = value < Long.MAX_VALUE / 10 ? value * 10 + (line[i] - '0') : -1;
+                i++;
+            }
+            if (i > open + 1 && startsWith(line, i, end, suffix)) {
+                mParsedTime = value;
+                return open;
             }
         }
+        return -1;
     }
 
     /**
@@ -311,6 +528,7 @@ public class GeeTestResultParser extends MultiLineReceiver {
      *
      * @see IShellOutputReceiver#isCancelled()
      */
+    @Override
     public boolean isCancelled() {
         return mIsCancelled;
     }
@@ -387,38 +605,58 @@ public class GeeTestResultParser extends MultiLineReceiver {
     /**
      * Parse the test identifier (class and test name), and optional time info.
      *
-     * @param identifier Raw identifier of the form classname.testname, with an optional time
-     *          element in the format of (XX ms) at the end
-     * @return A ParsedTestInfo representing the parsed info from the identifier string.
+     * @param line the buffer holding the identifier of the form classname.testname, with an
+     *          optional time element in the format of (XX ms) at the end
+     * @param start the index of the identifier
+     * @param end the index after the identifier
+     * @return A ParsedTestInfo representing the parsed info from the identifier.
      *
-     *          If no time tag was detected, then the third element in the array (time_in_ms) will
-     *          be null. If the line failed to parse properly (eg: could not determine name of
-     *          test/class) then an "UNKNOWN" string value will be returned for the classname and
-     *          testname. This method guarantees a string will always be returned for the class and
-     *          test names (but not for the time value).
+     *          If no time tag was detected, then the time will be -1. If the line failed to
+     *          parse properly (eg: could not determine name of test/class) then an "UNKNOWN"
+     *          value will be returned for the classname and testname.
      */
-    private ParsedTestInfo parseTestIdentifier(String identifier) {
-        ParsedTestInfo returnInfo = new ParsedTestInfo("UNKNOWN_CLASS", "UNKNOWN_TEST", null);
-
-        Pattern timePattern = Pattern.compile(".*(\\((\\d+) ms\\))");  // eg: (XX ms)
-        Matcher time = timePattern.matcher(identifier);
-
-        // Try to find a time
-        if (time.find()) {
-            String timeString = time.group(2);  // the "XX" in "(XX ms)"
-            String discardPortion = time.group(1);  // everything after the test class/name
-            identifier = identifier.substring(0, identifier.lastIndexOf(discardPortion)).trim();
-            returnInfo.mTestRunTime = timeString;
+    private ParsedTestInfo parseTestIdentifier(byte[] line, int start, int end) {
+        ParsedTestInfo returnInfo = mParsedInfo;
+        returnInfo.mTestClassData = UNKNOWN_CLASS;
+        returnInfo.mTestClassStart = 0;
+        returnInfo.mTestClassEnd = UNKNOWN_CLASS.length;
+        returnInfo.mTestNameData = UNKNOWN_TEST;
+        returnInfo.mTestNameStart = 0;
+        returnInfo.mTestNameEnd = UNKNOWN_TEST.length;
+        returnInfo.mTestRunTime = -1;
+
+        // Try to find a time, eg: (XX ms)
+        int timeStart = findLastTime(line, start, end, MS);
+        if (timeStart >= 0) {
+            returnInfo.mTestRunTime = mParsedTime;
+            end = timeStart;
+        }
+        while (start < end && (line[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (line[end - 1] & 0xff) <= ' ') {
+            end--;
         }
 
-        String[] testId = identifier.split("\\.");
-        if (testId.length < 2) {
+        int dot = start;
+        while (dot < end && line[dot] != '.') {
+            dot++;
+        }
+        int nameEnd = dot + 1;
+        while (nameEnd < end && line[nameEnd] != '.') {
+            nameEnd++;
+        }
+        if (dot >= end || nameEnd == dot + 1) {
             Log.e(LOG_TAG, "Could not detect the test class and test name, received: " +
-                    identifier);
+                    new String(line, start, end - start, UTF8));
         }
         else {
-            returnInfo.mTestClassName = testId[0];
-            returnInfo.mTestName = testId[1];
+            returnInfo.mTestClassData = line;
+            returnInfo.mTestClassStart = start;
+            returnInfo.mTestClassEnd = dot;
+            returnInfo.mTestNameData = line;
+            returnInfo.mTestNameStart = dot + 1;
+            returnInfo.mTestNameEnd = nameEnd;
         }
         return returnInfo;
     }
@@ -426,21 +664,33 @@ public class GeeTestResultParser extends MultiLineReceiver {
     /**
      * Parses and stores the test identifier (class and test name).
      *
-     * @param identifier Raw identifier
+     * @param line the buffer holding the message, eg: Running XX tests from 1 test case.
+     * @param start the index of the message
+     * @param end the index after the message
      */
-    private void processRunStartedTag(String identifier) {
-        // eg: (Running XX tests from 1 test case.)
-        Pattern numTestsPattern = Pattern.compile("Running (\\d+) test[s]? from .*");
-        Matcher numTests = numTestsPattern.matcher(identifier);
-
+    private void processRunStartedTag(byte[] line, int start, int end) {
+        while (start < end && line[start] == ' ') {
+            start++;
+        }
         // Try to find number of tests
-        if (numTests.find()) {
-            try {
-                mNumTestsExpected = Integer.parseInt(numTests.group(1));
+        if (startsWith(line, start, end, RUNNING)) {
+            int i = start + RUNNING.length;
+            while (i < end && line[i] == ' ') {
+                i++;
             }
-            catch (NumberFormatException e) {
-                Log.e(LOG_TAG, "Unable to determine number of tests expected, received: " +
-                        numTests.group(1));
+            int digitsStart = i;
+            long numTests = 0;
+            while (i < end && line[i] >= '0' && line[i] <= '9' && numTests <= Integer.MAX_VALUE) {
+                numTests = numTests * 10 + (line[i] - '0');
+                i++;
+            }
+            if (i > digitsStart && startsWith(line, i, end, TEST)) {
+                if (numTests > Integer.MAX_VALUE) {
+                    Log.e(LOG_TAG, "Unable to determine number of tests expected, received: " +
+                            new String(line, digitsStart, i - digitsStart, UTF8));
+                } else {
+                    mNumTestsExpected = (int) numTests;
+                }
             }
         }
         if (mNumTestsExpected > 0) {
@@ -453,20 +703,18 @@ public class GeeTestResultParser extends MultiLineReceiver {
     /**
      * Processes and informs listener when we encounter a tag indicating that a test suite is done.
      *
-     * @param identifier Raw log output from the suite ended tag
+     * @param line the buffer holding the message of the suite ended tag
+     * @param start the index of the message
+     * @param end the index after the message
      */
-    private void processRunCompletedTag(String identifier) {
-        Pattern timePattern = Pattern.compile(".*\\((\\d+) ms total\\)");  // eg: (XX ms total)
-        Matcher time = timePattern.matcher(identifier);
-
-        // Try to find the total run time
-        if (time.find()) {
-            try {
-                mTotalRunTime = Long.parseLong(time.group(1));
-            }
-            catch (NumberFormatException e) {
+    private void processRunCompletedTag(byte[] line, int start, int end) {
+        // Try to find the total run time, eg: (XX ms total)
+        if (findLastTime(line, start, end, MS_TOTAL) >= 0) {
+            if (mParsedTime < 0) {
                 Log.e(LOG_TAG, "Unable to determine the total running time, received: " +
-                        time.group(1));
+                        new String(line, start, end - start, UTF8));
+            } else {
+                mTotalRunTime = mParsedTime;
             }
         }
         reportTestRunEnded();
@@ -476,13 +724,18 @@ public class GeeTestResultParser extends MultiLineReceiver {
     /**
      * Processes and informs listener when we encounter a tag indicating that a test has started.
      *
-     * @param identifier Raw log output of the form classname.testname, with an optional time (x ms)
+     * @param line the buffer holding the identifier of the form classname.testname, with an
+     *          optional time (x ms)
+     * @param start the index of the identifier
+     * @param end the index after the identifier
      */
-    private void processTestStartedTag(String identifier) {
-        ParsedTestInfo parsedResults = parseTestIdentifier(identifier);
+    private void processTestStartedTag(byte[] line, int start, int end) {
+        ParsedTestInfo parsedResults = parseTestIdentifier(line, start, end);
         TestResult testResult = getCurrentTestResult();
-        testResult.mTestClass = parsedResults.mTestClassName;
-        testResult.mTestName = parsedResults.mTestName;
+        testResult.mTestClass = parsedResults.getTestClassName();
+        testResult.mTestName = parsedResults.getTestName();
+        testResult.mTestClassBytes = toBytes(testResult.mTestClass);
+        testResult.mTestNameBytes = toBytes(testResult.mTestName);
 
         TestIdentifier testId = new TestIdentifier(mFakePackagePrefix + testResult.mTestClass,
                 testResult.mTestName);
@@ -496,32 +749,29 @@ public class GeeTestResultParser extends MultiLineReceiver {
     /**
      * Helper method to do the work necessary when a test has ended.
      *
-     * @param identifier Raw log output of the form "classname.testname" with an optional (XX ms)
-     *          at the end indicating the running time.
+     * @param line the buffer holding the identifier of the form "classname.testname" with an
+     *          optional (XX ms) at the end indicating the running time.
+     * @param start the index of the identifier
+     * @param end the index after the identifier
      * @param testPassed Indicates whether the test passed or failed (set to true if passed, false
      *          if failed)
      */
-    private void doTestEnded(String identifier, boolean testPassed) {
-        ParsedTestInfo parsedResults = parseTestIdentifier(identifier);
+    private void doTestEnded(byte[] line, int start, int end, boolean testPassed) {
+        ParsedTestInfo parsedResults = parseTestIdentifier(line, start, end);
         TestResult testResult = getCurrentTestResult();
         TestIdentifier testId = new TestIdentifier(mFakePackagePrefix + testResult.mTestClass,
                 testResult.mTestName);
 
         // Error - trying to end a test when one isn't in progress
         if (!testInProgress()) {
-            Log.e(LOG_TAG, "Test currently not in progress when trying to end test: " + identifier);
+            Log.e(LOG_TAG, "Test currently not in progress when trying to end test: " +
+                    new String(line, start, end - start, UTF8));
             return;
         }
 
         // Save the run time for this test if one exists
-        if (parsedResults.mTestRunTime != null) {
-            try {
-                testResult.mRunTime = new Long(parsedResults.mTestRunTime);
-            }
-            catch (NumberFormatException e) {
-                Log.e(LOG_TAG, "Test run time value is invalid, received: " +
-                        parsedResults.mTestRunTime);
-            }
+        if (parsedResults.mTestRunTime >= 0) {
+            testResult.mRunTime = parsedResults.mTestRunTime;
         }
 
         // Check that the test result is for the same test/class we're expecting it to be for
@@ -530,16 +780,20 @@ public class GeeTestResultParser extends MultiLineReceiver {
             Log.e(LOG_TAG, "No test/class name is currently recorded as running!");
         }
         else {
-            if (testResult.mTestClass.compareTo(parsedResults.mTestClassName) != 0) {
+            if (!rangeEquals(testResult.mTestClassBytes, 0, testResult.mTestClassBytes.length,
+                    parsedResults.mTestClassData, parsedResults.mTestClassStart,
+                    parsedResults.mTestClassEnd)) {
                 Log.e(LOG_TAG, "Name for current test class does not match class we started " +
                         "with, expected: " + testResult.mTestClass + " but got: " +
-                        parsedResults.mTestClassName);
+                        parsedResults.getTestClassName());
                 encounteredUnexpectedTest = true;
             }
-            if (testResult.mTestName.compareTo(parsedResults.mTestName) != 0) {
+            if (!rangeEquals(testResult.mTestNameBytes, 0, testResult.mTestNameBytes.length,
+                    parsedResults.mTestNameData, parsedResults.mTestNameStart,
+                    parsedResults.mTestNameEnd)) {
                 Log.e(LOG_TAG, "Name for current test does not match test we started with," +
                         "expected: " + testResult.mTestName + " bug got: " +
-                        parsedResults.mTestName);
+                        parsedResults.getTestName());
                 encounteredUnexpectedTest = true;
             }
         }
@@ -572,37 +826,36 @@ public class GeeTestResultParser extends MultiLineReceiver {
     /**
      * Processes and informs listener when we encounter the OK tag.
      *
-     * @param identifier Raw log output of the form "classname.testname" with an optional (XX ms)
-     *          at the end indicating the running time.
+     * @param line the buffer holding the identifier of the form "classname.testname" with an
+     *          optional (XX ms) at the end indicating the running time.
+     * @param start the index of the identifier
+     * @param end the index after the identifier
      */
-    private void processOKTag(String identifier) {
-        doTestEnded(identifier, true);
+    private void processOKTag(byte[] line, int start, int end) {
+        doTestEnded(line, start, end, true);
     }
 
     /**
      * Processes and informs listener when we encounter the FAILED tag.
      *
-     * @param identifier Raw log output of the form "classname.testname" with an optional (XX ms)
-     *          at the end indicating the running time.
+     * @param line the buffer holding the identifier of the form "classname.testname" with an
+     *          optional (XX ms) at the end indicating the running time.
+     * @param start the index of the identifier
+     * @param end the index after the identifier
      */
-    private void processFailedTag(String identifier) {
-        doTestEnded(identifier, false);
+    private void processFailedTag(byte[] line, int start, int end) {
+        doTestEnded(line, start, end, false);
     }
 
     /**
      * Appends the test output to the current TestResult.
      *
-     * @param line Raw test result line of output.
+     * @param line the buffer holding the raw test result line of output
+     * @param start the index of the line
+     * @param end the index after the line
      */
-    private void appendTestOutputLine(String line) {
-        TestResult testResult = getCurrentTestResult();
-        if (testResult.mStackTrace == null) {
-            testResult.mStackTrace = new StringBuilder();
-        }
-        else {
-            testResult.mStackTrace.append("\r\n");
-        }
-        testResult.mStackTrace.append(line);
+    private void appendTestOutputLine(byte[] line, int start, int end) {
+        getCurrentTestResult().appendOutput(line, start, end);
     }
 
     /**
@@ -643,11 +896,9 @@ public class GeeTestResultParser extends MultiLineReceiver {
     }
 
     /**
-     * Called by parent when adb session is complete.
+     * Called by {@link #flush()} when adb session is complete.
      */
-    @Override
     public void done() {
-        super.done();
         if (mNumTestsExpected > mNumTestsRun) {
             handleTestRunFailed(String.format("Test run incomplete. Expected %d tests, received %d",
                     mNumTestsExpected, mNumTestsRun));
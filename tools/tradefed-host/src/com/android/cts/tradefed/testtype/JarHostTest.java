@@ -16,6 +16,7 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.CtsBuildHelper;
+import com.android.cts.util.TestMetadataIndex;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.build.IBuildInfo;
@@ -57,6 +58,7 @@ public class JarHostTest implements IDeviceTest, IRemoteTest, IBuildReceiver, Te
     private String mRunName;
     private CtsBuildHelper mCtsBuild = null;
     private IBuildInfo mBuildInfo = null;
+    private TestMetadataIndex mTestIndex = null;
 
     private ClassLoader mClassLoader;
 
@@ -137,6 +139,30 @@ public class JarHostTest implements IDeviceTest, IRemoteTest, IBuildReceiver, Te
         mTimeoutMs = testTimeoutMs;
     }
 
+    /**
+     * Set the index of the jar's tests. Tests with a {@link com.android.cts.util.TimeoutReq} in
+     * the index use its timeout instead of the one set with {@link #setTimeout(long)}.
+     *
+     * @param testIndex the {@link TestMetadataIndex} or <code>null</code>
+     */
+    void setTestIndex(TestMetadataIndex testIndex) {
+        mTestIndex = testIndex;
+    }
+
+    /**
+     * Get the maximum time in ms the given test should run.
+     */
+    long getTimeout(TestIdentifier testId) {
+        if (mTestIndex != null) {
+            int minutes = mTestIndex.getTimeoutMinutes(testId.getClassName(),
+                    testId.getTestName());
+            if (minutes != TestMetadataIndex.NO_TIMEOUT) {
+                return minutes * 60L * 1000;
+            }
+        }
+        return mTimeoutMs;
+    }
+
     /**
      * Set the run name to report to {@link ITestInvocationListener#testRunStarted(String, int)}
      *
@@ -205,7 +231,8 @@ public class JarHostTest implements IDeviceTest, IRemoteTest, IBuildReceiver, Te
         }
         TestRunnable testRunnable = new TestRunnable(junitTest, junitResult);
 
-        CommandStatus status = RunUtil.getDefault().runTimed(mTimeoutMs, testRunnable, true);
+        CommandStatus status = RunUtil.getDefault().runTimed(getTimeout(testId), testRunnable,
+                true);
         if (status.equals(CommandStatus.TIMED_OUT)) {
             junitResult.addError(junitTest, new TestTimeoutException());
             junitResult.endTest(junitTest);
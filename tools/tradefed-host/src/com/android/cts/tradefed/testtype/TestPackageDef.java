@@ -16,6 +16,8 @@
 
 package com.android.cts.tradefed.testtype;
 
+import com.android.cts.util.TestJarScanner;
+import com.android.cts.util.TestMetadataIndex;
 import com.android.ddmlib.Log.LogLevel;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.log.LogUtil.CLog;
@@ -213,6 +215,7 @@ class TestPackageDef implements ITestPackageDef {
             hostTest.setJarFileName(mJarPath);
             hostTest.setTests(mTests);
             mDigest = generateDigest(testCaseDir, mJarPath);
+            hostTest.setTestIndex(loadTestIndex(testCaseDir));
             return hostTest;
         } else if (VM_HOST_TEST.equals(mTestType)) {
             CLog.d("Creating vm host test for %s", mName);
@@ -270,6 +273,34 @@ class TestPackageDef implements ITestPackageDef {
         }
     }
 
+    /**
+     * Load the {@link TestMetadataIndex} of the jar. The index written at build time is used if
+     * it matches the jar, otherwise the jar's class files are scanned.
+     * <p/>
+     * Exposed for unit testing.
+     *
+     * @param testCaseDir
+     * @return the {@link TestMetadataIndex} or <code>null</code> if the jar cannot be read
+     */
+    TestMetadataIndex loadTestIndex(File testCaseDir) {
+        File indexFile = new File(testCaseDir, TestMetadataIndex.getIndexFileName(mJarPath));
+        TestMetadataIndex index = TestMetadataIndex.read(indexFile, mDigest);
+        if (index != null) {
+            return index;
+        }
+        File jarFile = new File(testCaseDir, mJarPath);
+        if (!jarFile.isFile()) {
+            return null;
+        }
+        CLog.d("Scanning %s for test metadata", mJarPath);
+        try {
+            return new TestJarScanner(getClass().getClassLoader()).scan(jarFile);
+        } catch (IOException e) {
+            CLog.w("Failed to scan %s: %s", mJarPath, e);
+            return null;
+        }
+    }
+
     /**
      * Populates given {@link InstrumentationApkTest} with data from the package xml.
      *
@@ -18,13 +18,18 @@ package com.android.cts.tradefed.testtype;
 import com.android.ddmlib.testrunner.ITestRunListener;
 import com.android.tradefed.log.LogUtil.CLog;
 
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
 
 public class WrappedGTestResultParser extends GeeTestResultParser {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private boolean mInstrumentationError;
+    /** True while the lines of a multi-line gtest status are read. */
+    private boolean mReadMultiLine = false;
 
     /**
      * Creates the WrappedGTestResultParser.
@@ -48,6 +53,14 @@ public class WrappedGTestResultParser extends GeeTestResultParser {
         super(testRunName, listener);
     }
 
+    /**
+     * Decodes the line, since instrumentation output is parsed as strings.
+     */
+    @Override
+    protected void processLine(byte[] data, int start, int end) {
+        processNewLines(new String[] { new String(data, start, end - start, UTF8).trim() });
+    }
+
     /**
      * Strips the instrumentation information and then forwards
      * the raw gtest output to the {@link GeeTestResultParser}.
@@ -71,7 +84,6 @@ public class WrappedGTestResultParser extends GeeTestResultParser {
      */
     public String[] parseInstrumentation(String[] lines) {
         List<String> output = new ArrayList<String>();
-        boolean readMultiLine = false;
         for (String line : lines) {
 
             if (line.startsWith("INSTRUMENTATION_RESULT: ")) {
@@ -86,16 +98,16 @@ public class WrappedGTestResultParser extends GeeTestResultParser {
 
             if (line.startsWith("INSTRUMENTATION_STATUS: gtest=")) {
                 output.add(line.replace("INSTRUMENTATION_STATUS: gtest=", ""));
-                readMultiLine = true;
+                mReadMultiLine = true;
                 continue;
             }
 
             if (line.startsWith("INSTRUMENTATION_")) {
-                readMultiLine = false;
+                mReadMultiLine = false;
                 continue;
             }
 
-            if (readMultiLine) {
+            if (mReadMultiLine) {
                 output.add(line);
             }
         }
@@ -16,6 +16,7 @@
 
 package com.android.cts.tradefed.util;
 
+import com.android.cts.util.ReportCodec;
 import com.android.cts.util.ReportLog;
 
 /**
@@ -37,6 +38,9 @@ public class HostReportLog extends ReportLog {
     }
 
     public void deliverReportToHost() {
-        CtsHostStore.storeCtsResult(mDeviceSerial, mClassMethodName, generateReport());
+        ReportCodec.Report report = takeReport();
+        if (report != null) {
+            MetricsBus.publish(mDeviceSerial, mClassMethodName, report);
+        }
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.util;
+
+import com.android.cts.util.ReportCodec;
+import com.android.tradefed.log.LogUtil.CLog;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers performance results of host tests to the result reporter of the same invocation.
+ * This is necessary for host tests where test metrics cannot be passed.
+ * <p/>
+ * A bus lives for one invocation: the result reporter creates it, registers it for the device
+ * serial with {@link #register(String, MetricsBus)} and unregisters it when the invocation ends.
+ * Host tests publish with {@link #publish(String, String, ReportCodec.Report)}.
+ * Results are first offered to the subscribed {@link Listener}s. Results nobody consumed are
+ * kept until taken, but at most {@code maxPending} of them and for at most {@code maxAgeMs}.
+ */
+public class MetricsBus {
+    /** default number of unconsumed results kept per invocation */
+    public static final int DEFAULT_MAX_PENDING = 64;
+    /** default time an unconsumed result is kept */
+    public static final long DEFAULT_MAX_AGE_MS = 60 * 60 * 1000;
+
+    // buses of the running invocations, keyed by device serial
+    private static final Map<String, MetricsBus> sBuses = new HashMap<String, MetricsBus>();
+
+    /**
+     * Receives results as they are published.
+     */
+    public interface Listener {
+        /**
+         * @param classMethodName test which produced the result, in class#method format
+         * @param report the result
+         * @return true if the result was consumed, false to keep it pending on the bus
+         */
+        boolean onMetrics(String classMethodName, ReportCodec.Report report);
+    }
+
+    private static class PendingResult {
+        final ReportCodec.Report mReport;
+        final long mTimestamp;
+
+        PendingResult(ReportCodec.Report report, long timestamp) {
+            mReport = report;
+            mTimestamp = timestamp;
+        }
+    }
+
+    private final int mMaxPending;
+    private final long mMaxAgeMs;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    // insertion ordered, so the oldest entry is evicted first
+    private final LinkedHashMap<String, PendingResult> mPending =
+            new LinkedHashMap<String, PendingResult>();
+
+    public MetricsBus() {
+        this(DEFAULT_MAX_PENDING, DEFAULT_MAX_AGE_MS);
+    }
+
+    /**
+     * @param maxPending maximum number of unconsumed results kept
+     * @param maxAgeMs maximum time in ms an unconsumed result is kept
+     */
+    public MetricsBus(int maxPending, long maxAgeMs) {
+        mMaxPending = maxPending;
+        mMaxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Make the given bus the target of results published for the given device.
+     */
+    public static void register(String deviceSerial, MetricsBus bus) {
+        synchronized (sBuses) {
+            sBuses.put(deviceSerial, bus);
+        }
+    }
+
+    /**
+     * Remove the given bus if it is still registered for the given device.
+     */
+    public static void unregister(String deviceSerial, MetricsBus bus) {
+        synchronized (sBuses) {
+            if (sBuses.get(deviceSerial) == bus) {
+                sBuses.remove(deviceSerial);
+            }
+        }
+    }
+
+    /**
+     * Publish a result to the invocation running on the given device.
+     * Note that there should be no concurrent test for the same (serial, class, method).
+     *
+     * @return false if there is no invocation for the device and the result was dropped
+     */
+    public static boolean publish(String deviceSerial, String classMethodName,
+            ReportCodec.Report report) {
+        MetricsBus bus;
+        synchronized (sBuses) {
+            bus = sBuses.get(deviceSerial);
+        }
+        if (bus == null) {
+            CLog.w("No invocation for %s, dropping result of %s", deviceSerial, classMethodName);
+            return false;
+        }
+        bus.publish(classMethodName, report);
+        return true;
+    }
+
+    public void subscribe(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void unsubscribe(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Publish a result to this bus. An unconsumed result with the same name is replaced.
+     */
+    public void publish(String classMethodName, ReportCodec.Report report) {
+        for (Listener listener : mListeners) {
+            if (listener.onMetrics(classMethodName, report)) {
+                return;
+            }
+        }
+        synchronized (mPending) {
+            long now = getCurrentTimeMs();
+            mPending.remove(classMethodName);
+            mPending.put(classMethodName, new PendingResult(report, now));
+            evict(now);
+        }
+    }
+
+    /**
+     * Retrieve an unconsumed result and remove it from the bus.
+     * @return the result or null if there is none
+     */
+    public ReportCodec.Report take(String classMethodName) {
+        synchronized (mPending) {
+            evict(getCurrentTimeMs());
+            PendingResult result = mPending.remove(classMethodName);
+            return result == null ? null : result.mReport;
+        }
+    }
+
+    /**
+     * @return number of unconsumed results
+     */
+    public int getPendingCount() {
+        synchronized (mPending) {
+            return mPending.size();
+        }
+    }
+
+    /**
+     * Drop all unconsumed results and listeners.
+     */
+    public void clear() {
+        mListeners.clear();
+        synchronized (mPending) {
+            mPending.clear();
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<String, PendingResult>> it = mPending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PendingResult> entry = it.next();
+            if (mPending.size() > mMaxPending || now - entry.getValue().mTimestamp > mMaxAgeMs) {
+                CLog.w("Dropping unconsumed result of %s", entry.getKey());
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the current time. Exposed for unit testing.
+     */
+    long getCurrentTimeMs() {
+        return System.currentTimeMillis();
+    }
+}
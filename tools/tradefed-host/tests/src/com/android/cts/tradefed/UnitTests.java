@@ -15,19 +15,32 @@
  */
 package com.android.cts.tradefed;
 
+import com.android.cts.tradefed.device.DeviceInfoCollectorTest;
 import com.android.cts.tradefed.result.CtsXmlResultReporterTest;
 import com.android.cts.tradefed.result.DeviceInfoResultTest;
+import com.android.cts.tradefed.result.IssueReporterTest;
+import com.android.cts.tradefed.result.PerfRegressionDetectorTest;
+import com.android.cts.tradefed.result.PerfTrendStoreTest;
+import com.android.cts.tradefed.result.ResultUploaderTest;
 import com.android.cts.tradefed.result.TestPackageResultTest;
 import com.android.cts.tradefed.result.TestResultsTest;
 import com.android.cts.tradefed.result.TestSummaryXmlTest;
 import com.android.cts.tradefed.result.TestTest;
 import com.android.cts.tradefed.testtype.CtsTestTest;
+import com.android.cts.tradefed.testtype.GeeTestResultParserTest;
 import com.android.cts.tradefed.testtype.JarHostTestTest;
 import com.android.cts.tradefed.testtype.TestFilterTest;
 import com.android.cts.tradefed.testtype.TestPackageDefTest;
 import com.android.cts.tradefed.testtype.TestPackageXmlParserTest;
 import com.android.cts.tradefed.testtype.TestPlanTest;
 import com.android.cts.tradefed.testtype.WrappedGTestResultParserTest;
+import com.android.cts.tradefed.util.MetricsBusTest;
+import com.android.cts.util.AdaptiveIterationControllerTest;
+import com.android.cts.util.HistogramTest;
+import com.android.cts.util.ScalingBenchmarkTest;
+import com.android.cts.util.StatTest;
+import com.android.cts.util.TestMetadataIndexTest;
+import com.android.cts.util.YuvFrameVerifierTest;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -43,9 +56,16 @@ public class UnitTests extends TestSuite {
     public UnitTests() {
         super();
 
+        // device package
+        addTestSuite(DeviceInfoCollectorTest.class);
+
         // result package
         addTestSuite(CtsXmlResultReporterTest.class);
         addTestSuite(DeviceInfoResultTest.class);
+        addTestSuite(IssueReporterTest.class);
+        addTestSuite(PerfRegressionDetectorTest.class);
+        addTestSuite(PerfTrendStoreTest.class);
+        addTestSuite(ResultUploaderTest.class);
         addTestSuite(TestPackageResultTest.class);
         addTestSuite(TestResultsTest.class);
         addTestSuite(TestSummaryXmlTest.class);
@@ -53,12 +73,24 @@ public class UnitTests extends TestSuite {
 
         // testtype package
         addTestSuite(CtsTestTest.class);
+        addTestSuite(GeeTestResultParserTest.class);
         addTestSuite(JarHostTestTest.class);
         addTestSuite(TestFilterTest.class);
         addTestSuite(TestPackageDefTest.class);
         addTestSuite(TestPackageXmlParserTest.class);
         addTestSuite(TestPlanTest.class);
         addTestSuite(WrappedGTestResultParserTest.class);
+
+        // util package
+        addTestSuite(MetricsBusTest.class);
+
+        // common util
+        addTestSuite(AdaptiveIterationControllerTest.class);
+        addTestSuite(HistogramTest.class);
+        addTestSuite(ScalingBenchmarkTest.class);
+        addTestSuite(StatTest.class);
+        addTestSuite(TestMetadataIndexTest.class);
+        addTestSuite(YuvFrameVerifierTest.class);
     }
 
     public static Test suite() {
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.device;
+
+import com.android.tradefed.device.DeviceNotAvailableException;
+import com.android.tradefed.device.ITestDevice;
+import com.android.tradefed.result.ITestInvocationListener;
+
+import android.tests.getinfo.DeviceInfoConstants;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit tests for {@link DeviceInfoCollector}.
+ */
+public class DeviceInfoCollectorTest extends TestCase {
+
+    private ITestDevice mMockDevice;
+    private ITestInvocationListener mMockListener;
+    private Map<String, String> mCheapMetrics;
+    private Map<String, String> mExpensiveMetrics;
+
+    /**
+     * A {@link DeviceInfoCollector} which returns the metrics of the test instead of running the
+     * instrumentation.
+     */
+    private class StubCollector extends DeviceInfoCollector {
+        final List<String> mProbes = Collections.synchronizedList(new ArrayList<String>());
+        /** the thread running the probes other than the cheap ones */
+        volatile Thread mProbeThread;
+        /** released to finish the probes other than the cheap ones, if not null */
+        CountDownLatch mRelease;
+        boolean mDeviceNotAvailable;
+
+        StubCollector() {
+            super(mMockDevice, new File("."));
+        }
+
+        @Override
+        Map<String, String> runProbes(String probes, ITestInvocationListener... listeners)
+                throws DeviceNotAvailableException {
+            mProbes.add(probes);
+            if (probes.equals(DeviceInfoConstants.PROBES_CHEAP)) {
+                return mCheapMetrics;
+            }
+            mProbeThread = Thread.currentThread();
+            if (mRelease != null) {
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            if (mDeviceNotAvailable) {
+                throw new DeviceNotAvailableException();
+            }
+            if (mExpensiveMetrics == null
+                    || probes.equals(DeviceInfoConstants.PROBES_EXPENSIVE)) {
+                return mExpensiveMetrics;
+            }
+            Map<String, String> metrics = new HashMap<String, String>();
+            metrics.put(DeviceInfoConstants.PROCESSES,
+                    mExpensiveMetrics.get(DeviceInfoConstants.PROCESSES));
+            return metrics;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMockDevice = EasyMock.createMock(ITestDevice.class);
+        mMockListener = EasyMock.createStrictMock(ITestInvocationListener.class);
+        EasyMock.expect(mMockDevice.getSerialNumber()).andStubReturn("serial1");
+        EasyMock.expect(mMockDevice.executeShellCommand("getprop ro.build.fingerprint"))
+                .andStubReturn("fingerprint1\r\n");
+        mCheapMetrics = new HashMap<String, String>();
+        mCheapMetrics.put(DeviceInfoConstants.BUILD_FINGERPRINT, "fingerprint1");
+        mExpensiveMetrics = new HashMap<String, String>();
+        mExpensiveMetrics.put(DeviceInfoConstants.GRAPHICS_RENDERER, "renderer1");
+        mExpensiveMetrics.put(DeviceInfoConstants.PROCESSES, "ueventd:0;");
+        DeviceInfoCollector.clearCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DeviceInfoCollector.clearCache();
+        super.tearDown();
+    }
+
+    /**
+     * Test that the expensive probes run in the background and are forwarded as a second run,
+     * and that only their GLES info is cached.
+     */
+    public void testExpensiveInfo_background() throws Exception {
+        expectRun(mExpensiveMetrics);
+        EasyMock.replay(mMockDevice, mMockListener);
+
+        StubCollector collector = new StubCollector();
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(mMockListener, true);
+        // only the first call forwards anything
+        collector.forwardExpensiveInfo(mMockListener, true);
+        EasyMock.verify(mMockDevice, mMockListener);
+        assertEquals(2, collector.mProbes.size());
+        assertEquals(DeviceInfoConstants.PROBES_CHEAP, collector.mProbes.get(0));
+        assertEquals(DeviceInfoConstants.PROBES_EXPENSIVE, collector.mProbes.get(1));
+        assertNotSame(Thread.currentThread(), collector.mProbeThread);
+        assertEquals(Collections.singletonMap(DeviceInfoConstants.GRAPHICS_RENDERER, "renderer1"),
+                DeviceInfoCollector.getCachedInfo("serial1/fingerprint1"));
+    }
+
+    /**
+     * Test that the cheap probes and the process scan still run on a build with cached GLES
+     * info, and the cached info is forwarded with the processes.
+     */
+    public void testExpensiveInfo_cached() throws Exception {
+        DeviceInfoCollector.putCachedInfo("serial1/fingerprint1",
+                Collections.singletonMap(DeviceInfoConstants.GRAPHICS_RENDERER, "renderer1"));
+        mExpensiveMetrics.put(DeviceInfoConstants.PROCESSES, "ueventd:0;vold:0;");
+        expectRun(mExpensiveMetrics);
+        EasyMock.replay(mMockDevice, mMockListener);
+
+        StubCollector collector = new StubCollector();
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(mMockListener, true);
+        EasyMock.verify(mMockDevice, mMockListener);
+        assertEquals(DeviceInfoConstants.PROBES_CHEAP, collector.mProbes.get(0));
+        assertEquals(DeviceInfoConstants.PROBES_PROCESSES, collector.mProbes.get(1));
+    }
+
+    /**
+     * Test that probes which don't finish in time are omitted and not cached.
+     */
+    public void testExpensiveInfo_timeout() throws Exception {
+        EasyMock.replay(mMockDevice, mMockListener);
+
+        StubCollector collector = new StubCollector();
+        collector.mRelease = new CountDownLatch(1);
+        collector.setExpensiveInfoTimeout(50);
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(mMockListener, true);
+        collector.mRelease.countDown();
+        EasyMock.verify(mMockDevice, mMockListener);
+        assertNull(DeviceInfoCollector.getCachedInfo("serial1/fingerprint1"));
+    }
+
+    /**
+     * Test that the probes are not waited for if the device is gone, but the cached info is
+     * still forwarded.
+     */
+    public void testExpensiveInfo_noWait() throws Exception {
+        Map<String, String> cachedMetrics =
+                Collections.singletonMap(DeviceInfoConstants.GRAPHICS_RENDERER, "renderer1");
+        DeviceInfoCollector.putCachedInfo("serial1/fingerprint1", cachedMetrics);
+        expectRun(cachedMetrics);
+        EasyMock.replay(mMockDevice, mMockListener);
+
+        StubCollector collector = new StubCollector();
+        collector.mRelease = new CountDownLatch(1);
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        long start = System.currentTimeMillis();
+        collector.forwardExpensiveInfo(mMockListener, false);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        collector.mRelease.countDown();
+        EasyMock.verify(mMockDevice, mMockListener);
+    }
+
+    /**
+     * Test that nothing is forwarded or cached if the expensive probes fail.
+     */
+    public void testExpensiveInfo_probeFailure() throws Exception {
+        EasyMock.replay(mMockDevice, mMockListener);
+
+        StubCollector collector = new StubCollector();
+        mExpensiveMetrics = null;
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(mMockListener, true);
+
+        collector = new StubCollector();
+        collector.mDeviceNotAvailable = true;
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(mMockListener, true);
+        EasyMock.verify(mMockDevice, mMockListener);
+        assertNull(DeviceInfoCollector.getCachedInfo("serial1/fingerprint1"));
+    }
+
+    /**
+     * Test that the expensive probes don't run if the cheap ones failed.
+     */
+    public void testExpensiveInfo_cheapFailure() throws Exception {
+        EasyMock.replay(mMockDevice, mMockListener);
+
+        StubCollector collector = new StubCollector();
+        mCheapMetrics = null;
+        collector.collectCheapInfo(mMockListener);
+        collector.startExpensiveInfo();
+        collector.forwardExpensiveInfo(mMockListener, true);
+        EasyMock.verify(mMockDevice, mMockListener);
+        assertEquals(1, collector.mProbes.size());
+    }
+
+    public void testGetCachedInfo() {
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put(DeviceInfoConstants.GRAPHICS_RENDERER, "renderer1");
+        DeviceInfoCollector.putCachedInfo("serial1/fingerprint1", metrics);
+        assertEquals(metrics, DeviceInfoCollector.getCachedInfo("serial1/fingerprint1"));
+        assertNull(DeviceInfoCollector.getCachedInfo("serial2/fingerprint1"));
+        assertNull(DeviceInfoCollector.getCachedInfo(null));
+    }
+
+    private void expectRun(Map<String, String> metrics) {
+        mMockListener.testRunStarted(DeviceInfoCollector.APP_PACKAGE_NAME, 0);
+        mMockListener.testRunEnded(0, metrics);
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.android.cts.tradefed.result;
 
+import com.android.cts.util.MetricRecord;
+import com.android.cts.util.ReportCodec;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
 import com.android.ddmlib.testrunner.ITestRunListener.TestFailure;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.build.IFolderBuildInfo;
@@ -30,7 +34,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -152,6 +159,67 @@ public class CtsXmlResultReporterTest extends TestCase {
         assertTrue(output.contains(failureTag));
     }
 
+    /**
+     * Test that a performance result passed in test metrics ends up in the report.
+     */
+    public void testPerformanceResult() {
+        Map<String, String> emptyMap = Collections.emptyMap();
+        final TestIdentifier testId = new TestIdentifier("com.foo.FooTest", "testFoo");
+        double[] values = {1.5, 2.5};
+        List<MetricRecord> details = new ArrayList<MetricRecord>();
+        details.add(new MetricRecord("com.foo.FooTest#testFoo:10", "frame time",
+                ResultType.LOWER_BETTER, ResultUnit.MS, Double.NaN, values));
+        double[] summaryValue = {2.0};
+        MetricRecord summary = new MetricRecord(null, "average", ResultType.LOWER_BETTER,
+                ResultUnit.MS, Double.NaN, summaryValue);
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put("CTS_RESULT", ReportCodec.encode(summary, details));
+        mResultReporter.invocationStarted(mMockBuild);
+        mResultReporter.testRunStarted("run", 1);
+        mResultReporter.testStarted(testId);
+        mResultReporter.testEnded(testId, metrics);
+        mResultReporter.testRunEnded(3, emptyMap);
+        mResultReporter.invocationEnded(1);
+        String output =  getOutput();
+        assertTrue(output.contains(
+                "<Summary message=\"average\" scoreType=\"lower_better\" unit=\"ms\">2.0"));
+        assertTrue(output.contains("<ValueArray source=\"com.foo.FooTest#testFoo:10\" "
+                + "message=\"frame time\" scoreType=\"lower_better\" unit=\"ms\">"));
+        assertTrue(output.contains("<Value>1.5</Value>"));
+        assertTrue(output.contains("<Value>2.5</Value>"));
+    }
+
+    /**
+     * Test that long arrays, which are only summarized in the device log, are reported with
+     * every value.
+     */
+    public void testPerformanceResult_longArray() {
+        Map<String, String> emptyMap = Collections.emptyMap();
+        final TestIdentifier testId = new TestIdentifier("com.foo.FooTest", "testFoo");
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        List<MetricRecord> details = new ArrayList<MetricRecord>();
+        details.add(new MetricRecord("com.foo.FooTest#testFoo:10", "frame time",
+                ResultType.LOWER_BETTER, ResultUnit.MS, Double.NaN, values));
+        double[] summaryValue = {49.5};
+        MetricRecord summary = new MetricRecord(null, "average", ResultType.LOWER_BETTER,
+                ResultUnit.MS, Double.NaN, summaryValue);
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put("CTS_RESULT", ReportCodec.encode(summary, details));
+        mResultReporter.invocationStarted(mMockBuild);
+        mResultReporter.testRunStarted("run", 1);
+        mResultReporter.testStarted(testId);
+        mResultReporter.testEnded(testId, metrics);
+        mResultReporter.testRunEnded(3, emptyMap);
+        mResultReporter.invocationEnded(1);
+        String output = getOutput();
+        assertEquals(values.length, output.split("<Value>", -1).length - 1);
+        assertTrue(output.contains("<Value>0.0</Value>"));
+        assertTrue(output.contains("<Value>99.0</Value>"));
+    }
+
     /**
      * Gets the output produced, stripping it of extraneous whitespace characters.
      */
@@ -135,6 +135,51 @@ public class DeviceInfoResultTest extends TestCase {
                 DeviceInfoConstants.BUILD_FINGERPRINT).contains("ERROR"));
     }
 
+    /**
+     * Test that the late results of the expensive probes are merged with the earlier ones.
+     */
+    public void testPopulateMetrics_late() throws Exception {
+        DeviceInfoResult info = new DeviceInfoResult();
+        info.populateMetrics(getCheapMetrics());
+        info.populateMetrics(getExpensiveMetrics());
+        assertMerged(info);
+    }
+
+    /**
+     * Test that the parts are merged the same way when the expensive results come first.
+     */
+    public void testPopulateMetrics_lateFirst() throws Exception {
+        DeviceInfoResult info = new DeviceInfoResult();
+        info.populateMetrics(getExpensiveMetrics());
+        info.populateMetrics(getCheapMetrics());
+        assertMerged(info);
+    }
+
+    private Map<String, String> getCheapMetrics() {
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put(DeviceInfoConstants.BUILD_FINGERPRINT, "fingerprint1");
+        metrics.put(DeviceInfoConstants.SERIAL_NUMBER, "device1");
+        metrics.put(DeviceInfoConstants.FEATURES, "android.hardware.bluetooth:sdk:true;");
+        return metrics;
+    }
+
+    private Map<String, String> getExpensiveMetrics() {
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put(DeviceInfoConstants.PROCESSES, "ueventd:0;");
+        metrics.put(DeviceInfoConstants.OPEN_GL_COMPRESSED_TEXTURE_FORMATS, "texture1;");
+        return metrics;
+    }
+
+    private void assertMerged(DeviceInfoResult info) {
+        Map<String, String> metrics = info.getMetrics();
+        assertEquals(5, metrics.size());
+        assertEquals("fingerprint1", metrics.get(DeviceInfoConstants.BUILD_FINGERPRINT));
+        assertEquals("device1", metrics.get(DeviceInfoConstants.SERIAL_NUMBER));
+        assertEquals("ueventd:0;", metrics.get(DeviceInfoConstants.PROCESSES));
+        assertEquals("texture1;", metrics.get(
+                DeviceInfoConstants.OPEN_GL_COMPRESSED_TEXTURE_FORMATS));
+    }
+
     /**
      * Helper method to add given metric to the {@link DeviceInfoResult}
      */
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.ddmlib.testrunner.ITestRunListener.TestFailure;
+import com.android.ddmlib.testrunner.TestIdentifier;
+import com.android.tradefed.result.ByteArrayInputStreamSource;
+import com.android.tradefed.result.LogDataType;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Unit tests for {@link IssueReporter}, against a local HTTP server.
+ */
+public class IssueReporterTest extends TestCase {
+
+    private HttpServer mServer;
+    private IssueReporter mReporter;
+    private final List<String> mRequests = new CopyOnWriteArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream input = exchange.getRequestBody();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+                mRequests.add(body.toString("ISO-8859-1"));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+        mReporter = new IssueReporter(
+                "http://localhost:" + mServer.getAddress().getPort() + "/issue");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.stop(0);
+        super.tearDown();
+    }
+
+    /**
+     * Test that failures only differing in their message have the same signature.
+     */
+    public void testGetSignature() {
+        String trace1 = "junit.framework.AssertionFailedError: took 120 ms\n"
+                + "\tat junit.framework.Assert.fail(Assert.java:50)\n"
+                + "\tat android.foo.cts.FooTest.checkTime(FooTest.java:20)\n";
+        String trace2 = "junit.framework.AssertionFailedError: took 95 ms\n"
+                + "\tat junit.framework.Assert.fail(Assert.java:50)\n"
+                + "\tat android.foo.cts.FooTest.checkTime(FooTest.java:20)\n";
+        String trace3 = "junit.framework.AssertionFailedError: took 95 ms\n"
+                + "\tat junit.framework.Assert.fail(Assert.java:50)\n"
+                + "\tat android.foo.cts.FooTest.checkSize(FooTest.java:40)\n";
+        assertEquals(IssueReporter.getSignature(trace1), IssueReporter.getSignature(trace2));
+        assertFalse(IssueReporter.getSignature(trace2).equals(
+                IssueReporter.getSignature(trace3)));
+    }
+
+    /**
+     * Test that assertEquals failures of different tests, which share all their top JUnit
+     * frames, have different signatures.
+     */
+    public void testGetSignature_assertEquals() {
+        String trace1 = getAssertEqualsTrace("testSize", 40);
+        String trace2 = getAssertEqualsTrace("testCount", 52);
+        assertFalse(IssueReporter.getSignature(trace1).equals(
+                IssueReporter.getSignature(trace2)));
+        assertEquals(IssueReporter.getSignature(trace1),
+                IssueReporter.getSignature(trace1.replace("<1>", "<3>")));
+        assertTrue(IssueReporter.getSignature(trace1).contains("FooTest.testSize"));
+        assertFalse(IssueReporter.getSignature(trace1).contains("Assert.fail"));
+    }
+
+    /**
+     * Test that android.test assertion frames are left out of the signature too.
+     */
+    public void testGetSignature_moreAsserts() {
+        String trace = "junit.framework.AssertionFailedError: expected to contain 1\n"
+                + "\tat junit.framework.Assert.fail(Assert.java:50)\n"
+                + "\tat android.test.MoreAsserts.failWithMessage(MoreAsserts.java:597)\n"
+                + "\tat android.test.MoreAsserts.assertContentsInAnyOrder("
+                + "MoreAsserts.java:301)\n"
+                + "\tat android.foo.cts.FooTest.testList(FooTest.java:60)\n"
+                + "\tat android.test.InstrumentationTestCase.runMethod("
+                + "InstrumentationTestCase.java:214)\n";
+        assertEquals("junit.framework.AssertionFailedError\n"
+                + "at android.foo.cts.FooTest.testList(FooTest.java:60)\n"
+                + "at android.test.InstrumentationTestCase.runMethod("
+                + "InstrumentationTestCase.java:214)",
+                IssueReporter.getSignature(trace));
+    }
+
+    /**
+     * Test that failures reported before the build info are kept until it is known.
+     */
+    public void testNoBuildInfoYet() throws Exception {
+        String trace = "java.lang.IllegalStateException: failure\n"
+                + "\tat android.foo.cts.FooTest.check(FooTest.java:1)\n";
+        failTest(0, trace);
+        mReporter.testRunEnded(1000, Collections.<String, String>emptyMap());
+        failTest(1, trace);
+        mReporter.testRunEnded(1000, getDeviceMetrics());
+        mReporter.invocationEnded(1000);
+
+        assertEquals(1, mRequests.size());
+        assertEquals(1, count(mRequests.get(0), "name=\"failureCount\"\n\n2\n"));
+    }
+
+    /**
+     * Test that repeated failures are sent once, in one request with one bug report.
+     */
+    public void testBatching() throws Exception {
+        mReporter.testRunStarted("run", 30);
+        for (int i = 0; i < 30; i++) {
+            failTest(i, "java.lang.IllegalStateException: failure " + i + "\n"
+                    + "\tat android.foo.cts.FooTest.check" + (i % 3) + "(FooTest.java:1)\n");
+        }
+        mReporter.testRunEnded(1000, getDeviceMetrics());
+        mReporter.invocationEnded(1000);
+
+        assertEquals(1, mRequests.size());
+        String request = mRequests.get(0);
+        assertEquals(3, count(request, "name=\"stackTrace\""));
+        assertEquals(3, count(request, "name=\"failureCount\"\n\n10\n"));
+        assertEquals(1, count(request, "name=\"bugReport\""));
+        assertTrue(request.contains("android.foo.cts.FooTest#test0\n"
+                + "android.foo.cts.FooTest#test3\n"));
+    }
+
+    /**
+     * Test that a failure already reported is not sent again.
+     */
+    public void testDuplicateAcrossRuns() throws Exception {
+        String trace = "java.lang.IllegalStateException: failure\n"
+                + "\tat android.foo.cts.FooTest.check(FooTest.java:1)\n";
+        failTest(0, trace);
+        mReporter.testRunEnded(1000, getDeviceMetrics());
+        failTest(1, trace);
+        mReporter.testRunEnded(1000, Collections.<String, String>emptyMap());
+        mReporter.invocationEnded(1000);
+
+        assertEquals(1, mRequests.size());
+    }
+
+    /**
+     * Test that more distinct failures than fit in a request are split in several requests.
+     */
+    public void testFullBatch() throws Exception {
+        // the device info run, so the first batch can be sent as soon as it is full
+        mReporter.testRunEnded(1000, getDeviceMetrics());
+        int failures = IssueReporter.MAX_BATCH_ISSUES + 1;
+        for (int i = 0; i < failures; i++) {
+            failTest(i, "java.lang.IllegalStateException\n"
+                    + "\tat android.foo.cts.FooTest.check" + i + "(FooTest.java:1)\n");
+        }
+        mReporter.testRunEnded(1000, Collections.<String, String>emptyMap());
+        mReporter.invocationEnded(1000);
+
+        assertEquals(2, mRequests.size());
+        int issues = 0;
+        for (String request : mRequests) {
+            issues += count(request, "name=\"stackTrace\"");
+        }
+        assertEquals(failures, issues);
+    }
+
+    private void failTest(int index, String trace) {
+        TestIdentifier test = new TestIdentifier("android.foo.cts.FooTest", "test" + index);
+        mReporter.testStarted(test);
+        mReporter.testFailed(TestFailure.FAILURE, test, trace);
+        mReporter.testLog("bug-" + index, LogDataType.TEXT,
+                new ByteArrayInputStreamSource(("bugreport " + index).getBytes()));
+        mReporter.testEnded(test, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @return the trace of a JUnit 3 assertEquals(int, int) failure in a test of FooTest
+     */
+    private static String getAssertEqualsTrace(String testName, int line) {
+        return "junit.framework.AssertionFailedError: expected:<1> but was:<2>\n"
+                + "\tat junit.framework.Assert.fail(Assert.java:50)\n"
+                + "\tat junit.framework.Assert.failNotEquals(Assert.java:287)\n"
+                + "\tat junit.framework.Assert.assertEquals(Assert.java:67)\n"
+                + "\tat junit.framework.Assert.assertEquals(Assert.java:199)\n"
+                + "\tat junit.framework.Assert.assertEquals(Assert.java:205)\n"
+                + "\tat android.foo.cts.FooTest." + testName + "(FooTest.java:" + line + ")\n"
+                + "\tat java.lang.reflect.Method.invokeNative(Native Method)\n"
+                + "\tat android.test.InstrumentationTestCase.runMethod("
+                + "InstrumentationTestCase.java:214)\n"
+                + "\tat android.test.InstrumentationTestCase.runTest("
+                + "InstrumentationTestCase.java:199)\n"
+                + "\tat junit.framework.TestCase.runBare(TestCase.java:134)\n"
+                + "\tat junit.framework.TestResult$1.protect(TestResult.java:115)\n";
+    }
+
+    private static Map<String, String> getDeviceMetrics() {
+        Map<String, String> metrics = new HashMap<String, String>();
+        metrics.put("buildName", "product");
+        metrics.put("build_type", "user");
+        metrics.put("buildID", "ABC123");
+        return metrics;
+    }
+
+    private static int count(String text, String pattern) {
+        int count = 0;
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link PerfRegressionDetector}.
+ */
+public class PerfRegressionDetectorTest extends TestCase {
+
+    /** small alternating noise, so that the variance of each segment is not 0 */
+    private static final double[] NOISE = { 0.5, -0.3, 0.2, -0.6, 0.4, -0.1, 0.3, -0.4 };
+
+    public void testGetStatistics() {
+        double[] values = { 1, 2, 3, 4, 3, 4, 5, 6 };
+        double[] statistics = PerfRegressionDetector.getStatistics(values, 2);
+        assertEquals(values.length + 1, statistics.length);
+        assertEquals(0.0, statistics[1]);
+        assertEquals(0.0, statistics[7]);
+        // means 2.5 and 4.5, pooled variance (5 + 5) / 6
+        assertEquals(2.0 / Math.sqrt(10.0 / 6 * 0.5), statistics[4], 1e-12);
+        // means 1.5 and 25 / 6, pooled variance (0.5 + 41 / 6) / 6
+        assertEquals((25.0 / 6 - 1.5) / Math.sqrt((0.5 + 41.0 / 6) / 6 * (0.5 + 1.0 / 6)),
+                statistics[2], 1e-12);
+    }
+
+    public void testGetStatistics_noVariance() {
+        double[] statistics = PerfRegressionDetector.getStatistics(
+                new double[] { 5, 5, 5, 5, 7, 7, 7, 7 }, 2);
+        assertEquals(Double.POSITIVE_INFINITY, statistics[4]);
+        assertTrue(statistics[3] < Double.POSITIVE_INFINITY);
+        assertEquals(0.0, PerfRegressionDetector.getStatistics(
+                new double[] { 5, 5, 5, 5 }, 2)[2]);
+    }
+
+    /**
+     * Test that series of noise only, even of skewed noise, have a change point with a
+     * probability of at most alpha.
+     */
+    public void testFindChangePoints_noise() {
+        final int seriesCount = 400;
+        final double alpha = 0.01;
+        PerfRegressionDetector detector = new PerfRegressionDetector(alpha, 0.0, 3);
+        Random random = new Random(1);
+        int withChangePoints = 0;
+        for (int i = 0; i < seriesCount; i++) {
+            double[] values = new double[30];
+            for (int j = 0; j < values.length; j++) {
+                // normal noise, or exponential noise with a long tail
+                values[j] = i % 2 == 0 ? random.nextGaussian() : -Math.log(random.nextDouble());
+            }
+            List<Integer> changePoints = new ArrayList<Integer>();
+            detector.findChangePoints(values, 0, values.length, random, changePoints,
+                    new ArrayList<Double>());
+            if (!changePoints.isEmpty()) {
+                withChangePoints++;
+            }
+        }
+        // expected at most 4, allow for the chance of the sample
+        assertTrue(withChangePoints + " of " + seriesCount,
+                withChangePoints <= seriesCount * alpha * 2.5);
+    }
+
+    /**
+     * Test that a step down of a higher better metric is reported at the first lower session.
+     */
+    public void testDetect_higherBetter() {
+        PerfTrendStore.Series series = createSeries(ResultType.HIGHER_BETTER,
+                100, 100, 100, 100, 100, 100, 80, 80, 80, 80, 80, 80);
+        List<PerfRegressionDetector.Regression> regressions =
+                new PerfRegressionDetector().detect(Arrays.asList(series));
+        assertEquals(1, regressions.size());
+        PerfRegressionDetector.Regression regression = regressions.get(0);
+        assertSame(series, regression.getSeries());
+        assertEquals("session06", regression.getSession());
+        assertEquals(100.0, regression.getMeanBefore(), 1.0);
+        assertEquals(80.0, regression.getMeanAfter(), 1.0);
+        assertEquals(-20.0, regression.getChangePercent(), 1.0);
+        assertTrue(regression.getPValue() < 0.01);
+    }
+
+    /**
+     * Test that only the change of a lower better metric for the worse is reported.
+     */
+    public void testDetect_lowerBetter() {
+        PerfTrendStore.Series series = createSeries(ResultType.LOWER_BETTER,
+                20, 20, 20, 20, 20, 20, 10, 10, 10, 10, 10, 10, 15, 15, 15, 15, 15, 15);
+        List<PerfRegressionDetector.Regression> regressions =
+                new PerfRegressionDetector(0.01, 5.0, 3).detect(Arrays.asList(series));
+        assertEquals(1, regressions.size());
+        assertEquals("session12", regressions.get(0).getSession());
+        assertEquals(50.0, regressions.get(0).getChangePercent(), 5.0);
+    }
+
+    /**
+     * Test that improvements, small changes, noise and neutral metrics are not reported.
+     */
+    public void testDetect_none() {
+        PerfRegressionDetector detector = new PerfRegressionDetector(0.01, 5.0, 3);
+        assertEquals(0, detector.detect(Arrays.asList(
+                createSeries(ResultType.HIGHER_BETTER, 80, 80, 80, 80, 100, 100, 100, 100),
+                createSeries(ResultType.HIGHER_BETTER, 100, 100, 100, 100, 98, 98, 98, 98),
+                createSeries(ResultType.HIGHER_BETTER, 100, 100, 100, 100, 100, 100, 100, 100),
+                createSeries(ResultType.NEUTRAL, 100, 100, 100, 100, 50, 50, 50, 50))).size());
+    }
+
+    /**
+     * Test that a change point is not placed with fewer than the minimum sessions on one side.
+     */
+    public void testDetect_tooFewSessions() {
+        PerfTrendStore.Series series = createSeries(ResultType.HIGHER_BETTER,
+                100, 100, 100, 100, 100, 100, 100, 100, 100, 100, 100, 100, 50, 50);
+        for (PerfRegressionDetector.Regression regression :
+                new PerfRegressionDetector(0.05, 5.0, 3).detect(Arrays.asList(series))) {
+            assertTrue(series.getSessions().indexOf(regression.getSession()) <= 11);
+        }
+        List<PerfRegressionDetector.Regression> regressions =
+                new PerfRegressionDetector(0.05, 5.0, 2).detect(Arrays.asList(series));
+        assertEquals(1, regressions.size());
+        assertEquals("session12", regressions.get(0).getSession());
+    }
+
+    private static PerfTrendStore.Series createSeries(ResultType type, double... means) {
+        PerfTrendStore.Series series = null;
+        for (int i = 0; i < means.length; i++) {
+            PerfTrendStore.Sample sample = new PerfTrendStore.Sample(
+                    String.format("session%02d", i), "fingerprint", "Test#test",
+                    PerfTrendStore.SUMMARY, "score", type, ResultUnit.SCORE,
+                    means[i] + NOISE[i % NOISE.length]);
+            if (series == null) {
+                series = new PerfTrendStore.Series(sample);
+            }
+            series.add(sample);
+        }
+        return series;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PerfTrendStore}.
+ */
+public class PerfTrendStoreTest extends TestCase {
+
+    private static final String RESULT =
+        "<TestResult>" +
+        "<DeviceInfo>" +
+            "<BuildInfo build_fingerprint=\"%s\" />" +
+        "</DeviceInfo>" +
+        "<TestPackage name=\"pkgName\" appPackageName=\"appPkgName\" digest=\"digValue\" >" +
+        "<TestSuite name=\"com\" >" +
+            "<TestCase name=\"PerfTest\" >" +
+                 "<Test name=\"testFps\" endtime=\"et\" starttime=\"st\" result=\"pass\" >" +
+                     "<Summary message=\"average\" scoreType=\"higher_better\" unit=\"fps\" >" +
+                         "59.5" +
+                     "</Summary>" +
+                     "<Details>" +
+                         "<ValueArray source=\"PerfTest#testFps:12\" message=\"frames\" " +
+                                 "scoreType=\"lower_better\" unit=\"ms\" >" +
+                             "<Value>16.0</Value>" +
+                             "<Value>17.0</Value>" +
+                         "</ValueArray>" +
+                     "</Details>" +
+                 "</Test>" +
+            "</TestCase>" +
+        "</TestSuite>" +
+        "</TestPackage>" +
+        "</TestResult>";
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("perf_trends", ".txt");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that the summary and the average of each details array of a result are sampled.
+     */
+    public void testGetSamples() throws Exception {
+        TestResults results = new TestResults();
+        results.parse(new StringReader(String.format(RESULT, "fp1")));
+        List<PerfTrendStore.Sample> samples = PerfTrendStore.getSamples("session1", results);
+        assertEquals(2, samples.size());
+        PerfTrendStore.Sample summary = samples.get(0);
+        assertEquals("session1", summary.mSession);
+        assertEquals("fp1", summary.mFingerprint);
+        assertEquals("com.PerfTest#testFps", summary.mTest);
+        assertEquals(PerfTrendStore.SUMMARY, summary.mKind);
+        assertEquals("average", summary.mMessage);
+        assertEquals(ResultType.HIGHER_BETTER, summary.mType);
+        assertEquals(ResultUnit.FPS, summary.mUnit);
+        assertEquals(59.5, summary.mValue);
+        PerfTrendStore.Sample details = samples.get(1);
+        assertEquals(PerfTrendStore.DETAILS, details.mKind);
+        assertEquals("frames", details.mMessage);
+        assertEquals(ResultUnit.MS, details.mUnit);
+        assertEquals(16.5, details.mValue);
+    }
+
+    /**
+     * Test that a result without a consistent build fingerprint is not sampled.
+     */
+    public void testGetSamples_badFingerprint() throws Exception {
+        TestResults results = new TestResults();
+        results.parse(new StringReader(String.format(RESULT,
+                "ERROR: Inconsistent results: fp1, fp2")));
+        assertEquals(0, PerfTrendStore.getSamples("session1", results).size());
+    }
+
+    /**
+     * Test that a summary or details array with a value which is not finite is not sampled.
+     */
+    public void testGetSamples_notFinite() throws Exception {
+        TestResults results = new TestResults();
+        results.parse(new StringReader(String.format(RESULT, "fp1")
+                .replace("59.5", "NaN").replace("<Value>17.0</Value>",
+                        "<Value>Infinity</Value>")));
+        assertEquals(0, PerfTrendStore.getSamples("session1", results).size());
+    }
+
+    /**
+     * Test that the added sessions are loaded by a new store, and the series are in session
+     * order.
+     */
+    public void testAddSession_reload() throws Exception {
+        PerfTrendStore store = new PerfTrendStore(mFile);
+        store.addSession("session2", 2, Arrays.asList(
+                sample("session2", "fp1", "average", 20),
+                sample("session2", "fp2", "average", 200)));
+        store.addSession("session1", 1, Arrays.asList(
+                sample("session1", "fp1", "average", 10),
+                sample("session1", "fp1", "\tmax\n", 11)));
+
+        store = new PerfTrendStore(mFile);
+        assertTrue(store.hasSession("session1"));
+        assertTrue(store.hasSession("session2"));
+        assertEquals(4, store.getSampleCount());
+        Collection<PerfTrendStore.Series> allSeries = store.getSeries();
+        assertEquals(3, allSeries.size());
+        Iterator<PerfTrendStore.Series> iterator = allSeries.iterator();
+        PerfTrendStore.Series series = iterator.next();
+        assertEquals("fp1", series.getFingerprint());
+        assertEquals("Test#test", series.getTest());
+        assertEquals("average", series.getMetric());
+        assertEquals(ResultType.LOWER_BETTER, series.getType());
+        assertEquals(ResultUnit.MS, series.getUnit());
+        assertEquals(Arrays.asList("session1", "session2"), series.getSessions());
+        assertTrue(Arrays.equals(new double[] { 10, 20 }, series.getValues()));
+        assertEquals(" max ", iterator.next().getMetric());
+        assertEquals("fp2", iterator.next().getFingerprint());
+    }
+
+    /**
+     * Test that adding a session again replaces its samples.
+     */
+    public void testAddSession_replace() throws Exception {
+        PerfTrendStore store = new PerfTrendStore(mFile);
+        store.addSession("session1", 1, Arrays.asList(sample("session1", "fp1", "average", 10)));
+        store.addSession("session2", 2, Arrays.asList(sample("session2", "fp1", "average", 20)));
+        store.addSession("session1", 3, Arrays.asList(sample("session1", "fp1", "average", 15),
+                sample("session1", "fp1", "max", 16)));
+
+        store = new PerfTrendStore(mFile);
+        assertEquals(3, store.getSampleCount());
+        PerfTrendStore.Series series = store.getSeries().iterator().next();
+        assertTrue(Arrays.equals(new double[] { 15, 20 }, series.getValues()));
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+    }
+
+    /**
+     * Test that malformed lines of the store file are ignored.
+     */
+    public void testLoad_malformed() throws Exception {
+        PerfTrendStore store = new PerfTrendStore(mFile);
+        store.addSession("session1", 1, Arrays.asList(sample("session1", "fp1", "average", 10)));
+        FileWriter writer = new FileWriter(mFile, true);
+        writer.write("M\tsession1\tfp1\tTest#test\tsummary\tavg\tLOWER_BETTER\tMS\tfast\n");
+        writer.write("M\tsession1\tfp1\tTest#test\tsummary\tavg\tFASTER\tMS\t1.0\n");
+        writer.write("garbage\n");
+        writer.close();
+
+        store = new PerfTrendStore(mFile);
+        assertTrue(store.hasSession("session1"));
+        assertEquals(1, store.getSampleCount());
+    }
+
+    /**
+     * Test that samples which are not finite in the store file are ignored, so that they do not
+     * reach the regression detector.
+     */
+    public void testLoad_notFinite() throws Exception {
+        PerfTrendStore store = new PerfTrendStore(mFile);
+        store.addSession("session1", 1, Arrays.asList(sample("session1", "fp1", "average", 10)));
+        FileWriter writer = new FileWriter(mFile, true);
+        writer.write("M\tsession1\tfp1\tTest#test\tsummary\taverage\tLOWER_BETTER\tMS\tNaN\n");
+        writer.write("M\tsession1\tfp1\tTest#test\tsummary\taverage\tLOWER_BETTER\tMS"
+                + "\t-Infinity\n");
+        writer.close();
+
+        store = new PerfTrendStore(mFile);
+        assertEquals(1, store.getSampleCount());
+        PerfTrendStore.Series series = store.getSeries().iterator().next();
+        assertTrue(Arrays.equals(new double[] { 10 }, series.getValues()));
+    }
+
+    /**
+     * Test that samples without a valid session line are ignored, so that rewriting the store
+     * does not fail.
+     */
+    public void testLoad_orphanSample() throws Exception {
+        FileWriter writer = new FileWriter(mFile);
+        writer.write("S\tsession1\tnot a time\n");
+        writer.write("M\tsession1\tfp1\tTest#test\tsummary\tavg\tLOWER_BETTER\tMS\t1.0\n");
+        writer.close();
+
+        PerfTrendStore store = new PerfTrendStore(mFile);
+        assertFalse(store.hasSession("session1"));
+        assertEquals(0, store.getSampleCount());
+        store.addSession("session2", 2, Arrays.asList(sample("session2", "fp1", "average", 20)));
+        store.addSession("session2", 3, Arrays.asList(sample("session2", "fp1", "average", 21)));
+        store = new PerfTrendStore(mFile);
+        assertEquals(1, store.getSampleCount());
+    }
+
+    private static PerfTrendStore.Sample sample(String session, String fingerprint,
+            String message, double value) {
+        return new PerfTrendStore.Sample(session, fingerprint, "Test#test",
+                PerfTrendStore.SUMMARY, message, ResultType.LOWER_BETTER, ResultUnit.MS, value);
+    }
+}
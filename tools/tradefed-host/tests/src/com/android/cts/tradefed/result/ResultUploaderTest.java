@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.result;
+
+import com.android.tradefed.util.FileUtil;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Unit tests for {@link ResultUploader}, against a local HTTP server.
+ */
+public class ResultUploaderTest extends TestCase {
+
+    private static final String FILE_HEADER = "Content-Transfer-Encoding: binary\n\n";
+
+    private File mTmpDir;
+    private File mSpoolDir;
+    private File mReportFile;
+    private HttpServer mServer;
+    private String mServerUrl;
+    // status codes to answer the next requests with, 200 once empty
+    private final List<Integer> mResponseCodes = new ArrayList<Integer>();
+    private final LinkedBlockingQueue<byte[]> mRequests = new LinkedBlockingQueue<byte[]>();
+    private final List<ResultUploader> mUploaders = new ArrayList<ResultUploader>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTmpDir = FileUtil.createTempDir("uploadtest");
+        mSpoolDir = new File(mTmpDir, ResultUploader.SPOOL_DIR_NAME);
+        mReportFile = new File(mTmpDir, "testResult.xml");
+        StringBuilder report = new StringBuilder("<TestResult>");
+        for (int i = 0; i < 10000; i++) {
+            report.append("<Test name=\"test").append(i).append("\" result=\"pass\" />\n");
+        }
+        report.append("</TestResult>");
+        FileOutputStream output = new FileOutputStream(mReportFile);
+        try {
+            output.write(report.toString().getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+
+        mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = readAll(exchange.getRequestBody());
+                int code;
+                synchronized (mResponseCodes) {
+                    code = mResponseCodes.isEmpty() ? 200 : mResponseCodes.remove(0);
+                }
+                exchange.sendResponseHeaders(code, -1);
+                exchange.close();
+                mRequests.add(body);
+            }
+        });
+        mServer.start();
+        mServerUrl = "http://localhost:" + mServer.getAddress().getPort() + "/upload";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (ResultUploader uploader : mUploaders) {
+            uploader.shutdown();
+        }
+        mServer.stop(0);
+        FileUtil.recursiveDelete(mTmpDir);
+        super.tearDown();
+    }
+
+    private ResultUploader createUploader(long backoffMs, int maxAttempts) {
+        ResultUploader uploader = new ResultUploader(mSpoolDir, backoffMs, backoffMs * 4,
+                maxAttempts);
+        mUploaders.add(uploader);
+        return uploader;
+    }
+
+    /**
+     * Test that the result is uploaded gzipped and the job removed.
+     */
+    public void testUpload() throws Exception {
+        ResultUploader uploader = createUploader(100, 3);
+        uploader.start();
+        uploader.enqueue(mServerUrl, "CTS", mReportFile, 0);
+
+        byte[] request = mRequests.poll(10, TimeUnit.SECONDS);
+        assertNotNull(request);
+        String body = new String(request, "ISO-8859-1");
+        assertTrue(body.contains("name=\"suite\"\n\nCTS\n"));
+        assertTrue(body.contains("filename=\"testResult.xml.gz\""));
+        assertEquals(FileUtil.readStringFromFile(mReportFile), getReport(request));
+        assertTrue("upload was not compressed", request.length < mReportFile.length() / 4);
+        waitForPending(uploader, 0);
+    }
+
+    /**
+     * Test that a failed upload is retried after a delay.
+     */
+    public void testRetry() throws Exception {
+        mResponseCodes.add(500);
+        mResponseCodes.add(503);
+        ResultUploader uploader = createUploader(200, 3);
+        uploader.start();
+        long start = System.currentTimeMillis();
+        uploader.enqueue(mServerUrl, "CTS", mReportFile, 0);
+
+        assertNotNull(mRequests.poll(10, TimeUnit.SECONDS));
+        assertEquals(1, uploader.getPendingCount());
+        assertNotNull(mRequests.poll(10, TimeUnit.SECONDS));
+        byte[] request = mRequests.poll(10, TimeUnit.SECONDS);
+        assertNotNull(request);
+        // backoff of 200 ms, then 400 ms
+        assertTrue(System.currentTimeMillis() - start >= 600);
+        assertEquals(FileUtil.readStringFromFile(mReportFile), getReport(request));
+        waitForPending(uploader, 0);
+    }
+
+    /**
+     * Test that an upload is dropped after the maximum number of attempts.
+     */
+    public void testGiveUp() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mResponseCodes.add(500);
+        }
+        ResultUploader uploader = createUploader(50, 2);
+        uploader.start();
+        uploader.enqueue(mServerUrl, "CTS", mReportFile, 0);
+
+        assertNotNull(mRequests.poll(10, TimeUnit.SECONDS));
+        assertNotNull(mRequests.poll(10, TimeUnit.SECONDS));
+        waitForPending(uploader, 0);
+        assertNull(mRequests.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test that an upload failing with a runtime exception is retried and dropped like any
+     * other failure, without stopping the uploads of other jobs.
+     */
+    public void testRuntimeException() throws Exception {
+        ResultUploader uploader = createUploader(50, 2);
+        uploader.start();
+        // not an HTTP URL, so the connection cannot be cast to HttpURLConnection
+        uploader.enqueue(mReportFile.toURI().toString(), "CTS", mReportFile, 0);
+        waitForPending(uploader, 0);
+
+        uploader.enqueue(mServerUrl, "CTS", mReportFile, 0);
+        byte[] request = mRequests.poll(10, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(FileUtil.readStringFromFile(mReportFile), getReport(request));
+        waitForPending(uploader, 0);
+    }
+
+    /**
+     * Test that a job file which cannot be read is kept for the next uploader, while an
+     * invalid one is deleted.
+     */
+    public void testUnreadableJob() throws Exception {
+        mSpoolDir.mkdirs();
+        // opening a directory fails with an IOException
+        File unreadable = new File(mSpoolDir, "unreadable" + ResultUploader.JOB_SUFFIX);
+        assertTrue(unreadable.mkdir());
+        File invalid = new File(mSpoolDir, "invalid" + ResultUploader.JOB_SUFFIX);
+        FileOutputStream output = new FileOutputStream(invalid);
+        try {
+            output.write("attempts=1\n".getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+
+        ResultUploader uploader = createUploader(100, 3);
+        uploader.start();
+        uploader.enqueue(mServerUrl, "CTS", mReportFile, 0);
+        assertNotNull(mRequests.poll(10, TimeUnit.SECONDS));
+        waitForPending(uploader, 1);
+        assertTrue(unreadable.isDirectory());
+        assertFalse(invalid.exists());
+    }
+
+    /**
+     * Test that uploads queued before a restart are sent by the next uploader.
+     */
+    public void testResume() throws Exception {
+        ResultUploader stopped = createUploader(100, 3);
+        stopped.enqueue(mServerUrl, "CTS", mReportFile, 0);
+        assertEquals(1, stopped.getPendingCount());
+
+        ResultUploader uploader = createUploader(100, 3);
+        uploader.start();
+        byte[] request = mRequests.poll(10, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(FileUtil.readStringFromFile(mReportFile), getReport(request));
+        waitForPending(uploader, 0);
+    }
+
+    /**
+     * Test that the upload rate is limited.
+     */
+    public void testMaxRate() throws Exception {
+        ResultUploader uploader = createUploader(100, 3);
+        uploader.start();
+        long start = System.currentTimeMillis();
+        uploader.enqueue(mServerUrl, "CTS", mReportFile, 10 * 1024);
+
+        byte[] request = mRequests.poll(20, TimeUnit.SECONDS);
+        assertNotNull(request);
+        long minDurationMs = (request.length - 10 * 1024) * 1000L / (10 * 1024);
+        assertTrue(System.currentTimeMillis() - start >= minDurationMs);
+        assertEquals(FileUtil.readStringFromFile(mReportFile), getReport(request));
+    }
+
+    /**
+     * Test that {@link ResultUploader#getBackoff(int)} doubles up to the maximum.
+     */
+    public void testGetBackoff() {
+        ResultUploader uploader = new ResultUploader(mSpoolDir, 1000, 5000, 10);
+        assertEquals(1000, uploader.getBackoff(1));
+        assertEquals(2000, uploader.getBackoff(2));
+        assertEquals(4000, uploader.getBackoff(3));
+        assertEquals(5000, uploader.getBackoff(4));
+        assertEquals(5000, uploader.getBackoff(60));
+    }
+
+    private void waitForPending(ResultUploader uploader, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (uploader.getPendingCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, uploader.getPendingCount());
+    }
+
+    /**
+     * Returns the uncompressed result XML in the given form.
+     */
+    private static String getReport(byte[] request) throws IOException {
+        String body = new String(request, "ISO-8859-1");
+        int start = body.indexOf(FILE_HEADER);
+        assertTrue(start >= 0);
+        start += FILE_HEADER.length();
+        InputStream input = new GZIPInputStream(
+                new ByteArrayInputStream(request, start, request.length - start));
+        return new String(readAll(input), "UTF-8");
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -17,7 +17,14 @@ package com.android.cts.tradefed.result;
 
 import com.android.tradefed.util.xml.AbstractXmlParser.ParseException;
 
+import com.android.cts.util.MetricRecord;
+import com.android.cts.util.ResultType;
+import com.android.cts.util.ResultUnit;
+import com.android.ddmlib.testrunner.TestIdentifier;
+
 import java.io.StringReader;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Unit tests for {@link TestResults} parsing.
@@ -48,6 +55,60 @@ public class TestResultsTest extends junit.framework.TestCase {
             "</TestSuite>" +
         "</TestSuite>";
 
+    private static final String TEST_PERFORMANCE =
+        RESULT_START + TEST_PACKAGE_START +
+        "<TestSuite name=\"com\" >" +
+            "<TestCase name=\"PerfTest\" >" +
+                 "<Test name=\"testFps\" endtime=\"et\" starttime=\"st\" result=\"pass\" >" +
+                     "<Summary message=\"average\" scoreType=\"higher_better\" unit=\"fps\" >" +
+                         "59.5" +
+                     "</Summary>" +
+                     "<Details>" +
+                         "<ValueArray source=\"PerfTest#testFps:12\" message=\"frames\" " +
+                                 "scoreType=\"lower_better\" unit=\"ms\" >" +
+                             "<Value>16.0</Value>" +
+                             "<Value>17.0</Value>" +
+                         "</ValueArray>" +
+                     "</Details>" +
+                 "</Test>" +
+                 "<Test name=\"testOther\" endtime=\"et\" starttime=\"st\" result=\"pass\" />" +
+            "</TestCase>" +
+        "</TestSuite>" +
+        TEST_PACKAGE_END + RESULT_END;
+
+    private static final String TEST_INVALID_PERFORMANCE =
+        RESULT_START + TEST_PACKAGE_START +
+        "<TestSuite name=\"com\" >" +
+            "<TestCase name=\"PerfTest\" >" +
+                 "<Test name=\"testBadType\" endtime=\"et\" starttime=\"st\" result=\"pass\" >" +
+                     "<Summary message=\"average\" scoreType=\"faster\" unit=\"fps\" >" +
+                         "59.5" +
+                     "</Summary>" +
+                 "</Test>" +
+                 "<Test name=\"testBadValue\" endtime=\"et\" starttime=\"st\" result=\"pass\" >" +
+                     "<Summary message=\"average\" scoreType=\"higher_better\" unit=\"fps\" >" +
+                         "59.5" +
+                     "</Summary>" +
+                     "<Details>" +
+                         "<ValueArray source=\"PerfTest#testFps:12\" message=\"frames\" " +
+                                 "scoreType=\"lower_better\" unit=\"parsecs\" >" +
+                             "<Value>16.0</Value>" +
+                         "</ValueArray>" +
+                         "<ValueArray source=\"PerfTest#testFps:13\" message=\"frames\" " +
+                                 "scoreType=\"lower_better\" unit=\"ms\" >" +
+                             "<Value>16.0</Value>" +
+                             "<Value>fast</Value>" +
+                         "</ValueArray>" +
+                         "<ValueArray source=\"PerfTest#testFps:14\" message=\"jank\" " +
+                                 "scoreType=\"lower_better\" unit=\"count\" >" +
+                             "<Value>2.0</Value>" +
+                         "</ValueArray>" +
+                     "</Details>" +
+                 "</Test>" +
+            "</TestCase>" +
+        "</TestSuite>" +
+        TEST_PACKAGE_END + RESULT_END;
+
     /**
      * Test parsing data with no result content
      */
@@ -103,4 +164,63 @@ public class TestResultsTest extends junit.framework.TestCase {
         assertEquals("msg", exampleTest.getMessage());
         assertEquals("at ExampleTest.testExample()", exampleTest.getStackTrace());
     }
+
+    /**
+     * Test parsing a result with a performance summary and details
+     */
+    public void testParse_performance() throws Exception {
+        TestResults parser = new TestResults();
+        parser.parse(new StringReader(TEST_PERFORMANCE));
+        TestPackageResult pkg = parser.getPackages().iterator().next();
+        Map<TestIdentifier, Test> results = pkg.getPerformanceResults();
+        assertEquals(1, results.size());
+        Map.Entry<TestIdentifier, Test> entry = results.entrySet().iterator().next();
+        assertEquals(new TestIdentifier("com.PerfTest", "testFps"), entry.getKey());
+        MetricRecord summary = entry.getValue().getSummary();
+        assertEquals("average", summary.getMessage());
+        assertEquals(ResultType.HIGHER_BETTER, summary.getType());
+        assertEquals(ResultUnit.FPS, summary.getUnit());
+        assertFalse(summary.hasTarget());
+        assertEquals(59.5, summary.getValue());
+        assertEquals(1, entry.getValue().getDetails().size());
+        MetricRecord detail = entry.getValue().getDetails().get(0);
+        assertEquals("frames", detail.getMessage());
+        assertEquals(ResultType.LOWER_BETTER, detail.getType());
+        assertEquals(2, detail.getValues().length);
+        assertEquals(17.0, detail.getValues()[1]);
+    }
+
+    /**
+     * Test that the score types and units are parsed in a locale with other upper case letters
+     */
+    public void testParse_performanceTurkish() throws Exception {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            TestResults parser = new TestResults();
+            parser.parse(new StringReader(TEST_PERFORMANCE));
+            TestPackageResult pkg = parser.getPackages().iterator().next();
+            Test test = pkg.getPerformanceResults().values().iterator().next();
+            assertEquals(ResultType.HIGHER_BETTER, test.getSummary().getType());
+            assertEquals(ResultType.LOWER_BETTER, test.getDetails().get(0).getType());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    /**
+     * Test that invalid performance metrics are skipped and the rest of the result is parsed
+     */
+    public void testParse_invalidPerformance() throws Exception {
+        TestResults parser = new TestResults();
+        parser.parse(new StringReader(TEST_INVALID_PERFORMANCE));
+        TestPackageResult pkg = parser.getPackages().iterator().next();
+        Map<TestIdentifier, Test> results = pkg.getPerformanceResults();
+        assertEquals(1, results.size());
+        Map.Entry<TestIdentifier, Test> entry = results.entrySet().iterator().next();
+        assertEquals(new TestIdentifier("com.PerfTest", "testBadValue"), entry.getKey());
+        assertEquals(59.5, entry.getValue().getSummary().getValue());
+        assertEquals(1, entry.getValue().getDetails().size());
+        assertEquals("jank", entry.getValue().getDetails().get(0).getMessage());
+    }
 }
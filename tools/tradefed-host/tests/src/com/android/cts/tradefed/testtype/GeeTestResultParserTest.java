@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.testtype;
+
+import com.android.ddmlib.testrunner.ITestRunListener;
+import com.android.ddmlib.testrunner.TestIdentifier;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link GeeTestResultParser}.
+ */
+public class GeeTestResultParserTest extends TestCase {
+
+    private static final String OUTPUT =
+            "[==========] Running 3 tests from 1 test case.\r\n"
+            + "[----------] Global test environment set-up.\r\n"
+            + "[----------] 3 tests from MessageTest\r\n"
+            + "[ RUN      ] MessageTest.DefaultConstructor\r\n"
+            + "[       OK ] MessageTest.DefaultConstructor (1 ms)\r\n"
+            + "[ RUN      ] MessageTest.CopyConstructor\r\n"
+            + "external/gtest/test/gtest-message_test.cc:67: Failure\r\n"
+            + "Value of: 5\r\n"
+            + "Expected: 2 \u00e9\r\n"
+            + "[  FAILED  ] MessageTest.CopyConstructor (2 ms)\r\n"
+            + "[ RUN      ] MessageTest.StreamsInt\r\n"
+            + "[       OK ] MessageTest.StreamsInt (0 ms)\r\n"
+            + "[----------] 3 tests from MessageTest (26 ms total)\r\n"
+            + "\r\n"
+            + "[----------] Global test environment tear-down\r\n"
+            + "[==========] 3 tests from 1 test case ran. (26 ms total)\r\n"
+            + "[  PASSED  ] 2 tests.\r\n"
+            + "[  FAILED  ] 1 test, listed below:\r\n"
+            + "[  FAILED  ] MessageTest.CopyConstructor\r\n"
+            + "1 FAILED TEST\r\n";
+
+    private static final String[] EVENTS = new String[] {
+        "runStarted run 3",
+        "started pkg.MessageTest#DefaultConstructor",
+        "ended pkg.MessageTest#DefaultConstructor",
+        "started pkg.MessageTest#CopyConstructor",
+        "failed FAILURE pkg.MessageTest#CopyConstructor "
+                + "external/gtest/test/gtest-message_test.cc:67: Failure\r\n"
+                + "Value of: 5\r\nExpected: 2 \u00e9",
+        "ended pkg.MessageTest#CopyConstructor",
+        "started pkg.MessageTest#StreamsInt",
+        "ended pkg.MessageTest#StreamsInt",
+        "runEnded 26",
+    };
+
+    /** Records the events reported by the parser. */
+    private static class RecordingListener implements ITestRunListener {
+        final List<String> mEvents = new ArrayList<String>();
+
+        @Override
+        public void testRunStarted(String runName, int testCount) {
+            mEvents.add("runStarted " + runName + " " + testCount);
+        }
+
+        @Override
+        public void testStarted(TestIdentifier test) {
+            mEvents.add("started " + test);
+        }
+
+        @Override
+        public void testFailed(TestFailure status, TestIdentifier test, String trace) {
+            mEvents.add("failed " + status + " " + test + " " + trace);
+        }
+
+        @Override
+        public void testEnded(TestIdentifier test, Map<String, String> testMetrics) {
+            mEvents.add("ended " + test);
+        }
+
+        @Override
+        public void testRunFailed(String errorMessage) {
+            mEvents.add("runFailed " + errorMessage);
+        }
+
+        @Override
+        public void testRunStopped(long elapsedTime) {
+            mEvents.add("runStopped");
+        }
+
+        @Override
+        public void testRunEnded(long elapsedTime, Map<String, String> runMetrics) {
+            mEvents.add("runEnded " + elapsedTime);
+        }
+    }
+
+    private RecordingListener mListener;
+    private GeeTestResultParser mParser;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mListener = new RecordingListener();
+        mParser = new GeeTestResultParser("run", mListener);
+        mParser.setFakePackagePrefix("pkg.");
+    }
+
+    /**
+     * Test that the output is parsed the same whichever way it is split into chunks, including
+     * chunks that end in the middle of a multi byte character.
+     */
+    public void testParse_chunks() throws Exception {
+        byte[] output = OUTPUT.getBytes("UTF-8");
+        for (int chunkSize : new int[] { output.length, 1, 7, 64 }) {
+            setUp();
+            for (int i = 0; i < output.length; i += chunkSize) {
+                mParser.addOutput(output, i, Math.min(chunkSize, output.length - i));
+            }
+            mParser.flush();
+            assertEvents(EVENTS);
+        }
+    }
+
+    /**
+     * Test that lines which were already decoded are parsed like raw output.
+     */
+    public void testProcessNewLines() {
+        mParser.processNewLines(OUTPUT.split("\r\n"));
+        mParser.done();
+        assertEvents(EVENTS);
+    }
+
+    /**
+     * Test that the output kept for a test is capped.
+     */
+    public void testParse_outputCap() throws Exception {
+        StringBuilder output = new StringBuilder();
+        output.append("[==========] Running 1 test from 1 test case.\n");
+        output.append("[ RUN      ] Foo.Bar\n");
+        char[] line = new char[999];
+        Arrays.fill(line, 'x');
+        int lines = 2 * GeeTestResultParser.MAX_TEST_OUTPUT_BYTES / 1000;
+        for (int i = 0; i < lines; i++) {
+            output.append(line).append('\n');
+        }
+        output.append("[  FAILED  ] Foo.Bar (5 ms)\n");
+        output.append("[==========] 1 test from 1 test case ran. (5 ms total)\n");
+        byte[] data = output.toString().getBytes("UTF-8");
+        mParser.addOutput(data, 0, data.length);
+        mParser.flush();
+
+        String failed = mListener.mEvents.get(2);
+        assertTrue(failed.startsWith("failed FAILURE pkg.Foo#Bar xxx"));
+        int dropped = lines * 1001 - 2 - GeeTestResultParser.MAX_TEST_OUTPUT_BYTES;
+        assertTrue(failed, failed.endsWith(
+                "x\r\n... " + dropped + " bytes of output dropped"));
+        assertTrue(failed.length() < GeeTestResultParser.MAX_TEST_OUTPUT_BYTES + 100);
+    }
+
+    /**
+     * Test that a run which ends early reports the test in progress as failed.
+     */
+    public void testParse_incomplete() throws Exception {
+        byte[] data = ("[==========] Running 2 tests from 1 test case.\n"
+                + "[ RUN      ] Foo.Bar\n"
+                + "Segmentation fault").getBytes("UTF-8");
+        mParser.addOutput(data, 0, data.length);
+        mParser.flush();
+        assertEvents(new String[] {
+            "runStarted run 2",
+            "started pkg.Foo#Bar",
+            "failed ERROR Foo#Bar No test results.\r\nSegmentation fault",
+            "ended Foo#Bar",
+            "runFailed Test run incomplete. Expected 2 tests, received 0",
+            "runEnded 0",
+        });
+    }
+
+    /**
+     * Test that a test ending with another name than it started with is reported as an error.
+     */
+    public void testParse_unexpectedTest() throws Exception {
+        byte[] data = ("[==========] Running 1 test from 1 test case.\n"
+                + "[ RUN      ] Foo.Bar\n"
+                + "[       OK ] Foo.Baz (1 ms)\n"
+                + "[==========] 1 test from 1 test case ran. (3 ms total)\n").getBytes("UTF-8");
+        mParser.addOutput(data, 0, data.length);
+        mParser.flush();
+        assertEquals("failed ERROR pkg.Foo#Bar java.lang.Throwable: Unknown failure",
+                mListener.mEvents.get(2));
+        assertEquals("runEnded 3", mListener.mEvents.get(4));
+    }
+
+    private void assertEvents(String[] expected) {
+        assertEquals(mListener.mEvents.toString(), expected.length, mListener.mEvents.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], mListener.mEvents.get(i));
+        }
+    }
+}
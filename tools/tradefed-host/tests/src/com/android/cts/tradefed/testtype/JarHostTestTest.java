@@ -16,6 +16,7 @@
 package com.android.cts.tradefed.testtype;
 
 import com.android.cts.tradefed.build.StubCtsBuildHelper;
+import com.android.cts.util.TestMetadataIndex;
 import com.android.ddmlib.testrunner.TestIdentifier;
 import com.android.tradefed.device.DeviceNotAvailableException;
 import com.android.tradefed.device.ITestDevice;
@@ -91,4 +92,28 @@ public class JarHostTestTest extends TestCase {
         mJarTest.run(listener);
         EasyMock.verify(listener);
     }
+
+    /**
+     * Test that {@link JarHostTest#getTimeout(TestIdentifier)} uses the timeout of the test index
+     * and falls back to the package timeout.
+     */
+    public void testGetTimeout() {
+        TestMetadataIndex.TestClass testClass =
+                new TestMetadataIndex.TestClass(MockTest.class.getName());
+        testClass.mMethods.add(new TestMetadataIndex.TestMethod("testFoo",
+                Collections.<String>emptyList(), 3));
+        testClass.mMethods.add(new TestMetadataIndex.TestMethod("testBar",
+                Collections.<String>emptyList(), TestMetadataIndex.NO_TIMEOUT));
+        mJarTest.setTimeout(1000);
+        assertEquals(1000, mJarTest.getTimeout(
+                new TestIdentifier(MockTest.class.getName(), "testFoo")));
+
+        mJarTest.setTestIndex(new TestMetadataIndex("digest",
+                Collections.singletonList(testClass)));
+        assertEquals(3 * 60 * 1000, mJarTest.getTimeout(
+                new TestIdentifier(MockTest.class.getName(), "testFoo")));
+        assertEquals(1000, mJarTest.getTimeout(
+                new TestIdentifier(MockTest.class.getName(), "testBar")));
+        assertEquals(1000, mJarTest.getTimeout(new TestIdentifier("Other", "testFoo")));
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.tradefed.util;
+
+import com.android.cts.util.ReportCodec;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link MetricsBus}.
+ */
+public class MetricsBusTest extends TestCase {
+    private static final String SERIAL = "serial";
+
+    private long mNow = 0;
+    private MetricsBus mBus;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBus = new MetricsBus(2, 1000) {
+            @Override
+            long getCurrentTimeMs() {
+                return mNow;
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        MetricsBus.unregister(SERIAL, mBus);
+        super.tearDown();
+    }
+
+    /**
+     * Test that a result nobody consumed can be taken once.
+     */
+    public void testPublishAndTake() {
+        ReportCodec.Report report = new ReportCodec.Report();
+        mBus.publish("a#b", report);
+        assertSame(report, mBus.take("a#b"));
+        assertNull(mBus.take("a#b"));
+    }
+
+    /**
+     * Test that a listener consuming a result prevents it from staying on the bus.
+     */
+    public void testListenerConsumes() {
+        final String[] received = new String[1];
+        mBus.subscribe(new MetricsBus.Listener() {
+            @Override
+            public boolean onMetrics(String classMethodName, ReportCodec.Report report) {
+                received[0] = classMethodName;
+                return classMethodName.equals("a#b");
+            }
+        });
+        mBus.publish("a#b", new ReportCodec.Report());
+        assertEquals("a#b", received[0]);
+        assertEquals(0, mBus.getPendingCount());
+        mBus.publish("a#c", new ReportCodec.Report());
+        assertEquals(1, mBus.getPendingCount());
+    }
+
+    /**
+     * Test that the oldest results are dropped when too many are pending.
+     */
+    public void testSizeBound() {
+        mBus.publish("a#1", new ReportCodec.Report());
+        mBus.publish("a#2", new ReportCodec.Report());
+        mBus.publish("a#3", new ReportCodec.Report());
+        assertEquals(2, mBus.getPendingCount());
+        assertNull(mBus.take("a#1"));
+        assertNotNull(mBus.take("a#3"));
+    }
+
+    /**
+     * Test that results are dropped when they are too old.
+     */
+    public void testAgeBound() {
+        mBus.publish("a#1", new ReportCodec.Report());
+        mNow = 500;
+        mBus.publish("a#2", new ReportCodec.Report());
+        mNow = 1200;
+        assertNull(mBus.take("a#1"));
+        assertNotNull(mBus.take("a#2"));
+    }
+
+    /**
+     * Test that results are routed by device serial only while the bus is registered.
+     */
+    public void testRegistration() {
+        MetricsBus.register(SERIAL, mBus);
+        assertTrue(MetricsBus.publish(SERIAL, "a#b", new ReportCodec.Report()));
+        assertEquals(1, mBus.getPendingCount());
+        MetricsBus.unregister(SERIAL, mBus);
+        assertFalse(MetricsBus.publish(SERIAL, "a#c", new ReportCodec.Report()));
+        assertEquals(1, mBus.getPendingCount());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.util;
+
+import com.android.cts.util.AdaptiveIterationController.StopReason;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link AdaptiveIterationController}, driven by synthetic frame times.
+ */
+public class AdaptiveIterationControllerTest extends TestCase {
+
+    /**
+     * Render batches until the controller is done, each frame taking frameTimeMs plus a
+     * uniformly distributed noise of +/- noiseMs.
+     */
+    private static void run(AdaptiveIterationController controller, double frameTimeMs,
+            double noiseMs) {
+        Random random = new Random(0);
+        // stop a broken controller instead of looping forever
+        for (int i = 0; i < 1000 && !controller.isDone(); i++) {
+            int frames = controller.getFramesForNextBatch();
+            double duration = 0;
+            for (int j = 0; j < frames; j++) {
+                duration += frameTimeMs + (random.nextDouble() * 2 - 1) * noiseMs;
+            }
+            controller.addBatch(frames, duration, 5.0);
+        }
+        assertTrue(controller.isDone());
+    }
+
+    /**
+     * Test that a steady frame time converges after the minimum number of batches.
+     */
+    public void testConverged() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(100, 3, 20, 0.02, 60000);
+        run(controller, 16.0, 1.0);
+        assertEquals(StopReason.CONVERGED, controller.getStopReason());
+        assertEquals(3, controller.getBatchCount());
+        assertEquals(16.0, controller.getMeanFrameTime(), 0.1);
+        assertTrue(controller.getRelativeError() <= 0.02);
+    }
+
+    /**
+     * Test that a frame time too noisy to converge stops after the maximum number of batches.
+     */
+    public void testMaxBatches() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(1, 3, 10, 0.001, 60000);
+        run(controller, 16.0, 15.0);
+        assertEquals(StopReason.MAX_BATCHES, controller.getStopReason());
+        assertEquals(10, controller.getBatchCount());
+        assertEquals(10, controller.getBatchFrameTimes().length);
+        assertTrue(controller.getRelativeError() > 0.001);
+    }
+
+    /**
+     * Test that a slow device stops when the time budget is spent.
+     */
+    public void testTimeBudget() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(100, 5, 20, 0.0001, 5000);
+        run(controller, 20.0, 0.0);
+        assertEquals(StopReason.TIME_BUDGET, controller.getStopReason());
+        // 3 batches of 2005 ms
+        assertEquals(3, controller.getBatchCount());
+        assertEquals(3 * 2005.0, controller.getElapsedMs(), 1.0);
+    }
+
+    /**
+     * Test that batches too short to be timed grow, and are not counted.
+     */
+    public void testBatchGrowth() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(100, 3, 20, 0.01, 60000);
+        controller.setBatchGrowth(100000, 200);
+        run(controller, 0.01, 0.0);
+        // 100, 200, ... 12800 frames take less than 200 ms
+        assertEquals(8, controller.getCalibrationBatchCount());
+        assertEquals(25600, controller.getFramesForNextBatch());
+        assertEquals(StopReason.CONVERGED, controller.getStopReason());
+        assertEquals(0.01, controller.getMeanFrameTime(), 0.0001);
+    }
+
+    /**
+     * Test that batches of the maximum size are counted, however short they are.
+     */
+    public void testBatchGrowth_max() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(100, 3, 20, 0.01, 60000);
+        controller.setBatchGrowth(1000, 200);
+        run(controller, 0.01, 0.0);
+        assertEquals(4, controller.getCalibrationBatchCount());
+        assertEquals(1000, controller.getFramesForNextBatch());
+        assertEquals(3, controller.getBatchCount());
+    }
+
+    /**
+     * Test the confidence interval against values computed by hand.
+     */
+    public void testConfidenceHalfWidth() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(1, 2, 10, 0.01, 60000);
+        assertTrue(Double.isNaN(controller.getMeanFrameTime()));
+        controller.addBatch(1, 10.0);
+        assertTrue(Double.isInfinite(controller.getConfidenceHalfWidth()));
+        controller.addBatch(1, 12.0);
+        controller.addBatch(1, 14.0);
+        // stddev of 2 and 2 degrees of freedom
+        assertEquals(12.0, controller.getMeanFrameTime(), 1e-9);
+        assertEquals(4.303 * 2.0 / Math.sqrt(3), controller.getConfidenceHalfWidth(), 1e-9);
+        assertEquals(controller.getConfidenceHalfWidth() / 12.0, controller.getRelativeError(),
+                1e-9);
+        assertNull(controller.getStopReason());
+    }
+
+    /**
+     * Test that a single fixed batch stops after it was rendered.
+     */
+    public void testSingleBatch() {
+        AdaptiveIterationController controller =
+                new AdaptiveIterationController(100, 1, 1, 0, Double.POSITIVE_INFINITY);
+        assertFalse(controller.isDone());
+        controller.addBatch(100, 1000.0);
+        assertEquals(StopReason.MAX_BATCHES, controller.getStopReason());
+        assertEquals(10.0, controller.getMeanFrameTime());
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new AdaptiveIterationController(0, 1, 1, 0.01, 1000);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new AdaptiveIterationController(1, 5, 4, 0.01, 1000);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
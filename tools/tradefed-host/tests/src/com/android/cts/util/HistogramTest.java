@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link Histogram}.
+ */
+public class HistogramTest extends TestCase {
+
+    /** relative error of a percentile with 2 significant digits */
+    private static final double PERCENTILE_ERROR = 0.01;
+
+    private static double[] createValues(int count, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            // log-uniform from 0.1 to 1000
+            values[i] = Math.pow(10, random.nextDouble() * 4 - 1);
+        }
+        return values;
+    }
+
+    public void testConstructor_invalid() {
+        try {
+            new Histogram(0.0, 100.0);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new Histogram(1.0, 1.0);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new Histogram(1.0, 100.0, 5);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testEmpty() {
+        Histogram histogram = new Histogram(0.001, 1000.0);
+        assertEquals(0, histogram.getCount());
+        assertTrue(Double.isNaN(histogram.getMean()));
+        assertTrue(Double.isNaN(histogram.getVariance()));
+        assertTrue(Double.isNaN(histogram.getMin()));
+        assertTrue(Double.isNaN(histogram.getPercentile(50.0)));
+    }
+
+    /**
+     * Test that mean, stddev, min and max are exact and match {@link Stat#getStat(double[])}.
+     */
+    public void testStat() {
+        double[] values = createValues(1000, 0);
+        Histogram histogram = new Histogram(0.001, 1000.0);
+        histogram.recordAll(values);
+        Stat.StatResult expected = Stat.getStat(values);
+        Stat.StatResult result = histogram.getStatResult();
+        assertEquals(expected.mAverage, result.mAverage, 1e-9);
+        assertEquals(expected.mStddev, result.mStddev, 1e-9);
+        assertEquals(expected.mMin, result.mMin);
+        assertEquals(expected.mMax, result.mMax);
+        assertEquals(1000, result.mDataCount);
+    }
+
+    /**
+     * Test that percentiles are within the bucket precision of the exact ones.
+     */
+    public void testGetPercentile() {
+        double[] values = createValues(10000, 1);
+        Histogram histogram = new Histogram(0.001, 1000.0);
+        histogram.recordAll(values);
+        double[] percentiles = {1.0, 10.0, 50.0, 90.0, 99.0, 99.9};
+        double[] results = histogram.getPercentiles(percentiles);
+        for (int i = 0; i < percentiles.length; i++) {
+            double expected = Stat.getPercentile(values, percentiles[i]);
+            assertEquals("p" + percentiles[i], expected, results[i],
+                    expected * PERCENTILE_ERROR);
+        }
+    }
+
+    /**
+     * Test that the 0th and 100th percentiles are the exact min and max, and not the middle of
+     * their buckets.
+     */
+    public void testGetPercentile_minMax() {
+        double[] values = createValues(100, 2);
+        Histogram histogram = new Histogram(0.001, 1000.0);
+        histogram.recordAll(values);
+        assertEquals(Stat.getMin(values), histogram.getPercentile(0.0));
+        assertEquals(Stat.getMax(values), histogram.getPercentile(100.0));
+
+        histogram = new Histogram(0.001, 1000.0);
+        histogram.record(3.14159);
+        assertEquals(3.14159, histogram.getPercentile(0.0));
+        assertEquals(3.14159, histogram.getPercentile(50.0));
+        assertEquals(3.14159, histogram.getPercentile(100.0));
+
+        try {
+            histogram.getPercentile(100.1);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that values above the range are counted, and reported as the max.
+     */
+    public void testRecord_outOfRange() {
+        Histogram histogram = new Histogram(0.01, 100.0);
+        for (int i = 0; i < 9; i++) {
+            histogram.record(10.0);
+        }
+        histogram.record(1e6);
+        histogram.record(-1.0);
+        assertEquals(11, histogram.getCount());
+        assertEquals(-1.0, histogram.getMin());
+        assertEquals(1e6, histogram.getMax());
+        assertEquals(1e6, histogram.getPercentile(100.0));
+        assertEquals(10.0, histogram.getPercentile(50.0), 10.0 * PERCENTILE_ERROR);
+        assertEquals(10, histogram.getCountAtOrBelow(10.0));
+        assertEquals(1, histogram.getCountAtOrBelow(0.0));
+    }
+
+    /**
+     * Test that merged histograms give the same results as one histogram of all values.
+     */
+    public void testMerge() {
+        double[] values = createValues(2000, 3);
+        Histogram all = new Histogram(0.001, 1000.0);
+        all.recordAll(values);
+        Histogram first = all.copyEmpty();
+        Histogram second = all.copyEmpty();
+        for (int i = 0; i < values.length; i++) {
+            (i < 500 ? first : second).record(values[i]);
+        }
+        first.merge(second);
+        first.merge(all.copyEmpty());
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getMean(), first.getMean(), 1e-9);
+        assertEquals(all.getVariance(), first.getVariance(), 1e-6);
+        assertEquals(all.getMin(), first.getMin());
+        assertEquals(all.getMax(), first.getMax());
+        for (double percentile : new double[] {0.0, 25.0, 50.0, 99.0, 100.0}) {
+            assertEquals(all.getPercentile(percentile), first.getPercentile(percentile));
+        }
+
+        try {
+            first.merge(new Histogram(0.01, 1000.0));
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testReset() {
+        Histogram histogram = new Histogram(0.001, 1000.0);
+        histogram.recordAll(createValues(10, 4));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getCountAtOrBelow(1000.0));
+        histogram.record(2.0);
+        assertEquals(2.0, histogram.getMin());
+        assertEquals(2.0, histogram.getMean());
+    }
+}
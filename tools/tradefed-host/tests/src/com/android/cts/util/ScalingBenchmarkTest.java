@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ScalingBenchmark}.
+ */
+public class ScalingBenchmarkTest extends TestCase {
+
+    /**
+     * A workload which sleeps, and fails in prepare() or run() on one thread.
+     */
+    private static class SleepWorkload implements ScalingBenchmark.Workload {
+        private final int mFailingThread;
+        private final boolean mFailInPrepare;
+        private final Throwable mFailure;
+
+        SleepWorkload(int failingThread, boolean failInPrepare, Throwable failure) {
+            mFailingThread = failingThread;
+            mFailInPrepare = failInPrepare;
+            mFailure = failure;
+        }
+
+        @Override
+        public void prepare(int threadIndex, int numberThreads) throws Exception {
+            if (mFailInPrepare) {
+                fail(threadIndex);
+            }
+        }
+
+        @Override
+        public double run(int threadIndex) throws Exception {
+            if (!mFailInPrepare) {
+                fail(threadIndex);
+            }
+            Thread.sleep(10);
+            return 1.0;
+        }
+
+        private void fail(int threadIndex) throws Exception {
+            if (threadIndex != mFailingThread) {
+                return;
+            }
+            if (mFailure instanceof Error) {
+                throw (Error) mFailure;
+            }
+            throw (Exception) mFailure;
+        }
+    }
+
+    public void testRunStep() throws Exception {
+        ScalingBenchmark.StepResult result =
+                ScalingBenchmark.runStep(new SleepWorkload(-1, false, null), 3);
+        assertEquals(3, result.mNumberThreads);
+        assertEquals(3, result.mThreadTimesMs.length);
+        for (double time : result.mThreadTimesMs) {
+            assertTrue(time >= 10.0);
+        }
+        assertTrue(result.mWallTimeMs >= 10.0);
+        assertEquals(3 / (result.mWallTimeMs / 1000.0), result.mThroughput, 1e-9);
+    }
+
+    /**
+     * Test that a failure in prepare() on a thread which is not the first to reach the barrier
+     * is thrown, and does not leave the other threads waiting.
+     */
+    public void testRunStep_prepareFails() throws Exception {
+        Exception failure = new Exception("prepare");
+        try {
+            ScalingBenchmark.runStep(new SleepWorkload(3, true, failure), 4);
+            fail("Exception not thrown");
+        } catch (Exception e) {
+            assertSame(failure, e);
+        }
+    }
+
+    public void testRunStep_prepareError() throws Exception {
+        OutOfMemoryError failure = new OutOfMemoryError("prepare");
+        try {
+            ScalingBenchmark.runStep(new SleepWorkload(0, true, failure), 4);
+            fail("OutOfMemoryError not thrown");
+        } catch (OutOfMemoryError e) {
+            assertSame(failure, e);
+        }
+    }
+
+    public void testRunStep_runError() throws Exception {
+        AssertionError failure = new AssertionError("run");
+        try {
+            ScalingBenchmark.runStep(new SleepWorkload(1, false, failure), 2);
+            fail("AssertionError not thrown");
+        } catch (AssertionError e) {
+            assertSame(failure, e);
+        }
+    }
+}
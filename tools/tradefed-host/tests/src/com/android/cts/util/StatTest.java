@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link Stat}.
+ */
+public class StatTest extends TestCase {
+
+    public void testGetStat() {
+        Stat.StatResult result = Stat.getStat(new double[] {2, 4, 4, 4, 5, 5, 7, 9});
+        assertEquals(5.0, result.mAverage, 1e-12);
+        assertEquals(2.0, result.mMin);
+        assertEquals(9.0, result.mMax);
+        assertEquals(2.0, result.mStddev, 1e-12);
+        assertEquals(8, result.mDataCount);
+    }
+
+    /**
+     * Test that the stddev of large values with a small spread is not lost to rounding, as it
+     * was with sqrt(E[X^2] - E[X]^2).
+     */
+    public void testGetStat_largeValues() {
+        double[] data = new double[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 1e9 + (i % 2 == 0 ? -1 : 1);
+        }
+        Stat.StatResult result = Stat.getStat(data);
+        assertEquals(1e9, result.mAverage, 1e-6);
+        assertEquals(1.0, result.mStddev, 1e-6);
+    }
+
+    public void testGetStatWithOutlierRejection() {
+        Stat.StatResult result = Stat.getStatWithOutlierRejection(
+                new double[] {10, 11, 9, 10, 100, 0.5}, 0.2);
+        assertEquals(10.0, result.mAverage, 1e-12);
+        assertEquals(9.0, result.mMin);
+        assertEquals(11.0, result.mMax);
+        assertEquals(Math.sqrt(0.5), result.mStddev, 1e-12);
+        assertEquals(4, result.mDataCount);
+    }
+
+    public void testGetMedian() {
+        double[] data = {5, 1, 4, 2, 3};
+        assertEquals(3.0, Stat.getMedian(data));
+        // the passed array is not modified
+        assertTrue(Arrays.equals(new double[] {5, 1, 4, 2, 3}, data));
+        assertEquals(2.5, Stat.getMedian(new double[] {4, 1, 3, 2}));
+        assertEquals(2.0, Stat.getMedian(new double[] {2, 2, 2, 2}));
+        assertEquals(7.0, Stat.getMedian(new double[] {7}));
+    }
+
+    public void testGetPercentile() {
+        double[] data = new double[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = data.length - i;
+        }
+        assertEquals(1.0, Stat.getPercentile(data, 0.0));
+        assertEquals(1.0, Stat.getPercentile(data, 1.0));
+        assertEquals(50.0, Stat.getPercentile(data, 50.0));
+        assertEquals(90.0, Stat.getPercentile(data, 90.0));
+        assertEquals(91.0, Stat.getPercentile(data, 90.5));
+        assertEquals(100.0, Stat.getPercentile(data, 100.0));
+        assertEquals(100.0, data[0]);
+        try {
+            Stat.getPercentile(data, 100.5);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
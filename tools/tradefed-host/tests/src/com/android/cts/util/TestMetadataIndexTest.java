@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TestMetadataIndex} and {@link TestJarScanner}.
+ */
+public class TestMetadataIndexTest extends TestCase {
+
+    private File mJarFile;
+
+    /** Test class put into the scanned jar. */
+    public static class IndexedTest extends TestCase {
+        @TimeoutReq(minutes = 5)
+        public void testSlow() {
+        }
+
+        @Deprecated
+        public void testFast() {
+        }
+
+        public void helper() {
+        }
+    }
+
+    /** Abstract test class put into the scanned jar, which has no tests of its own. */
+    public static abstract class AbstractTest extends TestCase {
+        public void testAbstract() {
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mJarFile = File.createTempFile("indextest", ".jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(mJarFile));
+        try {
+            for (Class<?> c : new Class<?>[] { IndexedTest.class, AbstractTest.class }) {
+                String name = c.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(name));
+                InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+                try {
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mJarFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that scanning finds the tests, annotations and timeouts without loading classes.
+     */
+    public void testScan() throws IOException {
+        TestMetadataIndex index = new TestJarScanner(getClass().getClassLoader()).scan(mJarFile);
+        assertEquals(TestJarScanner.sha1(mJarFile), index.getDigest());
+        assertEquals(1, index.getTestClasses().size());
+        assertNull(index.getTestClass(AbstractTest.class.getName()));
+
+        TestMetadataIndex.TestClass testClass = index.getTestClass(IndexedTest.class.getName());
+        assertEquals(2, testClass.mMethods.size());
+        assertNull(testClass.getMethod("helper"));
+        assertTrue(testClass.getMethod("testFast").hasAnnotation("java.lang.Deprecated"));
+        assertEquals(5, index.getTimeoutMinutes(IndexedTest.class.getName(), "testSlow"));
+        assertEquals(TestMetadataIndex.NO_TIMEOUT,
+                index.getTimeoutMinutes(IndexedTest.class.getName(), "testFast"));
+    }
+
+    /**
+     * Test that a super class missing from the class path is reported, and its subclasses are
+     * not taken as tests.
+     */
+    public void testScan_missingSuperClass() throws IOException {
+        // no parent, so not even junit.framework.TestCase can be found
+        TestJarScanner scanner = new TestJarScanner(new URLClassLoader(new URL[0], null));
+        TestMetadataIndex index = scanner.scan(mJarFile);
+        assertEquals(0, index.getTestClasses().size());
+        assertEquals(Collections.singleton(TestCase.class.getName()),
+                scanner.getMissingClasses());
+
+        assertTrue(new TestJarScanner(getClass().getClassLoader()).getMissingClasses().isEmpty());
+    }
+
+    /**
+     * Test that the result of a jar depends on the class path it is scanned with.
+     */
+    public void testScan_classPathChanged() throws IOException {
+        TestJarScanner scanner = new TestJarScanner(getClass().getClassLoader());
+        assertEquals(1, scanner.scan(mJarFile).getTestClasses().size());
+        assertTrue(scanner.getMissingClasses().isEmpty());
+        scanner = new TestJarScanner(new URLClassLoader(new URL[0], null));
+        assertEquals(0, scanner.scan(mJarFile).getTestClasses().size());
+    }
+
+    /**
+     * Test that an index reads back as it was written.
+     */
+    public void testWriteRead() throws IOException {
+        TestMetadataIndex index = new TestJarScanner(getClass().getClassLoader()).scan(mJarFile);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        TestMetadataIndex read = TestMetadataIndex.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(index.getDigest(), read.getDigest());
+        TestMetadataIndex.TestClass testClass = read.getTestClass(IndexedTest.class.getName());
+        assertEquals(2, testClass.mMethods.size());
+        assertEquals(5, testClass.getMethod("testSlow").mTimeoutMinutes);
+        assertTrue(testClass.getMethod("testFast").hasAnnotation("java.lang.Deprecated"));
+    }
+
+    /**
+     * Test that an index file is only used for the jar it was built from.
+     */
+    public void testReadFileWithDigest() throws IOException {
+        TestMetadataIndex index = new TestJarScanner(getClass().getClassLoader()).scan(mJarFile);
+        File indexFile = File.createTempFile("indextest", TestMetadataIndex.INDEX_SUFFIX);
+        try {
+            index.write(indexFile);
+            assertNotNull(TestMetadataIndex.read(indexFile, index.getDigest()));
+            assertNull(TestMetadataIndex.read(indexFile, "0000"));
+        } finally {
+            indexFile.delete();
+        }
+        assertEquals("Foo.idx", TestMetadataIndex.getIndexFileName("Foo.jar"));
+    }
+}
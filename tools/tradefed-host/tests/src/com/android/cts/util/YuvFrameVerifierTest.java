@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.cts.util;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link YuvFrameVerifier}.
+ */
+public class YuvFrameVerifierTest extends TestCase {
+
+    private static final int REF_WIDTH = 48;
+    private static final int REF_HEIGHT = 40;
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 16;
+
+    /**
+     * Test the kernels against values computed by hand, with bytes above 127.
+     */
+    public void testSumSquaredError() {
+        byte[] a = new byte[] { 0, 10, (byte) 200, (byte) 255, 7 };
+        byte[] b = new byte[] { 9, 9, 13, (byte) 190, (byte) 250 };
+        // (10 - 13)^2 + (200 - 190)^2 + (255 - 250)^2
+        assertEquals(9 + 100 + 25, YuvFrameVerifier.sumSquaredError(a, 1, b, 2, 3));
+        // (0 - 9)^2 + (200 - 9)^2 + (7 - 13)^2
+        assertEquals(81 + 191 * 191 + 36,
+                YuvFrameVerifier.sumSquaredError(a, 0, 2, b, 0, 1, 3));
+        assertEquals(0, YuvFrameVerifier.sumSquaredError(a, 0, b, 0, 0));
+    }
+
+    /**
+     * Test that frames cut out of the reference match it in all layouts.
+     */
+    public void testSubmit_identical() throws Exception {
+        for (int layout = 0; layout < 4; layout++) {
+            boolean refSemiPlanar = (layout & 1) != 0;
+            boolean dstSemiPlanar = (layout & 2) != 0;
+            byte[] refY = createLuma();
+            byte[] refUV = createChroma(refSemiPlanar);
+            YuvFrameVerifier verifier = new YuvFrameVerifier(refY, refUV, REF_WIDTH, REF_HEIGHT,
+                    refSemiPlanar, WIDTH, HEIGHT, 4, 2, 0);
+            verifier.setDecodedSemiPlanar(dstSemiPlanar);
+            verifier.start();
+            for (int frame = 0; frame < 10; frame++) {
+                int originX = frame * 2 % (REF_WIDTH - WIDTH);
+                int originY = frame * 4 % (REF_HEIGHT - HEIGHT);
+                ByteBuffer decoded = cut(refY, refUV, refSemiPlanar, originX, originY,
+                        dstSemiPlanar, 0);
+                while (!verifier.submit(decoded, originX, originY)) {
+                    Thread.sleep(1);
+                }
+            }
+            verifier.finish();
+            assertEquals("layout " + layout, 10, verifier.getVerifiedFrames());
+            assertEquals("layout " + layout, 0.0, verifier.getRmsError());
+        }
+    }
+
+    /**
+     * Test that an offset of every decoded byte gives that offset as error.
+     */
+    public void testSubmit_offset() throws Exception {
+        byte[] refY = createLuma();
+        byte[] refUV = createChroma(true);
+        YuvFrameVerifier verifier = new YuvFrameVerifier(refY, refUV, REF_WIDTH, REF_HEIGHT,
+                true, WIDTH, HEIGHT, 4, 1, 0);
+        verifier.setDecodedSemiPlanar(false);
+        verifier.start();
+        ByteBuffer decoded = cut(refY, refUV, true, 6, 2, false, 3);
+        assertTrue(verifier.submit(decoded, 6, 2));
+        verifier.finish();
+        assertEquals(3.0, verifier.getRmsError(), 1e-9);
+    }
+
+    /**
+     * Test that frames submitted while the only slot is busy are not checked.
+     */
+    public void testSubmit_busy() throws Exception {
+        byte[] refY = createLuma();
+        byte[] refUV = createChroma(true);
+        YuvFrameVerifier verifier = new YuvFrameVerifier(refY, refUV, REF_WIDTH, REF_HEIGHT,
+                true, WIDTH, HEIGHT, 1, 1, 0);
+        // the worker is not started, so the slot is not freed
+        ByteBuffer decoded = cut(refY, refUV, true, 0, 0, true, 0);
+        assertTrue(verifier.submit(decoded, 0, 0));
+        assertFalse(verifier.submit(decoded, 0, 0));
+        assertEquals(1, verifier.getSkippedFrames());
+        verifier.start();
+        verifier.finish();
+        assertEquals(1, verifier.getVerifiedFrames());
+    }
+
+    /**
+     * Test that an exception thrown while checking a frame is thrown by finish(), and that
+     * later frames are skipped without blocking.
+     */
+    public void testSubmit_failure() throws Exception {
+        byte[] refY = createLuma();
+        byte[] refUV = createChroma(true);
+        YuvFrameVerifier verifier = new YuvFrameVerifier(refY, refUV, REF_WIDTH, REF_HEIGHT,
+                true, WIDTH, HEIGHT, 2, 1, 0);
+        verifier.start();
+        ByteBuffer decoded = cut(refY, refUV, true, 0, 0, true, 0);
+        // an origin past the bottom of the reference makes the worker read out of bounds
+        assertTrue(verifier.submit(decoded, 0, REF_HEIGHT));
+        for (int frame = 0; frame < 10; frame++) {
+            verifier.submit(decoded, 0, 0);
+        }
+        try {
+            verifier.finish();
+            fail("ArrayIndexOutOfBoundsException not thrown");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testNoFrames() throws Exception {
+        YuvFrameVerifier verifier = new YuvFrameVerifier(createLuma(), createChroma(true),
+                REF_WIDTH, REF_HEIGHT, true, WIDTH, HEIGHT, 1, 1, 0);
+        verifier.start();
+        verifier.finish();
+        assertEquals(0, verifier.getVerifiedFrames());
+        assertTrue(Double.isNaN(verifier.getRmsError()));
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new YuvFrameVerifier(createLuma(), createChroma(true), REF_WIDTH, REF_HEIGHT, true,
+                    REF_WIDTH + 2, HEIGHT, 1, 1, 0);
+            fail("IllegalArgumentException not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static byte[] createLuma() {
+        byte[] y = new byte[REF_WIDTH * REF_HEIGHT];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = (byte) (16 + i * 7 % 220);
+        }
+        return y;
+    }
+
+    private static byte[] createChroma(boolean semiPlanar) {
+        byte[] uv = new byte[REF_WIDTH * REF_HEIGHT / 2];
+        int vOffset = REF_WIDTH * REF_HEIGHT / 4;
+        for (int row = 0; row < REF_HEIGHT / 2; row++) {
+            for (int col = 0; col < REF_WIDTH / 2; col++) {
+                byte u = (byte) (row * 11 + col);
+                byte v = (byte) (255 - row - col * 3);
+                if (semiPlanar) {
+                    uv[row * REF_WIDTH + col * 2] = u;
+                    uv[row * REF_WIDTH + col * 2 + 1] = v;
+                } else {
+                    uv[row * REF_WIDTH / 2 + col] = u;
+                    uv[vOffset + row * REF_WIDTH / 2 + col] = v;
+                }
+            }
+        }
+        return uv;
+    }
+
+    /**
+     * @return the part of the reference at the origin in the given layout, with offset added
+     *         to every byte
+     */
+    private static ByteBuffer cut(byte[] refY, byte[] refUV, boolean refSemiPlanar, int originX,
+            int originY, boolean semiPlanar, int offset) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+        int lumaSize = WIDTH * HEIGHT;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                frame.put(y * WIDTH + x,
+                        (byte) (refY[(originY + y) * REF_WIDTH + originX + x] + offset));
+            }
+        }
+        int refVOffset = REF_WIDTH * REF_HEIGHT / 4;
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                int refRow = originY / 2 + row;
+                int refCol = originX / 2 + col;
+                byte u;
+                byte v;
+                if (refSemiPlanar) {
+                    u = refUV[refRow * REF_WIDTH + refCol * 2];
+                    v = refUV[refRow * REF_WIDTH + refCol * 2 + 1];
+                } else {
+                    u = refUV[refRow * REF_WIDTH / 2 + refCol];
+                    v = refUV[refVOffset + refRow * REF_WIDTH / 2 + refCol];
+                }
+                u += offset;
+                v += offset;
+                if (semiPlanar) {
+                    frame.put(lumaSize + row * WIDTH + col * 2, u);
+                    frame.put(lumaSize + row * WIDTH + col * 2 + 1, v);
+                } else {
+                    frame.put(lumaSize + row * WIDTH / 2 + col, u);
+                    frame.put(lumaSize + lumaSize / 4 + row * WIDTH / 2 + col, v);
+                }
+            }
+        }
+        return frame;
+    }
+}
@@ -20,7 +20,11 @@ include $(CLEAR_VARS)
 
 LOCAL_MODULE := descGen
 
-LOCAL_SRC_FILES := CollectAllTests.java DescriptionGenerator.java VogarUtils.java
+LOCAL_SRC_FILES := CollectAllTests.java DescriptionGenerator.java VogarUtils.java \
+    ../../libs/commonutil/src/com/android/cts/util/ClassFileInfo.java \
+    ../../libs/commonutil/src/com/android/cts/util/TestJarScanner.java \
+    ../../libs/commonutil/src/com/android/cts/util/TestMetadataIndex.java \
+    ../../libs/commonutil/src/com/android/cts/util/TimeoutReq.java
 
 LOCAL_CLASSPATH := $(HOST_JDK_TOOLS_JAR)
 
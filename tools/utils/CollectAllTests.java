@@ -14,6 +14,9 @@
  * limitations under the License.
  */
 
+import com.android.cts.util.TestJarScanner;
+import com.android.cts.util.TestMetadataIndex;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -29,30 +32,15 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
-import junit.framework.Test;
-import junit.framework.TestCase;
-import junit.framework.TestResult;
-import junit.textui.ResultPrinter;
-import junit.textui.TestRunner;
-
 public class CollectAllTests extends DescriptionGenerator {
 
     private static final String ATTRIBUTE_RUNNER = "runner";
@@ -72,6 +60,8 @@ public class CollectAllTests extends DescriptionGenerator {
         if (args.length < 4 || args.length > 6) {
             System.err.println("usage: CollectAllTests <output-file> <manifest-file> <jar-file> "
                                + "<java-package> [expectation-dir [makefile-file]]");
+            System.err.println("<jar-file> may list several JARs separated by "
+                               + File.pathSeparator);
             if (args.length != 0) {
                 System.err.println("received:");
                 for (String arg : args) {
@@ -174,68 +164,35 @@ public class CollectAllTests extends DescriptionGenerator {
             libcoreVogarExpectationStore, ctsVogarExpectationStore
         };
 
-        JarFile jarFile = null;
+        List<File> jarFiles = new ArrayList<File>();
+        for (String name : jarFileName.split(File.pathSeparator)) {
+            jarFiles.add(new File(name));
+        }
+        TestJarScanner scanner = new TestJarScanner(CollectAllTests.class.getClassLoader());
+        List<TestMetadataIndex> scannedJars;
         try {
-            jarFile = new JarFile(jarFileName);
-        } catch (Exception e) {
-            System.err.println("cannot open jarfile " + jarFileName);
+            scannedJars = scanner.scan(jarFiles);
+        } catch (IOException e) {
+            System.err.println("cannot scan jarfile " + jarFileName);
             e.printStackTrace();
             System.exit(1);
+            return;
+        }
+        if (!scanner.getMissingClasses().isEmpty()) {
+            System.err.println("class not found " + scanner.getMissingClasses());
+            System.exit(1);
+            return;
         }
 
         Map<String,TestClass> testCases = new LinkedHashMap<String, TestClass>();
 
         String javaPackagePrefix = javaPackageFilter.isEmpty() ? "" : (javaPackageFilter + ".");
 
-        Enumeration<JarEntry> jarEntries = jarFile.entries();
-        while (jarEntries.hasMoreElements()) {
-            JarEntry jarEntry = jarEntries.nextElement();
-            String name = jarEntry.getName();
-            if (!name.endsWith(".class")) {
-                continue;
-            }
-            String className
-                    = name.substring(0, name.length() - ".class".length()).replace('/', '.');
-            if (!className.startsWith(javaPackagePrefix)) {
-                continue;
-            }
-            try {
-                Class<?> klass = Class.forName(className,
-                                               false,
-                                               CollectAllTests.class.getClassLoader());
-                if (!TestCase.class.isAssignableFrom(klass)) {
-                    continue;
+        for (TestMetadataIndex scannedJar : scannedJars) {
+            for (TestMetadataIndex.TestClass scannedClass : scannedJar.getTestClasses()) {
+                if (scannedClass.mName.startsWith(javaPackagePrefix)) {
+                    addToTests(expectations, testCases, scannedClass);
                 }
-                if (Modifier.isAbstract(klass.getModifiers())) {
-                    continue;
-                }
-                if (!Modifier.isPublic(klass.getModifiers())) {
-                    continue;
-                }
-                try {
-                    klass.getConstructor(new Class<?>[] { String.class } );
-                    addToTests(expectations, testCases, klass.asSubclass(TestCase.class));
-                    continue;
-                } catch (NoSuchMethodException e) {
-                } catch (SecurityException e) {
-                    System.out.println("Known bug (Working as intended): problem with class "
-                            + className);
-                    e.printStackTrace();
-                }
-                try {
-                    klass.getConstructor(new Class<?>[0]);
-                    addToTests(expectations, testCases, klass.asSubclass(TestCase.class));
-                    continue;
-                } catch (NoSuchMethodException e) {
-                } catch (SecurityException e) {
-                    System.out.println("Known bug (Working as intended): problem with class "
-                            + className);
-                    e.printStackTrace();
-                }
-            } catch (ClassNotFoundException e) {
-                System.out.println("class not found " + className);
-                e.printStackTrace();
-                System.exit(1);
             }
         }
 
@@ -314,112 +271,31 @@ public class CollectAllTests extends DescriptionGenerator {
         }
     }
 
-    private static String getKnownFailure(final Class<? extends TestCase> testClass,
-            final String testName) {
-        return getAnnotation(testClass, testName, KNOWN_FAILURE);
-    }
-
-    private static boolean isKnownFailure(final Class<? extends TestCase> testClass,
-            final String testName) {
-        return getAnnotation(testClass, testName, KNOWN_FAILURE) != null;
-    }
-
-    private static boolean isBrokenTest(final Class<? extends TestCase> testClass,
-            final String testName)  {
-        return getAnnotation(testClass, testName, BROKEN_TEST) != null;
-    }
-
-    private static boolean isSuppressed(final Class<? extends TestCase> testClass,
-            final String testName)  {
-        return getAnnotation(testClass, testName, SUPPRESSED_TEST) != null;
-    }
-
-    private static boolean hasSideEffects(final Class<? extends TestCase> testClass,
-            final String testName) {
-        return getAnnotation(testClass, testName, SIDE_EFFECT) != null;
-    }
-
-    private static String getAnnotation(final Class<? extends TestCase> testClass,
-            final String testName, final String annotationName) {
-        try {
-            Method testMethod = testClass.getMethod(testName, (Class[])null);
-            Annotation[] annotations = testMethod.getAnnotations();
-            for (Annotation annot : annotations) {
-
-                if (annot.annotationType().getName().equals(annotationName)) {
-                    String annotStr = annot.toString();
-                    String knownFailure = null;
-                    if (annotStr.contains("(value=")) {
-                        knownFailure =
-                            annotStr.substring(annotStr.indexOf("=") + 1,
-                                    annotStr.length() - 1);
-
-                    }
-
-                    if (knownFailure == null) {
-                        knownFailure = "true";
-                    }
-
-                    return knownFailure;
-                }
-
-            }
-
-        } catch (NoSuchMethodException e) {
-        }
-
-        return null;
-    }
-
     private static void addToTests(ExpectationStore[] expectations,
                                    Map<String,TestClass> testCases,
-                                   Class<? extends TestCase> test) {
-        Class testClass = test;
-        Set<String> testNames = new HashSet<String>();
-        while (TestCase.class.isAssignableFrom(testClass)) {
-            Method[] testMethods = testClass.getDeclaredMethods();
-            for (Method testMethod : testMethods) {
-                String testName = testMethod.getName();
-                if (testNames.contains(testName)) {
-                    continue;
-                }
-                if (!testName.startsWith("test")) {
-                    continue;
-                }
-                if (testMethod.getParameterTypes().length != 0) {
-                    continue;
-                }
-                if (!testMethod.getReturnType().equals(Void.TYPE)) {
-                    continue;
-                }
-                if (!Modifier.isPublic(testMethod.getModifiers())) {
-                    continue;
-                }
-                testNames.add(testName);
-                addToTests(expectations, testCases, test, testName);
-            }
-            testClass = testClass.getSuperclass();
+                                   TestMetadataIndex.TestClass test) {
+        for (TestMetadataIndex.TestMethod testMethod : test.mMethods) {
+            addToTests(expectations, testCases, test.mName, testMethod);
         }
     }
 
     private static void addToTests(ExpectationStore[] expectations,
                                    Map<String,TestClass> testCases,
-                                   Class<? extends TestCase> test,
-                                   String testName) {
-
-        String testClassName = test.getName();
-        String knownFailure = getKnownFailure(test, testName);
+                                   String testClassName,
+                                   TestMetadataIndex.TestMethod testMethod) {
+        String testName = testMethod.mName;
+        String test = "class " + testClassName;
 
-        if (isKnownFailure(test, testName)) {
+        if (testMethod.hasAnnotation(KNOWN_FAILURE)) {
             System.out.println("ignoring known failure: " + test + "#" + testName);
             return;
-        } else if (isBrokenTest(test, testName)) {
+        } else if (testMethod.hasAnnotation(BROKEN_TEST)) {
             System.out.println("ignoring broken test: " + test + "#" + testName);
             return;
-        } else if (isSuppressed(test, testName)) {
+        } else if (testMethod.hasAnnotation(SUPPRESSED_TEST)) {
             System.out.println("ignoring suppressed test: " + test + "#" + testName);
             return;
-        } else if (hasSideEffects(test, testName)) {
+        } else if (testMethod.hasAnnotation(SIDE_EFFECT)) {
             System.out.println("ignoring test with side effects: " + test + "#" + testName);
             return;
         } else if (VogarUtils.isVogarKnownFailure(expectations,
@@ -438,7 +314,8 @@ public class CollectAllTests extends DescriptionGenerator {
             testCases.put(testClassName, testClass);
         }
 
-        testClass.mCases.add(new TestMethod(testName, "", "", knownFailure, false, false));
+        // tests with a known failure annotation were skipped above
+        testClass.mCases.add(new TestMethod(testName, "", "", null, false, false));
     }
 
     /**